@@ -0,0 +1,86 @@
+package novik.bench;
+
+import novik.render.VehicleDrawList;
+import novik.sim.SimulationSnapshot;
+import novik.util.MapUtil;
+import novik.util.SpatialGrid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JavaFX-free part of a vehicle frame: spatial indexing, viewport culling and draw preparation
+ * Phần không dùng JavaFX của một khung hình xe: đánh chỉ mục không gian, lọc theo khung nhìn và chuẩn bị vẽ
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawPrepBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int vehicles;
+
+    // Zoom factor of the view used for culling (1 = whole network visible)
+    // Hệ số phóng to của khung nhìn dùng để lọc (1 = thấy toàn bộ mạng lưới)
+    @Param({"1", "8"})
+    public double zoom;
+
+    private SimulationSnapshot snapshot;
+    private SpatialGrid grid;
+    private final double[] viewBounds = new double[4];
+    private int[] all;
+    private int[] visible;
+    private int visibleCount;
+    private final VehicleDrawList drawList = new VehicleDrawList();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snapshot = SyntheticFixture.snapshot(SyntheticFixture.startBackend(vehicles));
+        MapUtil.zoomAt(zoom, SyntheticFixture.CANVAS_WIDTH / 2, SyntheticFixture.CANVAS_HEIGHT / 2);
+        grid = MapUtil.createGrid();
+        indexVehicles();
+        all = new int[snapshot.getVehicleCount()];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        visible = new int[all.length];
+    }
+
+    /**
+     * Re-index all vehicle positions, as done once per new snapshot
+     * Đánh chỉ mục lại vị trí tất cả xe, như làm một lần cho mỗi snapshot mới
+     */
+    @Benchmark
+    public SpatialGrid indexVehicles() {
+        grid.clear();
+        for (int i = 0; i < snapshot.getVehicleCount(); i++) {
+            grid.insertPoint(i, snapshot.getX(i), snapshot.getY(i));
+        }
+        return grid;
+    }
+
+    /**
+     * Find the vehicles inside the view and prepare only those
+     * Tìm các xe trong khung nhìn và chỉ chuẩn bị các xe đó
+     */
+    @Benchmark
+    public VehicleDrawList cullAndPrepare() {
+        visibleCount = 0;
+        MapUtil.getVisibleWorldBounds(50, viewBounds);
+        grid.query(viewBounds[0], viewBounds[1], viewBounds[2], viewBounds[3], i -> visible[visibleCount++] = i);
+        drawList.prepare(snapshot, visible, visibleCount);
+        return drawList;
+    }
+
+    /**
+     * Prepare every vehicle without culling
+     * Chuẩn bị tất cả xe mà không lọc
+     */
+    @Benchmark
+    public VehicleDrawList prepareAll() {
+        drawList.prepare(snapshot, all, all.length);
+        return drawList;
+    }
+}
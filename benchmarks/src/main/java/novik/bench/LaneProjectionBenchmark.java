@@ -0,0 +1,69 @@
+package novik.bench;
+
+import novik.util.MapUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection of the lane network: old list-of-Point2D path, flat buffers, and culled to a zoomed view
+ * Chiếu mạng lưới lane: cách cũ bằng danh sách Point2D, mảng phẳng, và chỉ phần trong khung nhìn đã phóng to
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneProjectionBenchmark {
+    // Junctions per grid side: 10 -> 360 lanes, 32 -> 3968 lanes, 100 -> 39600 lanes
+    // Số nút giao mỗi cạnh lưới: 10 -> 360 lane, 32 -> 3968 lane, 100 -> 39600 lane
+    @Param({"10", "32", "100"})
+    public int gridSide;
+
+    // Zoom factor of the culled view (1 = whole network visible)
+    // Hệ số phóng to của khung nhìn (1 = thấy toàn bộ mạng lưới)
+    @Param({"8"})
+    public double zoom;
+
+    private final double[] xs = new double[256];
+    private final double[] ys = new double[256];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticFixture.startBackend(0, gridSide);
+        MapUtil.zoomToFit();
+    }
+
+    /**
+     * Viewport zoomed into the centre of the network, set once per trial so it is not part of the score
+     * Khung nhìn phóng to vào giữa mạng lưới, đặt một lần mỗi lượt chạy để không tính vào kết quả
+     */
+    @State(Scope.Thread)
+    public static class ZoomedView {
+        @Setup(Level.Trial)
+        public void setup(LaneProjectionBenchmark fixture) {
+            MapUtil.zoomToFit();
+            MapUtil.zoomAt(fixture.zoom, SyntheticFixture.CANVAS_WIDTH / 2, SyntheticFixture.CANVAS_HEIGHT / 2);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public Object polylinesScreen() {
+        return MapUtil.getLanePolylinesScreen();
+    }
+
+    @Benchmark
+    public void projectAllLanes(Blackhole bh) {
+        for (int lane = 0; lane < MapUtil.getLaneCount(); lane++) {
+            bh.consume(MapUtil.projectLane(lane, xs, ys));
+        }
+    }
+
+    @Benchmark
+    public void projectVisibleLanes(ZoomedView view, Blackhole bh) {
+        MapUtil.forEachVisibleLane(0, lane -> bh.consume(MapUtil.projectLane(lane, xs, ys)));
+    }
+}
@@ -0,0 +1,65 @@
+package novik.bench;
+
+import javafx.geometry.Point2D;
+import novik.sim.SimulationSnapshot;
+import novik.util.MapUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * World-to-screen projection of every vehicle position: allocating, per axis and bulk
+ * Chiếu tọa độ thế giới sang màn hình cho mọi vị trí xe: có cấp phát, theo từng trục và hàng loạt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int vehicles;
+
+    private double[] worldX;
+    private double[] worldY;
+    private double[] screenX;
+    private double[] screenY;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SimulationSnapshot snapshot = SyntheticFixture.snapshot(SyntheticFixture.startBackend(vehicles));
+        int n = snapshot.getVehicleCount();
+        worldX = new double[n];
+        worldY = new double[n];
+        screenX = new double[n];
+        screenY = new double[n];
+        for (int i = 0; i < n; i++) {
+            worldX[i] = snapshot.getX(i);
+            worldY[i] = snapshot.getY(i);
+        }
+    }
+
+    @Benchmark
+    public void point2D(Blackhole bh) {
+        for (int i = 0; i < worldX.length; i++) {
+            bh.consume(MapUtil.worldToScreen(new Point2D(worldX[i], worldY[i])));
+        }
+    }
+
+    @Benchmark
+    public double[] perAxis() {
+        for (int i = 0; i < worldX.length; i++) {
+            screenX[i] = MapUtil.worldToScreenX(worldX[i]);
+            screenY[i] = MapUtil.worldToScreenY(worldY[i]);
+        }
+        return screenX;
+    }
+
+    @Benchmark
+    public double[] bulk() {
+        MapUtil.worldToScreen(worldX, worldY, 0, worldX.length, screenX, screenY, 0);
+        return screenX;
+    }
+}
@@ -0,0 +1,112 @@
+package novik.bench;
+
+import novik.sim.VehicleStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of vehicle reconciliation: diffing the full ID list against departed/arrived events
+ * Một bước đối chiếu xe: so sánh toàn bộ danh sách ID với xử lý sự kiện xuất phát/đến nơi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReconcileBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int vehicles;
+
+    // Share of the population that arrives (and is replaced) per step
+    // Tỉ lệ số xe đến nơi (và được thay thế) mỗi bước
+    @Param({"0.01"})
+    public double churn;
+
+    // Vehicles in the simulation, oldest first
+    // Các xe trong mô phỏng, xe cũ nhất trước
+    private final ArrayDeque<String> live = new ArrayDeque<>();
+    private final List<String> departed = new ArrayList<>();
+    private final List<String> arrived = new ArrayList<>();
+    private int nextId = 0;
+    private int perStep;
+
+    // Old approach: a map of known vehicles diffed against the full ID list
+    // Cách cũ: map các xe đã biết được so sánh với toàn bộ danh sách ID
+    private final Map<String, Object> known = new HashMap<>();
+    // New approach: dense store updated from events
+    // Cách mới: kho xe liên tục được cập nhật từ sự kiện
+    private final VehicleStore store = new VehicleStore();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        perStep = Math.max(1, (int) (vehicles * churn));
+        for (int i = 0; i < vehicles; i++) {
+            String id = "veh" + nextId++;
+            live.add(id);
+            known.put(id, id);
+            store.add(id, "car");
+        }
+    }
+
+    /**
+     * Advance the fake simulation by one step and record the events
+     * Tiến mô phỏng giả thêm một bước và ghi lại các sự kiện
+     */
+    private void simulateStep() {
+        departed.clear();
+        arrived.clear();
+        for (int i = 0; i < perStep; i++) {
+            arrived.add(live.poll());
+            String id = "veh" + nextId++;
+            departed.add(id);
+            live.add(id);
+        }
+    }
+
+    @Benchmark
+    public int fullIdDiff() {
+        simulateStep();
+        // getIDList returns a fresh list every call
+        // getIDList trả về danh sách mới mỗi lần gọi
+        List<String> ids = new ArrayList<>(live);
+        Set<String> active = new HashSet<>(ids);
+        Set<String> added = new HashSet<>();
+        for (String id : ids) {
+            if (!known.containsKey(id)) {
+                added.add(id);
+            }
+        }
+        Iterator<String> it = known.keySet().iterator();
+        while (it.hasNext()) {
+            if (!active.contains(it.next())) {
+                it.remove();
+            }
+        }
+        for (String id : added) {
+            known.put(id, id);
+        }
+        return known.size();
+    }
+
+    @Benchmark
+    public int eventDriven() {
+        simulateStep();
+        for (String id : arrived) {
+            store.remove(id);
+        }
+        for (String id : departed) {
+            store.add(id, "car");
+        }
+        return store.size();
+    }
+}
@@ -0,0 +1,53 @@
+package novik.bench;
+
+import novik.backend.SyntheticBackend;
+import novik.sim.SimulationSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the immutable snapshot handed to the renderer
+ * Tạo snapshot bất biến được chuyển cho renderer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int vehicles;
+
+    private SyntheticBackend backend;
+    private final SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+    private long sequence = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        backend = SyntheticFixture.startBackend(vehicles);
+    }
+
+    /**
+     * Read all vehicle states from the store into the builder and freeze it
+     * Đọc trạng thái tất cả xe từ kho vào builder và đóng băng nó
+     */
+    @Benchmark
+    public SimulationSnapshot collectAndBuild() {
+        builder.clear();
+        backend.collectVehicleState(builder);
+        return builder.build(++sequence, backend.getTime());
+    }
+
+    /**
+     * One full simulation step with lifecycle bookkeeping, as the simulation thread does for unrendered steps
+     * Một bước mô phỏng đầy đủ kèm theo dõi xe vào/ra, như luồng mô phỏng làm với các bước không được vẽ
+     */
+    @Benchmark
+    public int stepAndLifecycle() {
+        backend.step();
+        backend.updateVehicleLifecycle();
+        return backend.getVehicleStore().size();
+    }
+}
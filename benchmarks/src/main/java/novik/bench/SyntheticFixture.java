@@ -0,0 +1,53 @@
+package novik.bench;
+
+import novik.backend.SyntheticBackend;
+import novik.sim.SimulationSnapshot;
+import novik.util.MapUtil;
+
+/**
+ * Shared setup: a synthetic network fitted to an 800x500 canvas and a snapshot of its vehicles
+ * Thiết lập dùng chung: mạng lưới tự sinh vừa canvas 800x500 và một snapshot các xe của nó
+ */
+final class SyntheticFixture {
+    static final double CANVAS_WIDTH = 800;
+    static final double CANVAS_HEIGHT = 500;
+    static final double MARGIN = 30;
+    // Steps to run before taking the snapshot so vehicles are spread over their lanes
+    // Số bước chạy trước khi lấy snapshot để xe trải đều trên lane
+    private static final int WARMUP_STEPS = 10;
+
+    private SyntheticFixture() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Start a synthetic backend, fit the map to it and run a few steps
+     * Khởi động backend tự sinh, đặt bản đồ vừa với nó và chạy vài bước
+     */
+    static SyntheticBackend startBackend(int vehicles) {
+        SyntheticBackend backend = new SyntheticBackend(vehicles);
+        return start(backend);
+    }
+
+    static SyntheticBackend startBackend(int vehicles, int gridSide) {
+        SyntheticBackend backend = new SyntheticBackend(vehicles, gridSide, SyntheticBackend.DEFAULT_SEED,
+                1.0, SyntheticBackend.DEFAULT_END_TIME);
+        return start(backend);
+    }
+
+    private static SyntheticBackend start(SyntheticBackend backend) {
+        backend.start();
+        MapUtil.computeBounds(backend, CANVAS_WIDTH, CANVAS_HEIGHT, MARGIN);
+        for (int i = 0; i < WARMUP_STEPS; i++) {
+            backend.step();
+            backend.updateVehicleLifecycle();
+        }
+        return backend;
+    }
+
+    static SimulationSnapshot snapshot(SyntheticBackend backend) {
+        SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+        backend.collectVehicleState(builder);
+        return builder.build(1, backend.getTime());
+    }
+}
@@ -1,14 +1,94 @@
 package novik;
 
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
 import novik.layer.CarLayer;
 import novik.layer.TrafficLightLayer;
 import novik.layer.LaneLayer;
+import novik.metrics.Counter;
+import novik.metrics.LatencyHistogram;
+import novik.metrics.MetricsRegistry;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Side panel with live performance metrics (step latency, TraCI calls, render times, GC)
+ * Panel bên hiển thị metric hiệu năng trực tiếp (độ trễ bước, số lần gọi TraCI, thời gian vẽ, GC)
+ *
+ * Rates and percentiles cover the time since the previous refresh; the text is refreshed a few times
+ * per second, not every frame. Hidden while the registry is disabled.
+ * Tốc độ và phân vị tính trên khoảng thời gian từ lần làm mới trước; nội dung được làm mới vài lần
+ * mỗi giây, không phải mỗi khung hình. Bị ẩn khi registry bị tắt.
+ */
 public class InfoPanel {
-    // Đã bỏ toàn bộ chức năng panel đèn giao thông, giữ lại class rỗng để tránh lỗi tham chiếu nếu còn gọi tới
-    public InfoPanel() {}
+    private static final long REFRESH_INTERVAL_NANOS = 500_000_000L;
+
+    private final VBox box;
+    private final Label label;
+    private final MetricsRegistry registry;
+    private long lastRefresh = 0;
+    private final StringBuilder text = new StringBuilder();
+
+    // Values at the previous refresh, to show per-interval rates and percentiles
+    // Giá trị ở lần làm mới trước, để hiển thị tốc độ và phân vị theo từng khoảng
+    private final Map<Counter, Long> lastCounts = new HashMap<>();
+    private final Map<LatencyHistogram, LatencyHistogram.Snapshot> lastSnapshots = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param box Container of the panel (shown only while metrics are enabled)
+     * @param label Label that receives the metrics text
+     * @param registry Metrics to show
+     */
+    public InfoPanel(VBox box, Label label, MetricsRegistry registry) {
+        this.box = box;
+        this.label = label;
+        this.registry = registry;
+        if (box != null) {
+            box.setManaged(registry.isEnabled());
+            box.setVisible(registry.isEnabled());
+        }
+    }
+
     public void updatePanel(CarLayer carLayer, TrafficLightLayer trafficLightLayer, LaneLayer laneLayer) {
-        // Không làm gì cả
+        if (label == null || !registry.isEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (lastRefresh != 0 && now - lastRefresh < REFRESH_INTERVAL_NANOS) {
+            return;
+        }
+        double interval = lastRefresh != 0 ? (now - lastRefresh) / 1e9 : 0;
+        lastRefresh = now;
+
+        text.setLength(0);
+        text.append(String.format(Locale.ROOT, "vehicles  %d (%s)%nlights    %d%n",
+                carLayer.getCarCount(), carLayer.getTier().name().toLowerCase(Locale.ROOT),
+                trafficLightLayer.getTrafficLightCount()));
+        for (Counter counter : registry.getCounters()) {
+            long count = counter.get();
+            Long last = lastCounts.put(counter, count);
+            double rate = interval > 0 && last != null ? (count - last) / interval : 0;
+            text.append(String.format(Locale.ROOT, "%s  %.0f/s%n", counter.getName(), rate));
+        }
+        for (LatencyHistogram histogram : registry.getHistograms()) {
+            LatencyHistogram.Snapshot current = histogram.snapshot();
+            LatencyHistogram.Snapshot recent = current.since(lastSnapshots.put(histogram, current));
+            if (recent.getCount() == 0) {
+                continue;
+            }
+            // p50 / p99 / max in milliseconds
+            // p50 / p99 / max tính bằng mili giây
+            text.append(String.format(Locale.ROOT, "%s  %.2f / %.2f / %.2f ms%n", histogram.getName(),
+                    recent.getPercentileNanos(0.50) / 1e6, recent.getPercentileNanos(0.99) / 1e6,
+                    recent.getMaxNanos() / 1e6));
+        }
+        for (Map.Entry<String, DoubleSupplier> gauge : registry.getGauges().entrySet()) {
+            text.append(String.format(Locale.ROOT, "%s  %.1f%n", gauge.getKey(), gauge.getValue().getAsDouble()));
+        }
+        label.setText(text.toString().stripTrailing());
     }
 }
-
@@ -21,17 +21,46 @@ import javafx.scene.layout.VBox;
 // Import Label for displaying text
 // Import Label để hiển thị văn bản
 import javafx.scene.control.Label;
+// Import ComboBox for the simulation speed selector
+// Import ComboBox để chọn tốc độ mô phỏng
+import javafx.scene.control.ComboBox;
+// Import Slider for the replay timeline
+// Import Slider cho thanh thời gian khi phát lại
+import javafx.scene.control.Slider;
+// Import Rectangle to clip the zoomed map to its area
+// Import Rectangle để cắt bản đồ đã phóng to trong vùng của nó
+import javafx.scene.shape.Rectangle;
 
 // Import file and path utilities for file existence checks
 // Import các tiện ích file và đường dẫn để kiểm tra file tồn tại
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
 
 // Import new layer classes (not deprecated)
 // Import các class layer mới (không bị deprecated)
+import novik.backend.ReplayBackend;
+import novik.backend.SimulationBackend;
+import novik.backend.SyntheticBackend;
+import novik.backend.TraciBackend;
 import novik.layer.CarLayer;
 import novik.layer.LaneLayer;
 import novik.layer.TrafficLightLayer;
+import novik.metrics.LatencyHistogram;
+import novik.metrics.MetricsDumper;
+import novik.metrics.MetricsRegistry;
+import novik.net.NetFileParser;
+import novik.net.NetworkCache;
+import novik.net.NetworkGeometry;
+import novik.record.SimulationRecorder;
+import novik.render.LevelOfDetail;
+import novik.sim.LaneMetric;
+import novik.sim.SimulationSnapshot;
+import novik.sim.SimulationThread;
+import novik.sim.SnapshotBuffer;
+import novik.sim.VehicleStateCollector;
+import novik.stats.TrafficStatistics;
 import novik.util.MapUtil;
 
 public class MainController {
@@ -53,6 +82,18 @@ public class MainController {
 
     // ---------- FXML for buttons----------
     @FXML private javafx.scene.control.Button addVehicleBtn;
+    @FXML private ComboBox<String> speedChoice;
+    @FXML private VBox timelineBox;
+    @FXML private Label timelineLabel;
+    @FXML private Slider timelineSlider;
+
+    // ---------- FXML for the metrics panel----------
+    @FXML private VBox metricsBox;
+    @FXML private Label metricsLabel;
+
+    // ---------- FXML for the traffic statistics panel----------
+    @FXML private VBox statsBox;
+    @FXML private Label statsLabel;
 
 
     // ---------- Rendering / transform ----------
@@ -60,15 +101,52 @@ public class MainController {
     // Dùng cho tất cả thao tác vẽ
     private final double MARGIN = 30;            // screen margin in px
     // Lề màn hình (pixel)
+    private static final double ZOOM_STEP = 1.15; // zoom factor per mouse wheel notch
+    // Hệ số phóng to mỗi nấc cuộn chuột
+    private double dragX, dragY; // last mouse position while panning
+    // Vị trí chuột gần nhất khi kéo bản đồ
+
+    // Speed options shown in the selector (simulated seconds per wall-clock second)
+    // Các tốc độ hiển thị trong bộ chọn (số giây mô phỏng trên mỗi giây thực)
+    private static final String[] SPEED_LABELS = {"Real-time (1×)", "10×", "60×", "300×", "Max"};
+    private static final double[] SPEED_VALUES = {
+            SimulationThread.REAL_TIME, 10, SimulationThread.DEFAULT_SPEED, 300, SimulationThread.MAX_SPEED
+    };
+
+    // Render loop timings: whole frame, time between pulses and each layer's update
+    // Thời gian của vòng lặp vẽ: cả khung hình, khoảng cách giữa các pulse và update của từng layer
+    private static final LatencyHistogram FRAME_TIME = MetricsRegistry.global().histogram("render.frame");
+    private static final LatencyHistogram PULSE_INTERVAL = MetricsRegistry.global().histogram("render.pulseInterval");
+    private static final LatencyHistogram LANES_TIME = MetricsRegistry.global().histogram("render.lanes");
+    private static final LatencyHistogram CARS_TIME = MetricsRegistry.global().histogram("render.cars");
+    private static final LatencyHistogram LIGHTS_TIME = MetricsRegistry.global().histogram("render.lights");
 
     // ---------- Simulation state ----------
-    private AnimationTimer timer; // Main simulation loop
-    // Vòng lặp mô phỏng chính
-    private boolean running = false; // Simulation running state
-    // Trạng thái chạy mô phỏng
+    private AnimationTimer timer; // Render loop (FX thread)
+    // Vòng lặp vẽ (luồng FX)
+    private SimulationBackend backend; // SUMO, or a synthetic network with -Dnovik.backend=synthetic
+    // SUMO, hoặc mạng lưới tự sinh với -Dnovik.backend=synthetic
+    private SimulationThread simulationThread; // Steps the backend on its own thread
+    // Chạy các bước backend trên luồng riêng
+    private SimulationRecorder recorder; // Records every step with -Dnovik.record=<file>
+    // Ghi lại mọi bước với -Dnovik.record=<file>
+    private MetricsDumper metricsDumper; // Writes metrics to a file with -Dnovik.metrics.file=<file>
+    // Ghi metric ra file với -Dnovik.metrics.file=<file>
+    private long lastPulse = 0; // Time of the previous render pulse
+    // Thời điểm của pulse vẽ trước đó
+    private NetworkGeometry network; // Geometry parsed from the net file (SUMO backend only)
+    // Hình học đọc từ file net (chỉ với backend SUMO)
+    private final SnapshotBuffer snapshots = new SnapshotBuffer(); // Latest state for the renderer
+    // Trạng thái mới nhất cho renderer
+    private final AtomicReference<Double> pendingSeek = new AtomicReference<>(); // Latest requested replay time
+    // Thời điểm tua được yêu cầu gần nhất
+    private boolean updatingTimeline = false; // Slider moved by the render loop, not by the user
+    // Thanh trượt được vòng lặp vẽ di chuyển, không phải người dùng
     private CarLayer carLayerInstance;
     private TrafficLightLayer trafficLightLayerInstance;
     private InfoPanel infoPanelInstance;
+    private StatisticsPanel statisticsPanelInstance;
+    private TrafficStatistics statistics; // Traffic statistics, null with -Dnovik.stats=false
     private LaneLayer laneLayerInstance;
 
     // SUMO config location
@@ -83,40 +161,101 @@ public class MainController {
     // Called by MainApp.java to start the simulation
     // Được gọi từ MainApp.java để khởi động mô phỏng
     public void startup() {
-        // Sanity check: files exist
-        // Kiểm tra file cấu hình và mạng có tồn tại không
-        if (!Files.exists(sumoCfgPath)) {
-            throw new IllegalStateException("SUMO config not found: " + sumoCfgPath.toAbsolutePath());
-        }
-        if (!Files.exists(sumoNetPath)) {
-            throw new IllegalStateException("SUMO net file not found: " + sumoNetPath.toAbsolutePath());
-        }
+        // Collect metrics unless -Dnovik.metrics=false is given
+        // Thu thập metric trừ khi có -Dnovik.metrics=false
+        setupMetrics();
 
-        // Start SUMO simulation process
-        // Khởi động tiến trình mô phỏng SUMO
-        SumoBridge.startSUMO(sumoCfgPath);
+        // Start the simulation backend (SUMO process unless the synthetic backend is selected)
+        // Khởi động backend mô phỏng (tiến trình SUMO trừ khi chọn backend tự sinh)
+        backend = createBackend();
+        backend.start();
 
         // Load network geometry and initialize managers
         // Load hình học mạng lưới và khởi tạo các manager
-        MapUtil.computeBounds(canvas.getWidth(), canvas.getHeight(), MARGIN);
+        if (network != null) {
+            MapUtil.computeBounds(network, canvas.getWidth(), canvas.getHeight(), MARGIN);
+        } else {
+            MapUtil.computeBounds(backend, canvas.getWidth(), canvas.getHeight(), MARGIN);
+        }
         g = canvas.getGraphicsContext2D();
-        carLayerInstance = new CarLayer(carLayer);
-        laneLayerInstance = new LaneLayer(laneLayer);
-        trafficLightLayerInstance = new TrafficLightLayer(trafficLightLayer);
-        infoPanelInstance = new InfoPanel();
+        // Vehicles are drawn as nodes unless -Dnovik.vehicleRenderer=canvas is given
+        // Xe được vẽ bằng node trừ khi có -Dnovik.vehicleRenderer=canvas
+        CarLayer.RenderMode renderMode = "canvas".equalsIgnoreCase(System.getProperty("novik.vehicleRenderer"))
+                ? CarLayer.RenderMode.CANVAS
+                : CarLayer.RenderMode.NODE;
+        carLayerInstance = new CarLayer(carLayer, snapshots, renderMode, backend);
+        // Sprites, shapes or a density raster depending on the zoom and the visible vehicles, unless -Dnovik.lod=false is given
+        // Hình xe, hình khối hoặc lưới mật độ tùy theo mức zoom và số xe đang thấy, trừ khi có -Dnovik.lod=false
+        if (!"false".equalsIgnoreCase(System.getProperty("novik.lod"))) {
+            carLayerInstance.setLevelOfDetail(new LevelOfDetail(
+                    Double.parseDouble(System.getProperty("novik.lod.spriteCoverage",
+                            String.valueOf(LevelOfDetail.DEFAULT_SPRITE_COVERAGE))),
+                    Double.parseDouble(System.getProperty("novik.lod.densityScale",
+                            String.valueOf(LevelOfDetail.DEFAULT_DENSITY_SCALE))),
+                    Integer.parseInt(System.getProperty("novik.lod.cellSize",
+                            String.valueOf(LevelOfDetail.DEFAULT_CELL_SIZE)))));
+        }
+        laneLayerInstance = new LaneLayer(laneLayer, snapshots);
+        trafficLightLayerInstance = new TrafficLightLayer(trafficLightLayer, snapshots, backend);
+        infoPanelInstance = new InfoPanel(metricsBox, metricsLabel, MetricsRegistry.global());
 
-        // Rebuild layers to display lanes and traffic lights
-        // Rebuild các layer để hiển thị làn đường và đèn giao thông
+        // Rebuild layers to display lanes and traffic lights (before the simulation thread owns the backend)
+        // Rebuild các layer để hiển thị làn đường và đèn giao thông (trước khi luồng mô phỏng dùng backend)
         laneLayerInstance.rebuild();
         trafficLightLayerInstance.rebuild();
+        simulationThread = new SimulationThread(snapshots, backend);
+        // Lanes are coloured by relative mean speed, or by occupancy with -Dnovik.laneColor=occupancy (off = plain)
+        // Lane được tô theo tốc độ trung bình tương đối, hoặc theo độ chiếm dụng với -Dnovik.laneColor=occupancy (off = màu thường)
+        String laneColor = System.getProperty("novik.laneColor", "speed");
+        if (!"off".equalsIgnoreCase(laneColor)) {
+            simulationThread.setLaneMetric(LaneMetric.valueOf(laneColor.toUpperCase(Locale.ROOT)));
+        }
+        // Throughput, travel time and queue statistics unless -Dnovik.stats=false is given
+        // Thống kê thông lượng, thời gian di chuyển và hàng đợi trừ khi có -Dnovik.stats=false
+        if (!"false".equalsIgnoreCase(System.getProperty("novik.stats"))) {
+            double[] laneLengths = new double[MapUtil.getLaneCount()];
+            for (int lane = 0; lane < laneLengths.length; lane++) {
+                laneLengths[lane] = MapUtil.getLaneLength(lane);
+            }
+            statistics = new TrafficStatistics(backend.getLaneIds(), laneLengths);
+            simulationThread.setStatistics(statistics);
+        }
+        statisticsPanelInstance = new StatisticsPanel(statsBox, statsLabel, statistics);
+        // Vehicles glide between steps unless -Dnovik.interpolate=false is given
+        // Xe di chuyển mượt giữa các bước trừ khi có -Dnovik.interpolate=false
+        if (!"false".equalsIgnoreCase(System.getProperty("novik.interpolate"))) {
+            carLayerInstance.setInterpolation(simulationThread::getSnapshotIntervalNanos);
+        }
+
+        // Record every step to a file if -Dnovik.record is given (replay it with -Dnovik.replay)
+        // Ghi mọi bước ra file nếu có -Dnovik.record (phát lại bằng -Dnovik.replay)
+        String recordFile = System.getProperty("novik.record");
+        if (recordFile != null && !recordFile.isBlank()) {
+            recorder = new SimulationRecorder(Path.of(recordFile));
+            recorder.writeHeader(backend);
+            simulationThread.setRecorder(recorder);
+        }
 
-        // Start the animation/simulation loop
-        // Bắt đầu vòng lặp mô phỏng/animation
+        // Start the simulation thread and the render loop
+        // Bắt đầu luồng mô phỏng và vòng lặp vẽ
+        simulationThread.start();
         startLoop();
         
         // Setup button handler for adding vehicles
         // Thiết lập xử lý sự kiện cho button thêm xe
         setupAddVehicleButton();
+
+        // Setup mouse pan/zoom on the map
+        // Thiết lập kéo/phóng to bản đồ bằng chuột
+        setupViewport();
+
+        // Setup the simulation speed selector
+        // Thiết lập bộ chọn tốc độ mô phỏng
+        setupSpeedChoice();
+
+        // Setup the timeline slider when replaying a recording
+        // Thiết lập thanh thời gian khi phát lại file ghi
+        setupTimeline();
     }
 
     // Called by MainApp.java to stop the simulation and cleanup
@@ -124,53 +263,255 @@ public class MainController {
     public void shutdown() {
         if (timer != null) timer.stop(); // Stop the animation loop
         // Dừng vòng lặp animation
-        if (SumoBridge.isServerActive) SumoBridge.stopSUMO(); // Stop SUMO process if running
+        if (simulationThread != null) simulationThread.stop(); // Wait for the current step to finish
+        // Chờ bước hiện tại kết thúc
+        if (recorder != null) recorder.close(); // Write the end marker of the recording
+        // Ghi dấu kết thúc của file ghi
+        if (metricsDumper != null) metricsDumper.close(); // Write the last metrics rows
+        // Ghi các dòng metric cuối cùng
+        if (backend != null) backend.close(); // Stop SUMO process if running
         // Dừng tiến trình SUMO nếu còn chạy
     }
 
+    /**
+     * Enable the metrics registry and, with -Dnovik.metrics.file, dump it every -Dnovik.metrics.interval seconds
+     * Bật registry metric và, với -Dnovik.metrics.file, dump nó mỗi -Dnovik.metrics.interval giây
+     */
+    private void setupMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.setEnabled(!"false".equalsIgnoreCase(System.getProperty("novik.metrics")));
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        metrics.registerJvmGauges();
+        metrics.gauge("sim.vehicles", () -> {
+            SimulationSnapshot snapshot = snapshots.latest();
+            return snapshot != null ? snapshot.getVehicleCount() : 0;
+        });
+        String metricsFile = System.getProperty("novik.metrics.file");
+        if (metricsFile != null && !metricsFile.isBlank()) {
+            double interval = Double.parseDouble(System.getProperty("novik.metrics.interval", "5"));
+            metricsDumper = new MetricsDumper(metrics, Path.of(metricsFile), interval);
+        }
+    }
+
+    /**
+     * Create the backend selected with -Dnovik.backend (sumo by default)
+     * Tạo backend được chọn bằng -Dnovik.backend (mặc định là sumo)
+     */
+    private SimulationBackend createBackend() {
+        String replayFile = System.getProperty("novik.replay");
+        if (replayFile != null && !replayFile.isBlank()) {
+            // Play back a recording made with -Dnovik.record; no SUMO process is started
+            // Phát lại file ghi tạo bằng -Dnovik.record; không khởi động tiến trình SUMO
+            return new ReplayBackend(Path.of(replayFile));
+        }
+        if ("synthetic".equalsIgnoreCase(System.getProperty("novik.backend"))) {
+            // Load testing without SUMO; vehicle count from -Dnovik.syntheticVehicles
+            // Thử tải không cần SUMO; số xe lấy từ -Dnovik.syntheticVehicles
+            return new SyntheticBackend(Integer.getInteger("novik.syntheticVehicles", 1000));
+        }
+
+        // Sanity check: files exist
+        // Kiểm tra file cấu hình và mạng có tồn tại không
+        if (!Files.exists(sumoCfgPath)) {
+            throw new IllegalStateException("SUMO config not found: " + sumoCfgPath.toAbsolutePath());
+        }
+        if (!Files.exists(sumoNetPath)) {
+            throw new IllegalStateException("SUMO net file not found: " + sumoNetPath.toAbsolutePath());
+        }
+
+        // Old per-call vehicle updates can be selected with -Dnovik.carUpdateMode=polling
+        // Có thể chọn cách cập nhật xe cũ bằng -Dnovik.carUpdateMode=polling
+        VehicleStateCollector vehicleCollector = new VehicleStateCollector();
+        if ("polling".equalsIgnoreCase(System.getProperty("novik.carUpdateMode"))) {
+            vehicleCollector.setMode(VehicleStateCollector.Mode.POLLING);
+        }
+        TraciBackend traciBackend = new TraciBackend(sumoCfgPath, vehicleCollector);
+        // Read lane, junction and traffic light geometry from the net file in one pass instead of per-lane TraCI calls,
+        // through a binary cache next to the net file unless -Dnovik.netCache=false
+        // Đọc hình học lane, nút giao và đèn từ file net trong một lượt thay vì gọi TraCI cho từng lane,
+        // qua cache nhị phân cạnh file net trừ khi có -Dnovik.netCache=false
+        network = "false".equalsIgnoreCase(System.getProperty("novik.netCache"))
+                ? NetFileParser.parse(sumoNetPath)
+                : NetworkCache.load(sumoNetPath);
+        traciBackend.setNetwork(network);
+        return traciBackend;
+    }
+
     @FXML
     private void pause(){
-        // Pause simulation (set running to false)
-        // Tạm dừng mô phỏng (gán running = false)
-        if (running) {
-            running = false;
+        // Pause simulation (the simulation thread stops stepping)
+        // Tạm dừng mô phỏng (luồng mô phỏng ngừng chạy bước)
+        if (simulationThread != null) {
+            simulationThread.setPaused(true);
         }
     }
 
     @FXML
     private void resume(){
-        // Resume simulation (set running to true)
-        // Tiếp tục mô phỏng (gán running = true)
-        if(!running){
-            running = true;
+        // Resume simulation (the simulation thread continues stepping)
+        // Tiếp tục mô phỏng (luồng mô phỏng tiếp tục chạy bước)
+        if (simulationThread != null) {
+            simulationThread.setPaused(false);
+        }
+    }
+
+    @FXML
+    private void zoomToFit(){
+        // Show the whole network again
+        // Hiển thị lại toàn bộ mạng lưới
+        MapUtil.zoomToFit();
+    }
+
+    /**
+     * Pan with mouse drag and zoom with the mouse wheel around the cursor
+     * Kéo chuột để di chuyển và cuộn chuột để phóng to quanh con trỏ
+     */
+    private void setupViewport() {
+        Pane mapArea = (Pane) canvas.getParent();
+
+        // Clip so zoomed-in content does not draw over the side panel
+        // Cắt để nội dung phóng to không vẽ đè lên panel bên
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(mapArea.widthProperty());
+        clip.heightProperty().bind(mapArea.heightProperty());
+        mapArea.setClip(clip);
+
+        mapArea.setOnScroll(event -> {
+            if (event.getDeltaY() == 0) {
+                return;
+            }
+            double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1.0 / ZOOM_STEP;
+            MapUtil.zoomAt(factor, event.getX(), event.getY());
+            event.consume();
+        });
+        mapArea.setOnMousePressed(event -> {
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+        mapArea.setOnMouseDragged(event -> {
+            MapUtil.panBy(event.getX() - dragX, event.getY() - dragY);
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+    }
+
+    /**
+     * Fill the speed selector and apply the chosen speed to the simulation thread
+     * Nạp bộ chọn tốc độ và áp dụng tốc độ đã chọn cho luồng mô phỏng
+     */
+    private void setupSpeedChoice() {
+        if (speedChoice == null) {
+            return;
+        }
+        speedChoice.getItems().setAll(SPEED_LABELS);
+        speedChoice.getSelectionModel().selectedIndexProperty().addListener((obs, oldIndex, newIndex) -> {
+            int index = newIndex.intValue();
+            if (index >= 0) {
+                simulationThread.setSpeed(SPEED_VALUES[index]);
+            }
+        });
+        // Start at the default speed
+        // Bắt đầu với tốc độ mặc định
+        for (int i = 0; i < SPEED_VALUES.length; i++) {
+            if (SPEED_VALUES[i] == simulationThread.getSpeed()) {
+                speedChoice.getSelectionModel().select(i);
+            }
         }
     }
 
-    // Start the main simulation loop using AnimationTimer
-    // Khởi động vòng lặp mô phỏng chính bằng AnimationTimer
+    /**
+     * Show a timeline slider for recordings with a keyframe index; dragging it seeks the replay
+     * Hiển thị thanh thời gian cho file ghi có chỉ mục keyframe; kéo thanh sẽ tua bản ghi
+     */
+    private void setupTimeline() {
+        if (timelineSlider == null || !(backend instanceof ReplayBackend replay) || !replay.canSeek()) {
+            return;
+        }
+        // The index is read in start(), before the simulation thread owns the backend
+        // Chỉ mục được đọc trong start(), trước khi luồng mô phỏng dùng backend
+        timelineSlider.setMin(replay.getFirstTime());
+        timelineSlider.setMax(replay.getLastTime());
+        timelineSlider.setValue(replay.getFirstTime());
+        timelineBox.setManaged(true);
+        timelineBox.setVisible(true);
+        timelineSlider.valueProperty().addListener((obs, oldValue, newValue) -> {
+            if (!updatingTimeline) {
+                requestSeek(replay, newValue.doubleValue());
+            }
+        });
+    }
+
+    /**
+     * Seek on the simulation thread; requests made while one is queued only update its target
+     * Tua trên luồng mô phỏng; các yêu cầu khi đang có một lệnh chờ chỉ cập nhật đích của lệnh đó
+     */
+    private void requestSeek(ReplayBackend replay, double time) {
+        if (pendingSeek.getAndSet(time) == null) {
+            simulationThread.submitAndPublish(() -> {
+                replay.seek(pendingSeek.getAndSet(null));
+                // Trips seen before the jump would never end, so the statistics start over from the new time
+                // Các chuyến đã thấy trước khi nhảy sẽ không bao giờ kết thúc, nên thống kê bắt đầu lại từ thời điểm mới
+                if (statistics != null) {
+                    statistics.reset(replay.getVehicleStore());
+                }
+            });
+        }
+    }
+
+    /**
+     * Move the timeline slider to the time of the latest snapshot unless the user is dragging it
+     * Di chuyển thanh thời gian tới thời điểm của snapshot mới nhất trừ khi người dùng đang kéo
+     */
+    private void updateTimeline() {
+        SimulationSnapshot snapshot = snapshots.latest();
+        if (!timelineBox.isVisible() || snapshot == null) {
+            return;
+        }
+        timelineLabel.setText(String.format("%.0f s / %.0f s", snapshot.getTime(), timelineSlider.getMax()));
+        if (timelineSlider.isValueChanging() || pendingSeek.get() != null) {
+            return;
+        }
+        updatingTimeline = true;
+        timelineSlider.setValue(snapshot.getTime());
+        updatingTimeline = false;
+    }
+
+    // Start the render loop using AnimationTimer; it only reads the latest snapshot
+    // Khởi động vòng lặp vẽ bằng AnimationTimer; chỉ đọc snapshot mới nhất
     private void startLoop() {
         timer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                if(running) {
-                    // Step the SUMO simulation forward
-                    // Tiến mô phỏng SUMO thêm một bước
-                    SumoBridge.step();
-                    // Redraw the frame
-                    // Vẽ lại khung hình
-                    drawFrame();
-                    if (MapUtil.boundsReady) {
-                        // Update all cars, traffic lights, and info panel
-                        // Cập nhật tất cả xe, đèn giao thông, và panel thông tin
-                        carLayerInstance.update();
-                        trafficLightLayerInstance.update();
-                        infoPanelInstance.updatePanel(carLayerInstance, trafficLightLayerInstance, laneLayerInstance);
-                    }
+                long frameStart = FRAME_TIME.start();
+                if (lastPulse != 0) {
+                    PULSE_INTERVAL.record(now - lastPulse);
                 }
+                lastPulse = now;
+                // Redraw the frame
+                // Vẽ lại khung hình
+                drawFrame();
+                if (MapUtil.boundsReady) {
+                    // Update lanes (only redrawn if the view changed), cars, traffic lights, and info panel
+                    // Cập nhật làn đường (chỉ vẽ lại khi view thay đổi), xe, đèn giao thông, và panel thông tin
+                    long start = LANES_TIME.start();
+                    laneLayerInstance.update();
+                    LANES_TIME.stop(start);
+                    start = CARS_TIME.start();
+                    carLayerInstance.update();
+                    CARS_TIME.stop(start);
+                    start = LIGHTS_TIME.start();
+                    trafficLightLayerInstance.update();
+                    LIGHTS_TIME.stop(start);
+                    infoPanelInstance.updatePanel(carLayerInstance, trafficLightLayerInstance, laneLayerInstance);
+                    statisticsPanelInstance.updatePanel();
+                    updateTimeline();
+                }
+                FRAME_TIME.stop(frameStart);
             }
         };
         timer.start();
-        running = true;
     }
 
     // Draw the background and (optionally) other static elements
@@ -188,6 +529,12 @@ public class MainController {
      * Thiết lập xử lý sự kiện để thêm xe ngẫu nhiên
      */
     private void setupAddVehicleButton() {
+        // A recording plays back fixed states, so there is nothing to add vehicles to
+        // Bản ghi phát lại các trạng thái cố định, nên không có gì để thêm xe vào
+        if (addVehicleBtn != null && !backend.canAddVehicles()) {
+            addVehicleBtn.setDisable(true);
+            return;
+        }
         if (addVehicleBtn != null) {
             addVehicleBtn.setOnAction(event -> {
                 // Random vehicle types and routes
@@ -199,9 +546,9 @@ public class MainController {
                 String randomType = types[random.nextInt(types.length)];
                 String randomRoute = routes[random.nextInt(routes.length)];
                 
-                // Add vehicle to SUMO
-                // Thêm xe vào SUMO
-                carLayerInstance.addVehicle(randomType, randomRoute);
+                // Add vehicle to SUMO (on the simulation thread, which owns TraCI)
+                // Thêm xe vào SUMO (trên luồng mô phỏng, nơi sở hữu TraCI)
+                simulationThread.submit(() -> carLayerInstance.addVehicle(randomType, randomRoute));
                 
                 System.out.println("Added vehicle: type=" + randomType + ", route=" + randomRoute);
             });
@@ -0,0 +1,76 @@
+package novik;
+
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
+import novik.stats.TrafficStatistics;
+import novik.stats.TrafficSummary;
+
+import java.util.Locale;
+
+/**
+ * Side panel with live traffic statistics (throughput, travel time, longest lane queues, estimated edge flow)
+ * Panel bên hiển thị thống kê giao thông trực tiếp (thông lượng, thời gian di chuyển, lane có hàng đợi dài nhất,
+ * lưu lượng edge ước lượng)
+ *
+ * The statistics are computed on the simulation thread; this panel only formats the latest published
+ * {@link TrafficSummary} and skips the refresh while it has not changed. Hidden without statistics.
+ * Thống kê được tính trên luồng mô phỏng; panel này chỉ định dạng {@link TrafficSummary} được đăng
+ * gần nhất và bỏ qua việc làm mới khi nó chưa đổi. Bị ẩn khi không có thống kê.
+ */
+public class StatisticsPanel {
+    private final Label label;
+    private final TrafficStatistics statistics;
+    private TrafficSummary shown;
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructor
+     * @param box Container of the panel (shown only with statistics)
+     * @param label Label that receives the statistics text
+     * @param statistics Statistics to show, or null
+     */
+    public StatisticsPanel(VBox box, Label label, TrafficStatistics statistics) {
+        this.label = label;
+        this.statistics = statistics;
+        if (box != null) {
+            box.setManaged(statistics != null);
+            box.setVisible(statistics != null);
+        }
+    }
+
+    public void updatePanel() {
+        if (label == null || statistics == null) {
+            return;
+        }
+        TrafficSummary summary = statistics.getSummary();
+        if (summary == null || summary == shown) {
+            return;
+        }
+        shown = summary;
+
+        text.setLength(0);
+        text.append(String.format(Locale.ROOT, "time      %.0f s%nen route  %d%n",
+                summary.getTime(), summary.getVehiclesEnRoute()));
+        for (TrafficSummary.Window window : summary.getWindows()) {
+            text.append(String.format(Locale.ROOT, "%nlast %.0f min%s%n", window.getSeconds() / 60,
+                    window.getCoveredSeconds() < window.getSeconds() ? " (partial)" : ""));
+            text.append(String.format(Locale.ROOT, "arrivals  %.0f/h%ndeparts   %.0f/h%n",
+                    orZero(window.getArrivalsPerHour()), orZero(window.getDeparturesPerHour())));
+            text.append(Double.isNaN(window.getMeanTravelTime())
+                    ? String.format(Locale.ROOT, "travel    -%n")
+                    : String.format(Locale.ROOT, "travel    %.0f s%n", window.getMeanTravelTime()));
+            text.append(String.format(Locale.ROOT, "halting   %.1f%n", orZero(window.getMeanHalting())));
+            for (TrafficSummary.RankedValue edge : window.getTopEstimatedFlow()) {
+                text.append(String.format(Locale.ROOT, "  est. flow %s  %.0f/h%n", edge.getId(), edge.getValue()));
+            }
+            for (TrafficSummary.RankedValue lane : window.getTopQueue()) {
+                text.append(String.format(Locale.ROOT, "  queue %s  %.1f%n", lane.getId(), lane.getValue()));
+            }
+        }
+        label.setText(text.toString().stripTrailing());
+    }
+
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+}
@@ -6,41 +6,84 @@ import org.eclipse.sumo.libtraci.Simulation;
 // Import StringVector for passing arguments to SUMO
 // Import StringVector để truyền tham số cho SUMO
 import org.eclipse.sumo.libtraci.StringVector;
+// Import Vehicle to add vehicles at runtime
+// Import Vehicle để thêm xe trong lúc chạy
+import org.eclipse.sumo.libtraci.Vehicle;
+
+// Import the metrics registry to time simulation steps
+// Import registry metric để đo thời gian các bước mô phỏng
+import novik.metrics.LatencyHistogram;
+import novik.metrics.MetricsRegistry;
+// Import the JFR event emitted around each step
+// Import sự kiện JFR được phát quanh mỗi bước
+import novik.jfr.SumoStepEvent;
 
 // Import Path for file path handling
 // Import Path để xử lý đường dẫn file
 import java.nio.file.Path;
+// Import List for extra SUMO options
+// Import List cho các tùy chọn SUMO bổ sung
+import java.util.ArrayList;
+import java.util.List;
 
 public class SumoBridge {
     // Server status: true if SUMO is running
     // Trạng thái server: true nếu SUMO đang chạy
     public static boolean isServerActive=false;
 
+    // Round-trip time of one SUMO step (only measured while metrics are enabled)
+    // Thời gian khứ hồi của một bước SUMO (chỉ đo khi metric được bật)
+    private static final LatencyHistogram STEP_TIME = MetricsRegistry.global().histogram("traci.step");
+    // Steps run so far, reported in the JFR event
+    // Số bước đã chạy, được báo trong sự kiện JFR
+    private static long stepCount = 0;
+
     // Used to connect to SUMO server and start simulation
     // Dùng để kết nối tới server SUMO và khởi động mô phỏng
-    static void startSUMO(Path sumoCfgPath){
+    public static void startSUMO(Path sumoCfgPath){
+        startSUMO(sumoCfgPath, List.of());
+    }
+
+    // Start SUMO with extra command line options (e.g. "--scale=2" for a demand variant); later options win
+    // Khởi động SUMO với các tùy chọn dòng lệnh bổ sung (ví dụ "--scale=2" cho biến thể lưu lượng); tùy chọn sau được ưu tiên
+    public static void startSUMO(Path sumoCfgPath, List<String> extraArgs){
         Simulation.preloadLibraries();
-        StringVector args = new StringVector(new String[] {
+        List<String> command = new ArrayList<>(List.of(
                 "sumo",
                 "-c", sumoCfgPath.toAbsolutePath().toString(),
                 "--start",
                 "--no-step-log", "true",
                 "--time-to-teleport", "-1"
-        });
+        ));
+        command.addAll(extraArgs);
+        StringVector args = new StringVector(command.toArray(new String[0]));
         Simulation.start(args);
         isServerActive = true;
     }
 
     // Used to disconnect from SUMO server and stop simulation
     // Dùng để ngắt kết nối với server SUMO và dừng mô phỏng
-    static void stopSUMO(){
+    public static void stopSUMO(){
         Simulation.close();
         isServerActive = false;
     }
 
     // Used to advance the SUMO simulation by one step (update the next states)
     // Dùng để tiến mô phỏng SUMO thêm một bước (cập nhật trạng thái tiếp theo)
-    static void step(){
+    public static void step(){
+        SumoStepEvent event = new SumoStepEvent();
+        event.begin();
+        long start = STEP_TIME.start();
         Simulation.step();
+        STEP_TIME.stop(start);
+        event.step = stepCount++;
+        event.commit();
+    }
+
+    // Used to add a vehicle on a route (must run on the thread that steps SUMO)
+    // Dùng để thêm xe vào một tuyến đường (phải chạy trên luồng điều khiển SUMO)
+    public static void addVehicle(String vehicleId, String route, String type){
+        // Correct parameter order: vehicleId, routeId, typeId, depart, departLane, departPos, departSpeed
+        Vehicle.add(vehicleId, route, type, "now", "first", "base", "max");
     }
 }
@@ -6,6 +6,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.StrokeType;
 import org.eclipse.sumo.libtraci.Junction;
+import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.TraCIPosition;
 import org.eclipse.sumo.libtraci.TrafficLight;
 
@@ -31,6 +32,9 @@ public class TrafficLightLayer {
     private final Pane trafficLightLayer;
     // Map ánh xạ ID đèn -> Circle node để cập nhật màu nhanh / Map from traffic light ID -> Circle for quick updates
     private final Map<String, Circle> trafficLightCircles = new HashMap<>();
+    // Trạng thái đã tô và thời điểm đổi pha tiếp theo của từng đèn / Last painted state and next switch time per light
+    private final Map<String, String> lastStates = new HashMap<>();
+    private final Map<String, Double> nextSwitchTimes = new HashMap<>();
 
     /**
      * Khởi tạo lớp hiển thị đèn giao thông.
@@ -67,6 +71,8 @@ public class TrafficLightLayer {
         // Dọn dẹp trước khi xây lại / Clear before rebuilding
         trafficLightLayer.getChildren().clear();
         trafficLightCircles.clear();
+        lastStates.clear();
+        nextSwitchTimes.clear();
 
         // Lấy danh sách tất cả ID đèn giao thông từ SUMO / Get all traffic light IDs from SUMO
         List<String> trafficLightIds = TrafficLight.getIDList();
@@ -109,18 +115,33 @@ public class TrafficLightLayer {
      * Cập nhật màu cho tất cả đèn theo trạng thái từ SUMO.
      * Update fill color of all lights based on SUMO state string.
      *
-     * Nên gọi mỗi frame (AnimationTimer) để hiển thị trạng thái mới nhất.
-     * Should be called each frame (AnimationTimer) to reflect latest state.
+     * Nên gọi mỗi frame (AnimationTimer) để hiển thị trạng thái mới nhất. Đèn chưa tới thời điểm đổi pha
+     * (getNextSwitch) không được hỏi lại, và chỉ đèn có trạng thái thay đổi mới được tô lại.
+     * Should be called each frame (AnimationTimer) to reflect latest state. Lights that have not reached
+     * their next switch time (getNextSwitch) are not queried again, and only changed lights are recolored.
      */
     public void updateTrafficLightStates() {
+        double now = Simulation.getTime();
         for (Map.Entry<String, Circle> entry : trafficLightCircles.entrySet()) {
             final String trafficLightId = entry.getKey();
             final Circle circle = entry.getValue();
 
+            // Đèn đứng yên tới lần đổi pha tiếp theo -> bỏ qua / Light idle until its next switch -> skip
+            Double nextSwitch = nextSwitchTimes.get(trafficLightId);
+            if (nextSwitch != null && now < nextSwitch) {
+                continue;
+            }
+
             try {
                 // Chuỗi trạng thái ví dụ: "Gr", "ry", "rG", ... (mỗi ký tự là một tín hiệu cho hướng/nhóm)
                 // State string example: "Gr", "ry", "rG", ... (each char is a signal for a direction/group)
                 String state = TrafficLight.getRedYellowGreenState(trafficLightId);
+                nextSwitchTimes.put(trafficLightId, TrafficLight.getNextSwitch(trafficLightId));
+
+                // Trạng thái không đổi -> giữ màu / Unchanged state -> keep color
+                if (state != null && state.equals(lastStates.put(trafficLightId, state))) {
+                    continue;
+                }
 
                 // Trường hợp thiếu trạng thái / Missing or invalid state
                 if (state == null || state.isEmpty()) {
@@ -152,6 +173,9 @@ public class TrafficLightLayer {
                 // Lỗi khi lấy trạng thái: log và tô màu đen để nổi bật / Error fetching state: log and set black to highlight
                 System.err.printf("TrafficLightLayer: Không cập nhật trạng thái cho '%s': %s%n", trafficLightId, e.getMessage());
                 circle.setFill(Color.BLACK);
+                // Thử lại ở frame sau / Retry on the next frame
+                lastStates.remove(trafficLightId);
+                nextSwitchTimes.remove(trafficLightId);
             }
         }
     }
@@ -0,0 +1,598 @@
+package novik.backend;
+
+import novik.record.RecordingFormat;
+import novik.sim.LaneStateBuffer;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehicleStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backend that plays back a file written by {@link novik.record.SimulationRecorder} (no SUMO needed)
+ * Backend phát lại file do {@link novik.record.SimulationRecorder} ghi (không cần SUMO)
+ *
+ * The file is memory-mapped and decoded one step at a time; playback speed is set by the caller.
+ * {@link #seek(double)} jumps to the nearest keyframe through the index footer and decodes forward from there.
+ * File được ánh xạ vào bộ nhớ và giải mã từng bước; tốc độ phát do bên gọi quyết định.
+ * {@link #seek(double)} nhảy tới keyframe gần nhất nhờ chỉ mục ở footer rồi giải mã tiếp từ đó.
+ */
+public class ReplayBackend implements SimulationBackend {
+    private final Path file;
+    private MappedByteBuffer data;
+    private double deltaT;
+
+    // Network stored in the recording
+    // Mạng lưới được lưu trong file ghi
+    private final List<String> laneIds = new ArrayList<>();
+    private final Map<String, double[]> laneShapes = new HashMap<>();
+    private final List<String> tlsIds = new ArrayList<>();
+    private final Map<String, double[]> junctionPositions = new HashMap<>();
+    private final Map<String, String[]> signalLanes = new HashMap<>();
+
+    // Interned strings in order of appearance (the whole table when the footer is present)
+    // Các chuỗi đã intern theo thứ tự xuất hiện (toàn bộ bảng khi có footer)
+    private final List<String> strings = new ArrayList<>();
+    private boolean fullStringTable = false;
+
+    // Keyframe index from the footer; empty if the recording was not closed properly
+    // Chỉ mục keyframe từ footer; rỗng nếu file ghi không được đóng đúng cách
+    private double[] keyframeTimes = new double[0];
+    private long[] keyframeOffsets = new long[0];
+    private double firstTime = 0;
+    private double lastTime = 0;
+
+    // Decoded state of the current step; slotOfRef maps a vehicle ID reference to its slot
+    // Trạng thái đã giải mã của bước hiện tại; slotOfRef ánh xạ tham chiếu ID xe tới vị trí của nó
+    private double time = 0;
+    private boolean finished = false;
+    private int vehicleCount = 0;
+    private int[] vehicleIdRef = new int[64];
+    private int[] vehicleTypeRef = new int[64];
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private char[] angle = new char[64];
+    private char[] speed = new char[64];
+    private int[] handle = new int[64];
+    private int[] slotOfRef = new int[0];
+    private final Map<String, String> signalStates = new HashMap<>();
+
+    private final VehicleStore store = new VehicleStore();
+    private long step = 0;
+    private long departedCount = 0;
+    private long arrivedCount = 0;
+    // Vehicles that appeared in or disappeared from the recording at the last step
+    // Các xe xuất hiện hoặc biến mất khỏi bản ghi ở bước vừa rồi
+    private final List<String> lastDeparted = new ArrayList<>();
+    private final List<String> lastArrived = new ArrayList<>();
+
+    public ReplayBackend(Path file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Recording path cannot be null");
+        }
+        this.file = file;
+    }
+
+    @Override
+    public void start() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Recording larger than 2 GB cannot be mapped: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open recording " + file, e);
+        }
+        readHeader();
+        int firstStep = data.position();
+        readFooter();
+        data.position(firstStep);
+        finished = !hasNextStep();
+        if (!finished) {
+            firstTime = peekTime();
+        }
+    }
+
+    private void readHeader() {
+        if (data.getInt() != RecordingFormat.MAGIC) {
+            throw new IllegalStateException("Not a recording: " + file);
+        }
+        short version = data.getShort();
+        if (version != RecordingFormat.VERSION) {
+            throw new IllegalStateException("Unsupported recording version " + version + ": " + file);
+        }
+        deltaT = data.getDouble();
+
+        int lanes = RecordingFormat.getVarInt(data);
+        for (int lane = 0; lane < lanes; lane++) {
+            String laneId = RecordingFormat.getString(data);
+            double[] shape = new double[RecordingFormat.getVarInt(data) * 2];
+            for (int i = 0; i < shape.length; i++) {
+                shape[i] = RecordingFormat.decodePosition(data.getInt());
+            }
+            laneIds.add(laneId);
+            laneShapes.put(laneId, shape);
+        }
+
+        int lights = RecordingFormat.getVarInt(data);
+        for (int i = 0; i < lights; i++) {
+            String tlsId = RecordingFormat.getString(data);
+            double px = RecordingFormat.decodePosition(data.getInt());
+            double py = RecordingFormat.decodePosition(data.getInt());
+            String[] links = new String[RecordingFormat.getVarInt(data)];
+            for (int link = 0; link < links.length; link++) {
+                int lane = RecordingFormat.getVarInt(data);
+                links[link] = lane > 0 ? laneIds.get(lane - 1) : null;
+            }
+            tlsIds.add(tlsId);
+            junctionPositions.put(tlsId, new double[] {px, py});
+            signalLanes.put(tlsId, links);
+            strings.add(tlsId);
+        }
+    }
+
+    /**
+     * Load the keyframe index and the string table if the recording has a footer
+     * Đọc chỉ mục keyframe và bảng chuỗi nếu file ghi có footer
+     *
+     * Without it (recorder not closed) the file can still be played from the start, but not sought;
+     * playback stops before a last record that was cut off.
+     * Nếu không có (bộ ghi chưa được đóng), file vẫn phát được từ đầu nhưng không tua được;
+     * việc phát dừng trước bản ghi cuối bị cắt dở.
+     */
+    private void readFooter() {
+        int size = data.limit();
+        if (size < data.position() + RecordingFormat.TRAILER_SIZE
+                || data.getInt(size - 4) != RecordingFormat.MAGIC) {
+            System.err.println("ReplayBackend: no index in " + file + ", seeking disabled");
+            return;
+        }
+        long footerOffset = data.getLong(size - RecordingFormat.TRAILER_SIZE);
+        data.position((int) footerOffset);
+        int keyframes = data.getInt();
+        keyframeTimes = new double[keyframes];
+        keyframeOffsets = new long[keyframes];
+        for (int i = 0; i < keyframes; i++) {
+            keyframeTimes[i] = data.getDouble();
+            keyframeOffsets[i] = data.getLong();
+        }
+        lastTime = data.getDouble();
+        int count = RecordingFormat.getVarInt(data);
+        strings.clear();
+        for (int i = 0; i < count; i++) {
+            strings.add(RecordingFormat.getString(data));
+        }
+        fullStringTable = true;
+        ensureRefCapacity(strings.size());
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released by the garbage collector
+        // Vùng ánh xạ được bộ thu gom rác giải phóng
+        data = null;
+    }
+
+    /**
+     * Peek at the next tag so the end of the recording is known before stepping past it
+     * Xem trước tag kế tiếp để biết đã hết file ghi trước khi bước qua nó
+     */
+    private boolean hasNextStep() {
+        if (!data.hasRemaining()) {
+            return false;
+        }
+        byte tag = data.get(data.position());
+        if (tag != RecordingFormat.TAG_KEYFRAME && tag != RecordingFormat.TAG_DELTA) {
+            return false;
+        }
+        // A recording with a footer was closed properly; without one the last record may be cut off
+        // File ghi có footer đã được đóng đúng cách; nếu không có, bản ghi cuối có thể bị cắt dở
+        if (!fullStringTable && !isRecordComplete(tag)) {
+            System.err.println("ReplayBackend: truncated record at offset " + data.position() + " in " + file
+                    + ", playback ends here");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Walk the next record without decoding it to check that it ends inside the file
+     * Duyệt bản ghi kế tiếp mà không giải mã để kiểm tra nó kết thúc bên trong file
+     *
+     * Vehicles are told apart as new or known from the current state, exactly as {@link #decodeDelta()} does.
+     * Xe được phân biệt mới hay đã biết theo trạng thái hiện tại, giống hệt {@link #decodeDelta()}.
+     */
+    private boolean isRecordComplete(byte tag) {
+        ByteBuffer record = data.duplicate();
+        try {
+            record.position(record.position() + 1 + Double.BYTES);
+            int newStrings = RecordingFormat.getVarInt(record);
+            for (int i = 0; i < newStrings; i++) {
+                RecordingFormat.skipString(record);
+            }
+            if (tag == RecordingFormat.TAG_KEYFRAME) {
+                int vehicles = RecordingFormat.getVarInt(record);
+                for (int i = 0; i < vehicles; i++) {
+                    RecordingFormat.getVarInt(record);
+                    RecordingFormat.getVarInt(record);
+                    record.position(record.position() + 2 * Integer.BYTES + 2 * Character.BYTES);
+                }
+            } else {
+                int removed = RecordingFormat.getVarInt(record);
+                for (int i = 0; i < removed; i++) {
+                    RecordingFormat.getVarInt(record);
+                }
+                int changed = RecordingFormat.getVarInt(record);
+                for (int i = 0; i < changed; i++) {
+                    int ref = RecordingFormat.getVarInt(record);
+                    if (ref >= slotOfRef.length || slotOfRef[ref] < 0) {
+                        RecordingFormat.getVarInt(record);
+                        record.position(record.position() + 2 * Integer.BYTES);
+                    } else {
+                        RecordingFormat.getZigZag(record);
+                        RecordingFormat.getZigZag(record);
+                    }
+                    record.position(record.position() + 2 * Character.BYTES);
+                }
+            }
+            int signals = RecordingFormat.getVarInt(record);
+            for (int i = 0; i < 2 * signals; i++) {
+                RecordingFormat.getVarInt(record);
+            }
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Moving the position past the end of the file throws IllegalArgumentException
+            // Dời vị trí quá cuối file sẽ ném IllegalArgumentException
+            return false;
+        }
+    }
+
+    private double peekTime() {
+        return data.getDouble(data.position() + 1);
+    }
+
+    /**
+     * Decode the next recorded step; does nothing once the end of the recording is reached
+     * Giải mã bước tiếp theo đã ghi; không làm gì khi đã tới cuối file ghi
+     */
+    @Override
+    public void step() {
+        if (finished) {
+            return;
+        }
+        byte tag = data.get();
+        time = data.getDouble();
+        int newStrings = RecordingFormat.getVarInt(data);
+        for (int i = 0; i < newStrings; i++) {
+            if (fullStringTable) {
+                RecordingFormat.skipString(data);
+            } else {
+                strings.add(RecordingFormat.getString(data));
+            }
+        }
+        ensureRefCapacity(strings.size());
+
+        if (tag == RecordingFormat.TAG_KEYFRAME) {
+            decodeKeyframe();
+        } else {
+            decodeDelta();
+        }
+        finished = !hasNextStep();
+    }
+
+    private void decodeKeyframe() {
+        for (int i = 0; i < vehicleCount; i++) {
+            slotOfRef[vehicleIdRef[i]] = -1;
+        }
+        vehicleCount = 0;
+        int vehicles = RecordingFormat.getVarInt(data);
+        ensureCapacity(vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            int slot = addSlot(RecordingFormat.getVarInt(data), RecordingFormat.getVarInt(data));
+            x[slot] = data.getInt();
+            y[slot] = data.getInt();
+            angle[slot] = data.getChar();
+            speed[slot] = data.getChar();
+        }
+
+        signalStates.clear();
+        int signals = RecordingFormat.getVarInt(data);
+        for (int i = 0; i < signals; i++) {
+            String tlsId = strings.get(RecordingFormat.getVarInt(data));
+            signalStates.put(tlsId, strings.get(RecordingFormat.getVarInt(data)));
+        }
+    }
+
+    private void decodeDelta() {
+        int removed = RecordingFormat.getVarInt(data);
+        for (int i = 0; i < removed; i++) {
+            removeSlot(slotOfRef[RecordingFormat.getVarInt(data)]);
+        }
+
+        int changed = RecordingFormat.getVarInt(data);
+        ensureCapacity(vehicleCount + changed);
+        for (int i = 0; i < changed; i++) {
+            int ref = RecordingFormat.getVarInt(data);
+            int slot = slotOfRef[ref];
+            if (slot < 0) {
+                slot = addSlot(ref, RecordingFormat.getVarInt(data));
+                x[slot] = data.getInt();
+                y[slot] = data.getInt();
+            } else {
+                x[slot] += RecordingFormat.getZigZag(data);
+                y[slot] += RecordingFormat.getZigZag(data);
+            }
+            angle[slot] = data.getChar();
+            speed[slot] = data.getChar();
+        }
+
+        int signals = RecordingFormat.getVarInt(data);
+        for (int i = 0; i < signals; i++) {
+            String tlsId = strings.get(RecordingFormat.getVarInt(data));
+            signalStates.put(tlsId, strings.get(RecordingFormat.getVarInt(data)));
+        }
+    }
+
+    private int addSlot(int idRef, int typeRef) {
+        int slot = vehicleCount++;
+        vehicleIdRef[slot] = idRef;
+        vehicleTypeRef[slot] = typeRef;
+        slotOfRef[idRef] = slot;
+        return slot;
+    }
+
+    /**
+     * Remove a slot by moving the last one into it
+     * Xóa một vị trí bằng cách chuyển vị trí cuối vào đó
+     */
+    private void removeSlot(int slot) {
+        int last = --vehicleCount;
+        slotOfRef[vehicleIdRef[slot]] = -1;
+        if (slot != last) {
+            vehicleIdRef[slot] = vehicleIdRef[last];
+            vehicleTypeRef[slot] = vehicleTypeRef[last];
+            x[slot] = x[last];
+            y[slot] = y[last];
+            angle[slot] = angle[last];
+            speed[slot] = speed[last];
+            slotOfRef[vehicleIdRef[slot]] = slot;
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= x.length) {
+            return;
+        }
+        int capacity = Math.max(n, x.length * 2);
+        vehicleIdRef = Arrays.copyOf(vehicleIdRef, capacity);
+        vehicleTypeRef = Arrays.copyOf(vehicleTypeRef, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        handle = Arrays.copyOf(handle, capacity);
+    }
+
+    private void ensureRefCapacity(int n) {
+        if (n <= slotOfRef.length) {
+            return;
+        }
+        int old = slotOfRef.length;
+        slotOfRef = Arrays.copyOf(slotOfRef, Math.max(n, old * 2));
+        Arrays.fill(slotOfRef, old, slotOfRef.length, -1);
+    }
+
+    /**
+     * Whether the recording has a keyframe index, so {@link #seek(double)} can be used
+     * File ghi có chỉ mục keyframe hay không, tức có thể dùng {@link #seek(double)}
+     */
+    public boolean canSeek() {
+        return keyframeTimes.length > 0;
+    }
+
+    public double getFirstTime() {
+        return firstTime;
+    }
+
+    public double getLastTime() {
+        return lastTime;
+    }
+
+    /**
+     * Jump to the last recorded step at or before the given time
+     * Nhảy tới bước đã ghi cuối cùng tại hoặc trước thời điểm đã cho
+     *
+     * Positions the buffer at the nearest keyframe found in the index and decodes forward, so at most
+     * one keyframe interval is read. The vehicle store is rebuilt without counting departures or arrivals.
+     * Đặt bộ đệm tại keyframe gần nhất tìm được trong chỉ mục rồi giải mã tiếp, nên chỉ đọc tối đa một
+     * khoảng keyframe. Kho xe được dựng lại mà không tính là xe vào hay ra.
+     */
+    public void seek(double targetTime) {
+        if (!canSeek()) {
+            throw new IllegalStateException("Recording has no keyframe index: " + file);
+        }
+        int index = Arrays.binarySearch(keyframeTimes, targetTime);
+        if (index < 0) {
+            index = Math.max(0, -index - 2);
+        }
+        data.position((int) keyframeOffsets[index]);
+        finished = false;
+        step();
+        while (!finished && peekTime() <= targetTime) {
+            step();
+        }
+
+        step++;
+        store.clear();
+        lastDeparted.clear();
+        lastArrived.clear();
+        for (int i = 0; i < vehicleCount; i++) {
+            handle[i] = store.add(strings.get(vehicleIdRef[i]), strings.get(vehicleTypeRef[i]));
+            store.markSeen(handle[i], step);
+        }
+    }
+
+    @Override
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public double getDeltaT() {
+        return deltaT;
+    }
+
+    /**
+     * The end time is not stored, so playback runs until the recording is exhausted
+     * Thời điểm kết thúc không được lưu, nên phát tới khi hết dữ liệu ghi
+     */
+    @Override
+    public double getEndTime() {
+        return -1;
+    }
+
+    @Override
+    public int getMinExpectedNumber() {
+        return finished ? 0 : Math.max(1, vehicleCount);
+    }
+
+    @Override
+    public boolean canAddVehicles() {
+        return false;
+    }
+
+    @Override
+    public void addVehicle(String vehicleId, String route, String type) {
+        throw new UnsupportedOperationException("Vehicles cannot be added to a recording");
+    }
+
+    /**
+     * Recordings hold full states, so vehicles are matched against the store by ID
+     * File ghi lưu trạng thái đầy đủ, nên xe được đối chiếu với kho theo ID
+     */
+    @Override
+    public void updateVehicleLifecycle() {
+        step++;
+        lastDeparted.clear();
+        lastArrived.clear();
+        for (int i = 0; i < vehicleCount; i++) {
+            String id = strings.get(vehicleIdRef[i]);
+            int h = store.handleOf(id);
+            if (h < 0) {
+                h = store.add(id, strings.get(vehicleTypeRef[i]));
+                departedCount++;
+                lastDeparted.add(id);
+            }
+            store.markSeen(h, step);
+            handle[i] = h;
+        }
+        arrivedCount += store.removeNotSeen(step, lastArrived);
+    }
+
+    @Override
+    public void collectVehicleState(SimulationSnapshot.Builder builder) {
+        for (int i = 0; i < vehicleCount; i++) {
+            store.set(handle[i], RecordingFormat.decodePosition(x[i]), RecordingFormat.decodePosition(y[i]),
+                    RecordingFormat.decodeAngle(angle[i]), RecordingFormat.decodeSpeed(speed[i]), step);
+        }
+        store.copyTo(builder);
+    }
+    @Override
+    public VehicleStore getVehicleStore() {
+        return store;
+    }
+
+    @Override
+    public long getDepartedCount() {
+        return departedCount;
+    }
+
+    @Override
+    public long getArrivedCount() {
+        return arrivedCount;
+    }
+
+    @Override
+    public List<String> getLastDepartedIds() {
+        return lastDeparted;
+    }
+
+    @Override
+    public List<String> getLastArrivedIds() {
+        return lastArrived;
+    }
+
+    @Override
+    public List<String> getLaneIds() {
+        return Collections.unmodifiableList(laneIds);
+    }
+
+    @Override
+    public double[] getLaneShape(String laneId) {
+        double[] shape = laneShapes.get(laneId);
+        if (shape == null) {
+            throw new IllegalArgumentException("Unknown lane: " + laneId);
+        }
+        return shape.clone();
+    }
+
+    @Override
+    public double[] getJunctionPosition(String junctionId) {
+        double[] pos = junctionPositions.get(junctionId);
+        if (pos == null) {
+            throw new IllegalArgumentException("Unknown junction: " + junctionId);
+        }
+        return pos.clone();
+    }
+
+    /**
+     * Lane state is not recorded; every lane is reported as unknown
+     * Trạng thái lane không được ghi lại; mọi lane được báo là không biết
+     */
+    @Override
+    public void collectLaneState(LaneStateBuffer lanes) {
+        lanes.clear();
+    }
+
+    @Override
+    public List<String> getTrafficLightIds() {
+        return Collections.unmodifiableList(tlsIds);
+    }
+
+    @Override
+    public String getSignalState(String tlsId) {
+        return signalStates.getOrDefault(tlsId, "");
+    }
+
+    @Override
+    public String[] getSignalLanes(String tlsId) {
+        String[] lanes = signalLanes.get(tlsId);
+        return lanes != null ? lanes.clone() : new String[0];
+    }
+
+    /**
+     * Switch times are not recorded; reading a recorded state costs nothing anyway
+     * Thời điểm đổi pha không được ghi; đọc trạng thái đã ghi cũng không tốn gì
+     */
+    @Override
+    public double getNextSwitch(String tlsId) {
+        return Double.NaN;
+    }
+
+    @Override
+    public long getCallCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,155 @@
+package novik.backend;
+
+import novik.sim.LaneStateBuffer;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehicleStore;
+
+import java.util.List;
+
+/**
+ * Source of simulation data: stepping, vehicles, lane geometry and traffic lights
+ * Nguồn dữ liệu mô phỏng: chạy bước, xe, hình học lane và đèn giao thông
+ *
+ * Implementations are not thread-safe; all calls must come from the thread that drives the backend.
+ * Các cài đặt không an toàn đa luồng; mọi lệnh gọi phải đến từ luồng điều khiển backend.
+ */
+public interface SimulationBackend {
+    // ---------- Lifecycle / Vòng đời ----------
+
+    /**
+     * Start the simulation (e.g. launch SUMO)
+     * Khởi động mô phỏng (ví dụ chạy SUMO)
+     */
+    void start();
+
+    /**
+     * Stop the simulation and release its resources
+     * Dừng mô phỏng và giải phóng tài nguyên
+     */
+    void close();
+
+    /**
+     * Advance the simulation by one step
+     * Tiến mô phỏng thêm một bước
+     */
+    void step();
+
+    double getTime();
+
+    double getDeltaT();
+
+    /**
+     * End of the configured time window in seconds, negative if there is none
+     * Thời điểm kết thúc đã cấu hình (giây), âm nếu không có
+     */
+    double getEndTime();
+
+    /**
+     * Number of vehicles still running or waiting to depart
+     * Số xe còn đang chạy hoặc đang chờ xuất phát
+     */
+    int getMinExpectedNumber();
+
+    // ---------- Vehicles / Xe ----------
+
+    /**
+     * Whether {@link #addVehicle} is supported (false e.g. for recordings)
+     * {@link #addVehicle} có được hỗ trợ hay không (false ví dụ với file ghi)
+     */
+    boolean canAddVehicles();
+
+    void addVehicle(String vehicleId, String route, String type);
+
+    /**
+     * Apply the vehicles that entered or left the network in the last step to the vehicle store
+     * Áp dụng các xe vào hoặc rời mạng lưới ở bước vừa chạy vào kho xe
+     *
+     * Must run after every step.
+     * Phải chạy sau mỗi bước.
+     */
+    void updateVehicleLifecycle();
+
+    /**
+     * Read the state of all live vehicles into a snapshot builder
+     * Đọc trạng thái tất cả xe đang chạy vào snapshot builder
+     *
+     * Can be skipped for steps that are never rendered.
+     * Có thể bỏ qua ở các bước không được vẽ.
+     */
+    void collectVehicleState(SimulationSnapshot.Builder builder);
+
+    VehicleStore getVehicleStore();
+
+    long getDepartedCount();
+
+    long getArrivedCount();
+
+    /**
+     * IDs of the vehicles that departed in the last step (valid until the next {@link #updateVehicleLifecycle()})
+     * ID các xe xuất phát ở bước vừa chạy (có hiệu lực tới lần {@link #updateVehicleLifecycle()} tiếp theo)
+     */
+    List<String> getLastDepartedIds();
+
+    /**
+     * IDs of the vehicles that arrived in the last step (valid until the next {@link #updateVehicleLifecycle()})
+     * ID các xe đến nơi ở bước vừa chạy (có hiệu lực tới lần {@link #updateVehicleLifecycle()} tiếp theo)
+     */
+    List<String> getLastArrivedIds();
+
+    // ---------- Network / Mạng lưới ----------
+
+    List<String> getLaneIds();
+
+    /**
+     * Get the shape of a lane as interleaved world coordinates {x0, y0, x1, y1, ...}
+     * Lấy hình dạng lane dưới dạng tọa độ thế giới xen kẽ {x0, y0, x1, y1, ...}
+     */
+    double[] getLaneShape(String laneId);
+
+    /**
+     * Get the position of a junction as {x, y}
+     * Lấy vị trí nút giao dưới dạng {x, y}
+     */
+    double[] getJunctionPosition(String junctionId);
+
+    /**
+     * Read the traffic state of every lane in the last step, indexed like {@link #getLaneIds()}
+     * Đọc trạng thái giao thông của mọi lane ở bước vừa chạy, đánh chỉ số giống {@link #getLaneIds()}
+     *
+     * Lanes whose state is unknown are left as {@link LaneStateBuffer#clear()} sets them (empty).
+     * Lane không biết trạng thái được giữ như {@link LaneStateBuffer#clear()} đặt (trống).
+     */
+    void collectLaneState(LaneStateBuffer lanes);
+
+    // ---------- Traffic lights / Đèn giao thông ----------
+
+    List<String> getTrafficLightIds();
+
+    String getSignalState(String tlsId);
+
+    /**
+     * Incoming lane of every link controlled by a light, indexed like its state string
+     * Lane đi vào của mỗi link do đèn điều khiển, đánh chỉ số giống chuỗi trạng thái
+     *
+     * An entry is null if the link has no lane (e.g. an unused signal index).
+     * Một phần tử là null nếu link không có lane (ví dụ chỉ số tín hiệu không dùng).
+     */
+    String[] getSignalLanes(String tlsId);
+
+    /**
+     * Simulation time of the next phase switch of a light, or NaN if unknown
+     * Thời điểm mô phỏng của lần đổi pha tiếp theo của đèn, hoặc NaN nếu không biết
+     *
+     * The state is expected to stay the same until then, so callers may skip reading it in between.
+     * Trạng thái được coi là không đổi tới lúc đó, nên bên gọi có thể bỏ qua việc đọc ở giữa.
+     */
+    double getNextSwitch(String tlsId);
+
+    // ---------- Statistics / Thống kê ----------
+
+    /**
+     * Number of round trips to an external simulator (0 for in-process backends)
+     * Số lần gọi tới trình mô phỏng bên ngoài (0 với backend chạy trong tiến trình)
+     */
+    long getCallCount();
+}
@@ -0,0 +1,514 @@
+package novik.backend;
+
+import novik.sim.LaneStateBuffer;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehicleStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * In-process backend that moves vehicles along a generated grid network (no SUMO needed)
+ * Backend chạy trong tiến trình, di chuyển xe trên mạng lưới dạng lưới tự sinh (không cần SUMO)
+ *
+ * The same seed and vehicle count always give the same run, so it can be used to load-test
+ * layers and renderers with very many vehicles.
+ * Cùng seed và số xe luôn cho cùng kết quả, nên có thể dùng để thử tải các layer và renderer
+ * với rất nhiều xe.
+ */
+public class SyntheticBackend implements SimulationBackend {
+    public static final long DEFAULT_SEED = 42L;
+    public static final double DEFAULT_END_TIME = 3600.0;
+    private static final double BLOCK_SIZE = 100.0; // meters between junctions
+    // mét giữa các nút giao
+    private static final double LANE_OFFSET = 1.6; // right-hand offset of a lane from the road axis
+    // độ lệch sang phải của lane so với trục đường
+    private static final double MIN_SPEED = 5.0, MAX_SPEED = 15.0; // m/s
+    private static final int MIN_TRIP_LANES = 3, MAX_TRIP_LANES = 10;
+    private static final String[] TYPES = {"car", "car", "car", "car", "car", "car", "car", "car", "bus", "truck"};
+    // Signal phases and their durations in seconds
+    // Các pha đèn và thời lượng (giây)
+    private static final String[] PHASES = {"GGrr", "yyrr", "rrGG", "rryy"};
+    private static final double[] PHASE_DURATIONS = {27, 3, 27, 3};
+    private static final double CYCLE = 60;
+
+    private final int initialVehicles;
+    private final double deltaT;
+    private final double endTime;
+    private final SplittableRandom random;
+    private final VehicleStore store = new VehicleStore();
+
+    // Network: lane shapes, cumulative segment lengths and outgoing lanes per junction
+    // Mạng lưới: hình dạng lane, độ dài cộng dồn các đoạn và lane đi ra ở mỗi nút giao
+    private final int side;
+    private final List<String> laneIds = new ArrayList<>();
+    private final Map<String, Integer> laneIndexById = new HashMap<>();
+    private final List<double[]> laneShapes = new ArrayList<>();
+    private final List<double[]> laneLengths = new ArrayList<>();
+    private int[] laneEnd = new int[0];
+    private final List<int[]> outgoing = new ArrayList<>();
+    private final List<String> tlsIds = new ArrayList<>();
+
+    // Vehicles by slot; a slot is reused by a new vehicle after an arrival
+    // Xe theo vị trí; vị trí được dùng lại cho xe mới sau khi xe cũ đến nơi
+    private int vehicleCount = 0;
+    private String[] vehicleId = new String[0];
+    private String[] vehicleType = new String[0];
+    private int[] vehicleLane = new int[0];
+    private double[] vehiclePos = new double[0];
+    private double[] vehicleSpeed = new double[0];
+    private int[] tripLeft = new int[0];
+    private int[] vehicleHandle = new int[0];
+    private int nextVehicleNumber = 0;
+    // Vehicles, speed sum and vehicle length sum per lane, reused by collectLaneState
+    // Số xe, tổng tốc độ và tổng chiều dài xe trên mỗi lane, dùng lại trong collectLaneState
+    private int[] laneVehicles = new int[0];
+    private double[] laneSpeedSum = new double[0];
+    private double[] laneLengthSum = new double[0];
+
+    // Events since the last lifecycle update
+    // Các sự kiện kể từ lần cập nhật vòng đời trước
+    private final List<String> pendingArrived = new ArrayList<>();
+    private int[] pendingDeparted = new int[16];
+    private int pendingDepartedCount = 0;
+    // Events applied by the last lifecycle update
+    // Các sự kiện được áp dụng ở lần cập nhật vòng đời gần nhất
+    private final List<String> lastDeparted = new ArrayList<>();
+    private final List<String> lastArrived = new ArrayList<>();
+
+    private double time = 0;
+    private long step = 0;
+    private long departedCount = 0;
+    private long arrivedCount = 0;
+
+    public SyntheticBackend(int vehicles) {
+        this(vehicles, DEFAULT_SEED, 1.0, DEFAULT_END_TIME);
+    }
+
+    /**
+     * Constructor
+     * @param vehicles Number of vehicles kept on the network
+     * @param seed Seed for the network and vehicle movement
+     * @param deltaT Step length in seconds
+     * @param endTime End of the run in seconds (negative = no end)
+     */
+    public SyntheticBackend(int vehicles, long seed, double deltaT, double endTime) {
+        // About 50 vehicles per junction keeps the density plausible at any size
+        // Khoảng 50 xe mỗi nút giao để mật độ hợp lý ở mọi kích thước
+        this(vehicles, Math.max(3, (int) Math.ceil(Math.sqrt(vehicles / 50.0)) + 1), seed, deltaT, endTime);
+    }
+
+    /**
+     * Constructor with an explicit network size
+     * Constructor với kích thước mạng lưới cho trước
+     * @param vehicles Number of vehicles kept on the network
+     * @param gridSide Junctions per side of the grid (the network has 4 * side * (side - 1) lanes)
+     * @param seed Seed for the network and vehicle movement
+     * @param deltaT Step length in seconds
+     * @param endTime End of the run in seconds (negative = no end)
+     */
+    public SyntheticBackend(int vehicles, int gridSide, long seed, double deltaT, double endTime) {
+        if (gridSide < 2) {
+            throw new IllegalArgumentException("Grid needs at least 2 junctions per side: " + gridSide);
+        }
+        if (vehicles < 0) {
+            throw new IllegalArgumentException("Vehicle count cannot be negative: " + vehicles);
+        }
+        if (!(deltaT > 0)) {
+            throw new IllegalArgumentException("Step length must be positive: " + deltaT);
+        }
+        this.initialVehicles = vehicles;
+        this.deltaT = deltaT;
+        this.endTime = endTime;
+        this.random = new SplittableRandom(seed);
+        this.side = gridSide;
+        buildNetwork();
+    }
+
+    /**
+     * Generate a square grid of two-way roads with one lane per direction
+     * Sinh lưới vuông các đường hai chiều, mỗi chiều một lane
+     */
+    private void buildNetwork() {
+        int nodes = side * side;
+        List<List<Integer>> out = new ArrayList<>();
+        for (int n = 0; n < nodes; n++) {
+            out.add(new ArrayList<>());
+        }
+        List<Integer> ends = new ArrayList<>();
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int node = r * side + c;
+                if (c + 1 < side) {
+                    addRoad(node, node + 1, out, ends);
+                }
+                if (r + 1 < side) {
+                    addRoad(node, node + side, out, ends);
+                }
+                // Interior junctions get a traffic light with the same ID
+                // Các nút giao bên trong có đèn giao thông cùng ID
+                if (r > 0 && c > 0 && r + 1 < side && c + 1 < side) {
+                    tlsIds.add(junctionId(node));
+                }
+            }
+        }
+        laneEnd = ends.stream().mapToInt(Integer::intValue).toArray();
+        for (List<Integer> lanes : out) {
+            outgoing.add(lanes.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    private void addRoad(int a, int b, List<List<Integer>> out, List<Integer> ends) {
+        addLane(a, b, out, ends);
+        addLane(b, a, out, ends);
+    }
+
+    private void addLane(int from, int to, List<List<Integer>> out, List<Integer> ends) {
+        double x0 = (from % side) * BLOCK_SIZE, y0 = (from / side) * BLOCK_SIZE;
+        double x1 = (to % side) * BLOCK_SIZE, y1 = (to / side) * BLOCK_SIZE;
+        double dx = x1 - x0, dy = y1 - y0;
+        double length = Math.hypot(dx, dy);
+        // Right-hand normal, plus a small bend in the middle so lanes are real polylines
+        // Pháp tuyến bên phải, cộng một chỗ cong nhỏ ở giữa để lane là polyline thật
+        double nx = dy / length, ny = -dx / length;
+        double bend = random.nextDouble(-2.0, 2.0);
+        double[] shape = {
+                x0 + nx * LANE_OFFSET, y0 + ny * LANE_OFFSET,
+                (x0 + x1) / 2 + nx * (LANE_OFFSET + bend), (y0 + y1) / 2 + ny * (LANE_OFFSET + bend),
+                x1 + nx * LANE_OFFSET, y1 + ny * LANE_OFFSET
+        };
+        double[] cumulative = new double[shape.length / 2];
+        for (int i = 1; i < cumulative.length; i++) {
+            cumulative[i] = cumulative[i - 1]
+                    + Math.hypot(shape[2 * i] - shape[2 * i - 2], shape[2 * i + 1] - shape[2 * i - 1]);
+        }
+
+        int lane = laneIds.size();
+        laneIds.add("E" + from + "_" + to + "_0");
+        laneIndexById.put(laneIds.get(lane), lane);
+        laneShapes.add(shape);
+        laneLengths.add(cumulative);
+        out.get(from).add(lane);
+        ends.add(to);
+    }
+
+    private String junctionId(int node) {
+        return "J" + (node / side) + "_" + (node % side);
+    }
+
+    // ---------- Lifecycle ----------
+
+    @Override
+    public void start() {
+        for (int i = 0; i < initialVehicles; i++) {
+            spawn(null, TYPES[random.nextInt(TYPES.length)], random.nextInt(laneIds.size()));
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+        // Không có gì cần giải phóng
+    }
+
+    @Override
+    public void step() {
+        time += deltaT;
+        step++;
+        for (int slot = 0; slot < vehicleCount; slot++) {
+            vehiclePos[slot] += vehicleSpeed[slot] * deltaT;
+            double[] cumulative = laneLengths.get(vehicleLane[slot]);
+            while (vehiclePos[slot] >= cumulative[cumulative.length - 1]) {
+                vehiclePos[slot] -= cumulative[cumulative.length - 1];
+                if (--tripLeft[slot] <= 0) {
+                    // Trip finished: the vehicle arrives and a new one departs in its slot
+                    // Chuyến đi kết thúc: xe đến nơi và một xe mới xuất phát ở vị trí đó
+                    pendingArrived.add(vehicleId[slot]);
+                    arrivedCount++;
+                    startTrip(slot, null, TYPES[random.nextInt(TYPES.length)], random.nextInt(laneIds.size()));
+                    break;
+                }
+                int[] next = outgoing.get(laneEnd[vehicleLane[slot]]);
+                vehicleLane[slot] = next[random.nextInt(next.length)];
+                cumulative = laneLengths.get(vehicleLane[slot]);
+            }
+        }
+    }
+
+    @Override
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public double getDeltaT() {
+        return deltaT;
+    }
+
+    @Override
+    public double getEndTime() {
+        return endTime;
+    }
+
+    @Override
+    public int getMinExpectedNumber() {
+        return vehicleCount;
+    }
+
+    // ---------- Vehicles ----------
+
+    @Override
+    public boolean canAddVehicles() {
+        return true;
+    }
+
+    /**
+     * Add a vehicle on a random lane (routes do not exist in the synthetic network)
+     * Thêm xe vào một lane ngẫu nhiên (mạng lưới tự sinh không có tuyến đường)
+     */
+    @Override
+    public void addVehicle(String vehicleId, String route, String type) {
+        spawn(vehicleId, type, random.nextInt(laneIds.size()));
+    }
+
+    private void spawn(String id, String type, int lane) {
+        if (vehicleCount == vehicleId.length) {
+            int n = Math.max(16, vehicleCount * 2);
+            vehicleId = Arrays.copyOf(vehicleId, n);
+            vehicleType = Arrays.copyOf(vehicleType, n);
+            vehicleLane = Arrays.copyOf(vehicleLane, n);
+            vehiclePos = Arrays.copyOf(vehiclePos, n);
+            vehicleSpeed = Arrays.copyOf(vehicleSpeed, n);
+            tripLeft = Arrays.copyOf(tripLeft, n);
+            vehicleHandle = Arrays.copyOf(vehicleHandle, n);
+        }
+        startTrip(vehicleCount++, id, type, lane);
+    }
+
+    private void startTrip(int slot, String id, String type, int lane) {
+        vehicleId[slot] = id != null ? id : "syn" + nextVehicleNumber++;
+        vehicleType[slot] = type;
+        vehicleLane[slot] = lane;
+        vehiclePos[slot] = 0;
+        vehicleSpeed[slot] = random.nextDouble(MIN_SPEED, MAX_SPEED);
+        tripLeft[slot] = MIN_TRIP_LANES + random.nextInt(MAX_TRIP_LANES - MIN_TRIP_LANES + 1);
+        vehicleHandle[slot] = -1;
+        if (pendingDepartedCount == pendingDeparted.length) {
+            pendingDeparted = Arrays.copyOf(pendingDeparted, pendingDepartedCount * 2);
+        }
+        pendingDeparted[pendingDepartedCount++] = slot;
+        departedCount++;
+    }
+
+    @Override
+    public void updateVehicleLifecycle() {
+        lastArrived.clear();
+        lastDeparted.clear();
+        for (String id : pendingArrived) {
+            store.remove(id);
+        }
+        lastArrived.addAll(pendingArrived);
+        pendingArrived.clear();
+        for (int i = 0; i < pendingDepartedCount; i++) {
+            int slot = pendingDeparted[i];
+            if (vehicleHandle[slot] < 0) {
+                vehicleHandle[slot] = store.add(vehicleId[slot], vehicleType[slot]);
+                lastDeparted.add(vehicleId[slot]);
+            }
+        }
+        pendingDepartedCount = 0;
+    }
+
+    @Override
+    public void collectVehicleState(SimulationSnapshot.Builder builder) {
+        for (int slot = 0; slot < vehicleCount; slot++) {
+            int handle = vehicleHandle[slot];
+            if (handle < 0) {
+                continue;
+            }
+            double[] shape = laneShapes.get(vehicleLane[slot]);
+            double[] cumulative = laneLengths.get(vehicleLane[slot]);
+            double pos = vehiclePos[slot];
+            int seg = 0;
+            while (seg + 2 < cumulative.length && pos > cumulative[seg + 1]) {
+                seg++;
+            }
+            double segLength = cumulative[seg + 1] - cumulative[seg];
+            double t = segLength > 0 ? (pos - cumulative[seg]) / segLength : 0;
+            double x0 = shape[2 * seg], y0 = shape[2 * seg + 1];
+            double dx = shape[2 * seg + 2] - x0, dy = shape[2 * seg + 3] - y0;
+            // SUMO angle: degrees clockwise from north
+            // Góc SUMO: độ theo chiều kim đồng hồ tính từ hướng bắc
+            double angle = Math.toDegrees(Math.atan2(dx, dy));
+            if (angle < 0) {
+                angle += 360;
+            }
+            store.set(handle, x0 + dx * t, y0 + dy * t, angle, vehicleSpeed[slot], step);
+        }
+        store.copyTo(builder);
+    }
+
+    @Override
+    public VehicleStore getVehicleStore() {
+        return store;
+    }
+
+    @Override
+    public long getDepartedCount() {
+        return departedCount;
+    }
+
+    @Override
+    public long getArrivedCount() {
+        return arrivedCount;
+    }
+
+    @Override
+    public List<String> getLastDepartedIds() {
+        return lastDeparted;
+    }
+
+    @Override
+    public List<String> getLastArrivedIds() {
+        return lastArrived;
+    }
+
+    // ---------- Network ----------
+
+    @Override
+    public List<String> getLaneIds() {
+        return Collections.unmodifiableList(laneIds);
+    }
+
+    @Override
+    public double[] getLaneShape(String laneId) {
+        Integer lane = laneIndexById.get(laneId);
+        if (lane == null) {
+            throw new IllegalArgumentException("Unknown lane: " + laneId);
+        }
+        return laneShapes.get(lane).clone();
+    }
+
+    @Override
+    public double[] getJunctionPosition(String junctionId) {
+        int sep = junctionId.indexOf('_');
+        if (!junctionId.startsWith("J") || sep < 0) {
+            throw new IllegalArgumentException("Unknown junction: " + junctionId);
+        }
+        int r = Integer.parseInt(junctionId.substring(1, sep));
+        int c = Integer.parseInt(junctionId.substring(sep + 1));
+        return new double[] {c * BLOCK_SIZE, r * BLOCK_SIZE};
+    }
+
+    /**
+     * Vehicle count, mean speed and covered length per lane, from the vehicles currently on it
+     * Số xe, tốc độ trung bình và chiều dài bị chiếm của mỗi lane, từ các xe đang ở trên đó
+     */
+    @Override
+    public void collectLaneState(LaneStateBuffer lanes) {
+        int n = Math.min(laneIds.size(), lanes.size());
+        if (laneVehicles.length < n) {
+            laneVehicles = new int[n];
+            laneSpeedSum = new double[n];
+            laneLengthSum = new double[n];
+        }
+        Arrays.fill(laneVehicles, 0, n, 0);
+        Arrays.fill(laneSpeedSum, 0, n, 0);
+        Arrays.fill(laneLengthSum, 0, n, 0);
+        for (int slot = 0; slot < vehicleCount; slot++) {
+            int lane = vehicleLane[slot];
+            if (lane >= n) {
+                continue;
+            }
+            laneVehicles[lane]++;
+            laneSpeedSum[lane] += vehicleSpeed[slot];
+            laneLengthSum[lane] += vehicleLength(vehicleType[slot]);
+        }
+        lanes.clear();
+        for (int lane = 0; lane < n; lane++) {
+            if (laneVehicles[lane] == 0) {
+                lanes.set(lane, 0, 0, Double.NaN, MAX_SPEED, 0);
+                continue;
+            }
+            // Vehicles keep their speed for the whole trip, so nobody halts
+            // Xe giữ nguyên tốc độ suốt chuyến đi, nên không xe nào dừng
+            double[] cumulative = laneLengths.get(lane);
+            lanes.set(lane, laneVehicles[lane], 0, laneSpeedSum[lane] / laneVehicles[lane], MAX_SPEED,
+                    Math.min(1.0, laneLengthSum[lane] / cumulative[cumulative.length - 1]));
+        }
+    }
+
+    private static double vehicleLength(String type) {
+        switch (type) {
+            case "bus":
+                return 12.0;
+            case "truck":
+                return 7.1;
+            default:
+                return 5.0;
+        }
+    }
+
+    // ---------- Traffic lights ----------
+
+    @Override
+    public List<String> getTrafficLightIds() {
+        return Collections.unmodifiableList(tlsIds);
+    }
+
+    /**
+     * Fixed-time plan; each light is shifted by its position so they do not all switch together
+     * Chu kỳ cố định; mỗi đèn được lệch theo vị trí để không đổi pha cùng lúc
+     */
+    @Override
+    public String getSignalState(String tlsId) {
+        double t = (time + (tlsId.hashCode() & 0xff)) % CYCLE;
+        for (int i = 0; i < PHASES.length; i++) {
+            if (t < PHASE_DURATIONS[i]) {
+                return PHASES[i];
+            }
+            t -= PHASE_DURATIONS[i];
+        }
+        return PHASES[PHASES.length - 1];
+    }
+
+    /**
+     * Indices 0-1 are the lanes coming from west and east, 2-3 those from north and south, matching {@link #PHASES}
+     * Chỉ số 0-1 là lane đi vào từ tây và đông, 2-3 từ bắc và nam, khớp với {@link #PHASES}
+     */
+    @Override
+    public String[] getSignalLanes(String tlsId) {
+        double[] pos = getJunctionPosition(tlsId);
+        int node = (int) Math.round(pos[1] / BLOCK_SIZE) * side + (int) Math.round(pos[0] / BLOCK_SIZE);
+        int[] from = {node - 1, node + 1, node - side, node + side};
+        String[] lanes = new String[from.length];
+        for (int i = 0; i < from.length; i++) {
+            String laneId = "E" + from[i] + "_" + node + "_0";
+            lanes[i] = laneIndexById.containsKey(laneId) ? laneId : null;
+        }
+        return lanes;
+    }
+
+    @Override
+    public double getNextSwitch(String tlsId) {
+        double t = (time + (tlsId.hashCode() & 0xff)) % CYCLE;
+        double phaseEnd = 0;
+        for (double duration : PHASE_DURATIONS) {
+            phaseEnd += duration;
+            if (t < phaseEnd) {
+                break;
+            }
+        }
+        return time + (phaseEnd - t);
+    }
+
+    @Override
+    public long getCallCount() {
+        return 0;
+    }
+}
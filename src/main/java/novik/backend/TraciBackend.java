@@ -0,0 +1,348 @@
+package novik.backend;
+
+import novik.SumoBridge;
+import novik.net.NetworkGeometry;
+import novik.sim.LaneStateBuffer;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehicleStateCollector;
+import novik.sim.VehicleStore;
+import org.eclipse.sumo.libtraci.Constants;
+import org.eclipse.sumo.libtraci.IntVector;
+import org.eclipse.sumo.libtraci.Junction;
+import org.eclipse.sumo.libtraci.Lane;
+import org.eclipse.sumo.libtraci.Simulation;
+import org.eclipse.sumo.libtraci.SubscriptionResults;
+import org.eclipse.sumo.libtraci.TraCIDouble;
+import org.eclipse.sumo.libtraci.TraCIInt;
+import org.eclipse.sumo.libtraci.TraCILinkVector;
+import org.eclipse.sumo.libtraci.TraCILinkVectorVector;
+import org.eclipse.sumo.libtraci.TraCIPosition;
+import org.eclipse.sumo.libtraci.TraCIPositionVector;
+import org.eclipse.sumo.libtraci.TraCIResults;
+import org.eclipse.sumo.libtraci.TraCIString;
+import org.eclipse.sumo.libtraci.TrafficLight;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backend that talks to a real SUMO process through libtraci
+ * Backend giao tiếp với tiến trình SUMO thật qua libtraci
+ */
+public class TraciBackend implements SimulationBackend {
+    // Config to start SUMO with (null = SUMO is started elsewhere)
+    // File cấu hình để khởi động SUMO (null = SUMO được khởi động ở nơi khác)
+    private final Path sumoCfgPath;
+    private final VehicleStateCollector vehicleCollector;
+    // Extra SUMO options, e.g. for a sweep variant
+    // Tùy chọn SUMO bổ sung, ví dụ cho một biến thể trong sweep
+    private final List<String> sumoArgs;
+    // Whether all traffic lights are subscribed to their state and next switch time
+    // Tất cả đèn đã được đăng ký nhận trạng thái và thời điểm đổi pha hay chưa
+    private boolean signalsSubscribed = false;
+    // TraCI round trips made outside the vehicle collector
+    // Số lần gọi TraCI ngoài collector xe
+    private long calls = 0;
+    // Geometry parsed from the net file; answers lane, junction and link queries without TraCI
+    // Hình học đọc từ file net; trả lời truy vấn lane, nút giao và link mà không cần TraCI
+    private NetworkGeometry network;
+    // Lane index by ID for the lane subscriptions (null = lanes not subscribed yet)
+    // Chỉ số lane theo ID cho các subscription lane (null = chưa đăng ký lane)
+    private Map<String, Integer> subscribedLanes;
+
+    /**
+     * Backend for a SUMO connection that is already open
+     * Backend cho kết nối SUMO đã được mở sẵn
+     */
+    public TraciBackend() {
+        this(null, new VehicleStateCollector());
+    }
+
+    public TraciBackend(Path sumoCfgPath) {
+        this(sumoCfgPath, new VehicleStateCollector());
+    }
+
+    /**
+     * Constructor
+     * @param sumoCfgPath Config to start SUMO with, or null if SUMO is started elsewhere
+     * @param vehicleCollector Collector used to read vehicles (its mode can be changed at any time)
+     */
+    public TraciBackend(Path sumoCfgPath, VehicleStateCollector vehicleCollector) {
+        this(sumoCfgPath, vehicleCollector, List.of());
+    }
+
+    /**
+     * Constructor
+     * @param sumoCfgPath Config to start SUMO with, or null if SUMO is started elsewhere
+     * @param vehicleCollector Collector used to read vehicles
+     * @param sumoArgs Extra SUMO command line options appended after the defaults
+     */
+    public TraciBackend(Path sumoCfgPath, VehicleStateCollector vehicleCollector, List<String> sumoArgs) {
+        if (vehicleCollector == null) {
+            throw new IllegalArgumentException("Vehicle collector cannot be null");
+        }
+        this.sumoCfgPath = sumoCfgPath;
+        this.vehicleCollector = vehicleCollector;
+        this.sumoArgs = List.copyOf(sumoArgs);
+    }
+
+    /**
+     * Serve network geometry from a parsed net file instead of one TraCI call per lane or junction
+     * Lấy hình học mạng lưới từ file net đã phân tích thay vì một lệnh TraCI cho mỗi lane hoặc nút giao
+     *
+     * @param network Geometry of the network SUMO runs, or null to query SUMO
+     */
+    public void setNetwork(NetworkGeometry network) {
+        this.network = network;
+    }
+
+    public VehicleStateCollector getVehicleCollector() {
+        return vehicleCollector;
+    }
+
+    @Override
+    public void start() {
+        if (sumoCfgPath != null && !SumoBridge.isServerActive) {
+            SumoBridge.startSUMO(sumoCfgPath, sumoArgs);
+        }
+        if (SumoBridge.isServerActive) {
+            subscribeSignals();
+        }
+    }
+
+    /**
+     * Subscribe every traffic light to its state and next switch time, so reading them needs no round trip
+     * Đăng ký mọi đèn nhận trạng thái và thời điểm đổi pha, để việc đọc không cần gọi qua lại
+     */
+    private void subscribeSignals() {
+        IntVector vars = new IntVector(new int[] {Constants.TL_RED_YELLOW_GREEN_STATE, Constants.TL_NEXT_SWITCH});
+        for (String tlsId : getTrafficLightIds()) {
+            calls++;
+            TrafficLight.subscribe(tlsId, vars);
+        }
+        signalsSubscribed = true;
+    }
+
+    /**
+     * Subscribe every lane to its vehicle and halting counts, mean speed, occupancy and speed limit,
+     * so all lanes are read in one call per step
+     * Đăng ký mọi lane nhận số xe, số xe dừng, tốc độ trung bình, độ chiếm dụng và tốc độ giới hạn,
+     * để đọc mọi lane bằng một lần gọi mỗi bước
+     */
+    private void subscribeLanes() {
+        IntVector vars = new IntVector(new int[] {
+                Constants.LAST_STEP_VEHICLE_NUMBER, Constants.LAST_STEP_VEHICLE_HALTING_NUMBER,
+                Constants.LAST_STEP_MEAN_SPEED, Constants.LAST_STEP_OCCUPANCY, Constants.VAR_MAXSPEED
+        });
+        List<String> laneIds = getLaneIds();
+        subscribedLanes = new HashMap<>(laneIds.size() * 2);
+        for (int i = 0; i < laneIds.size(); i++) {
+            calls++;
+            Lane.subscribe(laneIds.get(i), vars);
+            subscribedLanes.put(laneIds.get(i), i);
+        }
+    }
+
+    @Override
+    public void close() {
+        signalsSubscribed = false;
+        subscribedLanes = null;
+        if (SumoBridge.isServerActive) {
+            SumoBridge.stopSUMO();
+        }
+    }
+
+    @Override
+    public void step() {
+        calls++;
+        SumoBridge.step();
+    }
+
+    @Override
+    public double getTime() {
+        calls++;
+        return Simulation.getTime();
+    }
+
+    @Override
+    public double getDeltaT() {
+        calls++;
+        return Simulation.getDeltaT();
+    }
+
+    @Override
+    public double getEndTime() {
+        calls++;
+        return Simulation.getEndTime();
+    }
+
+    @Override
+    public int getMinExpectedNumber() {
+        calls++;
+        return Simulation.getMinExpectedNumber();
+    }
+
+    @Override
+    public boolean canAddVehicles() {
+        return true;
+    }
+
+    @Override
+    public void addVehicle(String vehicleId, String route, String type) {
+        calls++;
+        SumoBridge.addVehicle(vehicleId, route, type);
+    }
+
+    @Override
+    public void updateVehicleLifecycle() {
+        vehicleCollector.updateLifecycle();
+    }
+
+    @Override
+    public void collectVehicleState(SimulationSnapshot.Builder builder) {
+        vehicleCollector.collectState(builder);
+    }
+
+    @Override
+    public VehicleStore getVehicleStore() {
+        return vehicleCollector.getStore();
+    }
+
+    @Override
+    public long getDepartedCount() {
+        return vehicleCollector.getDepartedCount();
+    }
+
+    @Override
+    public long getArrivedCount() {
+        return vehicleCollector.getArrivedCount();
+    }
+
+    @Override
+    public List<String> getLastDepartedIds() {
+        return vehicleCollector.getLastDepartedIds();
+    }
+
+    @Override
+    public List<String> getLastArrivedIds() {
+        return vehicleCollector.getLastArrivedIds();
+    }
+
+    @Override
+    public List<String> getLaneIds() {
+        if (network != null) {
+            return network.getLaneIds();
+        }
+        calls++;
+        return Lane.getIDList();
+    }
+
+    @Override
+    public double[] getLaneShape(String laneId) {
+        double[] parsed = network != null ? network.getLaneShape(laneId) : null;
+        if (parsed != null) {
+            return parsed;
+        }
+        calls++;
+        TraCIPositionVector shape = Lane.getShape(laneId);
+        List<TraCIPosition> points = shape.getValue();
+        double[] xy = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            TraCIPosition pos = points.get(i);
+            xy[2 * i] = pos.getX();
+            xy[2 * i + 1] = pos.getY();
+        }
+        return xy;
+    }
+
+    @Override
+    public double[] getJunctionPosition(String junctionId) {
+        double[] parsed = network != null ? network.getJunctionPosition(junctionId) : null;
+        if (parsed != null) {
+            return parsed;
+        }
+        calls++;
+        TraCIPosition pos = Junction.getPosition(junctionId);
+        return new double[] {pos.getX(), pos.getY()};
+    }
+
+    @Override
+    public void collectLaneState(LaneStateBuffer lanes) {
+        if (subscribedLanes == null) {
+            subscribeLanes();
+        }
+        lanes.clear();
+        calls++;
+        SubscriptionResults results = Lane.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> entry : results.entrySet()) {
+            Integer lane = subscribedLanes.get(entry.getKey());
+            if (lane == null || lane >= lanes.size()) {
+                continue;
+            }
+            TraCIResults values = entry.getValue();
+            lanes.set(lane,
+                    TraCIInt.cast(values.get(Constants.LAST_STEP_VEHICLE_NUMBER)).getValue(),
+                    TraCIInt.cast(values.get(Constants.LAST_STEP_VEHICLE_HALTING_NUMBER)).getValue(),
+                    TraCIDouble.cast(values.get(Constants.LAST_STEP_MEAN_SPEED)).getValue(),
+                    TraCIDouble.cast(values.get(Constants.VAR_MAXSPEED)).getValue(),
+                    Math.min(1.0, TraCIDouble.cast(values.get(Constants.LAST_STEP_OCCUPANCY)).getValue()));
+        }
+    }
+
+    @Override
+    public List<String> getTrafficLightIds() {
+        calls++;
+        return TrafficLight.getIDList();
+    }
+
+    @Override
+    public String getSignalState(String tlsId) {
+        if (signalsSubscribed) {
+            TraCIResults values = TrafficLight.getSubscriptionResults(tlsId);
+            if (values != null && values.containsKey(Constants.TL_RED_YELLOW_GREEN_STATE)) {
+                return TraCIString.cast(values.get(Constants.TL_RED_YELLOW_GREEN_STATE)).getValue();
+            }
+        }
+        calls++;
+        return TrafficLight.getRedYellowGreenState(tlsId);
+    }
+
+    @Override
+    public double getNextSwitch(String tlsId) {
+        if (signalsSubscribed) {
+            TraCIResults values = TrafficLight.getSubscriptionResults(tlsId);
+            if (values != null && values.containsKey(Constants.TL_NEXT_SWITCH)) {
+                return TraCIDouble.cast(values.get(Constants.TL_NEXT_SWITCH)).getValue();
+            }
+        }
+        calls++;
+        return TrafficLight.getNextSwitch(tlsId);
+    }
+
+    @Override
+    public String[] getSignalLanes(String tlsId) {
+        String[] parsed = network != null ? network.getSignalLanes(tlsId) : null;
+        if (parsed != null) {
+            return parsed;
+        }
+        calls++;
+        TraCILinkVectorVector links = TrafficLight.getControlledLinks(tlsId);
+        String[] lanes = new String[links.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            // All connections of one signal index share the same incoming lane
+            // Mọi kết nối của cùng một chỉ số tín hiệu dùng chung lane đi vào
+            TraCILinkVector link = links.get(i);
+            if (!link.isEmpty()) {
+                lanes[i] = link.get(0).getFromLane();
+            }
+        }
+        return lanes;
+    }
+
+    @Override
+    public long getCallCount() {
+        return calls + vehicleCollector.getTraciCallCount();
+    }
+}
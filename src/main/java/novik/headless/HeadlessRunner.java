@@ -0,0 +1,232 @@
+package novik.headless;
+
+import novik.backend.ReplayBackend;
+import novik.backend.SimulationBackend;
+import novik.backend.SyntheticBackend;
+import novik.backend.TraciBackend;
+import novik.record.SimulationRecorder;
+import novik.sim.SignalStateCollector;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehicleStateCollector;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs a scenario without a window and prints summary metrics (for nightly runs on servers)
+ * Chạy một kịch bản không có cửa sổ và in các chỉ số tổng kết (cho các lần chạy ban đêm trên server)
+ *
+ * Uses the same collectors as the GUI but never touches JavaFX classes.
+ * Dùng cùng các collector với giao diện nhưng không bao giờ dùng tới class JavaFX.
+ *
+ * Usage: {@code java -cp target/classes:libs/libtraci-1.25.0.jar novik.headless.HeadlessRunner
+ * <file.sumocfg | synthetic:N | file.nvkr> [--mode subscription|polling] [--sample-every N]
+ * [--record file.nvkr] [--sumo-arg --option=value]... [--out metrics.properties]}
+ */
+public class HeadlessRunner {
+    private final String name;
+    private final SimulationBackend backend;
+    private final SignalStateCollector signalCollector;
+    private final SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+    // Read the full state every N steps like a renderer would (0 = lifecycle only)
+    // Đọc toàn bộ trạng thái mỗi N bước giống renderer (0 = chỉ theo dõi xe vào/ra)
+    private int sampleEvery = 1;
+    // Records every step when set
+    // Ghi lại mọi bước khi được đặt
+    private Path recordPath;
+
+    /**
+     * Constructor
+     * @param name Scenario name written to the metrics
+     * @param backend Backend to run (not started yet)
+     */
+    public HeadlessRunner(String name, SimulationBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
+        this.name = name;
+        this.backend = backend;
+        this.signalCollector = new SignalStateCollector(backend);
+    }
+
+    /**
+     * Create a runner for a SUMO config
+     * Tạo runner cho một file cấu hình SUMO
+     */
+    public static HeadlessRunner forConfig(Path sumoCfgPath, VehicleStateCollector.Mode mode) {
+        return forConfig(sumoCfgPath, mode, List.of());
+    }
+
+    /**
+     * Create a runner for a SUMO config with extra SUMO options (e.g. "--scale=2")
+     * Tạo runner cho một file cấu hình SUMO với tùy chọn SUMO bổ sung (ví dụ "--scale=2")
+     */
+    public static HeadlessRunner forConfig(Path sumoCfgPath, VehicleStateCollector.Mode mode, List<String> sumoArgs) {
+        if (!Files.exists(sumoCfgPath)) {
+            throw new IllegalStateException("SUMO config not found: " + sumoCfgPath.toAbsolutePath());
+        }
+        VehicleStateCollector vehicleCollector = new VehicleStateCollector();
+        vehicleCollector.setMode(mode);
+        return new HeadlessRunner(sumoCfgPath.toString(), new TraciBackend(sumoCfgPath, vehicleCollector, sumoArgs));
+    }
+
+    public void setSampleEvery(int sampleEvery) {
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("sampleEvery cannot be negative: " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    public void setRecordPath(Path recordPath) {
+        this.recordPath = recordPath;
+    }
+
+    /**
+     * Start SUMO, step to the end of the configured time window at full speed and close it again
+     * Khởi động SUMO, chạy hết khoảng thời gian đã cấu hình với tốc độ tối đa rồi đóng lại
+     *
+     * @return Summary metrics in a stable order
+     */
+    public Map<String, String> run() {
+        long startNanos = System.nanoTime();
+        backend.start();
+        long steps = 0;
+        long samples = 0;
+        int peakVehicles = 0;
+        double simTime;
+        long loopNanos;
+        SimulationRecorder recorder = null;
+        try {
+            if (recordPath != null) {
+                recorder = new SimulationRecorder(recordPath);
+                recorder.writeHeader(backend);
+            }
+            // Without an end time, run until no vehicles are left or expected
+            // Nếu không có thời gian kết thúc, chạy tới khi không còn xe nào
+            double endTime = backend.getEndTime();
+            long loopStart = System.nanoTime();
+            while (endTime >= 0 ? backend.getTime() < endTime : backend.getMinExpectedNumber() > 0) {
+                backend.step();
+                backend.updateVehicleLifecycle();
+                steps++;
+                if (recorder != null || (sampleEvery > 0 && steps % sampleEvery == 0)) {
+                    builder.clear();
+                    backend.collectVehicleState(builder);
+                    signalCollector.collect(builder);
+                    samples++;
+                    if (recorder != null) {
+                        recorder.record(builder.build(steps, backend.getTime()));
+                    }
+                }
+                peakVehicles = Math.max(peakVehicles, backend.getVehicleStore().size());
+            }
+            loopNanos = System.nanoTime() - loopStart;
+            simTime = backend.getTime();
+        } finally {
+            try {
+                if (recorder != null) {
+                    recorder.close();
+                }
+            } finally {
+                backend.close();
+            }
+        }
+        long wallNanos = System.nanoTime() - startNanos;
+
+        long calls = backend.getCallCount();
+        Map<String, String> metrics = new LinkedHashMap<>();
+        metrics.put("scenario", name);
+        metrics.put("backend", backend.getClass().getSimpleName());
+        if (backend instanceof TraciBackend traci) {
+            metrics.put("mode", traci.getVehicleCollector().getMode().name().toLowerCase(Locale.ROOT));
+        }
+        metrics.put("steps", Long.toString(steps));
+        metrics.put("samples", Long.toString(samples));
+        metrics.put("simTime", format(simTime));
+        metrics.put("wallTimeSec", format(wallNanos / 1e9));
+        metrics.put("loopTimeSec", format(loopNanos / 1e9));
+        metrics.put("stepsPerSec", format(loopNanos > 0 ? steps / (loopNanos / 1e9) : 0));
+        metrics.put("vehiclesDeparted", Long.toString(backend.getDepartedCount()));
+        metrics.put("vehiclesArrived", Long.toString(backend.getArrivedCount()));
+        metrics.put("vehiclesPeak", Integer.toString(peakVehicles));
+        metrics.put("traciCalls", Long.toString(calls));
+        metrics.put("traciCallsPerStep", format(steps > 0 ? (double) calls / steps : 0));
+        return metrics;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Write metrics as key=value lines
+     * Ghi các chỉ số thành các dòng key=value
+     */
+    public static void writeMetrics(Map<String, String> metrics, PrintStream out) {
+        for (Map.Entry<String, String> entry : metrics.entrySet()) {
+            out.println(entry.getKey() + "=" + entry.getValue());
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: HeadlessRunner <file.sumocfg | synthetic:N | file.nvkr>"
+                    + " [--mode subscription|polling] [--sample-every N] [--record file.nvkr]"
+                    + " [--sumo-arg --option=value]... [--out metrics.properties]");
+            System.exit(2);
+        }
+
+        VehicleStateCollector.Mode mode = VehicleStateCollector.Mode.SUBSCRIPTION;
+        int sampleEvery = 1;
+        Path outPath = null;
+        Path recordPath = null;
+        List<String> sumoArgs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--mode" -> mode = VehicleStateCollector.Mode.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--sample-every" -> sampleEvery = Integer.parseInt(value);
+                case "--record" -> recordPath = Path.of(value);
+                case "--sumo-arg" -> sumoArgs.add(value);
+                case "--out" -> outPath = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+
+        // "synthetic:N" runs the in-process backend with N vehicles instead of SUMO, *.nvkr replays a recording
+        // "synthetic:N" chạy backend trong tiến trình với N xe thay cho SUMO, *.nvkr phát lại một file ghi
+        HeadlessRunner runner;
+        if (args[0].startsWith("synthetic:")) {
+            runner = new HeadlessRunner(args[0],
+                    new SyntheticBackend(Integer.parseInt(args[0].substring("synthetic:".length()))));
+        } else if (args[0].endsWith(".nvkr")) {
+            runner = new HeadlessRunner(args[0], new ReplayBackend(Path.of(args[0])));
+        } else {
+            runner = forConfig(Path.of(args[0]), mode, sumoArgs);
+        }
+        runner.setSampleEvery(sampleEvery);
+        runner.setRecordPath(recordPath);
+
+        Map<String, String> metrics = runner.run();
+        writeMetrics(metrics, System.out);
+        if (outPath != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(outPath), true, "UTF-8")) {
+                writeMetrics(metrics, out);
+            } catch (IOException e) {
+                System.err.println("HeadlessRunner: could not write " + outPath + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+}
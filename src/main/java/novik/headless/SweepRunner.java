@@ -0,0 +1,291 @@
+package novik.headless;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs many scenario variants in parallel, each in its own JVM with its own SUMO, and aggregates the metrics
+ * Chạy song song nhiều biến thể kịch bản, mỗi biến thể trong một JVM riêng với SUMO riêng, rồi tổng hợp chỉ số
+ *
+ * libtraci keeps one global connection per process, so variants cannot share a JVM. Every worker
+ * runs {@link HeadlessRunner} with the variant's options; its metrics are read back from stdout as soon
+ * as it ends, and the combined output of the process goes to a log file per variant.
+ * libtraci giữ một kết nối toàn cục cho mỗi tiến trình, nên các biến thể không thể dùng chung JVM. Mỗi
+ * worker chạy {@link HeadlessRunner} với tùy chọn của biến thể; chỉ số được đọc lại từ stdout ngay khi nó
+ * kết thúc, và toàn bộ output của tiến trình được ghi vào một file log cho mỗi biến thể.
+ *
+ * Sweep file: one variant per line, {@code <name> <scenario> [HeadlessRunner options...]}, '#' starts a comment.
+ * Usage: {@code java -cp target/classes:libs/libtraci-1.25.0.jar novik.headless.SweepRunner sweep.txt
+ * [--workers N] [--out report.csv] [--logs dir] [--jvm-arg -Xmx2g]...}
+ */
+public class SweepRunner {
+    /**
+     * One variant of the sweep: a name and the arguments passed to {@link HeadlessRunner}
+     * Một biến thể của sweep: tên và các tham số truyền cho {@link HeadlessRunner}
+     */
+    public static final class Variant {
+        private final String name;
+        private final List<String> args;
+
+        public Variant(String name, List<String> args) {
+            if (name == null || name.isBlank() || args.isEmpty()) {
+                throw new IllegalArgumentException("Variant needs a name and a scenario");
+            }
+            this.name = name;
+            this.args = List.copyOf(args);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getArgs() {
+            return args;
+        }
+    }
+
+    private final List<Variant> variants;
+    private final int workers;
+    private final Path logDir;
+    private final List<String> jvmArgs;
+
+    /**
+     * Constructor
+     * @param variants Variants to run
+     * @param workers Number of worker JVMs running at the same time
+     * @param logDir Directory for the per-variant logs (created if missing)
+     * @param jvmArgs Extra options for the worker JVMs (e.g. -Xmx)
+     */
+    public SweepRunner(List<Variant> variants, int workers, Path logDir, List<String> jvmArgs) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Workers must be positive: " + workers);
+        }
+        this.variants = List.copyOf(variants);
+        this.workers = workers;
+        this.logDir = logDir;
+        this.jvmArgs = List.copyOf(jvmArgs);
+    }
+
+    /**
+     * Read a sweep file
+     * Đọc file sweep
+     */
+    public static List<Variant> parse(Path sweepFile) throws IOException {
+        List<Variant> result = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        for (String line : Files.readAllLines(sweepFile, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> tokens = Arrays.asList(line.split("\\s+"));
+            if (tokens.size() < 2) {
+                throw new IllegalArgumentException("Variant without scenario: " + line);
+            }
+            if (!names.add(tokens.get(0))) {
+                throw new IllegalArgumentException("Duplicate variant name: " + tokens.get(0));
+            }
+            result.add(new Variant(tokens.get(0), tokens.subList(1, tokens.size())));
+        }
+        return result;
+    }
+
+    /**
+     * Run all variants and return their metrics in sweep order
+     * Chạy tất cả biến thể và trả về chỉ số theo thứ tự trong sweep
+     *
+     * @param onResult Called with the metrics of each variant as soon as it ends (in completion order)
+     */
+    public List<Map<String, String>> run(Consumer<Map<String, String>> onResult) {
+        try {
+            Files.createDirectories(logDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create log directory " + logDir, e);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+        List<Map<String, String>> results = new ArrayList<>();
+        for (int i = 0; i < variants.size(); i++) {
+            int index = i;
+            results.add(null);
+            completion.submit(() -> {
+                results.set(index, runVariant(variants.get(index)));
+                return index;
+            });
+        }
+        try {
+            for (int done = 0; done < variants.size(); done++) {
+                onResult.accept(results.get(completion.take().get()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sweep worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Run one variant in a new JVM and collect the key=value lines it prints
+     * Chạy một biến thể trong JVM mới và thu các dòng key=value mà nó in ra
+     */
+    private Map<String, String> runVariant(Variant variant) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(HeadlessRunner.class.getName());
+        command.addAll(variant.getArgs());
+
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("variant", variant.getName());
+        Map<String, String> metrics = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        int exitCode;
+        Path log = logDir.resolve(variant.getName() + ".log");
+        try (PrintWriter logOut = new PrintWriter(Files.newBufferedWriter(log, StandardCharsets.UTF_8))) {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    logOut.println(line);
+                    int eq = line.indexOf('=');
+                    if (eq > 0 && line.substring(0, eq).matches("\\w+")) {
+                        metrics.put(line.substring(0, eq), line.substring(eq + 1));
+                    }
+                }
+            }
+            exitCode = process.waitFor();
+        } catch (IOException e) {
+            System.err.println("SweepRunner: " + variant.getName() + ": " + e.getMessage());
+            exitCode = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+
+        result.put("status", exitCode == 0 ? "ok" : "failed");
+        result.put("exitCode", Integer.toString(exitCode));
+        result.put("runTimeSec", format((System.nanoTime() - start) / 1e9));
+        if (exitCode == 0) {
+            result.putAll(metrics);
+        }
+        return result;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Write all results as CSV; columns are the union of all metric names in order of appearance
+     * Ghi tất cả kết quả thành CSV; các cột là hợp của mọi tên chỉ số theo thứ tự xuất hiện
+     */
+    public static void writeReport(List<Map<String, String>> results, PrintStream out) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (Map<String, String> result : results) {
+            columns.addAll(result.keySet());
+        }
+        out.println(String.join(",", columns.stream().map(SweepRunner::csv).toList()));
+        for (Map<String, String> result : results) {
+            List<String> row = new ArrayList<>();
+            for (String column : columns) {
+                row.add(csv(result.getOrDefault(column, "")));
+            }
+            out.println(String.join(",", row));
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SweepRunner <sweep.txt> [--workers N] [--out report.csv] [--logs dir]"
+                    + " [--jvm-arg option]...");
+            System.exit(2);
+        }
+
+        // One worker per core by default; each worker is one JVM plus one SUMO process
+        // Mặc định mỗi lõi một worker; mỗi worker gồm một JVM và một tiến trình SUMO
+        int workers = Runtime.getRuntime().availableProcessors();
+        Path outPath = Path.of("sweep-report.csv");
+        Path logDir = Path.of("sweep-logs");
+        List<String> jvmArgs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--workers" -> workers = Integer.parseInt(value);
+                case "--out" -> outPath = Path.of(value);
+                case "--logs" -> logDir = Path.of(value);
+                case "--jvm-arg" -> jvmArgs.add(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+
+        List<Variant> variants = parse(Path.of(args[0]));
+        System.out.println("SweepRunner: " + variants.size() + " variants on " + workers + " workers");
+        long start = System.nanoTime();
+        int[] done = {0};
+        double[] runTimes = {0};
+        List<Map<String, String>> results = new SweepRunner(variants, workers, logDir, jvmArgs).run(result -> {
+            done[0]++;
+            runTimes[0] += Double.parseDouble(result.get("runTimeSec"));
+            System.out.println("[" + done[0] + "/" + variants.size() + "] " + result.get("variant") + " "
+                    + result.get("status") + " in " + result.get("runTimeSec") + " s"
+                    + (result.containsKey("stepsPerSec") ? ", " + result.get("stepsPerSec") + " steps/s" : ""));
+        });
+        double wall = (System.nanoTime() - start) / 1e9;
+
+        try (PrintStream out = new PrintStream(Files.newOutputStream(outPath), true, "UTF-8")) {
+            writeReport(results, out);
+        }
+        long failed = results.stream().filter(r -> !"ok".equals(r.get("status"))).count();
+        // Sum of run times / wall time = how many runs were effectively in parallel
+        // Tổng thời gian chạy / thời gian thực = số lượt chạy song song thực tế
+        System.out.println("SweepRunner: wall " + format(wall) + " s, run time " + format(runTimes[0])
+                + " s, parallelism " + format(wall > 0 ? runTimes[0] / wall : 0) + ", failed " + failed
+                + ", report " + outPath);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,27 @@
+package novik.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around loading the lane geometry and computing the map bounds
+ * Sự kiện JFR quanh việc nạp hình học lane và tính biên bản đồ
+ */
+@Name("novik.NetworkLoad")
+@Label("Network Load")
+@Category({"Novik", "Render"})
+@Description("Lane geometry loaded from the backend and map bounds computed")
+@StackTrace(false)
+public class NetworkLoadEvent extends jdk.jfr.Event {
+    @Label("Lanes")
+    public int lanes;
+
+    @Label("Points")
+    public int points;
+
+    @Label("Backend Calls")
+    public long backendCalls;
+}
@@ -0,0 +1,30 @@
+package novik.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around one render phase on the JavaFX thread (a layer update or rebuild)
+ * Sự kiện JFR quanh một pha vẽ trên luồng JavaFX (update hoặc rebuild một layer)
+ */
+@Name("novik.RenderPhase")
+@Label("Render Phase")
+@Category({"Novik", "Render"})
+@Description("Update or rebuild of a map layer on the JavaFX thread")
+@StackTrace(false)
+public class RenderPhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    @Description("Layer and operation, e.g. cars.update")
+    public String phase;
+
+    @Label("Items")
+    @Description("Vehicles, lights or lanes handled by the layer")
+    public int items;
+
+    @Label("Drawn")
+    @Description("Items drawn in this phase")
+    public int drawn;
+}
@@ -0,0 +1,25 @@
+package novik.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around one step of the simulation thread (backend step plus vehicle bookkeeping)
+ * Sự kiện JFR quanh một bước của luồng mô phỏng (bước backend cộng việc theo dõi xe)
+ */
+@Name("novik.SimulationStep")
+@Label("Simulation Step")
+@Category({"Novik", "Simulation"})
+@Description("Backend step and departure/arrival bookkeeping on the simulation thread")
+@StackTrace(false)
+public class SimulationStepEvent extends jdk.jfr.Event {
+    @Label("Step")
+    public long step;
+
+    @Label("Backend Calls")
+    @Description("Round trips to the simulator made during the step")
+    public long backendCalls;
+}
@@ -0,0 +1,28 @@
+package novik.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around reading the vehicle and signal state of a step into a snapshot
+ * Sự kiện JFR quanh việc đọc trạng thái xe và đèn của một bước vào snapshot
+ */
+@Name("novik.StateSync")
+@Label("State Sync")
+@Category({"Novik", "Simulation"})
+@Description("Vehicle and signal state read from the backend into a snapshot (and recorded, if recording)")
+@StackTrace(false)
+public class StateSyncEvent extends jdk.jfr.Event {
+    @Label("Vehicles")
+    public int vehicles;
+
+    @Label("Signals")
+    public int signals;
+
+    @Label("Backend Calls")
+    @Description("Round trips to the simulator made while reading the state")
+    public long backendCalls;
+}
@@ -0,0 +1,22 @@
+package novik.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around one SUMO step (the step inside SUMO plus its TraCI round trip)
+ * Sự kiện JFR quanh một bước SUMO (bước bên trong SUMO cộng lượt gọi TraCI)
+ */
+@Name("novik.SumoStep")
+@Label("SUMO Step")
+@Category({"Novik", "Simulation"})
+@Description("One simulation step inside SUMO, including the TraCI round trip")
+@StackTrace(false)
+public class SumoStepEvent extends jdk.jfr.Event {
+    @Label("Step")
+    @Description("Number of SUMO steps before this one")
+    public long step;
+}
@@ -1,37 +1,127 @@
 package novik.layer;
 
-import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
 import javafx.scene.layout.Pane;
+import novik.backend.SimulationBackend;
+import novik.backend.TraciBackend;
+import novik.jfr.RenderPhaseEvent;
 import novik.model.Car;
+import novik.render.CanvasVehicleRenderer;
+import novik.render.DensityVehicleRenderer;
+import novik.render.LevelOfDetail;
+import novik.render.NodeVehicleRenderer;
+import novik.render.ShapeVehicleRenderer;
+import novik.render.SnapshotInterpolator;
+import novik.render.VehicleRenderer;
+import novik.sim.SimulationSnapshot;
+import novik.sim.SnapshotBuffer;
+import novik.sim.VehiclePositions;
 import novik.util.MapUtil;
-import org.eclipse.sumo.libtraci.TraCIPosition;
-import org.eclipse.sumo.libtraci.Vehicle;
+import novik.util.SpatialGrid;
 
 import java.util.*;
+import java.util.function.LongSupplier;
 
 /**
  * Layer responsible for displaying and updating cars
  * Lớp chịu trách nhiệm hiển thị và cập nhật xe
+ *
+ * Cars are drawn from the latest {@link SimulationSnapshot}; this layer makes no TraCI calls
+ * when it is fed by a {@link SnapshotBuffer}.
+ * Xe được vẽ từ {@link SimulationSnapshot} mới nhất; lớp này không gọi TraCI khi được cấp
+ * dữ liệu bởi {@link SnapshotBuffer}.
  */
 public class CarLayer extends Layer {
-    // Map to store cars with their ID
-    // Bản đồ lưu trữ các xe với ID
-    private final Map<String, Car> cars;
-    
+    /**
+     * How vehicles are drawn
+     * Cách vẽ xe
+     */
+    public enum RenderMode {
+        // One ImageView node per vehicle
+        // Một node ImageView cho mỗi xe
+        NODE,
+        // All vehicles drawn in one pass on a canvas
+        // Tất cả xe được vẽ trong một lượt trên canvas
+        CANVAS
+    }
+
     // Map to store different vehicle type images
     // Bản đồ lưu trữ hình ảnh cho từng loại xe
     private final Map<String, Image> carImages;
 
+    // Source of snapshots (null = collect from the backend on the calling thread)
+    // Nguồn snapshot (null = tự thu thập từ backend trên luồng gọi)
+    private final SnapshotBuffer snapshots;
+    private final SimulationBackend backend;
+    private SimulationSnapshot.Builder directBuilder;
+    private long directSequence = 0;
+
+    // Renderer selected at startup
+    // Renderer được chọn khi khởi động
+    private final RenderMode renderMode;
+    private final VehicleRenderer renderer;
+
+    // Cheaper renderers for the view scales where sprites are too small to read; off until a level of detail is set
+    // Các renderer rẻ hơn cho những tỉ lệ mà hình xe quá nhỏ để nhìn rõ; tắt cho tới khi đặt mức chi tiết
+    private LevelOfDetail levelOfDetail;
+    private LevelOfDetail.Tier tier = LevelOfDetail.Tier.SPRITE;
+    private VehicleRenderer shapeRenderer;
+    private VehicleRenderer densityRenderer;
+
+    // Extra screen margin so sprites at the viewport border are not culled too early (px)
+    // Lề màn hình thêm để xe ở mép khung nhìn không bị loại quá sớm (pixel)
+    private static final double CULL_MARGIN = 50.0;
+
+    // Last snapshot and view drawn, to skip frames where nothing changed
+    // Snapshot và khung nhìn đã vẽ gần nhất, để bỏ qua khung hình không có thay đổi
+    private SimulationSnapshot lastSnapshot;
+    private long lastTransformVersion = -1;
+
+    // Smooth motion between snapshots; off until an interval source is set
+    // Chuyển động mượt giữa các snapshot; tắt cho tới khi có nguồn khoảng thời gian
+    private final SnapshotInterpolator interpolator = new SnapshotInterpolator();
+    private LongSupplier snapshotInterval;
+
+    // Spatial index over the vehicle positions of the last snapshot
+    // Chỉ mục không gian theo vị trí xe của snapshot gần nhất
+    private SpatialGrid vehicleIndex;
+    private final double[] viewBounds = new double[4];
+    private int[] visible = new int[64];
+    private int visibleCount = 0;
+
     /**
-     * Constructor
+     * Constructor for single-threaded use: cars are read from SUMO on every update
+     * Constructor dùng cho chế độ một luồng: xe được đọc từ SUMO mỗi lần update
      * @param pane The pane where cars will be displayed
      */
     public CarLayer(Pane pane) {
+        this(pane, null, RenderMode.NODE, new TraciBackend());
+    }
+
+    public CarLayer(Pane pane, SnapshotBuffer snapshots, RenderMode renderMode) {
+        this(pane, snapshots, renderMode, new TraciBackend());
+    }
+
+    /**
+     * Constructor
+     * @param pane The pane where cars will be displayed
+     * @param snapshots Buffer filled by the simulation thread
+     * @param renderMode Node per vehicle or one batched canvas
+     * @param backend Backend used to add vehicles (and to read them when there is no snapshot buffer)
+     */
+    public CarLayer(Pane pane, SnapshotBuffer snapshots, RenderMode renderMode, SimulationBackend backend) {
         super(pane);
-        this.cars = new HashMap<>();
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
         this.carImages = new HashMap<>();
+        this.snapshots = snapshots;
+        this.backend = backend;
         loadCarImages();
+        this.renderMode = renderMode;
+        this.renderer = renderMode == RenderMode.CANVAS
+                ? new CanvasVehicleRenderer(pane, carImages)
+                : new NodeVehicleRenderer(pane, carImages);
     }
 
     /**
@@ -54,103 +144,170 @@ public class CarLayer extends Layer {
     }
 
     /**
-     * Create a new car and add it to the layer
-     * Tạo xe mới và thêm vào lớp
-     * @param carId Vehicle ID
-     * @param type Vehicle type (car, bus, truck)
+     * Interpolate vehicle poses between snapshots, so motion is smooth whatever the step frequency
+     * Nội suy tư thế xe giữa các snapshot, để chuyển động mượt bất kể tần số bước
+     *
+     * @param snapshotInterval Expected nanoseconds until the next snapshot (0 = show snapshots as they are),
+     *                         or null to turn interpolation off
      */
-    private Car createCar(String carId, String type) {
-        // Get image for this vehicle type, default to "car" if not found
-        // Lấy hình ảnh cho loại xe này, mặc định là "car" nếu không tìm thấy
-        Image img = carImages.getOrDefault(type, carImages.get("car"));
-        Car car = new Car(carId, type, img);
-        cars.put(carId, car);
-        pane.getChildren().add(car.getView());
-        return car;
+    public void setInterpolation(LongSupplier snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        interpolator.reset();
     }
 
     /**
-     * Update car position and rotation from SUMO
-     * Cập nhật vị trí và góc xoay của xe từ SUMO
+     * Switch between sprites, shapes and a density raster depending on the view scale
+     * Chuyển giữa hình xe, hình khối và lưới mật độ tùy theo tỉ lệ khung nhìn
+     *
+     * @param levelOfDetail Scale thresholds of the tiers, or null to always draw sprites
      */
-    private void updateCarFromSumo(Car car) {
-        String carId = car.getId();
-        
-        // Get position from SUMO
-        // Lấy vị trí từ SUMO
-        TraCIPosition sumoPos = Vehicle.getPosition(carId, false);
-        Point2D javaPos = MapUtil.worldToScreen(
-            new Point2D(sumoPos.getX(), sumoPos.getY())
-        );
-        
-        // Get angle from SUMO
-        // Lấy góc quay từ SUMO
-        double angle = Vehicle.getAngle(carId);
-        
-        // Update car
-        // Cập nhật xe
-        car.update(javaPos, angle);
+    public void setLevelOfDetail(LevelOfDetail levelOfDetail) {
+        activeRenderer().clear();
+        this.levelOfDetail = levelOfDetail;
+        tier = LevelOfDetail.Tier.SPRITE;
+        lastTransformVersion = -1;
     }
 
     /**
-     * Remove a car from the layer
-     * Xóa xe khỏi lớp
+     * Get the tier used by the last update
+     * Lấy mức vẽ dùng ở lần update gần nhất
      */
-    private void removeCar(Car car) {
-        pane.getChildren().remove(car.getView());
-        cars.remove(car.getId());
+    public LevelOfDetail.Tier getTier() {
+        return tier;
     }
 
     @Override
     public void update() {
-        // 1. Get all active vehicle IDs from SUMO
-        // 1. Lấy tất cả ID xe đang hoạt động từ SUMO
-        List<String> activeIds = Vehicle.getIDList();
-        Set<String> activeCarIds = new HashSet<>(activeIds);
-        Set<String> newCarIds = new HashSet<>(activeCarIds);
-
-        // 2. Update existing cars and remove inactive ones
-        // 2. Cập nhật các xe hiện có và xóa xe không còn hoạt động
-        List<Car> carsToRemove = new ArrayList<>();
-        for (Map.Entry<String, Car> entry : cars.entrySet()) {
-            String carId = entry.getKey();
-            Car car = entry.getValue();
-
-            if (activeCarIds.contains(carId)) {
-                // Car still exists - update it
-                // Xe vẫn còn - cập nhật nó
-                newCarIds.remove(carId);
-                updateCarFromSumo(car);
-            } else {
-                // Car no longer exists - mark for removal
-                // Xe không còn - đánh dấu để xóa
-                carsToRemove.add(car);
+        RenderPhaseEvent event = new RenderPhaseEvent();
+        event.begin();
+        boolean drawn = updateVehicles();
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "cars.update";
+            event.items = lastSnapshot != null ? lastSnapshot.getVehicleCount() : 0;
+            event.drawn = drawn ? visibleCount : 0;
+            event.commit();
+        }
+    }
+
+    /**
+     * Draw the vehicles of the latest snapshot inside the viewport
+     * Vẽ các xe của snapshot mới nhất nằm trong khung nhìn
+     *
+     * @return Whether anything was drawn
+     */
+    private boolean updateVehicles() {
+        SimulationSnapshot snapshot = snapshots != null ? snapshots.latest() : collectDirect();
+        if (snapshot == null) {
+            return false;
+        }
+        long transformVersion = MapUtil.getTransformVersion();
+        // Vehicles keep moving between snapshots while an interpolation is in progress
+        // Xe tiếp tục di chuyển giữa các snapshot khi đang nội suy
+        boolean moved = snapshotInterval != null
+                ? interpolator.advance(snapshot, System.nanoTime(), snapshotInterval.getAsLong())
+                : snapshot != lastSnapshot;
+        if (!moved && transformVersion == lastTransformVersion) {
+            return false;
+        }
+
+        // Re-index vehicle positions only when a new step arrived
+        // Chỉ đánh chỉ mục lại vị trí xe khi có bước mới
+        if (snapshot != lastSnapshot) {
+            if (vehicleIndex == null) {
+                vehicleIndex = MapUtil.createGrid();
+            }
+            vehicleIndex.clear();
+            for (int i = 0; i < snapshot.getVehicleCount(); i++) {
+                vehicleIndex.insertPoint(i, snapshot.getX(i), snapshot.getY(i));
             }
         }
-        
-        // Remove all inactive cars
-        // Xóa tất cả xe không còn hoạt động
-        for (Car car : carsToRemove) {
-            removeCar(car);
+        lastSnapshot = snapshot;
+        lastTransformVersion = transformVersion;
+
+        // Find the vehicles inside the viewport and draw only those
+        // Tìm các xe trong khung nhìn và chỉ vẽ các xe đó
+        visibleCount = 0;
+        MapUtil.getVisibleWorldBounds(CULL_MARGIN, viewBounds);
+        vehicleIndex.query(viewBounds[0], viewBounds[1], viewBounds[2], viewBounds[3], i -> {
+            if (visibleCount == visible.length) {
+                visible = Arrays.copyOf(visible, visibleCount * 2);
+            }
+            visible[visibleCount++] = i;
+        });
+        VehiclePositions positions = snapshotInterval != null ? interpolator : snapshot;
+        selectTier().render(snapshot, positions, visible, visibleCount);
+        return true;
+    }
+
+    /**
+     * Pick the tier for the current scale and visible vehicles, clearing what the previous tier drew
+     * when it changes
+     * Chọn mức vẽ cho tỉ lệ hiện tại và các xe đang thấy, xóa những gì mức trước đã vẽ khi có thay đổi
+     */
+    private VehicleRenderer selectTier() {
+        LevelOfDetail.Tier next = levelOfDetail != null
+                ? levelOfDetail.tierFor(MapUtil.getScale(), visibleCount,
+                        MapUtil.getCanvasWidth() * MapUtil.getCanvasHeight(), tier)
+                : LevelOfDetail.Tier.SPRITE;
+        if (next != tier) {
+            activeRenderer().clear();
+            tier = next;
         }
+        return activeRenderer();
+    }
 
-        // 3. Create and initialize new cars
-        // 3. Tạo và khởi tạo xe mới
-        for (String carId : newCarIds) {
-            // Get vehicle type from SUMO
-            // Lấy loại xe từ SUMO
-            String type = Vehicle.getTypeID(carId);
-            System.out.println("Creating new car: ID=" + carId + ", Type=" + type);
-            Car car = createCar(carId, type);
-            updateCarFromSumo(car);
-            System.out.println("Car created and added to display");
+    /**
+     * Renderer of the current tier, created on first use
+     * Renderer của mức vẽ hiện tại, được tạo khi dùng lần đầu
+     */
+    private VehicleRenderer activeRenderer() {
+        switch (tier) {
+            case SHAPE:
+                if (shapeRenderer == null) {
+                    shapeRenderer = new ShapeVehicleRenderer(pane);
+                }
+                return shapeRenderer;
+            case DENSITY:
+                if (densityRenderer == null) {
+                    densityRenderer = new DensityVehicleRenderer(pane, levelOfDetail.getCellSize());
+                }
+                return densityRenderer;
+            default:
+                return renderer;
         }
     }
 
+    /**
+     * Read vehicles from SUMO on the calling thread (used when there is no simulation thread)
+     * Đọc xe từ SUMO trên luồng gọi (dùng khi không có luồng mô phỏng)
+     */
+    private SimulationSnapshot collectDirect() {
+        if (directBuilder == null) {
+            directBuilder = new SimulationSnapshot.Builder();
+        }
+        directBuilder.clear();
+        backend.updateVehicleLifecycle();
+        backend.collectVehicleState(directBuilder);
+        return directBuilder.build(++directSequence, Double.NaN);
+    }
+
+    /**
+     * Clear all drawn cars (keeps the renderer's own canvas in the pane)
+     * Xóa tất cả xe đã vẽ (giữ lại canvas của renderer trong pane)
+     */
+    @Override
+    public void clear() {
+        activeRenderer().clear();
+    }
+
     @Override
     public void rebuild() {
         clear();
-        cars.clear();
+        lastSnapshot = null;
+        lastTransformVersion = -1;
+        vehicleIndex = null;
+        interpolator.reset();
         update();
     }
 
@@ -159,28 +316,41 @@ public class CarLayer extends Layer {
      * Lấy số lượng xe đang được hiển thị
      */
     public int getCarCount() {
-        return cars.size();
+        return activeRenderer().getRenderedCount();
+    }
+
+    /**
+     * Get the render mode selected at startup
+     * Lấy chế độ vẽ được chọn khi khởi động
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
     }
 
     /**
-     * Get a car by ID
-     * Lấy xe theo ID
+     * Get a car by ID (only available in node mode)
+     * Lấy xe theo ID (chỉ có trong chế độ node)
      */
     public Car getCar(String carId) {
-        return cars.get(carId);
+        return renderer instanceof NodeVehicleRenderer ? ((NodeVehicleRenderer) renderer).getCar(carId) : null;
     }
 
     /**
-     * Get all cars
-     * Lấy tất cả xe
+     * Get all cars (only available in node mode)
+     * Lấy tất cả xe (chỉ có trong chế độ node)
      */
     public Collection<Car> getAllCars() {
-        return cars.values();
+        return renderer instanceof NodeVehicleRenderer
+                ? ((NodeVehicleRenderer) renderer).getAllCars()
+                : Collections.emptyList();
     }
 
     /**
-     * Add a new vehicle to SUMO and update display
-     * Thêm xe mới vào SUMO và cập nhật hiển thị
+     * Add a new vehicle to the simulation and update display
+     * Thêm xe mới vào mô phỏng và cập nhật hiển thị
+     *
+     * Calls the backend directly, so it must run on the thread that drives it.
+     * Gọi backend trực tiếp, nên phải chạy trên luồng điều khiển nó.
      * @param type Vehicle type (car, bus, truck)
      * @param route Route ID (r1, r2, etc.)
      */
@@ -195,13 +365,11 @@ public class CarLayer extends Layer {
             System.out.println("Type: " + type);
             System.out.println("Route: " + route);
             
-            // Add vehicle to SUMO via TraCI
-            // Thêm xe vào SUMO qua TraCI
-            // Correct parameter order: vehicleId, routeId, typeId, depart, departLane, departPos, departSpeed
-            Vehicle.add(vehicleId, route, type, "now", "first", "base", "max");
+            // Add vehicle through the backend (SUMO via TraCI, or the synthetic network)
+            // Thêm xe qua backend (SUMO qua TraCI, hoặc mạng lưới tự sinh)
+            backend.addVehicle(vehicleId, route, type);
             
             System.out.println("Vehicle added successfully!");
-            System.out.println("Current vehicle count in SUMO: " + Vehicle.getIDList().size());
             
             // Update will automatically detect and add the new vehicle
             // Update sẽ tự động phát hiện và thêm xe mới
@@ -1,39 +1,207 @@
 package novik.layer;
 
-import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Polyline;
 import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+import novik.jfr.RenderPhaseEvent;
+import novik.sim.SimulationSnapshot;
+import novik.sim.SnapshotBuffer;
 import novik.util.MapUtil;
 
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Layer for displaying road lanes
  * Lớp hiển thị làn đường
+ *
+ * Lane geometry never changes, so the whole network is rasterized once into a single canvas that JavaFX
+ * only blits on each pulse. It is redrawn only when the view transform or the lane style changes.
+ * When snapshots carry lane congestion levels, lanes are coloured by level and only the lanes whose
+ * level changed are repainted, clipped to their screen box together with the lanes they overlap.
+ * Hình học làn đường không thay đổi, nên toàn bộ mạng lưới được vẽ một lần vào một canvas mà JavaFX
+ * chỉ cần sao chép mỗi pulse. Chỉ vẽ lại khi phép biến đổi hoặc kiểu làn đường thay đổi.
+ * Khi snapshot có mức tắc nghẽn của lane, lane được tô theo mức và chỉ những lane đổi mức mới được
+ * vẽ lại, cắt theo hộp màn hình của chúng cùng với các lane chồng lên.
  */
 public class LaneLayer extends Layer {
     private static final double LANE_STROKE_WIDTH = 2.0;
     private static final Color LANE_COLOR = Color.LIGHTGRAY;
+    // Colour per congestion level of LaneMetric, from free flow to jammed
+    // Màu theo mức tắc nghẽn của LaneMetric, từ thông thoáng tới kẹt cứng
+    private static final Color[] LEVEL_COLORS = {
+            Color.rgb(46, 125, 50), Color.rgb(156, 204, 101), Color.rgb(253, 216, 53),
+            Color.rgb(251, 140, 0), Color.rgb(211, 47, 47)
+    };
+    // Above this share of changed lanes a full redraw is cheaper than clipped repaints
+    // Trên tỉ lệ lane thay đổi này, vẽ lại toàn bộ rẻ hơn vẽ lại từng vùng
+    private static final double FULL_REDRAW_RATIO = 0.25;
+
+    private Color laneColor = LANE_COLOR;
+    private double laneStrokeWidth = LANE_STROKE_WIDTH;
+
+    // Cached raster of the lane network and the transform it was drawn with
+    // Ảnh raster đã cache của mạng lưới và phép biến đổi dùng để vẽ nó
+    private Canvas raster;
+    private long rasterTransformVersion = -1;
+
+    // Reused screen coordinate buffers for one lane
+    // Bộ đệm tọa độ màn hình dùng lại cho một lane
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+
+    // Source of lane congestion levels (null = lanes keep the plain colour)
+    // Nguồn mức tắc nghẽn của lane (null = lane giữ màu thường)
+    private final SnapshotBuffer snapshots;
+    private SimulationSnapshot lastSnapshot;
+    // Level each lane is painted with (-1 = plain colour), and lanes whose level changed
+    // Mức mà mỗi lane đang được tô (-1 = màu thường), và các lane đã đổi mức
+    private byte[] paintedLevels = new byte[0];
+    private int[] changed = new int[64];
+    private int changedCount = 0;
+    private int[] nearby = new int[64];
+    private int nearbyCount = 0;
 
     /**
      * Constructor
      * @param pane The pane where lanes will be displayed
      */
     public LaneLayer(Pane pane) {
+        this(pane, null);
+    }
+
+    /**
+     * Constructor
+     * @param pane The pane where lanes will be displayed
+     * @param snapshots Buffer whose snapshots carry lane congestion levels, or null for plain lanes
+     */
+    public LaneLayer(Pane pane, SnapshotBuffer snapshots) {
         super(pane);
+        this.snapshots = snapshots;
     }
 
     @Override
     public void update() {
-        // Lanes are static, no need to update
-        // Làn đường là tĩnh, không cần cập nhật
+        if (!MapUtil.boundsReady) {
+            return;
+        }
+        SimulationSnapshot snapshot = snapshots != null ? snapshots.latest() : null;
+        boolean newLevels = snapshot != null && snapshot != lastSnapshot && applyLevels(snapshot) > 0;
+        lastSnapshot = snapshot != null ? snapshot : lastSnapshot;
+
+        // Geometry is static; redraw everything only when the view transform changed
+        // Hình học là tĩnh; chỉ vẽ lại toàn bộ khi phép biến đổi thay đổi
+        if (MapUtil.getTransformVersion() != rasterTransformVersion) {
+            rasterize();
+        } else if (newLevels) {
+            RenderPhaseEvent event = new RenderPhaseEvent();
+            event.begin();
+            int drawn = repaintChanged();
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = "lanes.recolor";
+                event.items = changedCount;
+                event.drawn = drawn;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Take over the lane levels of a snapshot and list the lanes whose level changed
+     * Nhận mức lane của một snapshot và liệt kê các lane đã đổi mức
+     *
+     * @return Number of changed lanes
+     */
+    private int applyLevels(SimulationSnapshot snapshot) {
+        int lanes = MapUtil.getLaneCount();
+        if (paintedLevels.length != lanes) {
+            paintedLevels = new byte[lanes];
+            Arrays.fill(paintedLevels, (byte) -1);
+        }
+        changedCount = 0;
+        int n = Math.min(lanes, snapshot.getLaneLevelCount());
+        for (int lane = 0; lane < n; lane++) {
+            byte level = (byte) snapshot.getLaneLevel(lane);
+            if (level != paintedLevels[lane]) {
+                paintedLevels[lane] = level;
+                if (changedCount == changed.length) {
+                    changed = Arrays.copyOf(changed, changedCount * 2);
+                }
+                changed[changedCount++] = lane;
+            }
+        }
+        return changedCount;
+    }
+
+    /**
+     * Repaint the changed lanes: clear each one's screen box and restroke every lane inside it, clipped to the box
+     * Vẽ lại các lane đã đổi: xóa hộp màn hình của từng lane và vẽ lại mọi lane trong hộp, cắt theo hộp
+     *
+     * @return Number of lane strokes drawn
+     */
+    private int repaintChanged() {
+        if (raster == null || changedCount > MapUtil.getLaneCount() * FULL_REDRAW_RATIO) {
+            return rasterize();
+        }
+        GraphicsContext gc = raster.getGraphicsContext2D();
+        double width = raster.getWidth();
+        double height = raster.getHeight();
+        double pad = laneStrokeWidth;
+        int drawn = 0;
+        for (int c = 0; c < changedCount; c++) {
+            int n = projectLane(changed[c]);
+            if (n == 0) {
+                continue;
+            }
+            double x0 = xs[0], y0 = ys[0], x1 = xs[0], y1 = ys[0];
+            for (int i = 1; i < n; i++) {
+                x0 = Math.min(x0, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                x1 = Math.max(x1, xs[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+            x0 -= pad;
+            y0 -= pad;
+            x1 += pad;
+            y1 += pad;
+            if (x1 < 0 || y1 < 0 || x0 > width || y0 > height) {
+                continue;
+            }
+
+            // Lanes sharing the box (found through the spatial index) are restroked so overlaps stay intact
+            // Các lane chung hộp (tìm qua chỉ mục không gian) được vẽ lại để phần chồng lên vẫn đúng
+            nearbyCount = 0;
+            MapUtil.forEachLaneIn(MapUtil.screenToWorldX(x0), MapUtil.screenToWorldY(y1),
+                    MapUtil.screenToWorldX(x1), MapUtil.screenToWorldY(y0), lane -> {
+                        if (nearbyCount == nearby.length) {
+                            nearby = Arrays.copyOf(nearby, nearbyCount * 2);
+                        }
+                        nearby[nearbyCount++] = lane;
+                    });
+            gc.save();
+            gc.beginPath();
+            gc.rect(x0, y0, x1 - x0, y1 - y0);
+            gc.clip();
+            gc.clearRect(x0, y0, x1 - x0, y1 - y0);
+            applyStrokeStyle(gc);
+            for (int i = 0; i < nearbyCount; i++) {
+                if (strokeLane(gc, nearby[i])) {
+                    drawn++;
+                }
+            }
+            gc.restore();
+        }
+        return drawn;
     }
 
     @Override
     public void rebuild() {
         clear();
+        raster = null;
+        rasterTransformVersion = -1;
         
         // Check if bounds are ready
         // Kiểm tra xem bounds đã sẵn sàng chưa
@@ -42,62 +210,109 @@ public class LaneLayer extends Layer {
             return;
         }
 
-        // Get all lane polylines in screen coordinates
-        // Lấy tất cả polyline làn đường theo tọa độ màn hình
-        List<List<Point2D>> lanePolylinesScreen = MapUtil.getLanePolylinesScreen();
+        RenderPhaseEvent event = new RenderPhaseEvent();
+        event.begin();
+        int drawn = rasterize();
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "lanes.rebuild";
+            event.items = MapUtil.getLaneCount();
+            event.drawn = drawn;
+            event.commit();
+        }
+    }
 
-        // Create and add polyline for each lane
-        // Tạo và thêm polyline cho mỗi làn đường
-        for (List<Point2D> polyline : lanePolylinesScreen) {
-            if (polyline.isEmpty()) {
-                continue;
-            }
+    /**
+     * Draw all lanes into the cached raster
+     * Vẽ tất cả làn đường vào ảnh raster đã cache
+     *
+     * @return Number of lanes drawn
+     */
+    private int rasterize() {
+        double width = MapUtil.getCanvasWidth();
+        double height = MapUtil.getCanvasHeight();
+        if (raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+            pane.getChildren().remove(raster);
+            raster = new Canvas(width, height);
+            raster.setMouseTransparent(true);
+            pane.getChildren().add(raster);
+        }
 
-            // Convert points to array of doubles [x1, y1, x2, y2, ...]
-            // Chuyển đổi điểm thành mảng số thực [x1, y1, x2, y2, ...]
-            double[] points = new double[polyline.size() * 2];
-            for (int i = 0; i < polyline.size(); i++) {
-                Point2D p = polyline.get(i);
-                points[i * 2] = p.getX();
-                points[i * 2 + 1] = p.getY();
+        GraphicsContext gc = raster.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        applyStrokeStyle(gc);
+
+        // Stroke one polyline per visible lane (found through the spatial index)
+        // Vẽ một polyline cho mỗi lane đang hiển thị (tìm qua chỉ mục không gian)
+        int[] drawn = {0};
+        MapUtil.forEachVisibleLane(laneStrokeWidth, lane -> {
+            if (strokeLane(gc, lane)) {
+                drawn[0]++;
             }
+        });
+
+        rasterTransformVersion = MapUtil.getTransformVersion();
+        return drawn[0];
+    }
 
-            // Create JavaFX Polyline
-            // Tạo Polyline JavaFX
-            Polyline line = new Polyline(points);
-            line.setStroke(LANE_COLOR);
-            line.setStrokeWidth(LANE_STROKE_WIDTH);
-            line.setStrokeLineCap(StrokeLineCap.ROUND);
-            line.setFill(null); // No fill, just stroke
-            // Không tô màu, chỉ vẽ đường
-
-            // Add to pane
-            // Thêm vào pane
-            pane.getChildren().add(line);
+    private void applyStrokeStyle(GraphicsContext gc) {
+        gc.setStroke(laneColor);
+        gc.setLineWidth(laneStrokeWidth);
+        gc.setLineCap(StrokeLineCap.ROUND);
+        gc.setLineJoin(StrokeLineJoin.ROUND);
+    }
+
+    /**
+     * Stroke one lane in the colour of its congestion level
+     * Vẽ một lane bằng màu theo mức tắc nghẽn của nó
+     *
+     * @return Whether the lane has any points
+     */
+    private boolean strokeLane(GraphicsContext gc, int lane) {
+        int n = projectLane(lane);
+        if (n == 0) {
+            return false;
         }
+        int level = lane < paintedLevels.length ? paintedLevels[lane] : -1;
+        gc.setStroke(level >= 0 ? LEVEL_COLORS[level] : laneColor);
+        gc.strokePolyline(xs, ys, n);
+        return true;
     }
 
     /**
-     * Set lane color
-     * Đặt màu làn đường
+     * Project a lane into the reused screen buffers
+     * Chiếu một lane vào các mảng đệm màn hình dùng lại
+     *
+     * @return Number of points
+     */
+    private int projectLane(int lane) {
+        int n = MapUtil.getLanePointCount(lane);
+        if (xs.length < n) {
+            xs = new double[n];
+            ys = new double[n];
+        }
+        return n > 0 ? MapUtil.projectLane(lane, xs, ys) : 0;
+    }
+
+    /**
+     * Set lane color (re-rasterizes the network)
+     * Đặt màu làn đường (vẽ lại mạng lưới)
      */
     public void setLaneColor(Color color) {
-        pane.getChildren().forEach(node -> {
-            if (node instanceof Polyline) {
-                ((Polyline) node).setStroke(color);
-            }
-        });
+        this.laneColor = color;
+        if (raster != null) {
+            rasterize();
+        }
     }
 
     /**
-     * Set lane stroke width
-     * Đặt độ dày làn đường
+     * Set lane stroke width (re-rasterizes the network)
+     * Đặt độ dày làn đường (vẽ lại mạng lưới)
      */
     public void setLaneStrokeWidth(double width) {
-        pane.getChildren().forEach(node -> {
-            if (node instanceof Polyline) {
-                ((Polyline) node).setStrokeWidth(width);
-            }
-        });
+        this.laneStrokeWidth = width;
+        if (raster != null) {
+            rasterize();
+        }
     }
 }
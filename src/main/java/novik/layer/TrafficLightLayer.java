@@ -1,29 +1,133 @@
 package novik.layer;
 
 import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.StrokeLineCap;
+import novik.backend.SimulationBackend;
+import novik.backend.TraciBackend;
+import novik.jfr.RenderPhaseEvent;
 import novik.model.TrafficLight;
+import novik.sim.SignalStateCollector;
+import novik.sim.SimulationSnapshot;
+import novik.sim.SnapshotBuffer;
 import novik.util.MapUtil;
-import org.eclipse.sumo.libtraci.Junction;
-import org.eclipse.sumo.libtraci.TraCIPosition;
+import novik.util.SpatialGrid;
 
 import java.util.*;
 
 /**
  * Layer for displaying traffic lights
  * Lớp hiển thị đèn giao thông
+ *
+ * Every light is a circle at its junction, plus one bar per controlled link across the end of the
+ * incoming lane, colored by the matching character of the state string. Links that share a lane split
+ * its width into side-by-side sub-bars, so every movement stays visible. The bar geometry is computed
+ * once at rebuild into flat arrays; a state change only recolors the bars of the lights that switched.
+ * Mỗi đèn là một vòng tròn tại nút giao, cộng một thanh cho mỗi link được điều khiển nằm ngang cuối
+ * lane đi vào, tô màu theo ký tự tương ứng của chuỗi trạng thái. Các link dùng chung một lane chia bề
+ * rộng lane thành các thanh con nằm cạnh nhau, nên mọi hướng đi đều nhìn thấy được. Hình học các thanh
+ * được tính một lần khi rebuild vào các mảng phẳng; khi trạng thái đổi chỉ tô lại thanh của các đèn
+ * vừa đổi pha.
  */
 public class TrafficLightLayer extends Layer {
     private final Map<String, TrafficLight> trafficLights;
     private static final double CIRCLE_RADIUS = 8.0;
 
+    private static final double BAR_HALF_LENGTH = 1.6; // half a standard lane width, in meters
+    private static final double BAR_WIDTH = 3.0; // px
+    // Share of a sub-bar left empty on each side, so neighbouring links of one lane stay apart
+    // Phần của thanh con để trống mỗi bên, để các link cạnh nhau của một lane tách biệt
+    private static final double SUB_BAR_GAP = 0.1;
+    // Below this length bars are not drawn and the circles alone show the lights
+    // Dưới độ dài này thanh không được vẽ và chỉ còn vòng tròn thể hiện đèn
+    private static final double MIN_BAR_LENGTH = 2.0; // px
+
+    // Bar colors, indexed by signalColor()
+    // Màu thanh, đánh chỉ số theo signalColor()
+    private static final Color[] BAR_COLORS = {
+            Color.GRAY, Color.LIME, Color.GREEN, Color.YELLOW, Color.RED, Color.ORANGE, Color.PURPLE
+    };
+
+    // Source of snapshots (null = read states from the backend on the calling thread)
+    // Nguồn snapshot (null = tự đọc trạng thái từ backend trên luồng gọi)
+    private final SnapshotBuffer snapshots;
+    private final SimulationBackend backend;
+    private SimulationSnapshot lastSnapshot;
+    // Used without a snapshot buffer; only reads lights that may have switched
+    // Dùng khi không có snapshot buffer; chỉ đọc các đèn có thể đã đổi pha
+    private SignalStateCollector directCollector;
+    private SimulationSnapshot.Builder directBuilder;
+
+    // World positions and spatial index, used to re-project and cull lights when the view changes
+    // Vị trí thế giới và chỉ mục không gian, dùng để chiếu lại và lọc đèn khi khung nhìn thay đổi
+    private final List<TrafficLight> lightList = new ArrayList<>();
+    private final List<Point2D> worldPositions = new ArrayList<>();
+    private final List<TrafficLight> visibleLights = new ArrayList<>();
+    private final double[] viewBounds = new double[4];
+    private SpatialGrid lightIndex;
+    private long lastTransformVersion = -1;
+    private final Map<String, Integer> lightIndexById = new HashMap<>();
+
+    // Stop line bars: world and screen end points, link index in the state string and current color,
+    // with the bars of light i stored in [barStart[i], barStart[i + 1])
+    // Thanh vạch dừng: điểm đầu cuối theo thế giới và màn hình, chỉ số link trong chuỗi trạng thái và
+    // màu hiện tại; các thanh của đèn i nằm trong [barStart[i], barStart[i + 1])
+    private Canvas barCanvas;
+    private int barCount = 0;
+    private double[] barX1 = new double[0];
+    private double[] barY1 = new double[0];
+    private double[] barX2 = new double[0];
+    private double[] barY2 = new double[0];
+    private double[] barScreenX1 = new double[0];
+    private double[] barScreenY1 = new double[0];
+    private double[] barScreenX2 = new double[0];
+    private double[] barScreenY2 = new double[0];
+    private int[] barLink = new int[0];
+    private byte[] barColor = new byte[0];
+    private int[] barStart = new int[1];
+    // State each light's bars were colored with, and lights whose bars must be redrawn
+    // Trạng thái đã dùng để tô thanh của mỗi đèn, và các đèn cần vẽ lại thanh
+    private String[] barStates = new String[0];
+    // Screen box of every light's bars, widened by the bar width; empty (min > max) without bars
+    // Hộp màn hình chứa các thanh của mỗi đèn, nới thêm bề rộng thanh; rỗng (min > max) nếu không có thanh
+    private double[] lightBoxMinX = new double[0];
+    private double[] lightBoxMinY = new double[0];
+    private double[] lightBoxMaxX = new double[0];
+    private double[] lightBoxMaxY = new double[0];
+    private int[] changedLights = new int[0];
+    private int changedCount = 0;
+    private boolean barsDirty = false;
+
     /**
-     * Constructor
+     * Constructor for single-threaded use: states are read from SUMO on every update
+     * Constructor dùng cho chế độ một luồng: trạng thái được đọc từ SUMO mỗi lần update
      * @param pane The pane where traffic lights will be displayed
      */
     public TrafficLightLayer(Pane pane) {
+        this(pane, null, new TraciBackend());
+    }
+
+    public TrafficLightLayer(Pane pane, SnapshotBuffer snapshots) {
+        this(pane, snapshots, new TraciBackend());
+    }
+
+    /**
+     * Constructor
+     * @param pane The pane where traffic lights will be displayed
+     * @param snapshots Buffer filled by the simulation thread
+     * @param backend Backend that provides the lights and their positions
+     */
+    public TrafficLightLayer(Pane pane, SnapshotBuffer snapshots, SimulationBackend backend) {
         super(pane);
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
         this.trafficLights = new HashMap<>();
+        this.snapshots = snapshots;
+        this.backend = backend;
     }
 
     /**
@@ -31,10 +135,10 @@ public class TrafficLightLayer extends Layer {
      * Tạo đèn giao thông mới và thêm vào lớp
      */
     private TrafficLight createTrafficLight(String tlsId) {
-        // Get position from SUMO using Junction
-        // Lấy vị trí từ SUMO qua Junction
-        TraCIPosition sumoPos = Junction.getPosition(tlsId);
-        Point2D worldPos = new Point2D(sumoPos.getX(), sumoPos.getY());
+        // Get the position of the junction with the same ID
+        // Lấy vị trí của nút giao có cùng ID
+        double[] junctionPos = backend.getJunctionPosition(tlsId);
+        Point2D worldPos = new Point2D(junctionPos[0], junctionPos[1]);
         Point2D screenPos = MapUtil.worldToScreen(worldPos);
         
         // Create traffic light
@@ -42,44 +146,379 @@ public class TrafficLightLayer extends Layer {
         TrafficLight tl = new TrafficLight(tlsId, screenPos, CIRCLE_RADIUS);
         trafficLights.put(tlsId, tl);
         pane.getChildren().add(tl.getCircle());
+
+        // Remember the world position for re-projection when the view changes
+        // Lưu vị trí thế giới để chiếu lại khi khung nhìn thay đổi
+        lightIndex.insertPoint(lightList.size(), worldPos.getX(), worldPos.getY());
+        lightIndexById.put(tlsId, lightList.size());
+        lightList.add(tl);
+        worldPositions.add(worldPos);
         
         return tl;
     }
 
     /**
-     * Update traffic light state from SUMO
-     * Cập nhật trạng thái đèn từ SUMO
+     * Add one bar across the end of the incoming lane of every link of a light
+     * Thêm một thanh ngang cuối lane đi vào cho mỗi link của một đèn
+     *
+     * The links of one lane share its width in link order, from the right edge to the left edge.
+     * Các link của một lane chia nhau bề rộng lane theo thứ tự link, từ mép phải sang mép trái.
+     */
+    private void createBars(String tlsId, Map<String, double[]> shapes) {
+        String[] links = backend.getSignalLanes(tlsId);
+        Map<String, Integer> linksPerLane = new HashMap<>();
+        for (String lane : links) {
+            if (lane != null) {
+                linksPerLane.merge(lane, 1, Integer::sum);
+            }
+        }
+        Map<String, Integer> placed = new HashMap<>();
+        for (int link = 0; link < links.length; link++) {
+            if (links[link] == null) {
+                continue;
+            }
+            // Several links usually share one incoming lane, so each shape is fetched once
+            // Nhiều link thường dùng chung một lane đi vào, nên mỗi hình dạng chỉ lấy một lần
+            double[] shape = shapes.computeIfAbsent(links[link], backend::getLaneShape);
+            int n = shape.length / 2;
+            if (n < 2) {
+                continue;
+            }
+            double endX = shape[2 * n - 2];
+            double endY = shape[2 * n - 1];
+            double dx = endX - shape[2 * n - 4];
+            double dy = endY - shape[2 * n - 3];
+            double length = Math.hypot(dx, dy);
+            if (length == 0) {
+                continue;
+            }
+            // Perpendicular to the last segment of the lane, pointing to its left edge
+            // Vuông góc với đoạn cuối của lane, hướng về mép trái của nó
+            double px = -dy / length * BAR_HALF_LENGTH;
+            double py = dx / length * BAR_HALF_LENGTH;
+            // Sub-bar of this link, as offsets from -1 (right edge) to 1 (left edge) of the lane
+            // Thanh con của link này, dạng độ lệch từ -1 (mép phải) tới 1 (mép trái) của lane
+            int count = linksPerLane.get(links[link]);
+            int slot = placed.merge(links[link], 1, Integer::sum) - 1;
+            double from = -1 + 2.0 * (slot + SUB_BAR_GAP) / count;
+            double to = -1 + 2.0 * (slot + 1 - SUB_BAR_GAP) / count;
+            if (count == 1) {
+                from = -1;
+                to = 1;
+            }
+            ensureBarCapacity(barCount + 1);
+            barX1[barCount] = endX + px * from;
+            barY1[barCount] = endY + py * from;
+            barX2[barCount] = endX + px * to;
+            barY2[barCount] = endY + py * to;
+            barLink[barCount] = link;
+            barColor[barCount] = 0;
+            barCount++;
+        }
+    }
+
+    private void ensureBarCapacity(int n) {
+        if (n <= barX1.length) {
+            return;
+        }
+        int capacity = Math.max(n, Math.max(16, barX1.length * 2));
+        barX1 = Arrays.copyOf(barX1, capacity);
+        barY1 = Arrays.copyOf(barY1, capacity);
+        barX2 = Arrays.copyOf(barX2, capacity);
+        barY2 = Arrays.copyOf(barY2, capacity);
+        barScreenX1 = Arrays.copyOf(barScreenX1, capacity);
+        barScreenY1 = Arrays.copyOf(barScreenY1, capacity);
+        barScreenX2 = Arrays.copyOf(barScreenX2, capacity);
+        barScreenY2 = Arrays.copyOf(barScreenY2, capacity);
+        barLink = Arrays.copyOf(barLink, capacity);
+        barColor = Arrays.copyOf(barColor, capacity);
+    }
+
+    /**
+     * Apply a state to a light and recolor its bars if the state changed
+     * Áp dụng trạng thái cho một đèn và tô lại thanh của nó nếu trạng thái thay đổi
      */
-    private void updateTrafficLightFromSumo(TrafficLight tl) {
-        String tlsId = tl.getTlsId();
-        String state = org.eclipse.sumo.libtraci.TrafficLight.getRedYellowGreenState(tlsId);
+    private void applyState(int light, String state) {
+        TrafficLight tl = lightList.get(light);
+        // setState recolors only lights whose state changed
+        // setState chỉ tô lại các đèn có trạng thái thay đổi
         tl.setState(state);
+        if (state == barStates[light] || (state != null && state.equals(barStates[light]))) {
+            return;
+        }
+        barStates[light] = state;
+        boolean changed = false;
+        for (int b = barStart[light]; b < barStart[light + 1]; b++) {
+            byte color = state != null && barLink[b] < state.length() ? signalColor(state.charAt(barLink[b])) : 0;
+            if (color != barColor[b]) {
+                barColor[b] = color;
+                changed = true;
+            }
+        }
+        if (changed) {
+            changedLights[changedCount++] = light;
+        }
+    }
+
+    /**
+     * Map a signal character to an index in {@link #BAR_COLORS}
+     * Ánh xạ một ký tự tín hiệu sang chỉ số trong {@link #BAR_COLORS}
+     */
+    private static byte signalColor(char c) {
+        switch (c) {
+            case 'G':
+                return 1;
+            case 'g':
+                return 2;
+            case 'y':
+            case 'Y':
+                return 3;
+            case 'r':
+            case 'R':
+                return 4;
+            case 'u':
+                return 5;
+            case 's':
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Redraw every bar inside the viewport
+     * Vẽ lại mọi thanh trong khung nhìn
+     */
+    private void drawBars() {
+        double width = MapUtil.getCanvasWidth();
+        double height = MapUtil.getCanvasHeight();
+        if (barCanvas.getWidth() != width || barCanvas.getHeight() != height) {
+            barCanvas.setWidth(width);
+            barCanvas.setHeight(height);
+        }
+        GraphicsContext gc = barCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        if (!barsShown()) {
+            return;
+        }
+        byte lastColor = -1;
+        for (int b = 0; b < barCount; b++) {
+            if (Math.max(barScreenX1[b], barScreenX2[b]) < -BAR_WIDTH
+                    || Math.min(barScreenX1[b], barScreenX2[b]) > width + BAR_WIDTH
+                    || Math.max(barScreenY1[b], barScreenY2[b]) < -BAR_WIDTH
+                    || Math.min(barScreenY1[b], barScreenY2[b]) > height + BAR_WIDTH) {
+                continue;
+            }
+            if (barColor[b] != lastColor) {
+                lastColor = barColor[b];
+                gc.setStroke(BAR_COLORS[lastColor]);
+            }
+            gc.strokeLine(barScreenX1[b], barScreenY1[b], barScreenX2[b], barScreenY2[b]);
+        }
+    }
+
+    /**
+     * Redraw only the area of the lights that switched since the last frame
+     * Chỉ vẽ lại vùng của các đèn đã đổi pha từ khung hình trước
+     *
+     * The box of a switched light is cleared under a clip, then the bars of every light whose box overlaps
+     * it are restroked, so bars of neighbouring lights inside the box are not lost.
+     * Hộp của đèn vừa đổi pha được xóa trong một vùng cắt, rồi thanh của mọi đèn có hộp chồng lên nó được
+     * vẽ lại, nên thanh của các đèn lân cận nằm trong hộp không bị mất.
+     */
+    private void redrawChangedBars() {
+        if (!barsShown()) {
+            return;
+        }
+        GraphicsContext gc = barCanvas.getGraphicsContext2D();
+        for (int c = 0; c < changedCount; c++) {
+            int light = changedLights[c];
+            double minX = lightBoxMinX[light];
+            double minY = lightBoxMinY[light];
+            double maxX = lightBoxMaxX[light];
+            double maxY = lightBoxMaxY[light];
+            if (minX > maxX) {
+                continue;
+            }
+            gc.save();
+            gc.beginPath();
+            gc.rect(minX, minY, maxX - minX, maxY - minY);
+            gc.clip();
+            gc.clearRect(minX, minY, maxX - minX, maxY - minY);
+            for (int other = 0; other < lightList.size(); other++) {
+                if (lightBoxMinX[other] > maxX || lightBoxMaxX[other] < minX
+                        || lightBoxMinY[other] > maxY || lightBoxMaxY[other] < minY) {
+                    continue;
+                }
+                for (int b = barStart[other]; b < barStart[other + 1]; b++) {
+                    gc.setStroke(BAR_COLORS[barColor[b]]);
+                    gc.strokeLine(barScreenX1[b], barScreenY1[b], barScreenX2[b], barScreenY2[b]);
+                }
+            }
+            gc.restore();
+        }
+    }
+
+    /**
+     * Recompute the screen box of every light's bars after the view changed
+     * Tính lại hộp màn hình chứa các thanh của mỗi đèn sau khi khung nhìn thay đổi
+     */
+    private void updateLightBoxes() {
+        for (int light = 0; light < lightList.size(); light++) {
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int b = barStart[light]; b < barStart[light + 1]; b++) {
+                minX = Math.min(minX, Math.min(barScreenX1[b], barScreenX2[b]));
+                minY = Math.min(minY, Math.min(barScreenY1[b], barScreenY2[b]));
+                maxX = Math.max(maxX, Math.max(barScreenX1[b], barScreenX2[b]));
+                maxY = Math.max(maxY, Math.max(barScreenY1[b], barScreenY2[b]));
+            }
+            lightBoxMinX[light] = minX - BAR_WIDTH;
+            lightBoxMinY[light] = minY - BAR_WIDTH;
+            lightBoxMaxX[light] = maxX + BAR_WIDTH;
+            lightBoxMaxY[light] = maxY + BAR_WIDTH;
+        }
+    }
+
+    private boolean barsShown() {
+        return 2 * BAR_HALF_LENGTH * MapUtil.getScale() >= MIN_BAR_LENGTH;
+    }
+
+    /**
+     * Re-project the lights inside the viewport and hide the others
+     * Chiếu lại các đèn trong khung nhìn và ẩn các đèn còn lại
+     */
+    private void updateViewport() {
+        for (TrafficLight tl : visibleLights) {
+            tl.getCircle().setVisible(false);
+        }
+        visibleLights.clear();
+
+        MapUtil.getVisibleWorldBounds(CIRCLE_RADIUS, viewBounds);
+        lightIndex.query(viewBounds[0], viewBounds[1], viewBounds[2], viewBounds[3], i -> {
+            TrafficLight tl = lightList.get(i);
+            tl.updatePosition(MapUtil.worldToScreen(worldPositions.get(i)));
+            tl.getCircle().setVisible(true);
+            visibleLights.add(tl);
+        });
+
+        // Only the screen positions of the bars change with the view, never their world geometry
+        // Khi khung nhìn đổi chỉ vị trí màn hình của thanh thay đổi, không bao giờ là hình học thế giới
+        MapUtil.worldToScreen(barX1, barY1, 0, barCount, barScreenX1, barScreenY1, 0);
+        MapUtil.worldToScreen(barX2, barY2, 0, barCount, barScreenX2, barScreenY2, 0);
+        updateLightBoxes();
+        barsDirty = true;
+        lastTransformVersion = MapUtil.getTransformVersion();
     }
 
     @Override
     public void update() {
-        // Update all existing traffic lights
-        // Cập nhật tất cả đèn giao thông hiện có
-        for (TrafficLight tl : trafficLights.values()) {
-            updateTrafficLightFromSumo(tl);
+        RenderPhaseEvent event = new RenderPhaseEvent();
+        event.begin();
+        if (lightIndex != null && MapUtil.getTransformVersion() != lastTransformVersion) {
+            updateViewport();
+        }
+
+        // Apply signal states from the latest snapshot (or read them here without a simulation thread)
+        // Áp dụng trạng thái đèn từ snapshot mới nhất (hoặc tự đọc khi không có luồng mô phỏng)
+        SimulationSnapshot snapshot = snapshots != null ? snapshots.latest() : collectDirect();
+        if (snapshot != null && snapshot != lastSnapshot) {
+            lastSnapshot = snapshot;
+            for (int i = 0; i < snapshot.getSignalCount(); i++) {
+                Integer light = lightIndexById.get(snapshot.getSignalId(i));
+                if (light != null) {
+                    applyState(light, snapshot.getSignalState(i));
+                }
+            }
+        }
+
+        if (barCanvas != null) {
+            if (barsDirty) {
+                drawBars();
+            } else if (changedCount > 0) {
+                redrawChangedBars();
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "lights.update";
+            event.items = lightList.size();
+            event.drawn = barsDirty ? lightList.size() : changedCount;
+            event.commit();
         }
+        barsDirty = false;
+        changedCount = 0;
     }
 
+    /**
+     * Read signal states from the backend on the calling thread (used when there is no simulation thread)
+     * Đọc trạng thái đèn từ backend trên luồng gọi (dùng khi không có luồng mô phỏng)
+     */
+    private SimulationSnapshot collectDirect() {
+        if (directCollector == null) {
+            directCollector = new SignalStateCollector(backend);
+            directBuilder = new SimulationSnapshot.Builder();
+        }
+        directBuilder.clear();
+        directCollector.collect(directBuilder);
+        return directBuilder.build(0, Double.NaN);
+    }
+
+    /**
+     * Rebuild all traffic lights from the backend
+     * Xây dựng lại tất cả đèn giao thông từ backend
+     *
+     * Calls the backend, so it must run before the simulation thread starts.
+     * Gọi backend, nên phải chạy trước khi luồng mô phỏng bắt đầu.
+     */
     @Override
     public void rebuild() {
         clear();
         trafficLights.clear();
+        lightList.clear();
+        lightIndexById.clear();
+        worldPositions.clear();
+        visibleLights.clear();
+        lightIndex = MapUtil.createGrid();
+        lastSnapshot = null;
+        barCount = 0;
+        changedCount = 0;
+
+        // Bars are drawn on a canvas below the circles
+        // Các thanh được vẽ trên một canvas nằm dưới các vòng tròn
+        barCanvas = new Canvas(MapUtil.getCanvasWidth(), MapUtil.getCanvasHeight());
+        barCanvas.setMouseTransparent(true);
+        GraphicsContext gc = barCanvas.getGraphicsContext2D();
+        gc.setLineWidth(BAR_WIDTH);
+        gc.setLineCap(StrokeLineCap.BUTT);
+        pane.getChildren().add(barCanvas);
         
-        // Get all traffic light IDs from SUMO
-        // Lấy tất cả ID đèn giao thông từ SUMO
-        List<String> tlsIds = org.eclipse.sumo.libtraci.TrafficLight.getIDList();
+        // Get all traffic light IDs from the backend
+        // Lấy tất cả ID đèn giao thông từ backend
+        List<String> tlsIds = backend.getTrafficLightIds();
         
-        // Create traffic lights for all IDs
-        // Tạo đèn giao thông cho tất cả ID
-        for (String tlsId : tlsIds) {
-            TrafficLight tl = createTrafficLight(tlsId);
-            updateTrafficLightFromSumo(tl);
+        // Create traffic lights and their stop line bars for all IDs
+        // Tạo đèn giao thông và thanh vạch dừng cho tất cả ID
+        barStart = new int[tlsIds.size() + 1];
+        Map<String, double[]> shapes = new HashMap<>();
+        for (int i = 0; i < tlsIds.size(); i++) {
+            TrafficLight tl = createTrafficLight(tlsIds.get(i));
+            tl.getCircle().setVisible(false);
+            createBars(tlsIds.get(i), shapes);
+            barStart[i + 1] = barCount;
+        }
+        barStates = new String[tlsIds.size()];
+        lightBoxMinX = new double[tlsIds.size()];
+        lightBoxMinY = new double[tlsIds.size()];
+        lightBoxMaxX = new double[tlsIds.size()];
+        lightBoxMaxY = new double[tlsIds.size()];
+        changedLights = new int[tlsIds.size()];
+        for (int i = 0; i < tlsIds.size(); i++) {
+            applyState(i, backend.getSignalState(tlsIds.get(i)));
         }
+        changedCount = 0;
+        updateViewport();
     }
 
     /**
@@ -0,0 +1,41 @@
+package novik.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic event counter (e.g. simulation steps, TraCI calls)
+ * Bộ đếm sự kiện chỉ tăng (ví dụ số bước mô phỏng, số lần gọi TraCI)
+ *
+ * Safe to update from any thread; does nothing while the registry is disabled.
+ * An toàn khi cập nhật từ mọi luồng; không làm gì khi registry bị tắt.
+ */
+public final class Counter {
+    private final String name;
+    private final MetricsRegistry registry;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, MetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        if (registry.isEnabled()) {
+            count.increment();
+        }
+    }
+
+    public void add(long n) {
+        if (registry.isEnabled()) {
+            count.add(n);
+        }
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,182 @@
+package novik.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets, for percentiles at a fixed cost
+ * Histogram thời lượng tính bằng nano giây với các bucket logarit, cho phân vị với chi phí cố định
+ *
+ * Every power of two is split into {@value #SUB_BUCKETS} buckets, so a percentile is off by at most
+ * 1/{@value #SUB_BUCKETS} of its value. Counts only grow; readers subtract their previous
+ * {@link Snapshot} to get the distribution of a recent interval.
+ * Mỗi lũy thừa của hai được chia thành {@value #SUB_BUCKETS} bucket, nên một phân vị sai lệch tối đa
+ * 1/{@value #SUB_BUCKETS} giá trị của nó. Bộ đếm chỉ tăng; bên đọc trừ {@link Snapshot} trước đó của
+ * mình để có phân bố của một khoảng gần đây.
+ *
+ * Usage / Cách dùng:
+ * <pre>
+ * long start = histogram.start();
+ * ...
+ * histogram.stop(start);
+ * </pre>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final MetricsRegistry registry;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    LatencyHistogram(String name, MetricsRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Start timing
+     * Bắt đầu đo thời gian
+     *
+     * @return Start time for {@link #stop(long)}, or 0 while the registry is disabled
+     */
+    public long start() {
+        return registry.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record the time since {@link #start()}
+     * Ghi lại thời gian kể từ {@link #start()}
+     */
+    public void stop(long start) {
+        if (start != 0L) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record one duration
+     * Ghi lại một thời lượng
+     */
+    public void record(long nanos) {
+        if (!registry.isEnabled()) {
+            return;
+        }
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Value in the middle of a bucket
+     * Giá trị ở giữa một bucket
+     */
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    /**
+     * Copy the current counts
+     * Sao chép các bộ đếm hiện tại
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum());
+    }
+
+    /**
+     * Immutable copy of the bucket counts
+     * Bản sao bất biến của các bộ đếm bucket
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long sum;
+        private final long total;
+
+        private Snapshot(long[] counts, long sum) {
+            this.counts = counts;
+            this.sum = sum;
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.total = n;
+        }
+
+        /**
+         * Distribution of the values recorded since an earlier snapshot of the same histogram
+         * Phân bố của các giá trị được ghi từ một snapshot trước đó của cùng histogram
+         */
+        public Snapshot since(Snapshot earlier) {
+            if (earlier == null) {
+                return this;
+            }
+            long[] delta = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(delta, sum - earlier.sum);
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        public double getMeanNanos() {
+            return total > 0 ? (double) sum / total : 0;
+        }
+
+        /**
+         * Value below which the given fraction of the recorded durations lie
+         * Giá trị mà một tỉ lệ đã cho của các thời lượng đã ghi nằm dưới nó
+         *
+         * @param quantile 0..1, e.g. 0.99
+         */
+        public long getPercentileNanos(double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return valueOf(i);
+                }
+            }
+            return getMaxNanos();
+        }
+
+        public long getMaxNanos() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return valueOf(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package novik.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Appends all metrics of a registry to a CSV file at a fixed interval
+ * Ghi thêm tất cả metric của một registry vào file CSV theo chu kỳ cố định
+ *
+ * One row per metric and interval: counters give the increase and rate, gauges their value and
+ * histograms the percentiles of the durations recorded in that interval.
+ * Mỗi metric một dòng cho mỗi chu kỳ: counter cho mức tăng và tốc độ, gauge cho giá trị và histogram
+ * cho các phân vị của thời lượng được ghi trong chu kỳ đó.
+ */
+public final class MetricsDumper implements AutoCloseable {
+    private static final String HEADER = "elapsedSec,metric,value,rate,count,meanMs,p50Ms,p95Ms,p99Ms,maxMs";
+
+    private final MetricsRegistry registry;
+    private final PrintWriter out;
+    private final ScheduledExecutorService scheduler;
+    private final long startNanos = System.nanoTime();
+    private long lastNanos = startNanos;
+
+    // Values at the previous dump, to report per-interval changes
+    // Giá trị ở lần dump trước, để báo thay đổi theo từng chu kỳ
+    private final Map<Counter, Long> lastCounts = new HashMap<>();
+    private final Map<LatencyHistogram, LatencyHistogram.Snapshot> lastSnapshots = new HashMap<>();
+
+    /**
+     * Start dumping on a daemon thread
+     * Bắt đầu dump trên một luồng daemon
+     *
+     * @param file CSV file (overwritten)
+     * @param intervalSeconds Time between two dumps
+     */
+    public MetricsDumper(MetricsRegistry registry, Path file, double intervalSeconds) {
+        if (!(intervalSeconds > 0)) {
+            throw new IllegalArgumentException("Interval must be positive: " + intervalSeconds);
+        }
+        this.registry = registry;
+        try {
+            this.out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create metrics file " + file, e);
+        }
+        out.println(HEADER);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = (long) (intervalSeconds * 1e9);
+        scheduler.scheduleAtFixedRate(this::dump, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Write one row per metric
+     * Ghi một dòng cho mỗi metric
+     */
+    synchronized void dump() {
+        long now = System.nanoTime();
+        String elapsed = format((now - startNanos) / 1e9);
+        double interval = Math.max(1e-9, (now - lastNanos) / 1e9);
+        lastNanos = now;
+
+        for (Counter counter : registry.getCounters()) {
+            long count = counter.get();
+            long delta = count - lastCounts.getOrDefault(counter, 0L);
+            lastCounts.put(counter, count);
+            out.println(elapsed + "," + counter.getName() + "," + count + "," + format(delta / interval) + ",,,,,,");
+        }
+        for (Map.Entry<String, DoubleSupplier> gauge : registry.getGauges().entrySet()) {
+            out.println(elapsed + "," + gauge.getKey() + "," + format(gauge.getValue().getAsDouble()) + ",,,,,,,");
+        }
+        for (LatencyHistogram histogram : registry.getHistograms()) {
+            LatencyHistogram.Snapshot current = histogram.snapshot();
+            LatencyHistogram.Snapshot recent = current.since(lastSnapshots.put(histogram, current));
+            out.println(elapsed + "," + histogram.getName() + ",," + format(recent.getCount() / interval) + ","
+                    + recent.getCount() + "," + millis(recent.getMeanNanos()) + ","
+                    + millis(recent.getPercentileNanos(0.50)) + "," + millis(recent.getPercentileNanos(0.95)) + ","
+                    + millis(recent.getPercentileNanos(0.99)) + "," + millis(recent.getMaxNanos()));
+        }
+        out.flush();
+    }
+
+    private static String millis(double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Write a last row set and close the file
+     * Ghi một lượt dòng cuối và đóng file
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dump();
+        synchronized (this) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package novik.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and latency histograms of the running application
+ * Các bộ đếm, gauge và histogram độ trễ có tên của ứng dụng đang chạy
+ *
+ * Metrics are created once (usually into static fields) and updated on hot paths. While the registry
+ * is disabled every update is a single volatile read, so instrumented code can stay in place.
+ * The global registry starts disabled; the JavaFX app enables it unless -Dnovik.metrics=false is given.
+ * Metric được tạo một lần (thường vào field static) và cập nhật trên các đường nóng. Khi registry bị tắt
+ * mỗi lần cập nhật chỉ là một lần đọc volatile, nên mã đo đạc có thể giữ nguyên.
+ * Registry toàn cục mặc định bị tắt; ứng dụng JavaFX bật nó trừ khi có -Dnovik.metrics=false.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private volatile boolean enabled = false;
+
+    // Insertion order is kept so the panel and the dump list metrics in a stable order
+    // Giữ thứ tự thêm vào để panel và file dump liệt kê metric theo thứ tự cố định
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    /**
+     * Registry shared by the whole application
+     * Registry dùng chung cho toàn bộ ứng dụng
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get or create a counter
+     * Lấy hoặc tạo một bộ đếm
+     */
+    public synchronized Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter(n, this));
+    }
+
+    /**
+     * Get or create a latency histogram
+     * Lấy hoặc tạo một histogram độ trễ
+     */
+    public synchronized LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram(n, this));
+    }
+
+    /**
+     * Register a gauge; the supplier is called by readers and must be thread-safe
+     * Đăng ký một gauge; supplier được gọi bởi bên đọc và phải an toàn đa luồng
+     */
+    public synchronized void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Register gauges for heap usage and garbage collection
+     * Đăng ký các gauge cho bộ nhớ heap và thu gom rác
+     */
+    public void registerJvmGauges() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        gauge("jvm.heap.usedMB", () -> memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0));
+        gauge("jvm.gc.count", () -> {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        });
+        gauge("jvm.gc.timeMs", () -> {
+            long time = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                time += Math.max(0, gc.getCollectionTime());
+            }
+            return time;
+        });
+    }
+
+    public synchronized List<Counter> getCounters() {
+        return Collections.unmodifiableList(new ArrayList<>(counters.values()));
+    }
+
+    public synchronized Map<String, DoubleSupplier> getGauges() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(gauges));
+    }
+
+    public synchronized List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(new ArrayList<>(histograms.values()));
+    }
+}
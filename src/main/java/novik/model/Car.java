@@ -12,8 +12,10 @@ public class Car {
     private final String id;
     private final String type;
     private final ImageView view;
-    private Point2D position;
+    private double x, y; // screen position, kept as primitives to avoid a Point2D per frame
+    // vị trí màn hình, lưu dạng số nguyên thủy để không tạo Point2D mỗi khung hình
     private double angle;
+    private double speed;
 
     /**
      * Constructor for Car
@@ -25,26 +27,37 @@ public class Car {
         this.id = id;
         this.type = type;
         this.view = new ImageView(carImage);
-        this.position = new Point2D(0, 0);
         this.angle = 0;
         
         // Configure ImageView properties based on vehicle type
         // Cấu hình thuộc tính ImageView dựa trên loại xe
+        view.setFitWidth(getFitWidth(type));
+        view.setFitHeight(getFitHeight(type));
+        view.setPreserveRatio(true);
+        view.setSmooth(true);
+    }
+
+    /**
+     * Width of the box a sprite of this vehicle type is fitted into (px)
+     * Chiều rộng khung chứa hình của loại xe này (px)
+     */
+    public static double getFitWidth(String type) {
+        return 20;
+    }
+
+    /**
+     * Height of the box a sprite of this vehicle type is fitted into (px)
+     * Chiều cao khung chứa hình của loại xe này (px)
+     */
+    public static double getFitHeight(String type) {
         switch (type) {
             case "bus":
-                view.setFitWidth(20);
-                view.setFitHeight(50);
-                break;
+                return 50;
             case "truck":
-                view.setFitWidth(20);
-                view.setFitHeight(35);
-                break;
+                return 35;
             default: // car and others
-                view.setFitWidth(20);
-                view.setFitHeight(30);
+                return 30;
         }
-        view.setPreserveRatio(true);
-        view.setSmooth(true);
     }
 
     // Getters
@@ -57,13 +70,25 @@ public class Car {
     }
 
     public Point2D getPosition() {
-        return position;
+        return new Point2D(x, y);
     }
 
     public double getAngle() {
         return angle;
     }
 
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Set the speed reported by SUMO (m/s)
+     * Đặt tốc độ do SUMO trả về (m/s)
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
     /**
      * Get vehicle type
      * Lấy loại xe
@@ -77,11 +102,20 @@ public class Car {
      * Cập nhật vị trí xe trên màn hình
      */
     public void updatePosition(Point2D newPosition) {
-        this.position = newPosition;
+        updatePosition(newPosition.getX(), newPosition.getY());
+    }
+
+    /**
+     * Update the car's position on screen without allocating
+     * Cập nhật vị trí xe trên màn hình mà không cấp phát bộ nhớ
+     */
+    public void updatePosition(double screenX, double screenY) {
+        this.x = screenX;
+        this.y = screenY;
         double w = view.getFitWidth();
         double h = view.getFitHeight();
-        view.setLayoutX(newPosition.getX() - w / 2.0);
-        view.setLayoutY(newPosition.getY() - h / 2.0);
+        view.setLayoutX(screenX - w / 2.0);
+        view.setLayoutY(screenY - h / 2.0);
     }
 
     /**
@@ -101,4 +135,13 @@ public class Car {
         updatePosition(newPosition);
         updateRotation(newAngle);
     }
+
+    /**
+     * Update both position and rotation at once without allocating
+     * Cập nhật cả vị trí và góc xoay cùng lúc mà không cấp phát bộ nhớ
+     */
+    public void update(double screenX, double screenY, double newAngle) {
+        updatePosition(screenX, screenY);
+        updateRotation(newAngle);
+    }
 }
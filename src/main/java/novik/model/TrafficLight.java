@@ -57,6 +57,11 @@ public class TrafficLight {
      * Cập nhật trạng thái đèn giao thông
      */
     public void setState(String newState) {
+        // Recolor only when the state actually changed
+        // Chỉ tô lại màu khi trạng thái thực sự thay đổi
+        if (newState == state || (newState != null && newState.equals(state))) {
+            return;
+        }
         this.state = newState;
         updateColor();
     }
@@ -0,0 +1,283 @@
+package novik.net;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams lane, junction and traffic light geometry out of a SUMO .net.xml file in one pass
+ * Đọc hình học lane, nút giao và đèn giao thông từ file .net.xml của SUMO trong một lượt
+ *
+ * Only the elements needed for drawing are looked at; coordinates go straight into primitive arrays
+ * and the bounding box grows while they are read. This replaces one TraCI round trip per lane at startup.
+ * Chỉ các phần tử cần để vẽ được xem xét; tọa độ được đưa thẳng vào mảng nguyên thủy và hộp bao
+ * được mở rộng trong lúc đọc. Cách này thay cho một lượt gọi TraCI cho mỗi lane khi khởi động.
+ */
+public final class NetFileParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // Lanes
+    private final List<String> laneIds = new ArrayList<>();
+    private int[] laneOffsets = new int[1024];
+    private double[] laneX = new double[4096];
+    private double[] laneY = new double[4096];
+    private int points = 0;
+
+    // Junctions
+    private final List<String> junctionIds = new ArrayList<>();
+    private double[] junctionX = new double[256];
+    private double[] junctionY = new double[256];
+
+    // Traffic lights and their links: tlsId -> (linkIndex -> incoming lane ID)
+    // Đèn giao thông và link của chúng: tlsId -> (linkIndex -> ID lane đi vào)
+    private final Map<String, Map<Integer, String>> links = new LinkedHashMap<>();
+
+    private double minX = Double.POSITIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    // Fallback bounds from <location convBoundary>, for networks without lane shapes
+    // Biên dự phòng từ <location convBoundary>, cho mạng lưới không có hình dạng lane
+    private double[] convBoundary;
+
+    private NetFileParser() {
+    }
+
+    /**
+     * Parse a network file
+     * Phân tích một file mạng lưới
+     */
+    public static NetworkGeometry parse(Path netFile) {
+        NetFileParser parser = new NetFileParser();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(netFile), BUFFER_SIZE)) {
+            parser.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read network " + netFile, e);
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Invalid network " + netFile + ": " + e.getMessage(), e);
+        }
+        return parser.build();
+    }
+
+    private void read(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "lane" -> readLane(reader);
+                    case "junction" -> readJunction(reader);
+                    case "tlLogic" -> links.computeIfAbsent(reader.getAttributeValue(null, "id"), id -> new HashMap<>());
+                    case "connection" -> readConnection(reader);
+                    case "location" -> readLocation(reader);
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readLane(XMLStreamReader reader) {
+        String id = reader.getAttributeValue(null, "id");
+        String shape = reader.getAttributeValue(null, "shape");
+        if (id == null) {
+            return;
+        }
+        int lane = laneIds.size();
+        laneIds.add(id);
+        if (laneOffsets.length < lane + 2) {
+            laneOffsets = Arrays.copyOf(laneOffsets, laneOffsets.length * 2);
+        }
+        if (shape != null) {
+            readShape(shape);
+        }
+        laneOffsets[lane + 1] = points;
+    }
+
+    /**
+     * Append the points of a "x,y x,y ..." shape and grow the bounding box
+     * Thêm các điểm của hình dạng "x,y x,y ..." và mở rộng hộp bao
+     */
+    private void readShape(String shape) {
+        int length = shape.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && shape.charAt(pos) == ' ') {
+                pos++;
+            }
+            if (pos == length) {
+                break;
+            }
+            int comma = shape.indexOf(',', pos);
+            int end = shape.indexOf(' ', pos);
+            if (end < 0) {
+                end = length;
+            }
+            if (comma < 0 || comma > end) {
+                throw new IllegalArgumentException("Invalid shape point: " + shape.substring(pos, end));
+            }
+            // A third value (z) after a second comma is ignored
+            // Giá trị thứ ba (z) sau dấu phẩy thứ hai được bỏ qua
+            int comma2 = shape.indexOf(',', comma + 1);
+            int yEnd = comma2 >= 0 && comma2 < end ? comma2 : end;
+            double x = parseNumber(shape, pos, comma);
+            double y = parseNumber(shape, comma + 1, yEnd);
+            if (points == laneX.length) {
+                laneX = Arrays.copyOf(laneX, points * 2);
+                laneY = Arrays.copyOf(laneY, points * 2);
+            }
+            laneX[points] = x;
+            laneY[points] = y;
+            points++;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            pos = end;
+        }
+    }
+
+    private void readJunction(XMLStreamReader reader) {
+        String id = reader.getAttributeValue(null, "id");
+        String x = reader.getAttributeValue(null, "x");
+        String y = reader.getAttributeValue(null, "y");
+        if (id == null || x == null || y == null) {
+            return;
+        }
+        int junction = junctionIds.size();
+        junctionIds.add(id);
+        if (junction == junctionX.length) {
+            junctionX = Arrays.copyOf(junctionX, junction * 2);
+            junctionY = Arrays.copyOf(junctionY, junction * 2);
+        }
+        junctionX[junction] = parseNumber(x, 0, x.length());
+        junctionY[junction] = parseNumber(y, 0, y.length());
+    }
+
+    private void readConnection(XMLStreamReader reader) {
+        String tl = reader.getAttributeValue(null, "tl");
+        String linkIndex = reader.getAttributeValue(null, "linkIndex");
+        if (tl == null || linkIndex == null) {
+            return;
+        }
+        // All connections of one link index come from the same lane; the first one is kept
+        // Mọi kết nối của cùng một chỉ số link đến từ cùng một lane; giữ kết nối đầu tiên
+        String lane = reader.getAttributeValue(null, "from") + "_" + reader.getAttributeValue(null, "fromLane");
+        links.computeIfAbsent(tl, id -> new HashMap<>()).putIfAbsent(Integer.parseInt(linkIndex), lane);
+    }
+
+    private void readLocation(XMLStreamReader reader) {
+        String boundary = reader.getAttributeValue(null, "convBoundary");
+        if (boundary == null) {
+            return;
+        }
+        String[] values = boundary.split(",");
+        if (values.length == 4) {
+            convBoundary = new double[4];
+            for (int i = 0; i < 4; i++) {
+                convBoundary[i] = parseNumber(values[i], 0, values[i].length());
+            }
+        }
+    }
+
+    private NetworkGeometry build() {
+        if (points == 0 && convBoundary != null) {
+            minX = convBoundary[0];
+            minY = convBoundary[1];
+            maxX = convBoundary[2];
+            maxY = convBoundary[3];
+        }
+
+        Map<String, Integer> laneIndex = new HashMap<>(laneIds.size() * 2);
+        for (int i = 0; i < laneIds.size(); i++) {
+            laneIndex.put(laneIds.get(i), i);
+        }
+        String[] tlsIds = links.keySet().toArray(new String[0]);
+        int[] linkOffsets = new int[tlsIds.length + 1];
+        for (int t = 0; t < tlsIds.length; t++) {
+            Map<Integer, String> tlsLinks = links.get(tlsIds[t]);
+            int count = tlsLinks.isEmpty() ? 0 : tlsLinks.keySet().stream().mapToInt(Integer::intValue).max().getAsInt() + 1;
+            linkOffsets[t + 1] = linkOffsets[t] + count;
+        }
+        int[] linkLanes = new int[linkOffsets[tlsIds.length]];
+        Arrays.fill(linkLanes, -1);
+        for (int t = 0; t < tlsIds.length; t++) {
+            for (Map.Entry<Integer, String> link : links.get(tlsIds[t]).entrySet()) {
+                linkLanes[linkOffsets[t] + link.getKey()] = laneIndex.getOrDefault(link.getValue(), -1);
+            }
+        }
+
+        int junctions = junctionIds.size();
+        return new NetworkGeometry(laneIds.toArray(new String[0]), Arrays.copyOf(laneOffsets, laneIds.size() + 1),
+                Arrays.copyOf(laneX, points), Arrays.copyOf(laneY, points),
+                junctionIds.toArray(new String[0]), Arrays.copyOf(junctionX, junctions), Arrays.copyOf(junctionY, junctions),
+                tlsIds, linkOffsets, linkLanes, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Parse a number in s[from, to) without creating a substring for the usual "-123.45" form
+     * Phân tích số trong s[from, to) mà không tạo chuỗi con với dạng thông thường "-123.45"
+     */
+    static double parseNumber(String s, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                digits = -1; // exponent or anything unusual
+                break;
+            }
+        }
+        // Exact while the mantissa fits in 53 bits and the power of ten is exact (up to 10^22)
+        // Chính xác khi phần định trị vừa 53 bit và lũy thừa của mười là chính xác (tới 10^22)
+        if (digits <= 0 || digits > 15 || decimals > 22) {
+            return Double.parseDouble(s.substring(from, to));
+        }
+        double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,320 @@
+package novik.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Binary cache of parsed network geometry, stored next to the net file and keyed by its content hash
+ * Cache nhị phân của hình học mạng lưới đã phân tích, lưu cạnh file net và định danh bằng hash nội dung
+ *
+ * The first launch parses the net file and writes {@code <net file>.nvkg}; later launches map the cache
+ * into memory and copy the arrays out in bulk. The cache is rebuilt whenever the SHA-256 of the net
+ * file or the format version no longer matches.
+ * Lần chạy đầu phân tích file net và ghi {@code <file net>.nvkg}; các lần sau ánh xạ cache vào bộ nhớ
+ * và sao chép hàng loạt các mảng ra. Cache được tạo lại khi SHA-256 của file net hoặc phiên bản định
+ * dạng không còn khớp.
+ *
+ * File layout / Bố cục file (little endian):
+ * <pre>
+ * header  : int MAGIC, short VERSION, byte[32] sha256
+ * sizes   : double minX, minY, maxX, maxY, int lanes, int points, int junctions, int lights, int links
+ * arrays  : int laneOffsets[lanes + 1], double laneX[points], double laneY[points],
+ *           double junctionX[junctions], double junctionY[junctions],
+ *           int linkOffsets[lights + 1], int linkLanes[links]
+ * strings : lane IDs, junction IDs, light IDs, each as { int length, byte utf8[length] }
+ * </pre>
+ */
+public final class NetworkCache {
+    public static final int MAGIC = 0x4E564B47; // "NVKG"
+    public static final short VERSION = 1;
+    public static final String SUFFIX = ".nvkg";
+
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = 4 + 2 + HASH_SIZE;
+    private static final int SIZES_SIZE = 4 * 8 + 5 * 4;
+
+    private NetworkCache() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Load the geometry of a net file from its cache, parsing the file and (re)writing the cache if needed
+     * Nạp hình học của file net từ cache, phân tích file và ghi (lại) cache nếu cần
+     */
+    public static NetworkGeometry load(Path netFile) {
+        Path cacheFile = cacheFileFor(netFile);
+        byte[] hash = hash(netFile);
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                NetworkGeometry cached = read(cacheFile, hash);
+                if (cached != null) {
+                    return cached;
+                }
+                System.out.println("NetworkCache: " + cacheFile.getFileName() + " is out of date or damaged, rebuilding");
+            } catch (IOException | RuntimeException e) {
+                System.err.println("NetworkCache: cannot read " + cacheFile + ", rebuilding: " + e.getMessage());
+            }
+        }
+
+        NetworkGeometry network = NetFileParser.parse(netFile);
+        try {
+            write(cacheFile, hash, network);
+        } catch (IOException e) {
+            // A read-only scenario folder only costs the parse on the next launch
+            // Thư mục kịch bản chỉ đọc chỉ tốn thêm một lần phân tích ở lần chạy sau
+            System.err.println("NetworkCache: cannot write " + cacheFile + ": " + e.getMessage());
+        }
+        return network;
+    }
+
+    public static Path cacheFileFor(Path netFile) {
+        return netFile.resolveSibling(netFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * SHA-256 of a file's content
+     * SHA-256 của nội dung một file
+     */
+    static byte[] hash(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read network " + file, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Read a cache file, or return null if it belongs to another net file content or format version,
+     * or if its counts do not fit in the file or its offsets and lane indices point outside their arrays
+     * Đọc một file cache, hoặc trả về null nếu nó thuộc về nội dung file net hoặc phiên bản định dạng khác,
+     * hoặc nếu các số lượng trong đó không vừa với file hay các offset và chỉ số lane trỏ ra ngoài mảng
+     */
+    static NetworkGeometry read(Path cacheFile, byte[] expectedHash) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE + SIZES_SIZE || data.getInt() != MAGIC || data.getShort() != VERSION) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_SIZE];
+        data.get(hash);
+        if (!Arrays.equals(hash, expectedHash)) {
+            return null;
+        }
+
+        double minX = data.getDouble();
+        double minY = data.getDouble();
+        double maxX = data.getDouble();
+        double maxY = data.getDouble();
+        int lanes = data.getInt();
+        int points = data.getInt();
+        int junctions = data.getInt();
+        int lights = data.getInt();
+        int links = data.getInt();
+        // A damaged file can still carry a matching hash; never allocate from counts the file cannot hold
+        // File hỏng vẫn có thể mang mã băm khớp; không bao giờ cấp phát theo số lượng mà file không chứa nổi
+        if (lanes < 0 || points < 0 || junctions < 0 || lights < 0 || links < 0) {
+            return null;
+        }
+        long arraysSize = 4L * (lanes + 1L) + 16L * points + 16L * junctions + 4L * (lights + 1L) + 4L * links;
+        long stringHeadersSize = 4L * ((long) lanes + junctions + lights);
+        if (arraysSize + stringHeadersSize > data.remaining()) {
+            return null;
+        }
+
+        int[] laneOffsets = getInts(data, lanes + 1);
+        double[] laneX = getDoubles(data, points);
+        double[] laneY = getDoubles(data, points);
+        double[] junctionX = getDoubles(data, junctions);
+        double[] junctionY = getDoubles(data, junctions);
+        int[] linkOffsets = getInts(data, lights + 1);
+        int[] linkLanes = getInts(data, links);
+        if (!isOffsetTable(laneOffsets, points) || !isOffsetTable(linkOffsets, links)
+                || !isIndexTable(linkLanes, lanes)) {
+            return null;
+        }
+        String[] laneIds = getStrings(data, lanes);
+        String[] junctionIds = laneIds != null ? getStrings(data, junctions) : null;
+        String[] tlsIds = junctionIds != null ? getStrings(data, lights) : null;
+        if (tlsIds == null) {
+            return null;
+        }
+        return new NetworkGeometry(laneIds, laneOffsets, laneX, laneY, junctionIds, junctionX, junctionY,
+                tlsIds, linkOffsets, linkLanes, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Write the cache to a temporary file and move it into place, so readers never see a partial cache
+     * Ghi cache ra file tạm rồi chuyển vào chỗ, để bên đọc không bao giờ thấy cache dở dang
+     */
+    static void write(Path cacheFile, byte[] hash, NetworkGeometry network) throws IOException {
+        byte[][] laneIds = encode(network.laneIdArray());
+        byte[][] junctionIds = encode(network.junctionIdArray());
+        byte[][] tlsIds = encode(network.tlsIdArray());
+        int points = network.getLaneX().length;
+        int junctions = junctionIds.length;
+        long size = HEADER_SIZE + SIZES_SIZE
+                + 4L * (laneIds.length + 1) + 16L * points + 16L * junctions
+                + 4L * (tlsIds.length + 1) + 4L * network.linkLaneArray().length
+                + stringsSize(laneIds) + stringsSize(junctionIds) + stringsSize(tlsIds);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Network too large for the cache: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put(hash);
+        buffer.putDouble(network.getMinX());
+        buffer.putDouble(network.getMinY());
+        buffer.putDouble(network.getMaxX());
+        buffer.putDouble(network.getMaxY());
+        buffer.putInt(laneIds.length);
+        buffer.putInt(points);
+        buffer.putInt(junctions);
+        buffer.putInt(tlsIds.length);
+        buffer.putInt(network.linkLaneArray().length);
+        putInts(buffer, network.getLaneOffsets());
+        putDoubles(buffer, network.getLaneX());
+        putDoubles(buffer, network.getLaneY());
+        putDoubles(buffer, network.junctionXArray());
+        putDoubles(buffer, network.junctionYArray());
+        putInts(buffer, network.linkOffsetArray());
+        putInts(buffer, network.linkLaneArray());
+        putStrings(buffer, laneIds);
+        putStrings(buffer, junctionIds);
+        putStrings(buffer, tlsIds);
+        buffer.flip();
+
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ---------- Array helpers / Hàm phụ cho mảng ----------
+
+    private static int[] getInts(ByteBuffer data, int n) {
+        int[] values = new int[n];
+        data.asIntBuffer().get(values);
+        data.position(data.position() + 4 * n);
+        return values;
+    }
+
+    private static double[] getDoubles(ByteBuffer data, int n) {
+        double[] values = new double[n];
+        data.asDoubleBuffer().get(values);
+        data.position(data.position() + 8 * n);
+        return values;
+    }
+
+    /**
+     * Whether offsets start at 0, never decrease and end at the length of the array they index
+     * Offset có bắt đầu từ 0, không bao giờ giảm và kết thúc bằng độ dài mảng mà chúng đánh chỉ số hay không
+     */
+    private static boolean isOffsetTable(int[] offsets, int length) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != length) {
+            return false;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether every value is -1 (none) or an index below the given count
+     * Mọi giá trị có là -1 (không có) hoặc một chỉ số nhỏ hơn số lượng đã cho hay không
+     */
+    private static boolean isIndexTable(int[] indices, int count) {
+        for (int index : indices) {
+            if (index < -1 || index >= count) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    private static void putDoubles(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().put(values);
+        buffer.position(buffer.position() + 8 * values.length);
+    }
+
+    private static byte[][] encode(String[] strings) {
+        byte[][] encoded = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static long stringsSize(byte[][] strings) {
+        long size = 0;
+        for (byte[] s : strings) {
+            size += 4 + s.length;
+        }
+        return size;
+    }
+
+    private static void putStrings(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] s : strings) {
+            buffer.putInt(s.length);
+            buffer.put(s);
+        }
+    }
+
+    /**
+     * Read length-prefixed UTF-8 strings, or return null if a length does not fit in the rest of the data
+     * Đọc các chuỗi UTF-8 có tiền tố độ dài, hoặc trả về null nếu một độ dài vượt quá phần dữ liệu còn lại
+     */
+    private static String[] getStrings(ByteBuffer data, int n) {
+        String[] strings = new String[n];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < n; i++) {
+            int length = data.remaining() >= 4 ? data.getInt() : -1;
+            if (length < 0 || length > data.remaining()) {
+                return null;
+            }
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            data.get(bytes, 0, length);
+            strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+}
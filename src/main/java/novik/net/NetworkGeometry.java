@@ -0,0 +1,208 @@
+package novik.net;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static geometry of a SUMO network in flat primitive arrays: lanes, junctions and traffic lights
+ * Hình học tĩnh của một mạng lưới SUMO trong các mảng nguyên thủy phẳng: lane, nút giao và đèn giao thông
+ *
+ * The points of lane i are laneX/laneY[laneOffsets[i] .. laneOffsets[i + 1]); the links of light t are
+ * linkLanes[linkOffsets[t] .. linkOffsets[t + 1]), indexed like its state string (-1 = no lane).
+ * Arrays returned by the getters are shared and must not be modified.
+ * Các điểm của lane i là laneX/laneY[laneOffsets[i] .. laneOffsets[i + 1]); các link của đèn t là
+ * linkLanes[linkOffsets[t] .. linkOffsets[t + 1]), đánh chỉ số giống chuỗi trạng thái (-1 = không có lane).
+ * Các mảng trả về từ getter được dùng chung và không được sửa.
+ */
+public final class NetworkGeometry {
+    private final String[] laneIds;
+    private final int[] laneOffsets;
+    private final double[] laneX;
+    private final double[] laneY;
+
+    private final String[] junctionIds;
+    private final double[] junctionX;
+    private final double[] junctionY;
+
+    private final String[] tlsIds;
+    private final int[] linkOffsets;
+    private final int[] linkLanes;
+
+    private final double minX, minY, maxX, maxY;
+
+    // Lookups by ID, built once
+    // Tra cứu theo ID, chỉ tạo một lần
+    private final Map<String, Integer> laneIndex;
+    private final Map<String, Integer> junctionIndex;
+    private final Map<String, Integer> tlsIndex;
+
+    NetworkGeometry(String[] laneIds, int[] laneOffsets, double[] laneX, double[] laneY,
+                    String[] junctionIds, double[] junctionX, double[] junctionY,
+                    String[] tlsIds, int[] linkOffsets, int[] linkLanes,
+                    double minX, double minY, double maxX, double maxY) {
+        this.laneIds = laneIds;
+        this.laneOffsets = laneOffsets;
+        this.laneX = laneX;
+        this.laneY = laneY;
+        this.junctionIds = junctionIds;
+        this.junctionX = junctionX;
+        this.junctionY = junctionY;
+        this.tlsIds = tlsIds;
+        this.linkOffsets = linkOffsets;
+        this.linkLanes = linkLanes;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.laneIndex = indexOf(laneIds);
+        this.junctionIndex = indexOf(junctionIds);
+        this.tlsIndex = indexOf(tlsIds);
+    }
+
+    private static Map<String, Integer> indexOf(String[] ids) {
+        Map<String, Integer> index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+        return index;
+    }
+
+    // ---------- Lanes / Lane ----------
+
+    public int getLaneCount() {
+        return laneIds.length;
+    }
+
+    public List<String> getLaneIds() {
+        return Collections.unmodifiableList(Arrays.asList(laneIds));
+    }
+
+    /**
+     * Index of a lane, or -1 if the network has no such lane
+     * Chỉ số của một lane, hoặc -1 nếu mạng lưới không có lane đó
+     */
+    public int getLaneIndex(String laneId) {
+        Integer lane = laneIndex.get(laneId);
+        return lane != null ? lane : -1;
+    }
+
+    /**
+     * Shape of a lane as interleaved coordinates {x0, y0, x1, y1, ...}, or null if unknown
+     * Hình dạng lane dưới dạng tọa độ xen kẽ {x0, y0, x1, y1, ...}, hoặc null nếu không biết
+     */
+    public double[] getLaneShape(String laneId) {
+        int lane = getLaneIndex(laneId);
+        if (lane < 0) {
+            return null;
+        }
+        int start = laneOffsets[lane];
+        int n = laneOffsets[lane + 1] - start;
+        double[] xy = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            xy[2 * i] = laneX[start + i];
+            xy[2 * i + 1] = laneY[start + i];
+        }
+        return xy;
+    }
+
+    public int[] getLaneOffsets() {
+        return laneOffsets;
+    }
+
+    public double[] getLaneX() {
+        return laneX;
+    }
+
+    public double[] getLaneY() {
+        return laneY;
+    }
+
+    // ---------- Junctions / Nút giao ----------
+
+    public int getJunctionCount() {
+        return junctionIds.length;
+    }
+
+    /**
+     * Position of a junction as {x, y}, or null if unknown
+     * Vị trí nút giao dưới dạng {x, y}, hoặc null nếu không biết
+     */
+    public double[] getJunctionPosition(String junctionId) {
+        Integer junction = junctionIndex.get(junctionId);
+        return junction != null ? new double[] {junctionX[junction], junctionY[junction]} : null;
+    }
+
+    // ---------- Traffic lights / Đèn giao thông ----------
+
+    public List<String> getTrafficLightIds() {
+        return Collections.unmodifiableList(Arrays.asList(tlsIds));
+    }
+
+    /**
+     * Incoming lane of every link of a light, indexed like its state string, or null if the light is unknown
+     * Lane đi vào của mỗi link của đèn, đánh chỉ số giống chuỗi trạng thái, hoặc null nếu không biết đèn
+     */
+    public String[] getSignalLanes(String tlsId) {
+        Integer tls = tlsIndex.get(tlsId);
+        if (tls == null) {
+            return null;
+        }
+        String[] lanes = new String[linkOffsets[tls + 1] - linkOffsets[tls]];
+        for (int i = 0; i < lanes.length; i++) {
+            int lane = linkLanes[linkOffsets[tls] + i];
+            lanes[i] = lane >= 0 ? laneIds[lane] : null;
+        }
+        return lanes;
+    }
+
+    // ---------- Raw arrays for the cache / Mảng gốc cho cache ----------
+
+    String[] laneIdArray() {
+        return laneIds;
+    }
+
+    String[] junctionIdArray() {
+        return junctionIds;
+    }
+
+    double[] junctionXArray() {
+        return junctionX;
+    }
+
+    double[] junctionYArray() {
+        return junctionY;
+    }
+
+    String[] tlsIdArray() {
+        return tlsIds;
+    }
+
+    int[] linkOffsetArray() {
+        return linkOffsets;
+    }
+
+    int[] linkLaneArray() {
+        return linkLanes;
+    }
+
+    // ---------- Bounds / Biên ----------
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+}
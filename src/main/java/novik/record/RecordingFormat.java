@@ -0,0 +1,150 @@
+package novik.record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout constants and encoding helpers of the binary recording format
+ * Hằng số bố cục và hàm mã hóa của định dạng file ghi nhị phân
+ *
+ * File layout / Bố cục file:
+ * <pre>
+ * header   : int MAGIC, short VERSION, double deltaT
+ * network  : varint laneCount, { string id, varint points, { int x, int y } }
+ *            varint tlsCount, { string id, int x, int y, varint links, { varint lane + 1 (0 = none) } }
+ * records  : byte TAG_KEYFRAME | TAG_DELTA, double time, varint newStrings, { string }, then
+ *   keyframe: varint vehicles, { varint id, varint type, int x, int y, char angle, char speed },
+ *             varint signals, { varint id, varint state }
+ *   delta   : varint removed, { varint id },
+ *             varint changed, { varint id, (varint type, int x, int y | zigzag dx, zigzag dy), char angle, char speed },
+ *             varint changedSignals, { varint id, varint state }
+ * end      : byte TAG_END
+ * footer   : int keyframes, { double time, long offset }, double lastTime, varint strings, { string }
+ * trailer  : long footerOffset, int MAGIC
+ * </pre>
+ * IDs, types and signal states are interned: every string is written once and then referenced by
+ * its index in order of appearance (TLS IDs of the network come first). Coordinates are quantized
+ * to centimeters, angles to 1/65536 of a turn and speeds to cm/s.
+ * ID, loại xe và trạng thái đèn được intern: mỗi chuỗi chỉ ghi một lần, sau đó được tham chiếu bằng
+ * chỉ số theo thứ tự xuất hiện (ID đèn của mạng lưới đứng đầu). Tọa độ được lượng tử hóa theo
+ * centimet, góc theo 1/65536 vòng và tốc độ theo cm/s.
+ *
+ * A keyframe holds the full state; a delta step only lists vehicles that left, vehicles that moved
+ * (new vehicles carry their type and absolute position, known ones a position difference) and
+ * signals that switched. The footer indexes the keyframes by time and repeats the whole string
+ * table, so a reader can jump to any keyframe without decoding what comes before it.
+ * Keyframe chứa toàn bộ trạng thái; bước delta chỉ liệt kê xe đã rời đi, xe đã di chuyển (xe mới
+ * kèm loại và vị trí tuyệt đối, xe đã biết chỉ kèm độ lệch vị trí) và đèn đã đổi. Footer đánh chỉ
+ * mục các keyframe theo thời gian và lặp lại toàn bộ bảng chuỗi, nên bên đọc có thể nhảy tới bất
+ * kỳ keyframe nào mà không cần giải mã phần trước nó.
+ */
+public final class RecordingFormat {
+    public static final int MAGIC = 0x4E564B52; // "NVKR"
+    public static final short VERSION = 3;
+
+    public static final byte TAG_END = 0;
+    public static final byte TAG_KEYFRAME = 1;
+    public static final byte TAG_DELTA = 2;
+
+    // Size of the trailer at the very end of the file
+    // Kích thước phần trailer ở cuối file
+    public static final int TRAILER_SIZE = 8 + 4;
+
+    private static final double POSITION_SCALE = 100.0; // cm
+    private static final double ANGLE_SCALE = 65536.0 / 360.0;
+    private static final double SPEED_SCALE = 100.0; // cm/s
+
+    private RecordingFormat() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    // ---------- Quantization / Lượng tử hóa ----------
+
+    public static int encodePosition(double meters) {
+        return (int) Math.round(meters * POSITION_SCALE);
+    }
+
+    public static double decodePosition(int value) {
+        return value / POSITION_SCALE;
+    }
+
+    public static char encodeAngle(double degrees) {
+        return (char) ((int) Math.round(degrees * ANGLE_SCALE) & 0xFFFF);
+    }
+
+    public static double decodeAngle(char value) {
+        return value / ANGLE_SCALE;
+    }
+
+    public static char encodeSpeed(double metersPerSecond) {
+        return (char) Math.max(0, Math.min(0xFFFF, Math.round(metersPerSecond * SPEED_SCALE)));
+    }
+
+    public static double decodeSpeed(char value) {
+        return value / SPEED_SCALE;
+    }
+
+    // ---------- Primitive encoding / Mã hóa kiểu cơ bản ----------
+
+    /**
+     * Write a non-negative int in 1-5 bytes (7 bits per byte, high bit = more bytes follow)
+     * Ghi số nguyên không âm bằng 1-5 byte (7 bit mỗi byte, bit cao = còn byte tiếp theo)
+     */
+    public static void putVarInt(ByteBuffer buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static int getVarInt(ByteBuffer buf) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Write a signed int as a varint, small magnitudes in few bytes (zigzag: 0, -1, 1, -2, ...)
+     * Ghi số nguyên có dấu thành varint, giá trị nhỏ dùng ít byte (zigzag: 0, -1, 1, -2, ...)
+     */
+    public static void putZigZag(ByteBuffer buf, int value) {
+        putVarInt(buf, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getZigZag(ByteBuffer buf) {
+        int value = getVarInt(buf);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Upper bound of the encoded size of a string
+     * Giới hạn trên của kích thước chuỗi sau khi mã hóa
+     */
+    public static int maxStringSize(String value) {
+        return 5 + value.length() * 3;
+    }
+
+    public static void putString(ByteBuffer buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(buf, bytes.length);
+        buf.put(bytes);
+    }
+
+    public static String getString(ByteBuffer buf) {
+        byte[] bytes = new byte[getVarInt(buf)];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void skipString(ByteBuffer buf) {
+        int length = getVarInt(buf);
+        buf.position(buf.position() + length);
+    }
+}
@@ -0,0 +1,451 @@
+package novik.record;
+
+import novik.backend.SimulationBackend;
+import novik.sim.SimulationSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends the network and the state of every step to a compact binary file (see {@link RecordingFormat})
+ * Ghi mạng lưới và trạng thái của từng bước vào một file nhị phân gọn (xem {@link RecordingFormat})
+ *
+ * Every {@code keyframeInterval}-th step is written in full, the steps in between as deltas against the
+ * previous step. Closing the recorder writes the keyframe index used for seeking.
+ * Writes go through a reused buffer to a {@link FileChannel}; must be used from one thread only.
+ * Mỗi bước thứ {@code keyframeInterval} được ghi đầy đủ, các bước ở giữa được ghi dạng delta so với
+ * bước trước. Khi đóng, bộ ghi ghi chỉ mục keyframe dùng để tua.
+ * Dữ liệu được ghi qua một bộ đệm dùng lại vào {@link FileChannel}; chỉ được dùng từ một luồng.
+ */
+public class SimulationRecorder implements AutoCloseable {
+    // Steps between two keyframes; seeking decodes at most this many steps
+    // Số bước giữa hai keyframe; khi tua chỉ giải mã tối đa bấy nhiêu bước
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Largest encoded vehicle: two varints, two ints and two chars
+    // Kích thước tối đa của một xe: hai varint, hai int và hai char
+    private static final int MAX_VEHICLE_SIZE = 5 + 5 + 4 + 4 + 2 + 2;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final int keyframeInterval;
+    // Bytes already written to the channel (file offset of the buffer start)
+    // Số byte đã ghi vào channel (vị trí trong file của đầu bộ đệm)
+    private long flushed = 0;
+
+    // Interned strings: index = order of first appearance
+    // Chuỗi đã intern: chỉ số = thứ tự xuất hiện đầu tiên
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private boolean headerWritten = false;
+    private long steps = 0;
+    private double lastTime = 0;
+
+    // Keyframe index written into the footer
+    // Chỉ mục keyframe được ghi vào footer
+    private double[] keyframeTimes = new double[64];
+    private long[] keyframeOffsets = new long[64];
+    private int keyframeCount = 0;
+
+    // State written for the previous step, indexed by string reference
+    // Trạng thái đã ghi cho bước trước, đánh chỉ số theo tham chiếu chuỗi
+    private long[] seenStep = new long[64];
+    private int[] lastX = new int[64];
+    private int[] lastY = new int[64];
+    private char[] lastAngle = new char[64];
+    private char[] lastSpeed = new char[64];
+    private int[] lastSignalState = new int[64];
+    private int[] previousRefs = new int[64];
+    private int previousCount = 0;
+
+    // Quantized vehicles of the step being written, indexed like the snapshot
+    // Các xe đã lượng tử hóa của bước đang ghi, theo chỉ số của snapshot
+    private int[] refs = new int[64];
+    private int[] qx = new int[64];
+    private int[] qy = new int[64];
+    private char[] qAngle = new char[64];
+    private char[] qSpeed = new char[64];
+    private boolean[] known = new boolean[64];
+    private boolean[] changed = new boolean[64];
+
+    public SimulationRecorder(Path file) {
+        this(file, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Constructor
+     * @param file File to create (replaced if it exists)
+     * @param keyframeInterval Number of steps between two full keyframes
+     */
+    public SimulationRecorder(Path file, int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create recording " + file, e);
+        }
+    }
+
+    /**
+     * Write the header and the network of a backend (lanes and traffic lights)
+     * Ghi phần đầu file và mạng lưới của một backend (lane và đèn giao thông)
+     *
+     * Calls the backend, so it must run on the thread that drives it, before the first step is recorded.
+     * Gọi backend, nên phải chạy trên luồng điều khiển nó, trước khi ghi bước đầu tiên.
+     */
+    public void writeHeader(SimulationBackend backend) {
+        if (headerWritten) {
+            throw new IllegalStateException("Header already written");
+        }
+        ensure(2 + 4 + 8);
+        buffer.putInt(RecordingFormat.MAGIC);
+        buffer.putShort(RecordingFormat.VERSION);
+        buffer.putDouble(backend.getDeltaT());
+
+        List<String> laneIds = backend.getLaneIds();
+        Map<String, Integer> laneIndex = new HashMap<>();
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, laneIds.size());
+        for (String laneId : laneIds) {
+            double[] shape = backend.getLaneShape(laneId);
+            ensure(RecordingFormat.maxStringSize(laneId) + 5);
+            laneIndex.put(laneId, laneIndex.size());
+            RecordingFormat.putString(buffer, laneId);
+            RecordingFormat.putVarInt(buffer, shape.length / 2);
+            for (int i = 0; i + 1 < shape.length; i += 2) {
+                ensure(8);
+                buffer.putInt(RecordingFormat.encodePosition(shape[i]));
+                buffer.putInt(RecordingFormat.encodePosition(shape[i + 1]));
+            }
+        }
+
+        List<String> tlsIds = backend.getTrafficLightIds();
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, tlsIds.size());
+        for (String tlsId : tlsIds) {
+            double[] pos = backend.getJunctionPosition(tlsId);
+            ensure(RecordingFormat.maxStringSize(tlsId) + 8);
+            RecordingFormat.putString(buffer, tlsId);
+            buffer.putInt(RecordingFormat.encodePosition(pos[0]));
+            buffer.putInt(RecordingFormat.encodePosition(pos[1]));
+            // Lanes of the controlled links, by their index in the lane list above
+            // Lane của các link được điều khiển, theo chỉ số trong danh sách lane ở trên
+            String[] links = backend.getSignalLanes(tlsId);
+            ensure(5);
+            RecordingFormat.putVarInt(buffer, links.length);
+            for (String laneId : links) {
+                ensure(5);
+                Integer lane = laneId != null ? laneIndex.get(laneId) : null;
+                RecordingFormat.putVarInt(buffer, lane != null ? lane + 1 : 0);
+            }
+            intern(tlsId);
+        }
+        headerWritten = true;
+    }
+
+    /**
+     * Append the vehicles and signals of one step, as a keyframe or as a delta
+     * Ghi thêm xe và đèn của một bước, dạng keyframe hoặc delta
+     */
+    public void record(SimulationSnapshot snapshot) {
+        if (!headerWritten) {
+            throw new IllegalStateException("writeHeader must be called before record");
+        }
+        steps++;
+        boolean keyframe = (steps - 1) % keyframeInterval == 0;
+
+        // Strings seen for the first time are written before the step that uses them
+        // Chuỗi xuất hiện lần đầu được ghi trước bước sử dụng chúng
+        int firstNew = strings.size();
+        int vehicles = snapshot.getVehicleCount();
+        ensureStepCapacity(vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            refs[i] = intern(snapshot.getVehicleId(i));
+            intern(snapshot.getVehicleType(i));
+        }
+        for (int i = 0; i < snapshot.getSignalCount(); i++) {
+            intern(snapshot.getSignalId(i));
+            intern(snapshot.getSignalState(i));
+        }
+        ensureRefCapacity(strings.size());
+
+        if (keyframe) {
+            addKeyframe(snapshot.getTime(), offset());
+        }
+        ensure(1 + 8 + 5);
+        buffer.put(keyframe ? RecordingFormat.TAG_KEYFRAME : RecordingFormat.TAG_DELTA);
+        buffer.putDouble(snapshot.getTime());
+        RecordingFormat.putVarInt(buffer, strings.size() - firstNew);
+        for (int i = firstNew; i < strings.size(); i++) {
+            String value = strings.get(i);
+            ensure(RecordingFormat.maxStringSize(value));
+            RecordingFormat.putString(buffer, value);
+        }
+
+        for (int i = 0; i < vehicles; i++) {
+            qx[i] = RecordingFormat.encodePosition(snapshot.getX(i));
+            qy[i] = RecordingFormat.encodePosition(snapshot.getY(i));
+            qAngle[i] = RecordingFormat.encodeAngle(snapshot.getAngle(i));
+            qSpeed[i] = RecordingFormat.encodeSpeed(snapshot.getSpeed(i));
+            // Known = present in the previous step, so a delta can refer to its last state
+            // Đã biết = có mặt ở bước trước, nên delta có thể dựa vào trạng thái cuối của nó
+            known[i] = seenStep[refs[i]] == steps - 1;
+            seenStep[refs[i]] = steps;
+        }
+        if (keyframe) {
+            writeKeyframe(snapshot);
+        } else {
+            writeDelta(snapshot);
+        }
+
+        // Remember what was written for the next delta
+        // Ghi nhớ những gì đã ghi cho delta tiếp theo
+        for (int i = 0; i < vehicles; i++) {
+            int ref = refs[i];
+            lastX[ref] = qx[i];
+            lastY[ref] = qy[i];
+            lastAngle[ref] = qAngle[i];
+            lastSpeed[ref] = qSpeed[i];
+        }
+        System.arraycopy(refs, 0, previousRefs, 0, vehicles);
+        previousCount = vehicles;
+        lastTime = snapshot.getTime();
+    }
+
+    private void writeKeyframe(SimulationSnapshot snapshot) {
+        int vehicles = snapshot.getVehicleCount();
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            ensure(MAX_VEHICLE_SIZE);
+            RecordingFormat.putVarInt(buffer, refs[i]);
+            RecordingFormat.putVarInt(buffer, stringIds.get(snapshot.getVehicleType(i)));
+            buffer.putInt(qx[i]);
+            buffer.putInt(qy[i]);
+            buffer.putChar(qAngle[i]);
+            buffer.putChar(qSpeed[i]);
+        }
+
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, snapshot.getSignalCount());
+        for (int i = 0; i < snapshot.getSignalCount(); i++) {
+            int ref = stringIds.get(snapshot.getSignalId(i));
+            int state = stringIds.get(snapshot.getSignalState(i));
+            ensure(10);
+            RecordingFormat.putVarInt(buffer, ref);
+            RecordingFormat.putVarInt(buffer, state);
+            lastSignalState[ref] = state;
+        }
+    }
+
+    private void writeDelta(SimulationSnapshot snapshot) {
+        int vehicles = snapshot.getVehicleCount();
+
+        // Vehicles of the previous step that are gone
+        // Các xe của bước trước đã biến mất
+        int removed = 0;
+        for (int i = 0; i < previousCount; i++) {
+            if (seenStep[previousRefs[i]] != steps) {
+                removed++;
+            }
+        }
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, removed);
+        for (int i = 0; i < previousCount; i++) {
+            if (seenStep[previousRefs[i]] != steps) {
+                ensure(5);
+                RecordingFormat.putVarInt(buffer, previousRefs[i]);
+            }
+        }
+
+        // New vehicles and vehicles whose quantized state changed
+        // Xe mới và xe có trạng thái lượng tử hóa thay đổi
+        int changedCount = 0;
+        for (int i = 0; i < vehicles; i++) {
+            int ref = refs[i];
+            changed[i] = !known[i]
+                    || qx[i] != lastX[ref] || qy[i] != lastY[ref]
+                    || qAngle[i] != lastAngle[ref] || qSpeed[i] != lastSpeed[ref];
+            if (changed[i]) {
+                changedCount++;
+            }
+        }
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, changedCount);
+        for (int i = 0; i < vehicles; i++) {
+            if (!changed[i]) {
+                continue;
+            }
+            int ref = refs[i];
+            ensure(MAX_VEHICLE_SIZE + 2);
+            RecordingFormat.putVarInt(buffer, ref);
+            if (!known[i]) {
+                RecordingFormat.putVarInt(buffer, stringIds.get(snapshot.getVehicleType(i)));
+                buffer.putInt(qx[i]);
+                buffer.putInt(qy[i]);
+            } else {
+                RecordingFormat.putZigZag(buffer, qx[i] - lastX[ref]);
+                RecordingFormat.putZigZag(buffer, qy[i] - lastY[ref]);
+            }
+            buffer.putChar(qAngle[i]);
+            buffer.putChar(qSpeed[i]);
+        }
+
+        // Signals that switched since the previous step
+        // Các đèn đã đổi trạng thái từ bước trước
+        int signals = snapshot.getSignalCount();
+        int changedSignals = 0;
+        for (int i = 0; i < signals; i++) {
+            if (lastSignalState[stringIds.get(snapshot.getSignalId(i))] != stringIds.get(snapshot.getSignalState(i))) {
+                changedSignals++;
+            }
+        }
+        ensure(5);
+        RecordingFormat.putVarInt(buffer, changedSignals);
+        for (int i = 0; i < signals; i++) {
+            int ref = stringIds.get(snapshot.getSignalId(i));
+            int state = stringIds.get(snapshot.getSignalState(i));
+            if (lastSignalState[ref] != state) {
+                ensure(10);
+                RecordingFormat.putVarInt(buffer, ref);
+                RecordingFormat.putVarInt(buffer, state);
+                lastSignalState[ref] = state;
+            }
+        }
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(value, id);
+            strings.add(value);
+        }
+        return id;
+    }
+
+    private void addKeyframe(double time, long offset) {
+        if (keyframeCount == keyframeTimes.length) {
+            keyframeTimes = Arrays.copyOf(keyframeTimes, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+        }
+        keyframeTimes[keyframeCount] = time;
+        keyframeOffsets[keyframeCount] = offset;
+        keyframeCount++;
+    }
+
+    private void ensureRefCapacity(int n) {
+        if (n <= seenStep.length) {
+            return;
+        }
+        int old = seenStep.length;
+        int capacity = Math.max(n, old * 2);
+        seenStep = Arrays.copyOf(seenStep, capacity);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        lastAngle = Arrays.copyOf(lastAngle, capacity);
+        lastSpeed = Arrays.copyOf(lastSpeed, capacity);
+        lastSignalState = Arrays.copyOf(lastSignalState, capacity);
+    }
+
+    private void ensureStepCapacity(int n) {
+        if (n <= refs.length) {
+            return;
+        }
+        int capacity = Math.max(n, refs.length * 2);
+        refs = Arrays.copyOf(refs, capacity);
+        qx = Arrays.copyOf(qx, capacity);
+        qy = Arrays.copyOf(qy, capacity);
+        qAngle = Arrays.copyOf(qAngle, capacity);
+        qSpeed = Arrays.copyOf(qSpeed, capacity);
+        known = Arrays.copyOf(known, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+        previousRefs = Arrays.copyOf(previousRefs, capacity);
+    }
+
+    /**
+     * File offset of the next byte written
+     * Vị trí trong file của byte sẽ được ghi tiếp theo
+     */
+    private long offset() {
+        return flushed + buffer.position();
+    }
+
+    /**
+     * Make room for the given number of bytes, writing the buffer to the file if needed
+     * Chừa chỗ cho số byte đã cho, ghi bộ đệm ra file nếu cần
+     */
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write recording", e);
+        }
+        buffer.clear();
+    }
+
+    public long getRecordedSteps() {
+        return steps;
+    }
+
+    /**
+     * Write the end marker, the keyframe index and the string table, then close the file
+     * Ghi dấu kết thúc, chỉ mục keyframe và bảng chuỗi, rồi đóng file
+     */
+    @Override
+    public void close() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        ensure(1);
+        buffer.put(RecordingFormat.TAG_END);
+
+        long footerOffset = offset();
+        ensure(4);
+        buffer.putInt(keyframeCount);
+        for (int i = 0; i < keyframeCount; i++) {
+            ensure(8 + 8);
+            buffer.putDouble(keyframeTimes[i]);
+            buffer.putLong(keyframeOffsets[i]);
+        }
+        ensure(8 + 5);
+        buffer.putDouble(lastTime);
+        RecordingFormat.putVarInt(buffer, strings.size());
+        for (String value : strings) {
+            ensure(RecordingFormat.maxStringSize(value));
+            RecordingFormat.putString(buffer, value);
+        }
+        ensure(RecordingFormat.TRAILER_SIZE);
+        buffer.putLong(footerOffset);
+        buffer.putInt(RecordingFormat.MAGIC);
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close recording", e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package novik.render;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import novik.model.Car;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Renders all vehicles in one pass onto a single canvas
+ * Vẽ tất cả xe trong một lượt lên một canvas duy nhất
+ *
+ * No scene-graph node is created per vehicle, so layout and CSS cost does not grow with the vehicle count.
+ * Không tạo node cho từng xe, nên chi phí layout và CSS không tăng theo số lượng xe.
+ */
+public class CanvasVehicleRenderer implements VehicleRenderer {
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+    private final Map<String, Image> carImages;
+    private final Image defaultImage;
+
+    // Positions, rotations and types prepared before drawing
+    // Vị trí, góc xoay và loại xe được chuẩn bị trước khi vẽ
+    private final VehicleDrawList drawList = new VehicleDrawList();
+
+    // Sprite and draw size per type index of the draw list, computed once like ImageView with preserveRatio
+    // Hình và kích thước vẽ theo chỉ số loại của draw list, tính một lần giống ImageView với preserveRatio
+    private Image[] sprites = new Image[0];
+    private double[] spriteWidths = new double[0];
+    private double[] spriteHeights = new double[0];
+
+    private int renderedCount = 0;
+
+    /**
+     * Constructor: adds a dedicated canvas on top of the pane
+     * Constructor: thêm một canvas riêng vào pane
+     * @param pane The pane where the vehicle canvas is added
+     * @param carImages Sprite per vehicle type ("car" is the fallback)
+     */
+    public CanvasVehicleRenderer(Pane pane, Map<String, Image> carImages) {
+        this.carImages = carImages;
+        this.defaultImage = carImages.get("car");
+        this.canvas = new Canvas(MapUtil.getCanvasWidth(), MapUtil.getCanvasHeight());
+        canvas.setMouseTransparent(true);
+        this.gc = canvas.getGraphicsContext2D();
+        pane.getChildren().add(canvas);
+    }
+
+    @Override
+    public void render(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount) {
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        // Only vehicles inside the viewport are projected and drawn
+        // Chỉ các xe trong khung nhìn được chiếu và vẽ
+        drawList.prepare(snapshot, positions, visible, visibleCount);
+        if (sprites.length < drawList.getTypeCount()) {
+            loadSprites();
+        }
+        for (int v = 0; v < drawList.size(); v++) {
+            int t = drawList.getType(v);
+            double w = spriteWidths[t];
+            double h = spriteHeights[t];
+
+            // Rotate around the vehicle centre with one transform instead of save/translate/rotate/restore
+            // Xoay quanh tâm xe bằng một phép biến đổi thay vì save/translate/rotate/restore
+            double cos = drawList.getCos(v);
+            double sin = drawList.getSin(v);
+            gc.setTransform(cos, sin, -sin, cos, drawList.getScreenX(v), drawList.getScreenY(v));
+            gc.drawImage(sprites[t], -w / 2.0, -h / 2.0, w, h);
+        }
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        renderedCount = visibleCount;
+    }
+
+    /**
+     * Resolve the sprite and on-screen size of every type in the draw list, fitted like the ImageView of {@link Car}
+     * Lấy hình và kích thước hiển thị của mọi loại xe trong draw list, giống ImageView của {@link Car}
+     */
+    private void loadSprites() {
+        int n = drawList.getTypeCount();
+        int start = sprites.length;
+        sprites = Arrays.copyOf(sprites, n);
+        spriteWidths = Arrays.copyOf(spriteWidths, n);
+        spriteHeights = Arrays.copyOf(spriteHeights, n);
+        for (int t = start; t < n; t++) {
+            String type = drawList.getTypeName(t);
+            Image img = carImages.getOrDefault(type, defaultImage);
+            double fitW = Car.getFitWidth(type);
+            double fitH = Car.getFitHeight(type);
+            double ratio = Math.min(fitW / img.getWidth(), fitH / img.getHeight());
+            sprites[t] = img;
+            spriteWidths[t] = img.getWidth() * ratio;
+            spriteHeights[t] = img.getHeight() * ratio;
+        }
+    }
+
+    @Override
+    public void clear() {
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        renderedCount = 0;
+    }
+
+    @Override
+    public int getRenderedCount() {
+        return renderedCount;
+    }
+}
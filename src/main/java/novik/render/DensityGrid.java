@@ -0,0 +1,169 @@
+package novik.render;
+
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+import java.util.Arrays;
+
+/**
+ * Vehicle counts per screen cell, turned into ARGB pixels (one pixel per cell)
+ * Số xe trên mỗi ô màn hình, chuyển thành điểm ảnh ARGB (mỗi ô một điểm ảnh)
+ *
+ * Has no JavaFX dependency, like {@link VehicleDrawList}. Counts and pixels live in primitive arrays
+ * reused between frames; colours come from a precomputed ramp on a log scale, so a few busy cells
+ * do not wash out the rest.
+ * Không phụ thuộc JavaFX, giống {@link VehicleDrawList}. Số đếm và điểm ảnh nằm trong mảng nguyên thủy
+ * dùng lại giữa các khung hình; màu lấy từ dải màu tính sẵn theo thang log, để vài ô đông xe
+ * không làm nhạt các ô còn lại.
+ */
+public final class DensityGrid {
+    private static final int RAMP_SIZE = 256;
+    private static final int[] RAMP = createRamp();
+
+    private final int cellSize;
+    private int columns = 0;
+    private int rows = 0;
+    private int[] counts = new int[0];
+    private int[] pixels = new int[0];
+    private int maxCount = 0;
+
+    // Projection buffers
+    // Mảng đệm cho phép chiếu
+    private double[] worldX = new double[64];
+    private double[] worldY = new double[64];
+    private double[] screenX = new double[64];
+    private double[] screenY = new double[64];
+
+    /**
+     * Constructor
+     * @param cellSize Side of a cell (px)
+     */
+    public DensityGrid(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Count the given vehicles into the cells of a canvas of the given size
+     * Đếm các xe đã cho vào các ô của một canvas có kích thước đã cho
+     */
+    public void accumulate(VehiclePositions positions, int[] visible, int visibleCount,
+                           double canvasWidth, double canvasHeight) {
+        resize((int) Math.ceil(canvasWidth / cellSize), (int) Math.ceil(canvasHeight / cellSize));
+        Arrays.fill(counts, 0, columns * rows, 0);
+        maxCount = 0;
+
+        ensureCapacity(visibleCount);
+        for (int v = 0; v < visibleCount; v++) {
+            worldX[v] = positions.getX(visible[v]);
+            worldY[v] = positions.getY(visible[v]);
+        }
+        MapUtil.worldToScreen(worldX, worldY, 0, visibleCount, screenX, screenY, 0);
+        for (int v = 0; v < visibleCount; v++) {
+            // Vehicles in the cull margin fall outside the canvas
+            // Xe nằm trong lề loại bỏ rơi ra ngoài canvas
+            if (screenX[v] < 0 || screenY[v] < 0) {
+                continue;
+            }
+            int column = (int) (screenX[v] / cellSize);
+            int row = (int) (screenY[v] / cellSize);
+            if (column >= columns || row >= rows) {
+                continue;
+            }
+            int count = ++counts[row * columns + column];
+            if (count > maxCount) {
+                maxCount = count;
+            }
+        }
+    }
+
+    /**
+     * Convert the counts into ARGB pixels (transparent where there is no vehicle)
+     * Chuyển số đếm thành điểm ảnh ARGB (trong suốt ở ô không có xe)
+     *
+     * @return Pixels in row-major order, {@link #getColumns()} per row; shared, valid until the next call
+     */
+    public int[] toPixels() {
+        int n = columns * rows;
+        double norm = maxCount > 0 ? (RAMP_SIZE - 1) / Math.log1p(maxCount) : 0;
+        for (int i = 0; i < n; i++) {
+            int count = counts[i];
+            pixels[i] = count == 0 ? 0 : RAMP[(int) (Math.log1p(count) * norm)];
+        }
+        return pixels;
+    }
+
+    private void resize(int columns, int rows) {
+        if (columns == this.columns && rows == this.rows) {
+            return;
+        }
+        this.columns = columns;
+        this.rows = rows;
+        if (counts.length < columns * rows) {
+            counts = new int[columns * rows];
+            pixels = new int[columns * rows];
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= worldX.length) {
+            return;
+        }
+        int capacity = Math.max(n, worldX.length * 2);
+        worldX = new double[capacity];
+        worldY = new double[capacity];
+        screenX = new double[capacity];
+        screenY = new double[capacity];
+    }
+
+    /**
+     * Colour ramp from translucent blue through yellow to opaque red
+     * Dải màu từ xanh trong mờ qua vàng tới đỏ đậm
+     */
+    private static int[] createRamp() {
+        int[] ramp = new int[RAMP_SIZE];
+        for (int i = 0; i < RAMP_SIZE; i++) {
+            double t = i / (double) (RAMP_SIZE - 1);
+            int alpha = (int) (96 + 144 * t);
+            int red;
+            int green;
+            int blue;
+            if (t < 0.5) {
+                double u = t * 2;
+                red = (int) (40 + 215 * u);
+                green = (int) (90 + 150 * u);
+                blue = (int) (200 * (1 - u));
+            } else {
+                double u = (t - 0.5) * 2;
+                red = 255;
+                green = (int) (240 * (1 - u));
+                blue = 0;
+            }
+            ramp[i] = alpha << 24 | red << 16 | green << 8 | blue;
+        }
+        return ramp;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Number of vehicles counted in a cell
+     * Số xe được đếm trong một ô
+     */
+    public int getCount(int column, int row) {
+        return counts[row * columns + column];
+    }
+}
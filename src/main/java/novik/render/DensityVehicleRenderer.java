@@ -0,0 +1,77 @@
+package novik.render;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+/**
+ * Renders vehicle density per screen cell instead of individual vehicles
+ * Vẽ mật độ xe theo từng ô màn hình thay vì từng xe riêng lẻ
+ *
+ * Vehicle positions are counted into a {@link DensityGrid}, written into a small image with one pixel
+ * per cell and drawn scaled up in a single call, so the cost of a frame is one pass over the vehicles
+ * plus one pass over the cells.
+ * Vị trí xe được đếm vào {@link DensityGrid}, ghi vào một ảnh nhỏ với mỗi ô một điểm ảnh rồi vẽ phóng
+ * to bằng một lần gọi, nên chi phí mỗi khung hình là một lượt duyệt xe cộng một lượt duyệt các ô.
+ */
+public class DensityVehicleRenderer implements VehicleRenderer {
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+    private final DensityGrid grid;
+    private WritableImage image;
+
+    private int renderedCount = 0;
+
+    /**
+     * Constructor: adds a dedicated canvas on top of the pane
+     * Constructor: thêm một canvas riêng vào pane
+     * @param pane The pane where the density canvas is added
+     * @param cellSize Side of a density cell (px)
+     */
+    public DensityVehicleRenderer(Pane pane, int cellSize) {
+        this.grid = new DensityGrid(cellSize);
+        this.canvas = new Canvas(MapUtil.getCanvasWidth(), MapUtil.getCanvasHeight());
+        canvas.setMouseTransparent(true);
+        this.gc = canvas.getGraphicsContext2D();
+        // Cells stay sharp squares when the image is scaled up
+        // Các ô giữ nguyên hình vuông sắc nét khi ảnh được phóng to
+        gc.setImageSmoothing(false);
+        pane.getChildren().add(canvas);
+    }
+
+    @Override
+    public void render(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        grid.accumulate(positions, visible, visibleCount, canvas.getWidth(), canvas.getHeight());
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        if (columns == 0 || rows == 0) {
+            renderedCount = 0;
+            return;
+        }
+        if (image == null || (int) image.getWidth() != columns || (int) image.getHeight() != rows) {
+            image = new WritableImage(columns, rows);
+        }
+        image.getPixelWriter().setPixels(0, 0, columns, rows, PixelFormat.getIntArgbInstance(),
+                grid.toPixels(), 0, columns);
+        int cellSize = grid.getCellSize();
+        gc.drawImage(image, 0, 0, columns * cellSize, rows * cellSize);
+        renderedCount = visibleCount;
+    }
+
+    @Override
+    public void clear() {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        renderedCount = 0;
+    }
+
+    @Override
+    public int getRenderedCount() {
+        return renderedCount;
+    }
+}
@@ -0,0 +1,103 @@
+package novik.render;
+
+import novik.model.Car;
+
+/**
+ * Chooses how vehicles are drawn from the current view scale and how crowded the view is
+ * Chọn cách vẽ xe theo tỉ lệ khung nhìn hiện tại và mức độ đông xe trong khung nhìn
+ *
+ * Sprites have a fixed size in pixels whatever the zoom, so they turn into noise when the view holds
+ * more vehicles than their sprites can cover without piling up. Sprites are therefore used while the
+ * visible vehicles' sprites would cover at most a share of the view, i.e. while the mean on-screen
+ * spacing between vehicles stays well above a sprite; beyond that vehicles become plain oriented
+ * rectangles (or dots once they are only a few pixels long). Fully zoomed out only the vehicle density
+ * per screen cell is shown.
+ * Hình xe có kích thước cố định theo pixel dù zoom thế nào, nên chúng thành nhiễu khi khung nhìn chứa
+ * nhiều xe hơn mức hình xe có thể phủ mà không chồng lên nhau. Vì vậy hình xe được dùng khi hình của
+ * các xe đang thấy phủ tối đa một phần khung nhìn, tức khoảng cách trung bình trên màn hình giữa các xe
+ * còn lớn hơn hẳn một hình xe; vượt quá đó xe thành hình chữ nhật có hướng (hoặc chấm khi chỉ còn vài
+ * pixel). Khi thu nhỏ hết cỡ chỉ hiển thị mật độ xe theo từng ô màn hình.
+ */
+public final class LevelOfDetail {
+    /**
+     * Drawing tier, from most to least detailed
+     * Mức vẽ, từ chi tiết nhất tới ít chi tiết nhất
+     */
+    public enum Tier {
+        SPRITE,
+        SHAPE,
+        DENSITY
+    }
+
+    // Sprites may cover up to 15% of the view: about 100 cars on an 800×500 canvas, whatever the zoom
+    // Hình xe được phủ tối đa 15% khung nhìn: khoảng 100 xe trên canvas 800×500, dù zoom thế nào
+    public static final double DEFAULT_SPRITE_COVERAGE = 0.15;
+    // Below 0.5 px per meter a 5 m car is 2.5 px long
+    // Dưới 0.5 pixel mỗi mét một xe dài 5 m chỉ còn 2.5 px
+    public static final double DEFAULT_DENSITY_SCALE = 0.5;
+    public static final int DEFAULT_CELL_SIZE = 4;
+
+    // Screen area of a car sprite (px²)
+    // Diện tích màn hình của hình một xe con (px²)
+    private static final double SPRITE_AREA = Car.getFitWidth("car") * Car.getFitHeight("car");
+    // Switching back to sprites needs this much less coverage, so a count hovering at the limit
+    // does not rebuild the sprites every step
+    // Quay lại hình xe cần độ phủ thấp hơn mức này, để số xe dao động quanh ngưỡng không làm
+    // tạo lại hình xe mỗi bước
+    private static final double HYSTERESIS = 0.8;
+
+    private final double spriteCoverage;
+    private final double densityScale;
+    private final int cellSize;
+
+    public LevelOfDetail() {
+        this(DEFAULT_SPRITE_COVERAGE, DEFAULT_DENSITY_SCALE, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param spriteCoverage Largest share of the view the visible vehicles' sprites may cover (0..1)
+     * @param densityScale The density raster is drawn below this scale (px per meter)
+     * @param cellSize Side of a density cell (px)
+     */
+    public LevelOfDetail(double spriteCoverage, double densityScale, int cellSize) {
+        if (!(spriteCoverage >= 0)) {
+            throw new IllegalArgumentException("Sprite coverage must not be negative: " + spriteCoverage);
+        }
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be at least 1 px: " + cellSize);
+        }
+        this.spriteCoverage = spriteCoverage;
+        this.densityScale = densityScale;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Tier to use for a view
+     * Mức vẽ dùng cho một khung nhìn
+     *
+     * @param scale Current scale in px per meter
+     * @param visibleVehicles Vehicles inside the view
+     * @param viewArea Area of the view (px²)
+     * @param current Tier in use, so the switch back to sprites can lag behind
+     */
+    public Tier tierFor(double scale, int visibleVehicles, double viewArea, Tier current) {
+        if (scale < densityScale) {
+            return Tier.DENSITY;
+        }
+        double limit = current == Tier.SPRITE ? spriteCoverage : spriteCoverage * HYSTERESIS;
+        return visibleVehicles * SPRITE_AREA <= limit * viewArea ? Tier.SPRITE : Tier.SHAPE;
+    }
+
+    public double getSpriteCoverage() {
+        return spriteCoverage;
+    }
+
+    public double getDensityScale() {
+        return densityScale;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+}
@@ -0,0 +1,171 @@
+package novik.render;
+
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import novik.model.Car;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+import java.util.*;
+
+/**
+ * Renders every vehicle as its own ImageView node in a pane
+ * Vẽ mỗi xe thành một node ImageView riêng trong pane
+ *
+ * Cars are kept in an array indexed by the vehicle handle, so matching them to the snapshot
+ * is a linear scan without hashing or per-frame ID sets.
+ * Xe được lưu trong mảng theo handle của xe, nên việc khớp với snapshot là một lần duyệt
+ * tuyến tính, không cần băm hay tập ID mỗi khung hình.
+ */
+public class NodeVehicleRenderer implements VehicleRenderer {
+    private final Pane pane;
+    private final Map<String, Image> carImages;
+
+    // Cars by vehicle handle, and the sequence of the last snapshot each handle appeared in
+    // Xe theo handle, và số thứ tự snapshot gần nhất mà mỗi handle xuất hiện
+    private Car[] carsByHandle = new Car[0];
+    private long[] seenInSnapshot = new long[0];
+    private int carCount = 0;
+
+    // Reused flags marking which snapshot entries are inside the viewport
+    // Cờ dùng lại đánh dấu phần tử snapshot nào nằm trong khung nhìn
+    private boolean[] visibleMask = new boolean[0];
+    private int visibleCount = 0;
+
+    /**
+     * Constructor
+     * @param pane The pane where car nodes are added
+     * @param carImages Sprite per vehicle type ("car" is the fallback)
+     */
+    public NodeVehicleRenderer(Pane pane, Map<String, Image> carImages) {
+        this.pane = pane;
+        this.carImages = carImages;
+    }
+
+    @Override
+    public void render(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount) {
+        int count = snapshot.getVehicleCount();
+        long sequence = snapshot.getSequence();
+        ensureHandleCapacity(snapshot.getHandleLimit());
+
+        if (visibleMask.length < count) {
+            visibleMask = new boolean[Math.max(count, visibleMask.length * 2)];
+        }
+        Arrays.fill(visibleMask, 0, count, false);
+        for (int v = 0; v < visibleCount; v++) {
+            visibleMask[visible[v]] = true;
+        }
+
+        // 1. Create new cars; update visible ones and hide the rest
+        // 1. Tạo xe mới; cập nhật xe đang hiển thị và ẩn các xe còn lại
+        for (int i = 0; i < count; i++) {
+            int handle = snapshot.getHandle(i);
+            String carId = snapshot.getVehicleId(i);
+            Car car = carsByHandle[handle];
+            if (car != null && !car.getId().equals(carId)) {
+                // Handle was reused by a new vehicle
+                // Handle đã được dùng lại cho xe mới
+                removeCar(handle);
+                car = null;
+            }
+            if (car == null) {
+                car = createCar(handle, carId, snapshot.getVehicleType(i));
+            }
+            seenInSnapshot[handle] = sequence;
+
+            if (!visibleMask[i]) {
+                car.getView().setVisible(false);
+                continue;
+            }
+            car.getView().setVisible(true);
+            car.setSpeed(snapshot.getSpeed(i));
+            car.update(MapUtil.worldToScreenX(positions.getX(i)), MapUtil.worldToScreenY(positions.getY(i)),
+                    positions.getAngle(i));
+        }
+
+        // 2. Remove cars that are no longer in the simulation
+        // 2. Xóa các xe không còn trong mô phỏng
+        for (int handle = 0; handle < carsByHandle.length; handle++) {
+            if (carsByHandle[handle] != null && seenInSnapshot[handle] != sequence) {
+                removeCar(handle);
+            }
+        }
+        this.visibleCount = visibleCount;
+    }
+
+    private void ensureHandleCapacity(int handleLimit) {
+        if (carsByHandle.length < handleLimit) {
+            int n = Math.max(handleLimit, carsByHandle.length * 2);
+            carsByHandle = Arrays.copyOf(carsByHandle, n);
+            seenInSnapshot = Arrays.copyOf(seenInSnapshot, n);
+        }
+    }
+
+    /**
+     * Create a new car and add it to the pane
+     * Tạo xe mới và thêm vào pane
+     */
+    private Car createCar(int handle, String carId, String type) {
+        // Get image for this vehicle type, default to "car" if not found
+        // Lấy hình ảnh cho loại xe này, mặc định là "car" nếu không tìm thấy
+        Image img = carImages.getOrDefault(type, carImages.get("car"));
+        Car car = new Car(carId, type, img);
+        carsByHandle[handle] = car;
+        carCount++;
+        pane.getChildren().add(car.getView());
+        return car;
+    }
+
+    /**
+     * Remove a car from the pane
+     * Xóa xe khỏi pane
+     */
+    private void removeCar(int handle) {
+        pane.getChildren().remove(carsByHandle[handle].getView());
+        carsByHandle[handle] = null;
+        carCount--;
+    }
+
+    @Override
+    public void clear() {
+        for (int handle = 0; handle < carsByHandle.length; handle++) {
+            if (carsByHandle[handle] != null) {
+                removeCar(handle);
+            }
+        }
+        visibleCount = 0;
+    }
+
+    @Override
+    public int getRenderedCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Get a car by ID
+     * Lấy xe theo ID
+     */
+    public Car getCar(String carId) {
+        for (Car car : carsByHandle) {
+            if (car != null && car.getId().equals(carId)) {
+                return car;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all cars
+     * Lấy tất cả xe
+     */
+    public Collection<Car> getAllCars() {
+        List<Car> result = new ArrayList<>(carCount);
+        for (Car car : carsByHandle) {
+            if (car != null) {
+                result.add(car);
+            }
+        }
+        return result;
+    }
+}
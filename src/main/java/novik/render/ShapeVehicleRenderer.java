@@ -0,0 +1,139 @@
+package novik.render;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+import java.util.Arrays;
+
+/**
+ * Renders vehicles as plain oriented rectangles, or as dots once they are only a few pixels long
+ * Vẽ xe thành hình chữ nhật có hướng, hoặc thành chấm khi xe chỉ còn dài vài pixel
+ *
+ * All vehicles of one type go into one path that is filled once, so a frame costs one fill per
+ * vehicle type instead of one image draw per vehicle. Sizes follow the view scale (meters, not px).
+ * Mọi xe cùng loại được gom vào một path và tô một lần, nên mỗi khung hình tốn một lần tô cho mỗi
+ * loại xe thay vì một lần vẽ hình cho mỗi xe. Kích thước theo tỉ lệ khung nhìn (mét, không phải px).
+ */
+public class ShapeVehicleRenderer implements VehicleRenderer {
+    // Below this length on screen a vehicle is drawn as a dot (px)
+    // Dưới chiều dài màn hình này xe được vẽ thành chấm (px)
+    private static final double MIN_SHAPE_LENGTH = 4.0;
+    private static final double DOT_SIZE = 2.0;
+
+    private final Canvas canvas;
+    private final GraphicsContext gc;
+    private final VehicleDrawList drawList = new VehicleDrawList();
+
+    // Size in meters and colour per type index of the draw list
+    // Kích thước theo mét và màu theo chỉ số loại của draw list
+    private double[] lengths = new double[0];
+    private double[] widths = new double[0];
+    private Color[] colors = new Color[0];
+
+    private int renderedCount = 0;
+
+    /**
+     * Constructor: adds a dedicated canvas on top of the pane
+     * Constructor: thêm một canvas riêng vào pane
+     * @param pane The pane where the vehicle canvas is added
+     */
+    public ShapeVehicleRenderer(Pane pane) {
+        this.canvas = new Canvas(MapUtil.getCanvasWidth(), MapUtil.getCanvasHeight());
+        canvas.setMouseTransparent(true);
+        this.gc = canvas.getGraphicsContext2D();
+        pane.getChildren().add(canvas);
+    }
+
+    @Override
+    public void render(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount) {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawList.prepare(snapshot, positions, visible, visibleCount);
+        if (lengths.length < drawList.getTypeCount()) {
+            loadTypes();
+        }
+
+        double scale = MapUtil.getScale();
+        for (int t = 0; t < drawList.getTypeCount(); t++) {
+            double length = lengths[t] * scale;
+            double width = widths[t] * scale;
+            boolean dots = length < MIN_SHAPE_LENGTH;
+            gc.beginPath();
+            for (int v = 0; v < drawList.size(); v++) {
+                if (drawList.getType(v) != t) {
+                    continue;
+                }
+                double x = drawList.getScreenX(v);
+                double y = drawList.getScreenY(v);
+                if (dots) {
+                    gc.rect(x - DOT_SIZE / 2, y - DOT_SIZE / 2, DOT_SIZE, DOT_SIZE);
+                } else {
+                    addRectangle(x, y, drawList.getCos(v), drawList.getSin(v), width / 2, length / 2);
+                }
+            }
+            gc.setFill(colors[t]);
+            gc.fill();
+        }
+        renderedCount = visibleCount;
+    }
+
+    /**
+     * Add a rectangle centred on (x, y) and rotated like the sprites of {@link CanvasVehicleRenderer}
+     * Thêm hình chữ nhật tâm (x, y), xoay giống hình của {@link CanvasVehicleRenderer}
+     */
+    private void addRectangle(double x, double y, double cos, double sin, double halfW, double halfL) {
+        double ax = cos * halfW;
+        double ay = sin * halfW;
+        double bx = -sin * halfL;
+        double by = cos * halfL;
+        gc.moveTo(x - ax - bx, y - ay - by);
+        gc.lineTo(x + ax - bx, y + ay - by);
+        gc.lineTo(x + ax + bx, y + ay + by);
+        gc.lineTo(x - ax + bx, y - ay + by);
+        gc.closePath();
+    }
+
+    private void loadTypes() {
+        int n = drawList.getTypeCount();
+        int start = lengths.length;
+        lengths = Arrays.copyOf(lengths, n);
+        widths = Arrays.copyOf(widths, n);
+        colors = Arrays.copyOf(colors, n);
+        for (int t = start; t < n; t++) {
+            // Usual SUMO vehicle class sizes in meters
+            // Kích thước thường gặp của các lớp xe SUMO (mét)
+            switch (drawList.getTypeName(t)) {
+                case "bus" -> {
+                    lengths[t] = 12.0;
+                    widths[t] = 2.5;
+                    colors[t] = Color.DARKORANGE;
+                }
+                case "truck" -> {
+                    lengths[t] = 7.1;
+                    widths[t] = 2.4;
+                    colors[t] = Color.SADDLEBROWN;
+                }
+                default -> {
+                    lengths[t] = 5.0;
+                    widths[t] = 1.8;
+                    colors[t] = Color.rgb(30, 60, 140);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        renderedCount = 0;
+    }
+
+    @Override
+    public int getRenderedCount() {
+        return renderedCount;
+    }
+}
@@ -0,0 +1,193 @@
+package novik.render;
+
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+
+import java.util.Arrays;
+
+/**
+ * Moves vehicles smoothly from where they are drawn to the positions of the latest snapshot
+ * Di chuyển xe mượt mà từ vị trí đang vẽ tới vị trí của snapshot mới nhất
+ *
+ * When a new snapshot arrives, every vehicle that was already on screen starts from its currently
+ * displayed pose and reaches the new one after the expected time until the next snapshot, so motion
+ * never jumps even if snapshots arrive early or late. New vehicles appear at their position directly, and
+ * so does every vehicle after a jump of the simulation clock (a new snapshot epoch, e.g. a replay seek).
+ * Has no JavaFX dependency; positions are indexed like the current snapshot.
+ * Khi có snapshot mới, mỗi xe đã có trên màn hình bắt đầu từ vị trí đang hiển thị và tới vị trí mới
+ * sau khoảng thời gian dự kiến tới snapshot kế tiếp, nên chuyển động không bị giật kể cả khi snapshot
+ * tới sớm hay muộn. Xe mới xuất hiện thẳng tại vị trí của nó, và mọi xe cũng vậy sau khi đồng hồ mô phỏng
+ * nhảy (epoch snapshot mới, ví dụ tua bản ghi).
+ * Không phụ thuộc JavaFX; vị trí được đánh chỉ số giống snapshot hiện tại.
+ */
+public final class SnapshotInterpolator implements VehiclePositions {
+    private SimulationSnapshot current;
+    private long arrivalNanos;
+    private long durationNanos;
+    private boolean settled = false;
+
+    // Start and target pose per vehicle handle, and the snapshot each handle was last seen in
+    // Tư thế bắt đầu và đích theo handle xe, và snapshot gần nhất mà mỗi handle xuất hiện
+    private String[] ids = new String[0];
+    private long[] seenInSnapshot = new long[0];
+    private double[] fromX = new double[0];
+    private double[] fromY = new double[0];
+    private double[] fromAngle = new double[0];
+    private double[] toX = new double[0];
+    private double[] toY = new double[0];
+    private double[] toAngle = new double[0];
+
+    // Interpolated pose per snapshot index for the current frame
+    // Tư thế đã nội suy theo chỉ số snapshot cho khung hình hiện tại
+    private double[] x = new double[64];
+    private double[] y = new double[64];
+    private double[] angle = new double[64];
+
+    /**
+     * Compute the poses for a frame
+     * Tính tư thế cho một khung hình
+     *
+     * @param snapshot Latest snapshot
+     * @param nowNanos Current {@link System#nanoTime()}
+     * @param expectedIntervalNanos Expected time until the next snapshot; 0 shows the snapshot as is
+     * @return Whether any displayed pose changed since the previous call
+     */
+    public boolean advance(SimulationSnapshot snapshot, long nowNanos, long expectedIntervalNanos) {
+        if (snapshot != current) {
+            accept(snapshot, nowNanos, expectedIntervalNanos);
+        } else if (settled) {
+            return false;
+        }
+
+        double alpha = progress(nowNanos);
+        int count = current.getVehicleCount();
+        for (int i = 0; i < count; i++) {
+            int h = current.getHandle(i);
+            x[i] = fromX[h] + (toX[h] - fromX[h]) * alpha;
+            y[i] = fromY[h] + (toY[h] - fromY[h]) * alpha;
+            angle[i] = fromAngle[h] + (toAngle[h] - fromAngle[h]) * alpha;
+        }
+        settled = alpha >= 1.0;
+        return true;
+    }
+
+    /**
+     * Start moving towards a new snapshot from the poses shown right now
+     * Bắt đầu di chuyển tới snapshot mới từ tư thế đang hiển thị
+     */
+    private void accept(SimulationSnapshot snapshot, long nowNanos, long expectedIntervalNanos) {
+        double alpha = current != null ? progress(nowNanos) : 1.0;
+        // After a clock jump handles may be handed out again to the same IDs; nothing carries over
+        // Sau khi đồng hồ nhảy, handle có thể được cấp lại cho cùng ID; không giữ lại gì
+        boolean continuous = current != null && current.getEpoch() == snapshot.getEpoch();
+        long previousSequence = continuous ? current.getSequence() : Long.MIN_VALUE;
+        ensureHandleCapacity(snapshot.getHandleLimit());
+        int count = snapshot.getVehicleCount();
+        ensureCapacity(count);
+
+        for (int i = 0; i < count; i++) {
+            int h = snapshot.getHandle(i);
+            String id = snapshot.getVehicleId(i);
+            double targetAngle = snapshot.getAngle(i);
+            if (seenInSnapshot[h] == previousSequence && id.equals(ids[h])) {
+                // Same vehicle as before: start where it is drawn now
+                // Cùng xe như trước: bắt đầu từ chỗ đang vẽ
+                double startAngle = fromAngle[h] + (toAngle[h] - fromAngle[h]) * alpha;
+                fromX[h] = fromX[h] + (toX[h] - fromX[h]) * alpha;
+                fromY[h] = fromY[h] + (toY[h] - fromY[h]) * alpha;
+                fromAngle[h] = startAngle;
+                // Turn the short way round (e.g. 350° -> 10° is +20°, not -340°)
+                // Quay theo hướng gần nhất (ví dụ 350° -> 10° là +20°, không phải -340°)
+                toAngle[h] = startAngle + wrapDegrees(targetAngle - startAngle);
+            } else {
+                fromX[h] = snapshot.getX(i);
+                fromY[h] = snapshot.getY(i);
+                fromAngle[h] = targetAngle;
+                toAngle[h] = targetAngle;
+            }
+            toX[h] = snapshot.getX(i);
+            toY[h] = snapshot.getY(i);
+            ids[h] = id;
+            seenInSnapshot[h] = snapshot.getSequence();
+        }
+
+        current = snapshot;
+        arrivalNanos = nowNanos;
+        durationNanos = Math.max(0, expectedIntervalNanos);
+        settled = false;
+    }
+
+    private double progress(long nowNanos) {
+        if (durationNanos <= 0) {
+            return 1.0;
+        }
+        return Math.min(1.0, (double) (nowNanos - arrivalNanos) / durationNanos);
+    }
+
+    /**
+     * Map an angle difference to [-180, 180)
+     * Đưa độ lệch góc về khoảng [-180, 180)
+     */
+    static double wrapDegrees(double degrees) {
+        return degrees - 360.0 * Math.floor((degrees + 180.0) / 360.0);
+    }
+
+    private void ensureHandleCapacity(int handleLimit) {
+        if (ids.length >= handleLimit) {
+            return;
+        }
+        int n = Math.max(handleLimit, ids.length * 2);
+        int old = ids.length;
+        ids = Arrays.copyOf(ids, n);
+        seenInSnapshot = Arrays.copyOf(seenInSnapshot, n);
+        Arrays.fill(seenInSnapshot, old, n, Long.MIN_VALUE);
+        fromX = Arrays.copyOf(fromX, n);
+        fromY = Arrays.copyOf(fromY, n);
+        fromAngle = Arrays.copyOf(fromAngle, n);
+        toX = Arrays.copyOf(toX, n);
+        toY = Arrays.copyOf(toY, n);
+        toAngle = Arrays.copyOf(toAngle, n);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= x.length) {
+            return;
+        }
+        int capacity = Math.max(n, x.length * 2);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+    }
+
+    /**
+     * Forget the previous poses, so the next snapshot is shown without interpolation
+     * Quên tư thế trước đó, để snapshot tiếp theo được hiển thị không nội suy
+     */
+    public void reset() {
+        current = null;
+        settled = false;
+    }
+
+    /**
+     * Whether the displayed poses have reached the current snapshot
+     * Tư thế hiển thị đã tới snapshot hiện tại hay chưa
+     */
+    public boolean isSettled() {
+        return settled;
+    }
+
+    @Override
+    public double getX(int i) {
+        return x[i];
+    }
+
+    @Override
+    public double getY(int i) {
+        return y[i];
+    }
+
+    @Override
+    public double getAngle(int i) {
+        return angle[i];
+    }
+}
@@ -0,0 +1,132 @@
+package novik.render;
+
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+import novik.util.MapUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Screen positions, rotations and sprite types of the vehicles to draw in one frame
+ * Vị trí màn hình, góc xoay và loại hình của các xe cần vẽ trong một khung hình
+ *
+ * Has no JavaFX dependency, so the per-vehicle work of a frame can be prepared and measured
+ * without a graphics context. Buffers are reused between frames.
+ * Không phụ thuộc JavaFX, nên phần việc cho từng xe trong một khung hình có thể chuẩn bị và đo
+ * mà không cần graphics context. Các mảng được dùng lại giữa các khung hình.
+ */
+public final class VehicleDrawList {
+    // Vehicle types seen so far, numbered in order of appearance
+    // Các loại xe đã gặp, đánh số theo thứ tự xuất hiện
+    private final Map<String, Integer> typeIndex = new HashMap<>();
+    private final List<String> typeNames = new ArrayList<>();
+
+    private double[] worldX = new double[64];
+    private double[] worldY = new double[64];
+    private double[] screenX = new double[64];
+    private double[] screenY = new double[64];
+    private double[] cos = new double[64];
+    private double[] sin = new double[64];
+    private int[] type = new int[64];
+    private int size = 0;
+
+    /**
+     * Prepare the given snapshot vehicles for drawing
+     * Chuẩn bị các xe đã cho trong snapshot để vẽ
+     *
+     * @param snapshot Snapshot holding the vehicles
+     * @param visible Indices of the vehicles to draw
+     * @param visibleCount Number of valid entries in {@code visible}
+     */
+    public void prepare(SimulationSnapshot snapshot, int[] visible, int visibleCount) {
+        prepare(snapshot, snapshot, visible, visibleCount);
+    }
+
+    /**
+     * Prepare the given snapshot vehicles for drawing at the given poses
+     * Chuẩn bị các xe đã cho trong snapshot để vẽ tại các tư thế đã cho
+     *
+     * @param snapshot Snapshot holding the vehicles (IDs and types)
+     * @param positions Pose of each snapshot index
+     * @param visible Indices of the vehicles to draw
+     * @param visibleCount Number of valid entries in {@code visible}
+     */
+    public void prepare(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount) {
+        ensureCapacity(visibleCount);
+        for (int v = 0; v < visibleCount; v++) {
+            int i = visible[v];
+            worldX[v] = positions.getX(i);
+            worldY[v] = positions.getY(i);
+            double rad = Math.toRadians(positions.getAngle(i));
+            cos[v] = Math.cos(rad);
+            sin[v] = Math.sin(rad);
+            type[v] = typeIndexOf(snapshot.getVehicleType(i));
+        }
+        MapUtil.worldToScreen(worldX, worldY, 0, visibleCount, screenX, screenY, 0);
+        size = visibleCount;
+    }
+
+    private int typeIndexOf(String typeName) {
+        Integer index = typeIndex.get(typeName);
+        if (index == null) {
+            index = typeNames.size();
+            typeIndex.put(typeName, index);
+            typeNames.add(typeName);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= screenX.length) {
+            return;
+        }
+        int capacity = Math.max(n, screenX.length * 2);
+        worldX = Arrays.copyOf(worldX, capacity);
+        worldY = Arrays.copyOf(worldY, capacity);
+        screenX = Arrays.copyOf(screenX, capacity);
+        screenY = Arrays.copyOf(screenY, capacity);
+        cos = Arrays.copyOf(cos, capacity);
+        sin = Arrays.copyOf(sin, capacity);
+        type = Arrays.copyOf(type, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getScreenX(int i) {
+        return screenX[i];
+    }
+
+    public double getScreenY(int i) {
+        return screenY[i];
+    }
+
+    public double getCos(int i) {
+        return cos[i];
+    }
+
+    public double getSin(int i) {
+        return sin[i];
+    }
+
+    public int getType(int i) {
+        return type[i];
+    }
+
+    /**
+     * Number of distinct vehicle types seen so far (type indices are below this)
+     * Số loại xe khác nhau đã gặp (chỉ số loại luôn nhỏ hơn giá trị này)
+     */
+    public int getTypeCount() {
+        return typeNames.size();
+    }
+
+    public String getTypeName(int typeIndex) {
+        return typeNames.get(typeIndex);
+    }
+}
@@ -0,0 +1,33 @@
+package novik.render;
+
+import novik.sim.SimulationSnapshot;
+import novik.sim.VehiclePositions;
+
+/**
+ * Draws the vehicles of a snapshot on screen
+ * Vẽ các xe của một snapshot lên màn hình
+ */
+public interface VehicleRenderer {
+    /**
+     * Draw the visible vehicles of the snapshot (FX thread)
+     * Vẽ các xe đang hiển thị của snapshot (luồng FX)
+     *
+     * @param snapshot All vehicles of the current step
+     * @param positions Where to draw each vehicle (the snapshot itself, or poses between two steps)
+     * @param visible Snapshot indices of the vehicles inside the viewport
+     * @param visibleCount Number of valid entries in {@code visible}
+     */
+    void render(SimulationSnapshot snapshot, VehiclePositions positions, int[] visible, int visibleCount);
+
+    /**
+     * Remove everything this renderer has drawn
+     * Xóa mọi thứ renderer này đã vẽ
+     */
+    void clear();
+
+    /**
+     * Number of vehicles displayed by the last render
+     * Số xe đã vẽ ở lần render gần nhất
+     */
+    int getRenderedCount();
+}
@@ -0,0 +1,41 @@
+package novik.sim;
+
+/**
+ * Lane measurement used to colour the network, quantized into a few congestion levels
+ * Đại lượng của lane dùng để tô màu mạng lưới, lượng tử hóa thành vài mức tắc nghẽn
+ *
+ * Level 0 is free flow and {@link #LEVELS} - 1 is jammed; -1 means no vehicles or no data.
+ * Mức 0 là thông thoáng và {@link #LEVELS} - 1 là kẹt cứng; -1 nghĩa là không có xe hoặc không có dữ liệu.
+ */
+public enum LaneMetric {
+    // Mean speed relative to the speed limit
+    // Tốc độ trung bình so với tốc độ giới hạn
+    SPEED,
+    // Share of the lane length covered by vehicles
+    // Tỉ lệ chiều dài lane bị xe chiếm
+    OCCUPANCY;
+
+    public static final int LEVELS = 5;
+    // Occupancy at and above which a lane counts as jammed
+    // Độ chiếm dụng từ mức này trở lên được coi là kẹt cứng
+    private static final double JAM_OCCUPANCY = 0.5;
+
+    /**
+     * Congestion level of one lane
+     * Mức tắc nghẽn của một lane
+     *
+     * @return 0 (free flow) to LEVELS - 1 (jammed), or -1 if there is nothing to show
+     */
+    public int level(LaneStateBuffer lanes, int lane) {
+        if (lanes.getVehicleCount(lane) == 0) {
+            return -1;
+        }
+        double congestion = this == SPEED
+                ? 1.0 - lanes.getRelativeSpeed(lane)
+                : lanes.getOccupancy(lane) / JAM_OCCUPANCY;
+        if (Double.isNaN(congestion)) {
+            return -1;
+        }
+        return Math.max(0, Math.min(LEVELS - 1, (int) (congestion * LEVELS)));
+    }
+}
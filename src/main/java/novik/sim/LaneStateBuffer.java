@@ -0,0 +1,91 @@
+package novik.sim;
+
+import java.util.Arrays;
+
+/**
+ * Traffic state of every lane in one step, indexed like the backend's lane list
+ * Trạng thái giao thông của mọi lane trong một bước, đánh chỉ số giống danh sách lane của backend
+ *
+ * Filled by {@link novik.backend.SimulationBackend#collectLaneState} on the simulation thread and
+ * reused between steps. Lanes that are not reported keep the values set by {@link #clear()}.
+ * Được {@link novik.backend.SimulationBackend#collectLaneState} điền trên luồng mô phỏng và dùng lại
+ * giữa các bước. Lane không được báo giữ giá trị do {@link #clear()} đặt.
+ */
+public final class LaneStateBuffer {
+    private final int[] vehicles;
+    private final int[] halting;
+    private final double[] meanSpeed;
+    private final double[] maxSpeed;
+    private final double[] occupancy;
+
+    public LaneStateBuffer(int laneCount) {
+        vehicles = new int[laneCount];
+        halting = new int[laneCount];
+        meanSpeed = new double[laneCount];
+        maxSpeed = new double[laneCount];
+        occupancy = new double[laneCount];
+    }
+
+    /**
+     * Mark every lane as empty with unknown speeds
+     * Đánh dấu mọi lane là trống và chưa biết tốc độ
+     */
+    public void clear() {
+        Arrays.fill(vehicles, 0);
+        Arrays.fill(halting, 0);
+        Arrays.fill(meanSpeed, Double.NaN);
+        Arrays.fill(maxSpeed, Double.NaN);
+        Arrays.fill(occupancy, 0);
+    }
+
+    /**
+     * Set the state of one lane
+     * Đặt trạng thái của một lane
+     *
+     * @param vehicleCount Vehicles on the lane
+     * @param haltingCount Vehicles slower than 0.1 m/s
+     * @param laneMeanSpeed Mean speed of the vehicles (m/s)
+     * @param laneMaxSpeed Speed limit (m/s)
+     * @param laneOccupancy Share of the lane length covered by vehicles (0..1)
+     */
+    public void set(int lane, int vehicleCount, int haltingCount, double laneMeanSpeed, double laneMaxSpeed,
+                    double laneOccupancy) {
+        vehicles[lane] = vehicleCount;
+        halting[lane] = haltingCount;
+        meanSpeed[lane] = laneMeanSpeed;
+        maxSpeed[lane] = laneMaxSpeed;
+        occupancy[lane] = laneOccupancy;
+    }
+
+    public int size() {
+        return vehicles.length;
+    }
+
+    public int getVehicleCount(int lane) {
+        return vehicles[lane];
+    }
+
+    public int getHaltingCount(int lane) {
+        return halting[lane];
+    }
+
+    public double getMeanSpeed(int lane) {
+        return meanSpeed[lane];
+    }
+
+    public double getMaxSpeed(int lane) {
+        return maxSpeed[lane];
+    }
+
+    public double getOccupancy(int lane) {
+        return occupancy[lane];
+    }
+
+    /**
+     * Mean speed divided by the speed limit (1 = free flow), NaN if the lane is empty or the limit unknown
+     * Tốc độ trung bình chia cho tốc độ giới hạn (1 = thông thoáng), NaN nếu lane trống hoặc không biết giới hạn
+     */
+    public double getRelativeSpeed(int lane) {
+        return vehicles[lane] > 0 && maxSpeed[lane] > 0 ? meanSpeed[lane] / maxSpeed[lane] : Double.NaN;
+    }
+}
@@ -0,0 +1,73 @@
+package novik.sim;
+
+import novik.backend.SimulationBackend;
+
+/**
+ * Reads the traffic state of all lanes and adds their congestion levels to a snapshot builder
+ * Đọc trạng thái giao thông của mọi lane và thêm mức tắc nghẽn của chúng vào snapshot builder
+ *
+ * The backend answers with one batched read per step; only the level of each lane (one byte) goes into
+ * the snapshot, so the renderer can tell which lanes need repainting by comparing levels.
+ * The full lane state stays in a reused {@link LaneStateBuffer} for other consumers such as statistics.
+ * Must be called on the thread that drives the backend.
+ * Backend trả lời bằng một lần đọc gộp mỗi bước; chỉ mức của mỗi lane (một byte) được đưa vào snapshot,
+ * nên renderer biết lane nào cần vẽ lại bằng cách so sánh mức.
+ * Trạng thái đầy đủ của lane nằm trong một {@link LaneStateBuffer} dùng lại cho nơi khác như thống kê.
+ * Phải được gọi trên luồng điều khiển backend.
+ */
+public class LaneStateCollector {
+    private final SimulationBackend backend;
+    // Metric used for the levels, null if lanes are not coloured
+    // Đại lượng dùng cho các mức, null nếu lane không được tô màu
+    private LaneMetric metric;
+
+    // Reused buffers, sized once from the lane list
+    // Mảng đệm dùng lại, cấp phát một lần theo danh sách lane
+    private LaneStateBuffer lanes;
+    private byte[] levels;
+
+    public LaneStateCollector(SimulationBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
+        this.backend = backend;
+    }
+
+    /**
+     * Read the state of every lane of the current step
+     * Đọc trạng thái mọi lane ở bước hiện tại
+     *
+     * @return The lane state, shared and valid until the next call
+     */
+    public LaneStateBuffer read() {
+        if (lanes == null) {
+            int laneCount = backend.getLaneIds().size();
+            lanes = new LaneStateBuffer(laneCount);
+            levels = new byte[laneCount];
+        }
+        backend.collectLaneState(lanes);
+        return lanes;
+    }
+
+    /**
+     * Add the levels of the lane state last read to a snapshot, if a metric is set
+     * Thêm mức của trạng thái lane đọc gần nhất vào snapshot, nếu đã đặt đại lượng
+     */
+    public void addLevels(SimulationSnapshot.Builder builder) {
+        if (metric == null || lanes == null) {
+            return;
+        }
+        for (int lane = 0; lane < levels.length; lane++) {
+            levels[lane] = (byte) metric.level(lanes, lane);
+        }
+        builder.setLaneLevels(levels, levels.length);
+    }
+
+    public LaneMetric getMetric() {
+        return metric;
+    }
+
+    public void setMetric(LaneMetric metric) {
+        this.metric = metric;
+    }
+}
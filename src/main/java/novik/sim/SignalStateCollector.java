@@ -0,0 +1,102 @@
+package novik.sim;
+
+import novik.backend.SimulationBackend;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the red/yellow/green state of all traffic lights into a snapshot builder
+ * Đọc trạng thái đỏ/vàng/xanh của tất cả đèn giao thông vào snapshot builder
+ *
+ * States only change at phase switches, so a light is read again only once its announced next switch
+ * time is reached; in between the cached state is reused. Actuated programs may end a phase earlier
+ * than announced; such a switch shows up at the announced time at the latest.
+ * Must be called on the thread that drives the backend.
+ * Trạng thái chỉ đổi khi chuyển pha, nên một đèn chỉ được đọc lại khi tới thời điểm đổi pha đã báo;
+ * ở giữa trạng thái đã lưu được dùng lại. Chương trình đèn thích ứng có thể kết thúc pha sớm hơn
+ * đã báo; khi đó thay đổi hiện ra muộn nhất tại thời điểm đã báo.
+ * Phải được gọi trên luồng điều khiển backend.
+ */
+public class SignalStateCollector {
+    private final SimulationBackend backend;
+    // Traffic light IDs never change during a run, so they are fetched once
+    // ID đèn không thay đổi trong một lần chạy, nên chỉ lấy một lần
+    private List<String> tlsIds;
+
+    // Cached state and next switch time per light (NaN = read every time)
+    // Trạng thái đã lưu và thời điểm đổi pha tiếp theo của từng đèn (NaN = luôn đọc lại)
+    private String[] states;
+    private double[] nextSwitch;
+    private long reads = 0;
+    private long changes = 0;
+
+    public SignalStateCollector(SimulationBackend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend cannot be null");
+        }
+        this.backend = backend;
+    }
+
+    public void collect(SimulationSnapshot.Builder builder) {
+        collect(builder, backend.getTime());
+    }
+
+    /**
+     * Add the state of every light at the given simulation time, reading only lights that may have switched
+     * Thêm trạng thái của mọi đèn tại thời điểm mô phỏng đã cho, chỉ đọc các đèn có thể đã đổi pha
+     */
+    public void collect(SimulationSnapshot.Builder builder, double time) {
+        if (tlsIds == null) {
+            tlsIds = backend.getTrafficLightIds();
+            states = new String[tlsIds.size()];
+            nextSwitch = new double[tlsIds.size()];
+            Arrays.fill(nextSwitch, Double.NaN);
+        }
+        for (int i = 0; i < states.length; i++) {
+            // Also true for NaN (switch time unknown or not read yet)
+            // Cũng đúng với NaN (chưa biết hoặc chưa đọc thời điểm đổi pha)
+            if (!(time < nextSwitch[i])) {
+                String tlsId = tlsIds.get(i);
+                String state = backend.getSignalState(tlsId);
+                reads++;
+                if (!state.equals(states[i])) {
+                    // Keep the old instance when unchanged, so consumers can compare by reference
+                    // Giữ đối tượng cũ khi không đổi, để bên dùng có thể so sánh tham chiếu
+                    states[i] = state;
+                    changes++;
+                }
+                nextSwitch[i] = backend.getNextSwitch(tlsId);
+            }
+            builder.addSignal(tlsIds.get(i), states[i]);
+        }
+    }
+
+    /**
+     * Forget cached states, e.g. after the simulation clock jumped (a replay seek), which makes the cached
+     * switch times meaningless
+     * Quên các trạng thái đã lưu, ví dụ sau khi đồng hồ mô phỏng nhảy (tua bản ghi), làm các thời điểm đổi
+     * pha đã lưu mất ý nghĩa
+     */
+    public void invalidate() {
+        if (nextSwitch != null) {
+            Arrays.fill(nextSwitch, Double.NaN);
+        }
+    }
+
+    /**
+     * Number of state reads from the backend so far
+     * Số lần đọc trạng thái từ backend tới nay
+     */
+    public long getReadCount() {
+        return reads;
+    }
+
+    /**
+     * Number of reads that found a new state
+     * Số lần đọc tìm thấy trạng thái mới
+     */
+    public long getChangeCount() {
+        return changes;
+    }
+}
@@ -0,0 +1,268 @@
+package novik.sim;
+
+import java.util.Arrays;
+
+/**
+ * Immutable state of the simulation after one SUMO step
+ * Trạng thái bất biến của mô phỏng sau một bước SUMO
+ *
+ * Built on the simulation thread and read by the renderer, so it never changes after {@link Builder#build}.
+ * Được tạo trên luồng mô phỏng và được renderer đọc, nên không thay đổi sau {@link Builder#build}.
+ */
+public final class SimulationSnapshot implements VehiclePositions {
+    private final long sequence;
+    private final double time;
+    private final long epoch;
+
+    // Vehicle state, one entry per vehicle
+    // Trạng thái xe, mỗi xe một phần tử
+    private final int vehicleCount;
+    private final int handleLimit;
+    private final int[] handles;
+    private final String[] vehicleIds;
+    private final String[] vehicleTypes;
+    private final double[] x;
+    private final double[] y;
+    private final double[] angle;
+    private final double[] speed;
+
+    // Traffic light state, one entry per traffic light
+    // Trạng thái đèn giao thông, mỗi đèn một phần tử
+    private final int signalCount;
+    private final String[] signalIds;
+    private final String[] signalStates;
+
+    // Congestion level per lane index (see LaneMetric), empty when lanes are not collected
+    // Mức tắc nghẽn theo chỉ số lane (xem LaneMetric), rỗng khi không thu thập lane
+    private final byte[] laneLevels;
+
+    private SimulationSnapshot(Builder b, long sequence, double time, long epoch) {
+        this.sequence = sequence;
+        this.time = time;
+        this.epoch = epoch;
+        this.vehicleCount = b.vehicleCount;
+        this.handleLimit = b.handleLimit;
+        this.handles = Arrays.copyOf(b.handles, b.vehicleCount);
+        this.vehicleIds = Arrays.copyOf(b.vehicleIds, b.vehicleCount);
+        this.vehicleTypes = Arrays.copyOf(b.vehicleTypes, b.vehicleCount);
+        this.x = Arrays.copyOf(b.x, b.vehicleCount);
+        this.y = Arrays.copyOf(b.y, b.vehicleCount);
+        this.angle = Arrays.copyOf(b.angle, b.vehicleCount);
+        this.speed = Arrays.copyOf(b.speed, b.vehicleCount);
+        this.signalCount = b.signalCount;
+        this.signalIds = Arrays.copyOf(b.signalIds, b.signalCount);
+        this.signalStates = Arrays.copyOf(b.signalStates, b.signalCount);
+        this.laneLevels = Arrays.copyOf(b.laneLevels, b.laneCount);
+    }
+
+    /**
+     * Increasing number of the step this snapshot was taken at
+     * Số thứ tự tăng dần của bước mà snapshot này được lấy
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Simulation time in seconds
+     * Thời gian mô phỏng (giây)
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Number of jumps of the simulation clock (e.g. replay seeks) before this snapshot was taken;
+     * snapshots of different epochs do not follow on from each other
+     * Số lần đồng hồ mô phỏng nhảy (ví dụ tua bản ghi) trước khi snapshot này được lấy;
+     * các snapshot khác epoch không nối tiếp nhau
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getVehicleCount() {
+        return vehicleCount;
+    }
+
+    /**
+     * Dense handle of a vehicle; stable while the vehicle exists, reused after it leaves
+     * Handle liên tục của xe; cố định khi xe còn tồn tại, được dùng lại sau khi xe rời đi
+     */
+    public int getHandle(int i) {
+        return handles[i];
+    }
+
+    /**
+     * Upper bound (exclusive) of all handles in this snapshot, for sizing per-handle arrays
+     * Giới hạn trên (không bao gồm) của mọi handle trong snapshot, để cấp phát mảng theo handle
+     */
+    public int getHandleLimit() {
+        return handleLimit;
+    }
+
+    public String getVehicleId(int i) {
+        return vehicleIds[i];
+    }
+
+    public String getVehicleType(int i) {
+        return vehicleTypes[i];
+    }
+
+    /**
+     * Vehicle X position in SUMO world coordinates
+     * Vị trí X của xe theo tọa độ thế giới SUMO
+     */
+    @Override
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * Vehicle Y position in SUMO world coordinates
+     * Vị trí Y của xe theo tọa độ thế giới SUMO
+     */
+    @Override
+    public double getY(int i) {
+        return y[i];
+    }
+
+    @Override
+    public double getAngle(int i) {
+        return angle[i];
+    }
+
+    public double getSpeed(int i) {
+        return speed[i];
+    }
+
+    public int getSignalCount() {
+        return signalCount;
+    }
+
+    public String getSignalId(int i) {
+        return signalIds[i];
+    }
+
+    public String getSignalState(int i) {
+        return signalStates[i];
+    }
+
+    /**
+     * Number of lanes with a congestion level (0 if lane state is not collected)
+     * Số lane có mức tắc nghẽn (0 nếu không thu thập trạng thái lane)
+     */
+    public int getLaneLevelCount() {
+        return laneLevels.length;
+    }
+
+    /**
+     * Congestion level of a lane (see {@link LaneMetric}), -1 if it has no vehicles
+     * Mức tắc nghẽn của một lane (xem {@link LaneMetric}), -1 nếu lane không có xe
+     */
+    public int getLaneLevel(int lane) {
+        return laneLevels[lane];
+    }
+
+    /**
+     * Reusable builder that collects one step of state on the simulation thread
+     * Builder dùng lại được, thu thập trạng thái một bước trên luồng mô phỏng
+     */
+    public static final class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private int vehicleCount;
+        private int handleLimit;
+        private int[] handles = new int[INITIAL_CAPACITY];
+        private String[] vehicleIds = new String[INITIAL_CAPACITY];
+        private String[] vehicleTypes = new String[INITIAL_CAPACITY];
+        private double[] x = new double[INITIAL_CAPACITY];
+        private double[] y = new double[INITIAL_CAPACITY];
+        private double[] angle = new double[INITIAL_CAPACITY];
+        private double[] speed = new double[INITIAL_CAPACITY];
+
+        private int signalCount;
+        private String[] signalIds = new String[INITIAL_CAPACITY];
+        private String[] signalStates = new String[INITIAL_CAPACITY];
+
+        private int laneCount;
+        private byte[] laneLevels = new byte[0];
+
+        /**
+         * Forget everything collected so far
+         * Xóa tất cả dữ liệu đã thu thập
+         */
+        public void clear() {
+            Arrays.fill(vehicleIds, 0, vehicleCount, null);
+            Arrays.fill(vehicleTypes, 0, vehicleCount, null);
+            Arrays.fill(signalIds, 0, signalCount, null);
+            Arrays.fill(signalStates, 0, signalCount, null);
+            vehicleCount = 0;
+            handleLimit = 0;
+            signalCount = 0;
+            laneCount = 0;
+        }
+
+        public void addVehicle(int handle, String id, String type,
+                               double vx, double vy, double vAngle, double vSpeed) {
+            if (vehicleCount == vehicleIds.length) {
+                int capacity = vehicleCount * 2;
+                handles = Arrays.copyOf(handles, capacity);
+                vehicleIds = Arrays.copyOf(vehicleIds, capacity);
+                vehicleTypes = Arrays.copyOf(vehicleTypes, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                angle = Arrays.copyOf(angle, capacity);
+                speed = Arrays.copyOf(speed, capacity);
+            }
+            handles[vehicleCount] = handle;
+            handleLimit = Math.max(handleLimit, handle + 1);
+            vehicleIds[vehicleCount] = id;
+            vehicleTypes[vehicleCount] = type;
+            x[vehicleCount] = vx;
+            y[vehicleCount] = vy;
+            angle[vehicleCount] = vAngle;
+            speed[vehicleCount] = vSpeed;
+            vehicleCount++;
+        }
+
+        public void addSignal(String id, String state) {
+            if (signalCount == signalIds.length) {
+                int capacity = signalCount * 2;
+                signalIds = Arrays.copyOf(signalIds, capacity);
+                signalStates = Arrays.copyOf(signalStates, capacity);
+            }
+            signalIds[signalCount] = id;
+            signalStates[signalCount] = state;
+            signalCount++;
+        }
+
+        /**
+         * Set the congestion level of the first {@code count} lanes
+         * Đặt mức tắc nghẽn của {@code count} lane đầu tiên
+         */
+        public void setLaneLevels(byte[] levels, int count) {
+            if (laneLevels.length < count) {
+                laneLevels = new byte[count];
+            }
+            System.arraycopy(levels, 0, laneLevels, 0, count);
+            laneCount = count;
+        }
+
+        /**
+         * Create an immutable snapshot from the collected state
+         * Tạo snapshot bất biến từ trạng thái đã thu thập
+         */
+        public SimulationSnapshot build(long sequence, double time) {
+            return build(sequence, time, 0);
+        }
+
+        /**
+         * Create an immutable snapshot from the collected state, taken after the given number of clock jumps
+         * Tạo snapshot bất biến từ trạng thái đã thu thập, lấy sau số lần đồng hồ nhảy đã cho
+         */
+        public SimulationSnapshot build(long sequence, double time, long epoch) {
+            return new SimulationSnapshot(this, sequence, time, epoch);
+        }
+    }
+}
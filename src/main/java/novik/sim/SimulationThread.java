@@ -0,0 +1,410 @@
+package novik.sim;
+
+import novik.backend.SimulationBackend;
+import novik.jfr.SimulationStepEvent;
+import novik.jfr.StateSyncEvent;
+import novik.metrics.Counter;
+import novik.metrics.LatencyHistogram;
+import novik.metrics.MetricsRegistry;
+import novik.record.SimulationRecorder;
+import novik.stats.TrafficStatistics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs simulation stepping and state collection on its own thread
+ * Chạy các bước mô phỏng và thu thập trạng thái trên một luồng riêng
+ *
+ * The latest step is published at display rate as an immutable {@link SimulationSnapshot} through a
+ * {@link SnapshotBuffer}, so the JavaFX renderer never waits for SUMO. All backend calls made after {@link #start()} must go
+ * through {@link #submit(Runnable)} because backends (and libtraci) are not thread-safe.
+ * Bước mới nhất được đăng theo tần số màn hình thành một {@link SimulationSnapshot} bất biến qua
+ * {@link SnapshotBuffer}, nên renderer JavaFX không phải chờ SUMO. Mọi lệnh gọi backend sau {@link #start()} phải đi qua
+ * {@link #submit(Runnable)} vì backend (và libtraci) không an toàn đa luồng.
+ */
+public class SimulationThread implements Runnable {
+    // Simulated seconds per wall-clock second for "as fast as possible"
+    // Số giây mô phỏng trên mỗi giây thực cho chế độ "nhanh nhất có thể"
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+    // Simulated time runs at wall-clock pace
+    // Thời gian mô phỏng chạy bằng thời gian thực
+    public static final double REAL_TIME = 1.0;
+    // Same pace as the old loop that stepped once per display frame (with 1 s steps)
+    // Cùng tốc độ với vòng lặp cũ, một bước mỗi khung hình (với bước 1 giây)
+    public static final double DEFAULT_SPEED = 60.0;
+    // Snapshots are published at most at display rate; steps in between skip state queries
+    // Snapshot được đăng tối đa theo tần số màn hình; các bước ở giữa bỏ qua việc đọc trạng thái
+    private static final long FRAME_INTERVAL_NANOS = 1_000_000_000L / 60;
+    // How long to sleep between checks while paused
+    // Thời gian ngủ giữa các lần kiểm tra khi tạm dừng
+    private static final long PAUSE_POLL_NANOS = 10_000_000L;
+
+    // Step and state collection times, steps run and round trips to the simulator
+    // Thời gian chạy bước và thu thập trạng thái, số bước đã chạy và số lần gọi tới trình mô phỏng
+    private static final LatencyHistogram STEP_TIME = MetricsRegistry.global().histogram("sim.step");
+    private static final LatencyHistogram COLLECT_TIME = MetricsRegistry.global().histogram("sim.collect");
+    private static final Counter STEPS = MetricsRegistry.global().counter("sim.steps");
+    private static final Counter BACKEND_CALLS = MetricsRegistry.global().counter("traci.calls");
+
+    private final SnapshotBuffer snapshots;
+    private final SimulationBackend backend;
+    private final SignalStateCollector signalCollector;
+    // Lane state, only collected when lanes are coloured or statistics are kept
+    // Trạng thái lane, chỉ thu thập khi lane được tô màu hoặc khi có thống kê
+    private LaneStateCollector laneCollector;
+    private TrafficStatistics statistics;
+    private final SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+
+    // Commands from other threads that need TraCI (e.g. adding vehicles)
+    // Lệnh từ luồng khác cần dùng TraCI (ví dụ thêm xe)
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean paused = false;
+    private volatile boolean stopRequested = false;
+    private volatile double speed = DEFAULT_SPEED;
+    private volatile double deltaT = 0;
+    private Thread worker;
+    private long sequence = 0;
+    // Commands run through submitAndPublish so far; each one may move the simulation clock anywhere
+    // Số lệnh đã chạy qua submitAndPublish; mỗi lệnh có thể dời đồng hồ mô phỏng tới bất kỳ đâu
+    private long epoch = 0;
+
+    // Optional recorder that receives the state of every step, rendered or not
+    // Bộ ghi tùy chọn nhận trạng thái của mọi bước, dù có được vẽ hay không
+    private SimulationRecorder recorder;
+    // Steps run so far, and the step the cached snapshot belongs to
+    // Số bước đã chạy, và bước của snapshot đang lưu
+    private long stepsRun = 0;
+    private long snapshotStep = -1;
+    // Step the lane state was last read for
+    // Bước mà trạng thái lane được đọc gần nhất
+    private long laneStep = -1;
+    private SimulationSnapshot current;
+    private long reportedCalls = 0;
+
+    public SimulationThread(SnapshotBuffer snapshots, SimulationBackend backend) {
+        if (snapshots == null || backend == null) {
+            throw new IllegalArgumentException("Snapshot buffer and backend cannot be null");
+        }
+        this.snapshots = snapshots;
+        this.backend = backend;
+        this.signalCollector = new SignalStateCollector(backend);
+    }
+
+    /**
+     * Start the simulation thread
+     * Khởi động luồng mô phỏng
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            throw new IllegalStateException("Simulation thread already started");
+        }
+        worker = new Thread(this, "sumo-simulation");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop the thread and wait for the current step to finish
+     * Dừng luồng và chờ bước hiện tại kết thúc
+     */
+    public synchronized void stop() {
+        stopRequested = true;
+        if (worker == null) {
+            return;
+        }
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Set the simulation speed as simulated seconds per wall-clock second
+     * Đặt tốc độ mô phỏng theo số giây mô phỏng trên mỗi giây thực
+     *
+     * @param speed {@link #REAL_TIME}, any multiplier, or {@link #MAX_SPEED} to step without waiting
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Expected wall-clock time between two published snapshots, for interpolating between them
+     * Thời gian thực dự kiến giữa hai snapshot được đăng, dùng để nội suy giữa chúng
+     *
+     * @return Nanoseconds, or 0 while paused (snapshots published then should be shown as they are)
+     */
+    public long getSnapshotIntervalNanos() {
+        if (paused) {
+            return 0;
+        }
+        double currentSpeed = speed;
+        if (currentSpeed == MAX_SPEED) {
+            return FRAME_INTERVAL_NANOS;
+        }
+        return Math.max(FRAME_INTERVAL_NANOS, (long) (deltaT * 1_000_000_000L / currentSpeed));
+    }
+
+    /**
+     * Record every step to a file (must be called before {@link #start()}; the header must be written already)
+     * Ghi mọi bước ra file (phải gọi trước {@link #start()}; phần đầu file phải được ghi sẵn)
+     */
+    public synchronized void setRecorder(SimulationRecorder recorder) {
+        if (worker != null) {
+            throw new IllegalStateException("Recorder must be set before the thread starts");
+        }
+        this.recorder = recorder;
+    }
+
+    /**
+     * Add the congestion level of every lane to each snapshot (must be called before {@link #start()})
+     * Thêm mức tắc nghẽn của mọi lane vào mỗi snapshot (phải gọi trước {@link #start()})
+     *
+     * @param metric Measurement to quantize, or null to skip lane state
+     */
+    public synchronized void setLaneMetric(LaneMetric metric) {
+        if (worker != null) {
+            throw new IllegalStateException("Lane metric must be set before the thread starts");
+        }
+        if (laneCollector == null && metric != null) {
+            laneCollector = new LaneStateCollector(backend);
+        }
+        if (laneCollector != null) {
+            laneCollector.setMetric(metric);
+        }
+    }
+
+    /**
+     * Feed departures, arrivals and the lane state of every step to traffic statistics
+     * (must be called before {@link #start()})
+     * Đưa xe xuất phát, đến nơi và trạng thái lane của mỗi bước vào thống kê giao thông
+     * (phải gọi trước {@link #start()})
+     */
+    public synchronized void setStatistics(TrafficStatistics statistics) {
+        if (worker != null) {
+            throw new IllegalStateException("Statistics must be set before the thread starts");
+        }
+        if (laneCollector == null && statistics != null) {
+            laneCollector = new LaneStateCollector(backend);
+        }
+        this.statistics = statistics;
+    }
+
+    /**
+     * Run a TraCI command on the simulation thread before the next step
+     * Chạy một lệnh TraCI trên luồng mô phỏng trước bước tiếp theo
+     */
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    /**
+     * Run a command that changes the visible state (e.g. seeking a replay) and publish the result right away,
+     * even while paused. The snapshot starts a new epoch, so the renderer does not glide across the jump.
+     * Chạy một lệnh làm thay đổi trạng thái hiển thị (ví dụ tua bản ghi) và đăng kết quả ngay,
+     * kể cả khi đang tạm dừng. Snapshot mở một epoch mới, nên renderer không trượt xe qua bước nhảy.
+     */
+    public void submitAndPublish(Runnable command) {
+        commands.add(() -> {
+            command.run();
+            epoch++;
+            // After a jump back every light would keep its cached state until its old switch time comes round again
+            // Sau khi nhảy lùi mọi đèn sẽ giữ trạng thái đã lưu tới khi lại tới thời điểm đổi pha cũ
+            signalCollector.invalidate();
+            stepsRun++;
+            publishSnapshot();
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            deltaT = backend.getDeltaT();
+            // Publish the initial state so the renderer has something to show
+            // Đăng trạng thái ban đầu để renderer có dữ liệu hiển thị
+            publishSnapshot();
+
+            long nextStep = System.nanoTime();
+            long nextPublish = nextStep + FRAME_INTERVAL_NANOS;
+            boolean unpublished = false;
+            while (!stopRequested) {
+                runCommands();
+                if (paused) {
+                    if (unpublished) {
+                        publishSnapshot();
+                        unpublished = false;
+                    }
+                    LockSupport.parkNanos(PAUSE_POLL_NANOS);
+                    nextStep = System.nanoTime();
+                    continue;
+                }
+
+                // Step the backend; vehicle bookkeeping runs every step so no departure or arrival is missed
+                // Chạy một bước backend; việc theo dõi xe chạy mỗi bước để không bỏ sót xe vào/ra
+                SimulationStepEvent stepEvent = new SimulationStepEvent();
+                long callsBefore = stepEvent.isEnabled() ? backend.getCallCount() : 0;
+                stepEvent.begin();
+                long stepStart = STEP_TIME.start();
+                backend.step();
+                backend.updateVehicleLifecycle();
+                stepsRun++;
+                if (statistics != null) {
+                    // Statistics see the lanes of every step, not only of the rendered ones
+                    // Thống kê thấy lane của mọi bước, không chỉ của các bước được vẽ
+                    statistics.recordTrips(backend.getTime(), backend.getLastDepartedIds(),
+                            backend.getLastArrivedIds());
+                    readLanes();
+                }
+                STEP_TIME.stop(stepStart);
+                STEPS.increment();
+                stepEvent.end();
+                if (stepEvent.shouldCommit()) {
+                    stepEvent.step = stepsRun;
+                    stepEvent.backendCalls = backend.getCallCount() - callsBefore;
+                    stepEvent.commit();
+                }
+
+                // Only read the full state when a frame is due (or every step while recording);
+                // nobody sees the steps in between
+                // Chỉ đọc toàn bộ trạng thái khi tới lúc vẽ khung hình (hoặc mọi bước khi đang ghi);
+                // không ai thấy các bước ở giữa
+                long now = System.nanoTime();
+                if (now - nextPublish >= 0) {
+                    publishSnapshot();
+                    nextPublish = now + FRAME_INTERVAL_NANOS;
+                    unpublished = false;
+                } else {
+                    if (recorder != null) {
+                        currentSnapshot();
+                    }
+                    unpublished = true;
+                }
+
+                double currentSpeed = speed;
+                if (currentSpeed == MAX_SPEED) {
+                    nextStep = now;
+                    continue;
+                }
+
+                // Wait for the next step; never build up a backlog if SUMO is slow
+                // Chờ tới bước tiếp theo; không dồn bước nếu SUMO chậm
+                nextStep += (long) (deltaT * 1_000_000_000L / currentSpeed);
+                if (unpublished && nextStep - nextPublish >= 0) {
+                    // The next step comes after the next frame, so show this one
+                    // Bước tiếp theo tới sau khung hình kế tiếp, nên hiển thị bước này
+                    publishSnapshot();
+                    nextPublish = System.nanoTime() + FRAME_INTERVAL_NANOS;
+                    unpublished = false;
+                }
+                long wait = nextStep - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    nextStep = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("SimulationThread: simulation stopped: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run all queued commands
+     * Chạy tất cả lệnh đang chờ
+     */
+    private void runCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                System.err.println("SimulationThread: command failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publish the state of the current step as a snapshot
+     * Đăng trạng thái của bước hiện tại thành snapshot
+     */
+    private void publishSnapshot() {
+        snapshots.publish(currentSnapshot());
+    }
+
+    /**
+     * Read the lane state of the current step once and feed it to the statistics if they are kept
+     * Đọc trạng thái lane của bước hiện tại một lần và đưa vào thống kê nếu có
+     */
+    private void readLanes() {
+        if (laneStep == stepsRun) {
+            return;
+        }
+        LaneStateBuffer lanes = laneCollector.read();
+        laneStep = stepsRun;
+        if (statistics != null) {
+            statistics.recordLanes(backend.getTime(), lanes);
+        }
+    }
+
+    /**
+     * Collect vehicle and signal state of the current step once, recording it if a recorder is set
+     * Thu thập trạng thái xe và đèn của bước hiện tại một lần, ghi lại nếu có bộ ghi
+     */
+    private SimulationSnapshot currentSnapshot() {
+        if (snapshotStep != stepsRun) {
+            StateSyncEvent syncEvent = new StateSyncEvent();
+            long callsBefore = syncEvent.isEnabled() ? backend.getCallCount() : 0;
+            syncEvent.begin();
+            long start = COLLECT_TIME.start();
+            builder.clear();
+            backend.collectVehicleState(builder);
+            double time = backend.getTime();
+            signalCollector.collect(builder, time);
+            if (laneCollector != null) {
+                readLanes();
+                laneCollector.addLevels(builder);
+            }
+            current = builder.build(++sequence, time, epoch);
+            snapshotStep = stepsRun;
+            if (recorder != null) {
+                recorder.record(current);
+            }
+            COLLECT_TIME.stop(start);
+            // The call count is only read on this thread, which owns the backend
+            // Số lần gọi chỉ được đọc trên luồng này, luồng sở hữu backend
+            long calls = backend.getCallCount();
+            BACKEND_CALLS.add(calls - reportedCalls);
+            reportedCalls = calls;
+            syncEvent.end();
+            if (syncEvent.shouldCommit()) {
+                syncEvent.vehicles = current.getVehicleCount();
+                syncEvent.signals = current.getSignalCount();
+                syncEvent.backendCalls = calls - callsBefore;
+                syncEvent.commit();
+            }
+        }
+        return current;
+    }
+}
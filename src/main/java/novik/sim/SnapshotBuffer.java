@@ -0,0 +1,32 @@
+package novik.sim;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free hand-off of the latest snapshot from the simulation thread to the renderer
+ * Chuyển snapshot mới nhất từ luồng mô phỏng sang renderer mà không cần khóa
+ *
+ * The writer always publishes a new immutable snapshot, so the reader can keep using
+ * the one it holds while the next one is being built (double buffering).
+ * Luồng ghi luôn đăng một snapshot bất biến mới, nên luồng đọc vẫn dùng được snapshot
+ * đang giữ trong khi snapshot tiếp theo được tạo (double buffering).
+ */
+public final class SnapshotBuffer {
+    private final AtomicReference<SimulationSnapshot> latest = new AtomicReference<>();
+
+    /**
+     * Publish a new snapshot (simulation thread)
+     * Đăng snapshot mới (luồng mô phỏng)
+     */
+    public void publish(SimulationSnapshot snapshot) {
+        latest.set(snapshot);
+    }
+
+    /**
+     * Get the latest published snapshot, or null if none yet (render thread)
+     * Lấy snapshot mới nhất, hoặc null nếu chưa có (luồng vẽ)
+     */
+    public SimulationSnapshot latest() {
+        return latest.get();
+    }
+}
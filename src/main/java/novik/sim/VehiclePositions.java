@@ -0,0 +1,30 @@
+package novik.sim;
+
+/**
+ * Position and heading of the vehicles of a snapshot, by snapshot index
+ * Vị trí và hướng của các xe trong một snapshot, theo chỉ số trong snapshot
+ *
+ * Implemented by {@link SimulationSnapshot} itself (the state of the step) and by views that
+ * show the vehicles somewhere between two steps.
+ * Được {@link SimulationSnapshot} cài đặt (trạng thái của bước) và các view hiển thị xe ở
+ * đâu đó giữa hai bước.
+ */
+public interface VehiclePositions {
+    /**
+     * X position in SUMO world coordinates
+     * Vị trí X theo tọa độ thế giới SUMO
+     */
+    double getX(int i);
+
+    /**
+     * Y position in SUMO world coordinates
+     * Vị trí Y theo tọa độ thế giới SUMO
+     */
+    double getY(int i);
+
+    /**
+     * Heading in degrees (SUMO convention: 0 = north, clockwise)
+     * Hướng theo độ (quy ước SUMO: 0 = hướng bắc, theo chiều kim đồng hồ)
+     */
+    double getAngle(int i);
+}
@@ -0,0 +1,289 @@
+package novik.sim;
+
+import org.eclipse.sumo.libtraci.Constants;
+import org.eclipse.sumo.libtraci.IntVector;
+import org.eclipse.sumo.libtraci.Simulation;
+import org.eclipse.sumo.libtraci.SubscriptionResults;
+import org.eclipse.sumo.libtraci.TraCIDouble;
+import org.eclipse.sumo.libtraci.TraCIPosition;
+import org.eclipse.sumo.libtraci.TraCIResults;
+import org.eclipse.sumo.libtraci.TraCIString;
+import org.eclipse.sumo.libtraci.Vehicle;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the state of all vehicles from SUMO into a snapshot builder
+ * Đọc trạng thái tất cả xe từ SUMO vào snapshot builder
+ *
+ * Must be called on the thread that drives SUMO.
+ * Phải được gọi trên luồng điều khiển SUMO.
+ */
+public class VehicleStateCollector {
+    /**
+     * How vehicle state is read from SUMO
+     * Cách đọc trạng thái xe từ SUMO
+     */
+    public enum Mode {
+        // One subscription per vehicle, all values read once per step
+        // Mỗi xe đăng ký một lần, đọc tất cả giá trị một lần mỗi bước
+        SUBSCRIPTION,
+        // Old path: getPosition/getAngle per car (2N calls)
+        // Cách cũ: getPosition/getAngle cho từng xe (2N lần gọi)
+        POLLING
+    }
+
+    // Full consistency check against Vehicle.getIDList every N steps (safety net for missed events)
+    // Kiểm tra đầy đủ với Vehicle.getIDList mỗi N bước (dự phòng khi bỏ sót sự kiện)
+    public static final int FULL_CHECK_INTERVAL = 300;
+
+    private volatile Mode mode = Mode.SUBSCRIPTION;
+    private Mode lastMode;
+    private IntVector subscriptionVars;
+
+    // Vehicle state keyed by dense handles; also remembers types so getTypeID is called once per vehicle
+    // Trạng thái xe theo handle liên tục; cũng nhớ loại xe để getTypeID chỉ gọi một lần cho mỗi xe
+    private final VehicleStore store = new VehicleStore();
+    private long step = 0;
+
+    // Totals for run summaries (TraCI calls count round trips to SUMO only)
+    // Tổng số cho báo cáo lần chạy (chỉ đếm các lần gọi TraCI tới SUMO)
+    private long departedCount = 0;
+    private long arrivedCount = 0;
+    // Departures and arrivals of the last lifecycle update
+    // Các xe xuất phát và đến nơi ở lần cập nhật vòng đời gần nhất
+    private List<String> lastDeparted = List.of();
+    private List<String> lastArrived = List.of();
+    private long traciCalls = 0;
+
+    /**
+     * Collect the state of all vehicles after the last step
+     * Thu thập trạng thái tất cả xe sau bước vừa chạy
+     */
+    public void collect(SimulationSnapshot.Builder builder) {
+        updateLifecycle();
+        collectState(builder);
+    }
+
+    /**
+     * Add and remove vehicles for the last step (cost scales with departures/arrivals, not population)
+     * Thêm và xóa xe cho bước vừa chạy (chi phí theo số xe vào/ra, không theo tổng số xe)
+     */
+    public void updateLifecycle() {
+        step++;
+        Mode current = mode;
+        boolean modeChanged = current != lastMode;
+        lastMode = current;
+
+        // Vehicles enter the network on departure and when a teleport ends
+        // Xe vào mạng lưới khi xuất phát và khi kết thúc teleport
+        List<String> departed = Simulation.getDepartedIDList();
+        lastDeparted = departed;
+        departedCount += departed.size();
+        for (String carId : departed) {
+            vehicleEntered(carId, current);
+        }
+        for (String carId : Simulation.getEndingTeleportIDList()) {
+            vehicleEntered(carId, current);
+        }
+
+        // Vehicles leave the network on arrival and when a teleport starts
+        // Xe rời mạng lưới khi đến nơi và khi bắt đầu teleport
+        List<String> arrived = Simulation.getArrivedIDList();
+        lastArrived = arrived;
+        arrivedCount += arrived.size();
+        for (String carId : arrived) {
+            store.remove(carId);
+        }
+        for (String carId : Simulation.getStartingTeleportIDList()) {
+            store.remove(carId);
+        }
+        traciCalls += 4;
+
+        if (modeChanged || step % FULL_CHECK_INTERVAL == 0) {
+            fullCheck(current, modeChanged);
+        }
+    }
+
+    /**
+     * Read positions, angles and speeds of all known vehicles into a snapshot builder
+     * Đọc vị trí, góc và tốc độ của tất cả xe đã biết vào snapshot builder
+     *
+     * Can be skipped for steps that are never rendered; {@link #updateLifecycle()} must still run every step.
+     * Có thể bỏ qua ở các bước không được vẽ; {@link #updateLifecycle()} vẫn phải chạy mỗi bước.
+     */
+    public void collectState(SimulationSnapshot.Builder builder) {
+        if (lastMode == Mode.SUBSCRIPTION) {
+            readFromSubscriptions();
+        } else {
+            readFromPolling();
+        }
+        store.copyTo(builder);
+    }
+
+    /**
+     * Register a vehicle that just appeared in the network
+     * Ghi nhận xe vừa xuất hiện trong mạng lưới
+     */
+    private void vehicleEntered(String carId, Mode current) {
+        if (store.handleOf(carId) >= 0) {
+            return;
+        }
+        if (current == Mode.SUBSCRIPTION) {
+            // The subscribe answer already carries the type, so no extra getTypeID call
+            // Kết quả đăng ký đã có loại xe nên không cần gọi thêm getTypeID
+            Vehicle.subscribe(carId, subscriptionVars());
+            traciCalls++;
+            store.add(carId, typeFromSubscription(carId));
+        } else {
+            store.add(carId, Vehicle.getTypeID(carId));
+            traciCalls++;
+        }
+    }
+
+    /**
+     * Compare the store with the full ID list: add missing vehicles, drop stale ones
+     * So sánh kho xe với toàn bộ danh sách ID: thêm xe còn thiếu, bỏ xe không còn
+     */
+    private void fullCheck(Mode current, boolean modeChanged) {
+        traciCalls++;
+        for (String carId : Vehicle.getIDList()) {
+            int handle = store.handleOf(carId);
+            if (handle < 0) {
+                vehicleEntered(carId, current);
+                handle = store.handleOf(carId);
+            } else if (modeChanged && current == Mode.SUBSCRIPTION) {
+                // Vehicles known from polling are not subscribed yet
+                // Xe đã biết từ polling chưa được đăng ký
+                Vehicle.subscribe(carId, subscriptionVars());
+                traciCalls++;
+            }
+            store.markSeen(handle, step);
+        }
+        store.removeNotSeen(step);
+    }
+
+    /**
+     * Read vehicles from the subscriptions (one batched read per step)
+     * Đọc xe từ các subscription (đọc một lần cho mỗi bước)
+     */
+    private void readFromSubscriptions() {
+        SubscriptionResults results = Vehicle.getAllSubscriptionResults();
+        for (Map.Entry<String, TraCIResults> entry : results.entrySet()) {
+            // Results of teleporting or unknown vehicles are ignored until they enter again
+            // Bỏ qua kết quả của xe đang teleport hoặc chưa biết cho đến khi xe vào lại
+            int handle = store.handleOf(entry.getKey());
+            if (handle < 0) {
+                continue;
+            }
+            TraCIResults values = entry.getValue();
+            TraCIPosition pos = TraCIPosition.cast(values.get(Constants.VAR_POSITION));
+            store.set(handle,
+                    pos.getX(),
+                    pos.getY(),
+                    TraCIDouble.cast(values.get(Constants.VAR_ANGLE)).getValue(),
+                    TraCIDouble.cast(values.get(Constants.VAR_SPEED)).getValue(),
+                    step);
+        }
+    }
+
+    /**
+     * Read vehicles with one TraCI call per value (fallback, kept for comparison)
+     * Đọc xe bằng một lần gọi TraCI cho mỗi giá trị (dự phòng, giữ lại để so sánh)
+     */
+    private void readFromPolling() {
+        int capacity = store.getCapacity();
+        for (int handle = 0; handle < capacity; handle++) {
+            if (!store.isAlive(handle)) {
+                continue;
+            }
+            String carId = store.getId(handle);
+            try {
+                TraCIPosition pos = Vehicle.getPosition(carId, false);
+                double angle = Vehicle.getAngle(carId);
+                traciCalls += 2;
+                // Speed is not polled to keep the old call pattern
+                // Không lấy tốc độ để giữ nguyên số lần gọi như cách cũ
+                store.set(handle, pos.getX(), pos.getY(), angle, 0, step);
+            } catch (RuntimeException e) {
+                // The vehicle left without an event; the next full check would drop it anyway
+                // Xe đã rời đi mà không có sự kiện; lần kiểm tra đầy đủ tiếp theo cũng sẽ bỏ nó
+                store.remove(handle);
+            }
+        }
+    }
+
+    private IntVector subscriptionVars() {
+        if (subscriptionVars == null) {
+            subscriptionVars = new IntVector(new int[] {
+                    Constants.VAR_POSITION, Constants.VAR_ANGLE, Constants.VAR_TYPE, Constants.VAR_SPEED
+            });
+        }
+        return subscriptionVars;
+    }
+
+    private String typeFromSubscription(String carId) {
+        TraCIResults values = Vehicle.getSubscriptionResults(carId);
+        if (values != null && values.containsKey(Constants.VAR_TYPE)) {
+            return TraCIString.cast(values.get(Constants.VAR_TYPE)).getValue();
+        }
+        traciCalls++;
+        return Vehicle.getTypeID(carId);
+    }
+
+    /**
+     * Switch between subscription and polling (takes effect at the next collect)
+     * Chuyển giữa subscription và polling (có hiệu lực ở lần thu thập tiếp theo)
+     */
+    public void setMode(Mode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode cannot be null");
+        }
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Number of vehicles that departed since the collector was created
+     * Số xe đã xuất phát kể từ khi tạo collector
+     */
+    public long getDepartedCount() {
+        return departedCount;
+    }
+
+    /**
+     * Number of vehicles that arrived since the collector was created
+     * Số xe đã đến nơi kể từ khi tạo collector
+     */
+    public long getArrivedCount() {
+        return arrivedCount;
+    }
+
+    public List<String> getLastDepartedIds() {
+        return lastDeparted;
+    }
+
+    public List<String> getLastArrivedIds() {
+        return lastArrived;
+    }
+
+    /**
+     * Number of TraCI round trips made by this collector (local subscription reads are not counted)
+     * Số lần gọi TraCI tới SUMO của collector này (không tính đọc subscription cục bộ)
+     */
+    public long getTraciCallCount() {
+        return traciCalls;
+    }
+
+    /**
+     * Get the vehicle store filled by this collector (simulation thread only)
+     * Lấy kho xe do collector này nạp (chỉ dùng trên luồng mô phỏng)
+     */
+    public VehicleStore getStore() {
+        return store;
+    }
+}
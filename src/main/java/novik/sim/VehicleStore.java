@@ -0,0 +1,258 @@
+package novik.sim;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structure-of-arrays store of vehicle state keyed by dense integer handles
+ * Kho trạng thái xe dạng cấu trúc-mảng, đánh khóa bằng handle số nguyên liên tục
+ *
+ * SUMO vehicle IDs are interned once to a handle; freed handles are reused, so all state
+ * lives in parallel primitive arrays and per-step work is a linear scan over
+ * {@code [0, getCapacity())}. Not thread-safe: owned by the simulation thread.
+ * ID xe SUMO được gán handle một lần; handle đã giải phóng được dùng lại, nên mọi trạng thái
+ * nằm trong các mảng nguyên thủy song song và công việc mỗi bước là một lần duyệt tuyến tính
+ * trên {@code [0, getCapacity())}. Không an toàn đa luồng: thuộc về luồng mô phỏng.
+ */
+public final class VehicleStore {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // ID -> handle; only touched when a vehicle appears or disappears
+    // ID -> handle; chỉ dùng khi xe xuất hiện hoặc biến mất
+    private final Map<String, Integer> handles = new HashMap<>();
+
+    // Vehicle type names interned to small ints
+    // Tên loại xe được gán số nguyên nhỏ
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private String[] typeNames = new String[8];
+    private int typeCount = 0;
+
+    // Parallel arrays indexed by handle
+    // Các mảng song song đánh chỉ số theo handle
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private boolean[] alive = new boolean[INITIAL_CAPACITY];
+    private int[] type = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] angle = new double[INITIAL_CAPACITY];
+    private double[] speed = new double[INITIAL_CAPACITY];
+    private long[] lastSeen = new long[INITIAL_CAPACITY];
+
+    // Stack of released handles and the high-water mark of handles ever used
+    // Ngăn xếp các handle đã giải phóng và số handle lớn nhất từng dùng
+    private int[] freeHandles = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int capacity = 0;
+    private int size = 0;
+
+    /**
+     * Get the handle of a vehicle, or -1 if it is not in the store
+     * Lấy handle của xe, hoặc -1 nếu xe không có trong kho
+     */
+    public int handleOf(String id) {
+        Integer handle = handles.get(id);
+        return handle == null ? -1 : handle;
+    }
+
+    /**
+     * Add a vehicle and return its new handle (reusing a freed one if possible)
+     * Thêm xe và trả về handle mới (dùng lại handle đã giải phóng nếu có)
+     */
+    public int add(String id, String typeName) {
+        int handle = freeCount > 0 ? freeHandles[--freeCount] : capacity++;
+        if (handle == ids.length) {
+            grow();
+        }
+        handles.put(id, handle);
+        ids[handle] = id;
+        alive[handle] = true;
+        type[handle] = internType(typeName);
+        x[handle] = 0;
+        y[handle] = 0;
+        angle[handle] = 0;
+        speed[handle] = 0;
+        lastSeen[handle] = Long.MIN_VALUE;
+        size++;
+        return handle;
+    }
+
+    /**
+     * Remove a vehicle and put its handle on the free list
+     * Xóa xe và đưa handle vào danh sách tự do
+     */
+    public void remove(int handle) {
+        if (!alive[handle]) {
+            return;
+        }
+        handles.remove(ids[handle]);
+        ids[handle] = null;
+        alive[handle] = false;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        }
+        freeHandles[freeCount++] = handle;
+        size--;
+    }
+
+    /**
+     * Set the state of a vehicle and mark it as seen in the given step
+     * Đặt trạng thái của xe và đánh dấu xe đã thấy ở bước cho trước
+     */
+    public void set(int handle, double vx, double vy, double vAngle, double vSpeed, long step) {
+        x[handle] = vx;
+        y[handle] = vy;
+        angle[handle] = vAngle;
+        speed[handle] = vSpeed;
+        lastSeen[handle] = step;
+    }
+
+    /**
+     * Mark a vehicle as seen in the given step without changing its state
+     * Đánh dấu xe đã thấy ở bước cho trước mà không đổi trạng thái
+     */
+    public void markSeen(int handle, long step) {
+        lastSeen[handle] = step;
+    }
+
+    /**
+     * Remove a vehicle by ID if it is known
+     * Xóa xe theo ID nếu đã biết
+     *
+     * @return true if the vehicle was removed
+     */
+    public boolean remove(String id) {
+        int handle = handleOf(id);
+        if (handle < 0) {
+            return false;
+        }
+        remove(handle);
+        return true;
+    }
+
+    /**
+     * Remove every vehicle that was not seen in the given step (linear scan, no allocation)
+     * Xóa mọi xe không được thấy ở bước cho trước (duyệt tuyến tính, không cấp phát)
+     *
+     * @return Number of removed vehicles
+     */
+    public int removeNotSeen(long step) {
+        return removeNotSeen(step, null);
+    }
+
+    /**
+     * Remove every vehicle that was not seen in the given step, collecting the IDs of the removed vehicles
+     * Xóa mọi xe không được thấy ở bước cho trước, thu thập ID của các xe bị xóa
+     *
+     * @param removedIds Receives the removed IDs, or null
+     * @return Number of removed vehicles
+     */
+    public int removeNotSeen(long step, List<String> removedIds) {
+        int removed = 0;
+        for (int h = 0; h < capacity; h++) {
+            if (alive[h] && lastSeen[h] != step) {
+                if (removedIds != null) {
+                    removedIds.add(ids[h]);
+                }
+                remove(h);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Append all live vehicles to a snapshot builder
+     * Thêm tất cả xe còn sống vào snapshot builder
+     */
+    public void copyTo(SimulationSnapshot.Builder builder) {
+        for (int h = 0; h < capacity; h++) {
+            if (alive[h]) {
+                builder.addVehicle(h, ids[h], typeNames[type[h]], x[h], y[h], angle[h], speed[h]);
+            }
+        }
+    }
+
+    /**
+     * Remove all vehicles
+     * Xóa tất cả xe
+     */
+    public void clear() {
+        handles.clear();
+        Arrays.fill(ids, 0, capacity, null);
+        Arrays.fill(alive, 0, capacity, false);
+        freeCount = 0;
+        capacity = 0;
+        size = 0;
+    }
+
+    private int internType(String typeName) {
+        Integer id = typeIds.get(typeName);
+        if (id == null) {
+            if (typeCount == typeNames.length) {
+                typeNames = Arrays.copyOf(typeNames, typeCount * 2);
+            }
+            id = typeCount;
+            typeNames[typeCount++] = typeName;
+            typeIds.put(typeName, id);
+        }
+        return id;
+    }
+
+    private void grow() {
+        int n = ids.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        alive = Arrays.copyOf(alive, n);
+        type = Arrays.copyOf(type, n);
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        angle = Arrays.copyOf(angle, n);
+        speed = Arrays.copyOf(speed, n);
+        lastSeen = Arrays.copyOf(lastSeen, n);
+    }
+
+    /**
+     * Number of live vehicles
+     * Số xe đang sống
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Upper bound (exclusive) of handles in use; scan {@code [0, getCapacity())}
+     * Giới hạn trên (không bao gồm) của handle đang dùng; duyệt {@code [0, getCapacity())}
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isAlive(int handle) {
+        return alive[handle];
+    }
+
+    public String getId(int handle) {
+        return ids[handle];
+    }
+
+    public String getType(int handle) {
+        return typeNames[type[handle]];
+    }
+
+    public double getX(int handle) {
+        return x[handle];
+    }
+
+    public double getY(int handle) {
+        return y[handle];
+    }
+
+    public double getAngle(int handle) {
+        return angle[handle];
+    }
+
+    public double getSpeed(int handle) {
+        return speed[handle];
+    }
+}
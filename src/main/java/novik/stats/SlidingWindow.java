@@ -0,0 +1,175 @@
+package novik.stats;
+
+import java.util.Arrays;
+
+/**
+ * Sums of several series over a sliding time window, kept in a fixed ring of buckets
+ * Tổng của nhiều chuỗi giá trị trên một cửa sổ thời gian trượt, giữ trong một vòng bucket cố định
+ *
+ * Values are added to the bucket of the current time; moving forward zeroes the buckets that fell out of
+ * the window, so memory stays constant (buckets × series) however long the simulation runs. The window
+ * covers the current, partly filled bucket plus the ones before it. Sums are laid out bucket by bucket so
+ * adding a sample for every series and summing every series both walk memory in order.
+ * Not thread-safe.
+ * Giá trị được cộng vào bucket của thời điểm hiện tại; khi tiến lên, các bucket đã ra khỏi cửa sổ được
+ * đặt về 0, nên bộ nhớ cố định (số bucket × số chuỗi) dù mô phỏng chạy bao lâu. Cửa sổ gồm bucket hiện
+ * tại (mới đầy một phần) và các bucket trước đó. Các tổng được xếp theo từng bucket nên cả việc cộng mẫu
+ * cho mọi chuỗi lẫn tính tổng mọi chuỗi đều duyệt bộ nhớ tuần tự.
+ * Không an toàn đa luồng.
+ */
+public final class SlidingWindow {
+    private final int series;
+    private final int buckets;
+    private final double bucketSeconds;
+    // Bucket-major: the sums of bucket b are at [b * series, (b + 1) * series)
+    // Theo bucket: các tổng của bucket b nằm ở [b * series, (b + 1) * series)
+    private final double[] sums;
+    // Weight of every bucket (e.g. sampled seconds), shared by all series
+    // Trọng số của mỗi bucket (ví dụ số giây đã lấy mẫu), dùng chung cho mọi chuỗi
+    private final double[] weights;
+
+    private long currentBucket = Long.MIN_VALUE;
+    private double firstTime = Double.NaN;
+
+    /**
+     * Constructor
+     * @param series Number of series
+     * @param windowSeconds Length of the window (s)
+     * @param buckets Number of buckets the window is split into
+     */
+    public SlidingWindow(int series, double windowSeconds, int buckets) {
+        if (series < 0 || buckets <= 0 || !(windowSeconds > 0)) {
+            throw new IllegalArgumentException("Invalid window: " + series + " series, " + windowSeconds
+                    + " s, " + buckets + " buckets");
+        }
+        this.series = series;
+        this.buckets = buckets;
+        this.bucketSeconds = windowSeconds / buckets;
+        this.sums = new double[series * buckets];
+        this.weights = new double[buckets];
+    }
+
+    /**
+     * Move the window to a simulation time, dropping the buckets that fell out of it
+     * Dời cửa sổ tới một thời điểm mô phỏng, bỏ các bucket đã ra khỏi cửa sổ
+     *
+     * Going back in time (e.g. seeking a replay) starts over.
+     * Lùi thời gian (ví dụ tua bản ghi) sẽ bắt đầu lại từ đầu.
+     */
+    public void advanceTo(double time) {
+        long bucket = (long) Math.floor(time / bucketSeconds);
+        if (currentBucket == Long.MIN_VALUE || bucket < currentBucket) {
+            clear();
+            currentBucket = bucket;
+            firstTime = time;
+            return;
+        }
+        long skipped = Math.min(bucket - currentBucket, buckets);
+        for (long b = 1; b <= skipped; b++) {
+            int slot = slot(currentBucket + b);
+            Arrays.fill(sums, slot * series, (slot + 1) * series, 0);
+            weights[slot] = 0;
+        }
+        currentBucket = bucket;
+    }
+
+    /**
+     * Forget everything recorded so far
+     * Quên mọi giá trị đã ghi
+     */
+    public void clear() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(weights, 0);
+        currentBucket = Long.MIN_VALUE;
+        firstTime = Double.NaN;
+    }
+
+    /**
+     * Add a value to one series in the current bucket
+     * Cộng một giá trị vào một chuỗi trong bucket hiện tại
+     */
+    public void add(int index, double value) {
+        sums[slot(currentBucket) * series + index] += value;
+    }
+
+    /**
+     * Add to the weight of the current bucket
+     * Cộng vào trọng số của bucket hiện tại
+     */
+    public void addWeight(double weight) {
+        weights[slot(currentBucket)] += weight;
+    }
+
+    /**
+     * Sum of one series over the window
+     * Tổng của một chuỗi trên cả cửa sổ
+     */
+    public double sum(int index) {
+        double total = 0;
+        for (int b = 0; b < buckets; b++) {
+            total += sums[b * series + index];
+        }
+        return total;
+    }
+
+    /**
+     * Sums of every series over the window
+     * Tổng của mọi chuỗi trên cả cửa sổ
+     *
+     * @param out Receives one sum per series
+     */
+    public void sumAll(double[] out) {
+        Arrays.fill(out, 0, series, 0);
+        for (int b = 0; b < buckets; b++) {
+            int base = b * series;
+            for (int i = 0; i < series; i++) {
+                out[i] += sums[base + i];
+            }
+        }
+    }
+
+    /**
+     * Total weight over the window
+     * Tổng trọng số trên cả cửa sổ
+     */
+    public double weight() {
+        double total = 0;
+        for (double w : weights) {
+            total += w;
+        }
+        return total;
+    }
+
+    /**
+     * Weighted mean of one series over the window, NaN if nothing was weighted
+     * Trung bình có trọng số của một chuỗi trên cả cửa sổ, NaN nếu chưa có trọng số
+     */
+    public double mean(int index) {
+        double weight = weight();
+        return weight > 0 ? sum(index) / weight : Double.NaN;
+    }
+
+    /**
+     * Seconds of simulation time the window currently spans, shorter than the window right after a start
+     * Số giây mô phỏng mà cửa sổ đang bao phủ, ngắn hơn cửa sổ ngay sau khi bắt đầu
+     */
+    public double coveredSeconds(double time) {
+        if (currentBucket == Long.MIN_VALUE) {
+            return 0;
+        }
+        double windowStart = (currentBucket - buckets + 1) * bucketSeconds;
+        return Math.max(0, time - Math.max(windowStart, firstTime));
+    }
+
+    public int getSeries() {
+        return series;
+    }
+
+    public double getWindowSeconds() {
+        return bucketSeconds * buckets;
+    }
+
+    private int slot(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets);
+    }
+}
@@ -0,0 +1,350 @@
+package novik.stats;
+
+import novik.sim.LaneStateBuffer;
+import novik.sim.VehicleStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental traffic statistics: per-edge estimated flow, per-lane queues, network throughput and travel times
+ * Thống kê giao thông tăng dần: lưu lượng ước lượng theo edge, hàng đợi theo lane, thông lượng mạng lưới và
+ * thời gian di chuyển
+ *
+ * Fed on the simulation thread every step: departure and arrival events ({@link #recordTrips}) and the
+ * lane state ({@link #recordLanes}). Everything goes into {@link SlidingWindow}s over the last minute and
+ * the last 15 minutes, so memory per lane and per edge is constant; only the departure time of vehicles
+ * still en route is kept per vehicle. Lane samples are weighted by the simulation time since the previous
+ * sample. Edge flow is estimated as density × mean speed of its lanes, not counted from vehicles leaving
+ * the edge. A {@link TrafficSummary} is published about twice per second of wall-clock time and can be
+ * read from any thread.
+ * Được cập nhật trên luồng mô phỏng mỗi bước: sự kiện xuất phát và đến nơi ({@link #recordTrips}) và trạng
+ * thái lane ({@link #recordLanes}). Mọi giá trị đi vào các {@link SlidingWindow} trên 1 phút và 15 phút
+ * gần nhất, nên bộ nhớ mỗi lane và mỗi edge cố định; chỉ thời điểm xuất phát của các xe còn đang chạy được
+ * giữ theo từng xe. Mẫu lane được đánh trọng số bằng thời gian mô phỏng từ mẫu trước. Lưu lượng edge được
+ * ước lượng bằng mật độ × tốc độ trung bình của các lane, không đếm từ các xe rời edge.
+ * Một {@link TrafficSummary} được đăng khoảng hai lần mỗi giây thực và có thể đọc từ mọi luồng.
+ */
+public class TrafficStatistics {
+    // Window lengths (s) and how many buckets each is split into
+    // Độ dài các cửa sổ (giây) và số bucket của mỗi cửa sổ
+    private static final double[] WINDOW_SECONDS = {60, 900};
+    private static final int[] WINDOW_BUCKETS = {12, 15};
+    // Edges or lanes listed per ranking in the summary
+    // Số edge hoặc lane được liệt kê cho mỗi bảng xếp hạng trong bản tóm tắt
+    public static final int TOP_RANKED = 3;
+    // A lane sample never stands for more than this much simulation time
+    // Một mẫu lane không đại diện cho quá khoảng thời gian mô phỏng này
+    private static final double MAX_SAMPLE_SECONDS = 60;
+    private static final long PUBLISH_INTERVAL_NANOS = 500_000_000L;
+
+    // Series of the trip windows
+    // Các chuỗi của cửa sổ chuyến đi
+    private static final int DEPARTURES = 0;
+    private static final int ARRIVALS = 1;
+    private static final int TRAVEL_TIME = 2;
+    private static final int TRIPS = 3;
+    private static final int TRIP_SERIES = 4;
+
+    private final String[] laneIds;
+    private final String[] edgeIds;
+    // Edge of every lane (-1 for internal lanes) and lane length (m)
+    // Edge của mỗi lane (-1 với lane nội bộ) và chiều dài lane (m)
+    private final int[] laneEdge;
+    private final double[] laneLength;
+
+    // Estimated flow (veh/h) per edge and halting vehicles per lane, both multiplied by the sample weight
+    // Lưu lượng ước lượng (xe/giờ) theo edge và số xe dừng theo lane, đều nhân với trọng số mẫu
+    private final SlidingWindow[] edgeWindows = new SlidingWindow[WINDOW_SECONDS.length];
+    private final SlidingWindow[] laneWindows = new SlidingWindow[WINDOW_SECONDS.length];
+    private final SlidingWindow[] tripWindows = new SlidingWindow[WINDOW_SECONDS.length];
+
+    // Departure time of every vehicle still en route, NaN if it departed before a reset
+    // Thời điểm xuất phát của mỗi xe còn đang chạy, NaN nếu xe xuất phát trước một lần đặt lại
+    private final Map<String, Double> departures = new HashMap<>();
+
+    // Reused buffers
+    // Mảng đệm dùng lại
+    private final double[] edgeFlow;
+    private final double[] edgeSums;
+    private final double[] laneSums;
+    private final double[] tripSums = new double[TRIP_SERIES];
+
+    private double lastTime = Double.NEGATIVE_INFINITY;
+    private double lastLaneTime = Double.NaN;
+    private long lastPublish = 0;
+    private volatile TrafficSummary summary;
+
+    /**
+     * Constructor
+     * @param laneIds Lane IDs, indexed like the lane state; the edge is the ID without its "_index" suffix
+     * @param laneLengths Length of every lane (m)
+     */
+    public TrafficStatistics(List<String> laneIds, double[] laneLengths) {
+        if (laneIds.size() != laneLengths.length) {
+            throw new IllegalArgumentException("Expected " + laneIds.size() + " lane lengths, got "
+                    + laneLengths.length);
+        }
+        this.laneIds = laneIds.toArray(new String[0]);
+        laneEdge = new int[laneIds.size()];
+        laneLength = laneLengths.clone();
+        Map<String, Integer> edgeIndex = new HashMap<>();
+        List<String> edges = new ArrayList<>();
+        for (int lane = 0; lane < laneIds.size(); lane++) {
+            String laneId = laneIds.get(lane);
+            int separator = laneId.lastIndexOf('_');
+            // Internal lanes inside junctions are not part of any edge
+            // Lane nội bộ trong nút giao không thuộc edge nào
+            if (laneId.startsWith(":") || separator <= 0) {
+                laneEdge[lane] = -1;
+                continue;
+            }
+            String edgeId = laneId.substring(0, separator);
+            Integer edge = edgeIndex.get(edgeId);
+            if (edge == null) {
+                edge = edges.size();
+                edgeIndex.put(edgeId, edge);
+                edges.add(edgeId);
+            }
+            laneEdge[lane] = edge;
+        }
+        edgeIds = edges.toArray(new String[0]);
+        edgeFlow = new double[edgeIds.length];
+        edgeSums = new double[edgeIds.length];
+        laneSums = new double[this.laneIds.length];
+        for (int w = 0; w < WINDOW_SECONDS.length; w++) {
+            edgeWindows[w] = new SlidingWindow(edgeIds.length, WINDOW_SECONDS[w], WINDOW_BUCKETS[w]);
+            laneWindows[w] = new SlidingWindow(this.laneIds.length, WINDOW_SECONDS[w], WINDOW_BUCKETS[w]);
+            tripWindows[w] = new SlidingWindow(TRIP_SERIES, WINDOW_SECONDS[w], WINDOW_BUCKETS[w]);
+        }
+    }
+
+    /**
+     * Record the vehicles that departed and arrived in the step that ended at the given time
+     * Ghi các xe xuất phát và đến nơi trong bước kết thúc tại thời điểm đã cho
+     */
+    public void recordTrips(double time, List<String> departed, List<String> arrived) {
+        advanceTo(time);
+        for (SlidingWindow window : tripWindows) {
+            window.add(DEPARTURES, departed.size());
+            window.add(ARRIVALS, arrived.size());
+        }
+        for (int i = 0; i < departed.size(); i++) {
+            departures.put(departed.get(i), time);
+        }
+        for (int i = 0; i < arrived.size(); i++) {
+            Double departure = departures.remove(arrived.get(i));
+            // Unknown vehicles and those already en route at a reset have no travel time
+            // Xe không rõ và xe đã đang chạy lúc đặt lại không có thời gian di chuyển
+            if (departure == null || departure.isNaN()) {
+                continue;
+            }
+            double travelTime = time - departure;
+            for (SlidingWindow window : tripWindows) {
+                window.add(TRAVEL_TIME, travelTime);
+                window.add(TRIPS, 1);
+            }
+        }
+    }
+
+    /**
+     * Record the state of every lane at the given time, publishing a new summary when one is due
+     * Ghi trạng thái của mọi lane tại thời điểm đã cho, đăng bản tóm tắt mới khi tới lúc
+     */
+    public void recordLanes(double time, LaneStateBuffer lanes) {
+        advanceTo(time);
+        double weight = Double.isNaN(lastLaneTime) ? 0 : Math.min(time - lastLaneTime, MAX_SAMPLE_SECONDS);
+        lastLaneTime = time;
+        if (weight > 0) {
+            addLaneSample(lanes, weight);
+        }
+        long now = System.nanoTime();
+        if (lastPublish == 0 || now - lastPublish >= PUBLISH_INTERVAL_NANOS) {
+            lastPublish = now;
+            summary = summarize(time);
+        }
+    }
+
+    /**
+     * Start over after the simulation time jumped (e.g. seeking a replay), keeping the vehicles now on the road
+     * as en route with an unknown departure time
+     * Bắt đầu lại sau khi thời gian mô phỏng nhảy (ví dụ tua bản ghi), giữ các xe đang trên đường là đang chạy
+     * với thời điểm xuất phát chưa biết
+     *
+     * The next lane sample publishes a new summary right away.
+     * Mẫu lane tiếp theo đăng bản tóm tắt mới ngay.
+     */
+    public void reset(VehicleStore vehiclesEnRoute) {
+        clear();
+        lastPublish = 0;
+        for (int h = 0; h < vehiclesEnRoute.getCapacity(); h++) {
+            if (vehiclesEnRoute.isAlive(h)) {
+                departures.put(vehiclesEnRoute.getId(h), Double.NaN);
+            }
+        }
+    }
+
+    /**
+     * Latest published summary, or null before the first lane sample
+     * Bản tóm tắt được đăng gần nhất, hoặc null trước mẫu lane đầu tiên
+     */
+    public TrafficSummary getSummary() {
+        return summary;
+    }
+
+    public int getEdgeCount() {
+        return edgeIds.length;
+    }
+
+    public int getLaneCount() {
+        return laneIds.length;
+    }
+
+    /**
+     * Move all windows to the given time, starting over if time went backwards
+     * Dời mọi cửa sổ tới thời điểm đã cho, bắt đầu lại nếu thời gian lùi
+     */
+    private void advanceTo(double time) {
+        if (time < lastTime) {
+            clear();
+        }
+        lastTime = time;
+        for (int w = 0; w < WINDOW_SECONDS.length; w++) {
+            edgeWindows[w].advanceTo(time);
+            laneWindows[w].advanceTo(time);
+            tripWindows[w].advanceTo(time);
+        }
+    }
+
+    private void clear() {
+        departures.clear();
+        lastTime = Double.NEGATIVE_INFINITY;
+        lastLaneTime = Double.NaN;
+        for (int w = 0; w < WINDOW_SECONDS.length; w++) {
+            edgeWindows[w].clear();
+            laneWindows[w].clear();
+            tripWindows[w].clear();
+        }
+    }
+
+    /**
+     * Add the halting vehicles of every lane and the estimated flow of every edge to all windows
+     * Cộng số xe dừng của mỗi lane và lưu lượng ước lượng của mỗi edge vào mọi cửa sổ
+     */
+    private void addLaneSample(LaneStateBuffer lanes, double weight) {
+        Arrays.fill(edgeFlow, 0);
+        int n = Math.min(lanes.size(), laneIds.length);
+        for (SlidingWindow window : laneWindows) {
+            window.addWeight(weight);
+        }
+        for (int lane = 0; lane < n; lane++) {
+            int vehicles = lanes.getVehicleCount(lane);
+            if (vehicles == 0) {
+                continue;
+            }
+            int halting = lanes.getHaltingCount(lane);
+            if (halting != 0) {
+                for (SlidingWindow window : laneWindows) {
+                    window.add(lane, halting * weight);
+                }
+            }
+            // Estimated flow = density × speed: vehicles per metre times metres per second, in vehicles per hour
+            // Lưu lượng ước lượng = mật độ × tốc độ: số xe mỗi mét nhân số mét mỗi giây, tính theo xe mỗi giờ
+            int edge = laneEdge[lane];
+            double speed = lanes.getMeanSpeed(lane);
+            if (edge >= 0 && laneLength[lane] > 0 && speed > 0) {
+                edgeFlow[edge] += vehicles * speed / laneLength[lane] * 3600;
+            }
+        }
+        for (SlidingWindow window : edgeWindows) {
+            window.addWeight(weight);
+            for (int edge = 0; edge < edgeIds.length; edge++) {
+                if (edgeFlow[edge] != 0) {
+                    window.add(edge, edgeFlow[edge] * weight);
+                }
+            }
+        }
+    }
+
+    TrafficSummary summarize(double time) {
+        List<TrafficSummary.Window> windows = new ArrayList<>(WINDOW_SECONDS.length);
+        for (int w = 0; w < WINDOW_SECONDS.length; w++) {
+            SlidingWindow trips = tripWindows[w];
+            trips.sumAll(tripSums);
+            double covered = trips.coveredSeconds(time);
+            double perHour = covered > 0 ? 3600 / covered : Double.NaN;
+            double meanTravelTime = tripSums[TRIPS] > 0 ? tripSums[TRAVEL_TIME] / tripSums[TRIPS] : Double.NaN;
+
+            SlidingWindow edges = edgeWindows[w];
+            edges.sumAll(edgeSums);
+            double edgeWeight = edges.weight();
+            Ranking topFlow = new Ranking(edgeIds);
+            if (edgeWeight > 0) {
+                for (int edge = 0; edge < edgeIds.length; edge++) {
+                    topFlow.offer(edge, edgeSums[edge] / edgeWeight);
+                }
+            }
+
+            SlidingWindow lanes = laneWindows[w];
+            lanes.sumAll(laneSums);
+            double laneWeight = lanes.weight();
+            Ranking topQueue = new Ranking(laneIds);
+            double[] laneHalting = new double[laneIds.length];
+            double halting = Double.NaN;
+            if (laneWeight > 0) {
+                halting = 0;
+                for (int lane = 0; lane < laneIds.length; lane++) {
+                    laneHalting[lane] = laneSums[lane] / laneWeight;
+                    topQueue.offer(lane, laneHalting[lane]);
+                    halting += laneHalting[lane];
+                }
+            } else {
+                Arrays.fill(laneHalting, Double.NaN);
+            }
+            windows.add(new TrafficSummary.Window(WINDOW_SECONDS[w], covered,
+                    tripSums[DEPARTURES] * perHour, tripSums[ARRIVALS] * perHour, meanTravelTime, halting,
+                    laneHalting, topFlow.toList(), topQueue.toList()));
+        }
+        return new TrafficSummary(time, departures.size(), windows);
+    }
+
+    /**
+     * The {@link #TOP_RANKED} edges or lanes with the highest positive value, kept sorted by insertion
+     * {@link #TOP_RANKED} edge hoặc lane có giá trị dương cao nhất, giữ thứ tự bằng cách chèn
+     */
+    private static final class Ranking {
+        private final String[] ids;
+        private final int[] indices = new int[TOP_RANKED];
+        private final double[] values = new double[TOP_RANKED];
+        private int size = 0;
+
+        Ranking(String[] ids) {
+            this.ids = ids;
+        }
+
+        void offer(int index, double value) {
+            if (!(value > 0) || (size == TOP_RANKED && value <= values[size - 1])) {
+                return;
+            }
+            int i = size < TOP_RANKED ? size++ : size - 1;
+            while (i > 0 && values[i - 1] < value) {
+                indices[i] = indices[i - 1];
+                values[i] = values[i - 1];
+                i--;
+            }
+            indices[i] = index;
+            values[i] = value;
+        }
+
+        List<TrafficSummary.RankedValue> toList() {
+            List<TrafficSummary.RankedValue> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new TrafficSummary.RankedValue(ids[indices[i]], values[i]));
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package novik.stats;
+
+import java.util.List;
+
+/**
+ * Immutable view of the traffic statistics at one simulation time, safe to read from any thread
+ * Góc nhìn bất biến của thống kê giao thông tại một thời điểm mô phỏng, đọc an toàn từ mọi luồng
+ */
+public final class TrafficSummary {
+    private final double time;
+    private final int vehiclesEnRoute;
+    private final List<Window> windows;
+
+    public TrafficSummary(double time, int vehiclesEnRoute, List<Window> windows) {
+        this.time = time;
+        this.vehiclesEnRoute = vehiclesEnRoute;
+        this.windows = List.copyOf(windows);
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Vehicles that departed and have not arrived yet
+     * Số xe đã xuất phát nhưng chưa đến nơi
+     */
+    public int getVehiclesEnRoute() {
+        return vehiclesEnRoute;
+    }
+
+    /**
+     * One entry per sliding window, shortest first
+     * Mỗi cửa sổ trượt một phần tử, cửa sổ ngắn nhất trước
+     */
+    public List<Window> getWindows() {
+        return windows;
+    }
+
+    /**
+     * Statistics over one sliding window
+     * Thống kê trên một cửa sổ trượt
+     */
+    public static final class Window {
+        private final double seconds;
+        private final double coveredSeconds;
+        private final double departuresPerHour;
+        private final double arrivalsPerHour;
+        private final double meanTravelTime;
+        private final double meanHalting;
+        private final double[] laneHalting;
+        private final List<RankedValue> topEstimatedFlow;
+        private final List<RankedValue> topQueue;
+
+        public Window(double seconds, double coveredSeconds, double departuresPerHour, double arrivalsPerHour,
+                      double meanTravelTime, double meanHalting, double[] laneHalting,
+                      List<RankedValue> topEstimatedFlow, List<RankedValue> topQueue) {
+            this.seconds = seconds;
+            this.coveredSeconds = coveredSeconds;
+            this.departuresPerHour = departuresPerHour;
+            this.arrivalsPerHour = arrivalsPerHour;
+            this.meanTravelTime = meanTravelTime;
+            this.meanHalting = meanHalting;
+            this.laneHalting = laneHalting.clone();
+            this.topEstimatedFlow = List.copyOf(topEstimatedFlow);
+            this.topQueue = List.copyOf(topQueue);
+        }
+
+        /**
+         * Configured length of the window (s)
+         * Độ dài cấu hình của cửa sổ (giây)
+         */
+        public double getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * Simulation time actually covered so far (s), less than the window right after a start
+         * Thời gian mô phỏng thực sự được bao phủ (giây), nhỏ hơn cửa sổ ngay sau khi bắt đầu
+         */
+        public double getCoveredSeconds() {
+            return coveredSeconds;
+        }
+
+        public double getDeparturesPerHour() {
+            return departuresPerHour;
+        }
+
+        /**
+         * Network throughput: vehicles finishing their trip per hour
+         * Thông lượng mạng lưới: số xe kết thúc chuyến đi mỗi giờ
+         */
+        public double getArrivalsPerHour() {
+            return arrivalsPerHour;
+        }
+
+        /**
+         * Mean travel time of the trips that ended in the window (s), NaN if none
+         * Thời gian di chuyển trung bình của các chuyến kết thúc trong cửa sổ (giây), NaN nếu không có
+         */
+        public double getMeanTravelTime() {
+            return meanTravelTime;
+        }
+
+        /**
+         * Time-averaged number of halting vehicles in the whole network
+         * Số xe đang dừng trung bình theo thời gian trên toàn mạng lưới
+         */
+        public double getMeanHalting() {
+            return meanHalting;
+        }
+
+        /**
+         * Time-averaged number of halting vehicles on one lane, indexed like the backend's lane list;
+         * NaN before the first lane sample
+         * Số xe đang dừng trung bình theo thời gian trên một lane, đánh chỉ số giống danh sách lane của
+         * backend; NaN trước mẫu lane đầu tiên
+         */
+        public double getMeanLaneHalting(int lane) {
+            return laneHalting[lane];
+        }
+
+        public int getLaneCount() {
+            return laneHalting.length;
+        }
+
+        /**
+         * Edges with the highest mean estimated flow (veh/h), highest first. The flow is density × mean speed
+         * of the edge's lanes, not a count of vehicles leaving the edge
+         * Các edge có lưu lượng ước lượng trung bình cao nhất (xe/giờ), cao nhất trước. Lưu lượng là mật độ ×
+         * tốc độ trung bình của các lane thuộc edge, không phải số xe đếm được khi rời edge
+         */
+        public List<RankedValue> getTopEstimatedFlow() {
+            return topEstimatedFlow;
+        }
+
+        /**
+         * Lanes with the longest mean queue (halting vehicles), longest first
+         * Các lane có hàng đợi trung bình dài nhất (số xe dừng), dài nhất trước
+         */
+        public List<RankedValue> getTopQueue() {
+            return topQueue;
+        }
+    }
+
+    /**
+     * A value measured on one edge or lane
+     * Một giá trị đo trên một edge hoặc lane
+     */
+    public static final class RankedValue {
+        private final String id;
+        private final double value;
+
+        public RankedValue(String id, double value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        /**
+         * Edge or lane ID
+         * ID của edge hoặc lane
+         */
+        public String getId() {
+            return id;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+}
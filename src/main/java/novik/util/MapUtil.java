@@ -1,22 +1,29 @@
 package novik.util;
 
 import javafx.geometry.Point2D;
-import org.eclipse.sumo.libtraci.Lane;
-import org.eclipse.sumo.libtraci.TraCIPosition;
-import org.eclipse.sumo.libtraci.TraCIPositionVector;
+import novik.backend.SimulationBackend;
+import novik.backend.TraciBackend;
+import novik.jfr.NetworkLoadEvent;
+import novik.net.NetworkGeometry;
 
 import java.util.ArrayList;
-import java.util.DoubleSummaryStatistics;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntConsumer;
 
 /**
  * Utility class for coordinate conversion between SUMO and JavaFX
  * Lớp tiện ích chuyển đổi tọa độ giữa SUMO và JavaFX
  */
 public final class MapUtil {
-    // List of all lane polylines in world coordinates
-    // Danh sách tất cả polyline lane theo tọa độ thế giới
-    private static final List<List<Point2D>> lanePolylinesWorld = new ArrayList<>();
+    // All lane polylines in world coordinates, stored flat:
+    // the points of lane i are laneX/laneY[laneOffsets[i] .. laneOffsets[i + 1])
+    // Tất cả polyline lane theo tọa độ thế giới, lưu dạng mảng phẳng:
+    // các điểm của lane i là laneX/laneY[laneOffsets[i] .. laneOffsets[i + 1])
+    private static double[] laneX = new double[0];
+    private static double[] laneY = new double[0];
+    private static int[] laneOffsets = {0};
+    private static int laneCount = 0;
     
     // World bounds and scale
     // Biên và tỉ lệ của thế giới
@@ -26,6 +33,23 @@ public final class MapUtil {
     private static double canvasWidth, canvasHeight, MARGIN;
     public static boolean boundsReady = false; // true if bounds/scale are set
     // true nếu đã tính được biên/tỉ lệ
+    private static long transformVersion = 0; // changes every time the transform changes
+    // thay đổi mỗi khi phép biến đổi thay đổi
+
+    // Interactive viewport on top of the fit-to-canvas transform
+    // Khung nhìn tương tác đặt trên phép biến đổi vừa khít canvas
+    private static final double MIN_ZOOM = 0.5;
+    private static final double MAX_ZOOM = 500.0;
+    private static double zoom = 1.0; // 1 = whole network fits the canvas
+    // 1 = toàn bộ mạng lưới vừa canvas
+    private static double panX = 0, panY = 0; // screen offset in px
+    // độ dời màn hình (pixel)
+
+    // Spatial index over lane segments (item = lane index)
+    // Chỉ mục không gian cho các đoạn lane (phần tử = chỉ số lane)
+    private static final int GRID_CELLS_PER_SIDE = 64;
+    private static final double GRID_MIN_CELL_SIZE = 10.0; // meters
+    private static SpatialGrid laneIndex;
     
     // Private constructor to prevent instantiation
     // Constructor private để ngăn việc tạo instance
@@ -38,42 +62,105 @@ public final class MapUtil {
      * Tính toán biên và tỉ lệ dựa trên tất cả lane trong SUMO
      */
     public static void computeBounds(double canvasW, double canvasH, double margin) {
+        computeBounds(new TraciBackend(), canvasW, canvasH, margin);
+    }
+
+    /**
+     * Compute map bounds and scale based on all lanes of a simulation backend
+     * Tính toán biên và tỉ lệ dựa trên tất cả lane của một backend mô phỏng
+     */
+    public static void computeBounds(SimulationBackend backend, double canvasW, double canvasH, double margin) {
+        NetworkLoadEvent event = new NetworkLoadEvent();
+        long callsBefore = event.isEnabled() ? backend.getCallCount() : 0;
+        event.begin();
         canvasWidth = canvasW;
         canvasHeight = canvasH;
         MARGIN = margin;
-        lanePolylinesWorld.clear();
-
-        // Get all lane IDs from SUMO
-        // Lấy tất cả ID lane từ SUMO
-        List<String> laneIds = Lane.getIDList();
-        List<Double> allX = new ArrayList<>();
-        List<Double> allY = new ArrayList<>();
-
-        // For each lane, get its shape (polyline) and store points
-        // Với mỗi lane, lấy hình dạng (polyline) và lưu các điểm
-        for (String laneId : laneIds) {
-            TraCIPositionVector shape = Lane.getShape(laneId);
-            List<Point2D> polyline = new ArrayList<>();
-            for (TraCIPosition pos : shape.getValue()) {
-                double x = pos.getX();
-                double y = pos.getY();
-                polyline.add(new Point2D(x, y));
-                allX.add(x);
-                allY.add(y);
+
+        // Get all lane IDs from the backend
+        // Lấy tất cả ID lane từ backend
+        List<String> laneIds = backend.getLaneIds();
+        int[] offsets = new int[laneIds.size() + 1];
+        double[] xs = new double[Math.max(16, laneIds.size() * 4)];
+        double[] ys = new double[xs.length];
+        int points = 0;
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+
+        // For each lane, get its shape (polyline), store the points and grow the bounding box
+        // Với mỗi lane, lấy hình dạng (polyline), lưu các điểm và mở rộng hộp bao
+        for (int lane = 0; lane < laneIds.size(); lane++) {
+            double[] shape = backend.getLaneShape(laneIds.get(lane));
+            for (int i = 0; i + 1 < shape.length; i += 2) {
+                if (points == xs.length) {
+                    xs = Arrays.copyOf(xs, points * 2);
+                    ys = Arrays.copyOf(ys, points * 2);
+                }
+                double x = shape[i];
+                double y = shape[i + 1];
+                xs[points] = x;
+                ys[points] = y;
+                points++;
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
             }
-            lanePolylinesWorld.add(polyline);
+            offsets[lane + 1] = points;
         }
+        laneX = Arrays.copyOf(xs, points);
+        laneY = Arrays.copyOf(ys, points);
+        laneOffsets = offsets;
+        laneCount = laneIds.size();
+        fitToCanvas();
 
-        // Compute bounding box from all points
-        // Tính hộp bao từ tất cả các điểm
-        DoubleSummaryStatistics statsX = allX.stream().mapToDouble(Double::doubleValue).summaryStatistics();
-        DoubleSummaryStatistics statsY = allY.stream().mapToDouble(Double::doubleValue).summaryStatistics();
+        event.end();
+        if (event.shouldCommit()) {
+            event.lanes = laneCount;
+            event.points = laneX.length;
+            event.backendCalls = backend.getCallCount() - callsBefore;
+            event.commit();
+        }
+    }
 
-        minX = statsX.getMin();
-        maxX = statsX.getMax();
-        minY = statsY.getMin();
-        maxY = statsY.getMax();
+    /**
+     * Compute map bounds and scale from network geometry parsed from the net file (no simulator calls)
+     * Tính toán biên và tỉ lệ từ hình học mạng lưới đọc từ file net (không gọi trình mô phỏng)
+     */
+    public static void computeBounds(NetworkGeometry network, double canvasW, double canvasH, double margin) {
+        NetworkLoadEvent event = new NetworkLoadEvent();
+        event.begin();
+        canvasWidth = canvasW;
+        canvasHeight = canvasH;
+        MARGIN = margin;
+
+        // The parsed arrays are used as they are; the bounding box was computed while parsing
+        // Dùng thẳng các mảng đã phân tích; hộp bao đã được tính trong lúc phân tích
+        laneX = network.getLaneX();
+        laneY = network.getLaneY();
+        laneOffsets = network.getLaneOffsets();
+        laneCount = network.getLaneCount();
+        minX = network.getMinX();
+        minY = network.getMinY();
+        maxX = network.getMaxX();
+        maxY = network.getMaxY();
+        fitToCanvas();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.lanes = laneCount;
+            event.points = laneX.length;
+            event.commit();
+        }
+    }
 
+    /**
+     * Fit the bounds into the canvas, index the lanes and reset the viewport
+     * Đặt vừa biên vào canvas, đánh chỉ mục các lane và đặt lại khung nhìn
+     */
+    private static void fitToCanvas() {
         double worldW = maxX - minX;
         double worldH = maxY - minY;
 
@@ -86,6 +173,24 @@ public final class MapUtil {
         double scaleY = availableH / worldH;
         scale = Math.min(scaleX, scaleY);
 
+        // Index every lane segment so only visible lanes need to be drawn
+        // Đánh chỉ mục từng đoạn lane để chỉ cần vẽ các lane đang hiển thị
+        laneIndex = createGrid();
+        for (int lane = 0; lane < laneCount; lane++) {
+            int start = laneOffsets[lane];
+            int end = laneOffsets[lane + 1];
+            for (int i = start; i + 1 < end; i++) {
+                laneIndex.insert(lane, laneX[i], laneY[i], laneX[i + 1], laneY[i + 1]);
+            }
+            if (end - start == 1) {
+                laneIndex.insertPoint(lane, laneX[start], laneY[start]);
+            }
+        }
+
+        zoom = 1.0;
+        panX = 0;
+        panY = 0;
+        transformVersion++;
         boundsReady = true;
     }
 
@@ -97,32 +202,208 @@ public final class MapUtil {
      * @return Point in JavaFX screen coordinates
      */
     public static Point2D worldToScreen(Point2D worldPoint) {
-        double worldX = worldPoint.getX();
-        double worldY = worldPoint.getY();
+        return new Point2D(worldToScreenX(worldPoint.getX()), worldToScreenY(worldPoint.getY()));
+    }
 
-        // Translate to origin and scale
-        // Dịch chuyển về gốc và scale
-        double relX = worldX - minX;
-        double relY = worldY - minY;
+    /**
+     * Convert a SUMO world X coordinate to a JavaFX screen X coordinate
+     * Chuyển tọa độ X thế giới SUMO sang tọa độ X màn hình JavaFX
+     */
+    public static double worldToScreenX(double worldX) {
+        // Translate to origin, scale and apply the viewport
+        // Dịch chuyển về gốc, scale và áp dụng khung nhìn
+        return MARGIN + (worldX - minX) * scale * zoom + panX;
+    }
 
-        double screenX = MARGIN + relX * scale;
+    /**
+     * Convert a SUMO world Y coordinate to a JavaFX screen Y coordinate
+     * Chuyển tọa độ Y thế giới SUMO sang tọa độ Y màn hình JavaFX
+     */
+    public static double worldToScreenY(double worldY) {
         // Flip Y axis (SUMO Y increases upward, JavaFX Y increases downward)
         // Đảo trục Y (SUMO Y tăng lên trên, JavaFX Y tăng xuống dưới)
-        double screenY = canvasHeight - (MARGIN + relY * scale);
+        return canvasHeight - (MARGIN + (worldY - minY) * scale * zoom) + panY;
+    }
+
+    /**
+     * Project many world points at once into caller-provided arrays, without allocating
+     * Chiếu nhiều điểm thế giới cùng lúc vào mảng do bên gọi cung cấp, không cấp phát bộ nhớ
+     *
+     * @param worldX World X coordinates
+     * @param worldY World Y coordinates
+     * @param from First point to project
+     * @param count Number of points to project
+     * @param screenX Receives screen X coordinates
+     * @param screenY Receives screen Y coordinates
+     * @param to Index of the first output point
+     */
+    public static void worldToScreen(double[] worldX, double[] worldY, int from, int count,
+                                     double[] screenX, double[] screenY, int to) {
+        // Fold the whole transform into one multiply-add per axis
+        // Gộp toàn bộ phép biến đổi thành một phép nhân-cộng cho mỗi trục
+        double s = scale * zoom;
+        double offsetX = MARGIN + panX - minX * s;
+        double offsetY = canvasHeight - MARGIN + panY + minY * s;
+        for (int i = 0; i < count; i++) {
+            screenX[to + i] = offsetX + worldX[from + i] * s;
+            screenY[to + i] = offsetY - worldY[from + i] * s;
+        }
+    }
+
+    /**
+     * Convert a JavaFX screen X coordinate back to SUMO world X
+     * Chuyển tọa độ X màn hình JavaFX về tọa độ X thế giới SUMO
+     */
+    public static double screenToWorldX(double screenX) {
+        return minX + (screenX - panX - MARGIN) / (scale * zoom);
+    }
+
+    /**
+     * Convert a JavaFX screen Y coordinate back to SUMO world Y
+     * Chuyển tọa độ Y màn hình JavaFX về tọa độ Y thế giới SUMO
+     */
+    public static double screenToWorldY(double screenY) {
+        return minY + (canvasHeight - MARGIN + panY - screenY) / (scale * zoom);
+    }
+
+    /**
+     * Zoom by a factor, keeping the world point under the given screen position fixed
+     * Phóng to/thu nhỏ theo hệ số, giữ nguyên điểm thế giới dưới vị trí màn hình cho trước
+     */
+    public static void zoomAt(double factor, double screenX, double screenY) {
+        double worldX = screenToWorldX(screenX);
+        double worldY = screenToWorldY(screenY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        panX += screenX - worldToScreenX(worldX);
+        panY += screenY - worldToScreenY(worldY);
+        transformVersion++;
+    }
 
-        return new Point2D(screenX, screenY);
+    /**
+     * Move the view by a screen offset in px
+     * Di chuyển khung nhìn theo độ dời màn hình (pixel)
+     */
+    public static void panBy(double dx, double dy) {
+        panX += dx;
+        panY += dy;
+        transformVersion++;
+    }
+
+    /**
+     * Reset the view so the whole network fits the canvas
+     * Đặt lại khung nhìn để toàn bộ mạng lưới vừa canvas
+     */
+    public static void zoomToFit() {
+        zoom = 1.0;
+        panX = 0;
+        panY = 0;
+        transformVersion++;
+    }
+
+    /**
+     * Get the current scale in px per meter (fit scale times zoom)
+     * Lấy tỉ lệ hiện tại tính bằng pixel mỗi mét (tỉ lệ vừa khít nhân zoom)
+     */
+    public static double getScale() {
+        return scale * zoom;
+    }
+
+    /**
+     * Get the world rectangle visible on the canvas, plus a screen margin in px
+     * Lấy hình chữ nhật thế giới hiển thị trên canvas, cộng thêm lề màn hình (pixel)
+     *
+     * @param out Receives minX, minY, maxX, maxY
+     */
+    public static void getVisibleWorldBounds(double marginPx, double[] out) {
+        out[0] = screenToWorldX(-marginPx);
+        out[1] = screenToWorldY(canvasHeight + marginPx);
+        out[2] = screenToWorldX(canvasWidth + marginPx);
+        out[3] = screenToWorldY(-marginPx);
+    }
+
+    /**
+     * Create an empty spatial grid covering the network bounds
+     * Tạo lưới không gian rỗng bao phủ vùng mạng lưới
+     */
+    public static SpatialGrid createGrid() {
+        return SpatialGrid.forBounds(minX, minY, maxX, maxY, GRID_CELLS_PER_SIDE, GRID_MIN_CELL_SIZE);
+    }
+
+    /**
+     * Visit the index of every lane that intersects the visible area
+     * Duyệt chỉ số của mọi lane giao với vùng đang hiển thị
+     */
+    public static void forEachVisibleLane(double marginPx, IntConsumer visitor) {
+        double[] view = new double[4];
+        getVisibleWorldBounds(marginPx, view);
+        forEachLaneIn(view[0], view[1], view[2], view[3], visitor);
+    }
+
+    /**
+     * Visit the index of every lane that may intersect a world rectangle
+     * Duyệt chỉ số của mọi lane có thể giao với một hình chữ nhật thế giới
+     */
+    public static void forEachLaneIn(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (laneIndex == null) {
+            return;
+        }
+        laneIndex.query(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Get the number of lanes
+     * Lấy số lượng lane
+     */
+    public static int getLaneCount() {
+        return laneCount;
+    }
+
+    /**
+     * Get the number of points of a lane polyline
+     * Lấy số điểm của polyline một lane
+     */
+    public static int getLanePointCount(int lane) {
+        return laneOffsets[lane + 1] - laneOffsets[lane];
+    }
+
+    /**
+     * Get the length of a lane polyline in world units (m)
+     * Lấy chiều dài polyline của một lane theo đơn vị thế giới (m)
+     */
+    public static double getLaneLength(int lane) {
+        double length = 0;
+        for (int i = laneOffsets[lane] + 1; i < laneOffsets[lane + 1]; i++) {
+            length += Math.hypot(laneX[i] - laneX[i - 1], laneY[i] - laneY[i - 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Project one lane polyline into screen coordinate arrays
+     * Chiếu polyline của một lane vào mảng tọa độ màn hình
+     *
+     * @return Number of points written
+     */
+    public static int projectLane(int lane, double[] xs, double[] ys) {
+        int start = laneOffsets[lane];
+        int n = laneOffsets[lane + 1] - start;
+        worldToScreen(laneX, laneY, start, n, xs, ys, 0);
+        return n;
     }
 
     /**
      * Get all lane polylines in screen coordinates
      * Lấy tất cả polyline lane theo tọa độ màn hình
+     *
+     * @deprecated Allocates on every call; use {@link #projectLane(int, double[], double[])} instead
      */
+    @Deprecated
     public static List<List<Point2D>> getLanePolylinesScreen() {
-        List<List<Point2D>> result = new ArrayList<>();
-        for (List<Point2D> worldPolyline : lanePolylinesWorld) {
+        List<List<Point2D>> result = new ArrayList<>(laneCount);
+        for (int lane = 0; lane < laneCount; lane++) {
             List<Point2D> screenPolyline = new ArrayList<>();
-            for (Point2D wp : worldPolyline) {
-                screenPolyline.add(worldToScreen(wp));
+            for (int i = laneOffsets[lane]; i < laneOffsets[lane + 1]; i++) {
+                screenPolyline.add(new Point2D(worldToScreenX(laneX[i]), worldToScreenY(laneY[i])));
             }
             result.add(screenPolyline);
         }
@@ -140,6 +421,14 @@ public final class MapUtil {
         computeBounds(canvasW, canvasH, margin);
     }
     
+    /**
+     * Get the version of the world-to-screen transform, so cached screen geometry can be invalidated
+     * Lấy phiên bản của phép biến đổi thế giới-màn hình, để làm mới hình học đã cache
+     */
+    public static long getTransformVersion() {
+        return transformVersion;
+    }
+
     /**
      * Get canvas width
      */
@@ -0,0 +1,154 @@
+package novik.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid spatial index over integer item IDs in SUMO world coordinates
+ * Chỉ mục không gian dạng lưới đều cho các ID số nguyên theo tọa độ thế giới SUMO
+ *
+ * Items are inserted into every cell their bounding box touches; a query visits each
+ * matching item once. Clearing keeps the allocated cells, so the grid can be refilled every step.
+ * Mỗi phần tử được thêm vào mọi ô mà hộp bao của nó chạm tới; truy vấn trả về mỗi phần tử
+ * một lần. Xóa vẫn giữ bộ nhớ các ô, nên lưới có thể được nạp lại mỗi bước.
+ */
+public final class SpatialGrid {
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private final double originX, originY;
+    private final double cellSize;
+    private final int columns, rows;
+    private final int[][] cellItems;
+    private final int[] cellCounts;
+
+    // Per-item stamp of the last query that visited it (avoids duplicates without a Set)
+    // Dấu của truy vấn cuối cùng đã duyệt mỗi phần tử (tránh trùng lặp mà không cần Set)
+    private int[] visitStamps = new int[0];
+    private int stamp = 0;
+
+    /**
+     * Constructor
+     * @param minX World bounds covered by the grid
+     * @param minY World bounds covered by the grid
+     * @param maxX World bounds covered by the grid
+     * @param maxY World bounds covered by the grid
+     * @param cellSize Cell size in meters
+     */
+    public SpatialGrid(double minX, double minY, double maxX, double maxY, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("cellSize must be positive");
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        this.cellItems = new int[columns * rows][];
+        this.cellCounts = new int[columns * rows];
+    }
+
+    /**
+     * Create a grid with about {@code cellsPerSide} cells along the longer side of the bounds
+     * Tạo lưới với khoảng {@code cellsPerSide} ô theo cạnh dài hơn của vùng bao
+     */
+    public static SpatialGrid forBounds(double minX, double minY, double maxX, double maxY,
+                                        int cellsPerSide, double minCellSize) {
+        double longest = Math.max(maxX - minX, maxY - minY);
+        return new SpatialGrid(minX, minY, maxX, maxY, Math.max(minCellSize, longest / cellsPerSide));
+    }
+
+    /**
+     * Remove all items (keeps allocated memory)
+     * Xóa tất cả phần tử (giữ lại bộ nhớ đã cấp phát)
+     */
+    public void clear() {
+        Arrays.fill(cellCounts, 0);
+    }
+
+    /**
+     * Insert an item covering a world rectangle
+     * Thêm phần tử bao phủ một hình chữ nhật trong thế giới
+     */
+    public void insert(int item, double x0, double y0, double x1, double y1) {
+        int c0 = column(Math.min(x0, x1));
+        int c1 = column(Math.max(x0, x1));
+        int r0 = row(Math.min(y0, y1));
+        int r1 = row(Math.max(y0, y1));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                add(r * columns + c, item);
+            }
+        }
+        if (item >= visitStamps.length) {
+            visitStamps = Arrays.copyOf(visitStamps, Math.max(item + 1, visitStamps.length * 2));
+        }
+    }
+
+    /**
+     * Insert an item at a single world point
+     * Thêm phần tử tại một điểm trong thế giới
+     */
+    public void insertPoint(int item, double x, double y) {
+        insert(item, x, y, x, y);
+    }
+
+    /**
+     * Visit every item whose cells intersect the world rectangle, each item once
+     * Duyệt mọi phần tử có ô giao với hình chữ nhật, mỗi phần tử một lần
+     */
+    public void query(double x0, double y0, double x1, double y1, IntConsumer visitor) {
+        if (++stamp == 0) {
+            // Stamp wrapped around: reset so old stamps cannot match
+            // Dấu bị tràn: đặt lại để dấu cũ không bị trùng
+            Arrays.fill(visitStamps, 0);
+            stamp = 1;
+        }
+        if (Math.max(x0, x1) < originX || Math.min(x0, x1) > originX + columns * cellSize
+                || Math.max(y0, y1) < originY || Math.min(y0, y1) > originY + rows * cellSize) {
+            return;
+        }
+        int c0 = column(Math.min(x0, x1));
+        int c1 = column(Math.max(x0, x1));
+        int r0 = row(Math.min(y0, y1));
+        int r1 = row(Math.max(y0, y1));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                int[] items = cellItems[cell];
+                for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+                    int item = items[i];
+                    if (visitStamps[item] != stamp) {
+                        visitStamps[item] = stamp;
+                        visitor.accept(item);
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(int cell, int item) {
+        int[] items = cellItems[cell];
+        int n = cellCounts[cell];
+        if (items == null) {
+            items = new int[INITIAL_CELL_CAPACITY];
+            cellItems[cell] = items;
+        } else if (n == items.length) {
+            items = Arrays.copyOf(items, n * 2);
+            cellItems[cell] = items;
+        }
+        items[n] = item;
+        cellCounts[cell] = n + 1;
+    }
+
+    // Positions outside the bounds are clamped to the border cells
+    // Vị trí ngoài vùng bao được kẹp vào các ô ở biên
+    private int column(double x) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        return Math.max(0, Math.min(columns - 1, c));
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - originY) / cellSize);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+}
@@ -0,0 +1,80 @@
+package novik.net;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Round trip of the geometry cache and rejection of damaged caches that still carry a matching hash
+ * Ghi rồi đọc cache hình học và việc từ chối cache hỏng nhưng vẫn mang mã băm khớp
+ */
+class NetworkCacheTest {
+    private static final Path NET_FILE = Path.of("sumo/simple/simple.net.xml");
+    // Start of the arrays: header (4 + 2 + 32 bytes) and sizes (4 doubles, 5 ints)
+    // Vị trí bắt đầu các mảng: phần đầu (4 + 2 + 32 byte) và kích thước (4 double, 5 int)
+    private static final int ARRAYS_OFFSET = 38 + 52;
+
+    @TempDir
+    Path dir;
+
+    private Path cacheFile;
+    private byte[] hash;
+    private NetworkGeometry network;
+
+    @BeforeEach
+    void writeCache() throws Exception {
+        network = NetFileParser.parse(NET_FILE);
+        hash = NetworkCache.hash(NET_FILE);
+        cacheFile = dir.resolve("simple.net.xml" + NetworkCache.SUFFIX);
+        NetworkCache.write(cacheFile, hash, network);
+    }
+
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        NetworkGeometry cached = NetworkCache.read(cacheFile, hash);
+        assertNotNull(cached);
+        assertEquals(network.getLaneIds(), cached.getLaneIds());
+        assertArrayEquals(network.getLaneOffsets(), cached.getLaneOffsets());
+        assertArrayEquals(network.getLaneX(), cached.getLaneX());
+        assertArrayEquals(network.linkLaneArray(), cached.linkLaneArray());
+    }
+
+    @Test
+    void rejectsLaneOffsetsPastThePoints() throws Exception {
+        putInt(ARRAYS_OFFSET + 4, 1_000_000);
+        assertNull(NetworkCache.read(cacheFile, hash));
+    }
+
+    @Test
+    void rejectsDecreasingLaneOffsets() throws Exception {
+        putInt(ARRAYS_OFFSET + 4, -1);
+        assertNull(NetworkCache.read(cacheFile, hash));
+    }
+
+    @Test
+    void rejectsLinkLanesOutsideTheNetwork() throws Exception {
+        int lanes = network.getLaneCount();
+        int points = network.getLaneX().length;
+        int junctions = network.junctionXArray().length;
+        int lights = network.tlsIdArray().length;
+        int linkLanes = ARRAYS_OFFSET + 4 * (lanes + 1) + 16 * points + 16 * junctions + 4 * (lights + 1);
+        putInt(linkLanes, lanes);
+        assertNull(NetworkCache.read(cacheFile, hash));
+    }
+
+    private void putInt(int position, int value) throws Exception {
+        byte[] bytes = Files.readAllBytes(cacheFile);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(position, value);
+        Files.write(cacheFile, bytes);
+    }
+}
@@ -0,0 +1,55 @@
+package novik.record;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Encoding round trips of the primitive recording types
+ * Mã hóa rồi giải mã các kiểu cơ bản của file ghi
+ */
+class RecordingFormatTest {
+    @Test
+    void varIntRoundTripsAcrossByteBoundaries() {
+        int[] values = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, -1};
+        int[] sizes = {1, 1, 1, 2, 2, 3, 3, 4, 5, 5};
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        for (int i = 0; i < values.length; i++) {
+            buf.clear();
+            RecordingFormat.putVarInt(buf, values[i]);
+            assertEquals(sizes[i], buf.position(), "size of " + values[i]);
+            buf.flip();
+            assertEquals(values[i], RecordingFormat.getVarInt(buf));
+        }
+    }
+
+    @Test
+    void zigZagKeepsSmallMagnitudesShort() {
+        int[] values = {0, -1, 1, -64, 63, -65, 64, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        for (int value : values) {
+            buf.clear();
+            RecordingFormat.putZigZag(buf, value);
+            if (value >= -64 && value <= 63) {
+                assertEquals(1, buf.position(), "size of " + value);
+            }
+            buf.flip();
+            assertEquals(value, RecordingFormat.getZigZag(buf));
+        }
+    }
+
+    @Test
+    void stringsRoundTripAndSkip() {
+        ByteBuffer buf = ByteBuffer.allocate(256);
+        RecordingFormat.putString(buf, "E12_13_0");
+        RecordingFormat.putString(buf, "xe-đạp");
+        RecordingFormat.putString(buf, "");
+        buf.flip();
+        RecordingFormat.skipString(buf);
+        assertEquals("xe-đạp", RecordingFormat.getString(buf));
+        assertEquals("", RecordingFormat.getString(buf));
+        assertEquals(0, buf.remaining());
+    }
+}
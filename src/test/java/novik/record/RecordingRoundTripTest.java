@@ -0,0 +1,185 @@
+package novik.record;
+
+import novik.backend.ReplayBackend;
+import novik.backend.SyntheticBackend;
+import novik.sim.SignalStateCollector;
+import novik.sim.SimulationSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records a synthetic run with {@link SimulationRecorder} and plays it back with {@link ReplayBackend}
+ * Ghi một lần chạy tự sinh bằng {@link SimulationRecorder} rồi phát lại bằng {@link ReplayBackend}
+ *
+ * Every replayed step must match the recorded one after quantization: vehicle IDs, types, positions and
+ * signal states, whether it was reached by stepping, by seeking or from a truncated file.
+ * Mỗi bước phát lại phải khớp với bước đã ghi sau khi lượng tử hóa: ID xe, loại xe, vị trí và trạng thái
+ * đèn, dù tới được bằng cách chạy từng bước, tua hay từ một file bị cắt.
+ */
+class RecordingRoundTripTest {
+    private static final int STEPS = 120;
+    private static final int KEYFRAME_INTERVAL = 10;
+
+    @TempDir
+    Path dir;
+
+    private Path recording;
+    // Expected state of every recorded step, in order
+    // Trạng thái mong đợi của mỗi bước đã ghi, theo thứ tự
+    private final List<Map<String, String>> expected = new ArrayList<>();
+    private final List<Double> times = new ArrayList<>();
+
+    @BeforeEach
+    void record() {
+        recording = dir.resolve("run.nvkr");
+        SyntheticBackend backend = new SyntheticBackend(300, 5, 42L, 1.0, -1);
+        backend.start();
+        SignalStateCollector signals = new SignalStateCollector(backend);
+        SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+        try (SimulationRecorder recorder = new SimulationRecorder(recording, KEYFRAME_INTERVAL)) {
+            recorder.writeHeader(backend);
+            for (int i = 0; i < STEPS; i++) {
+                backend.step();
+                backend.updateVehicleLifecycle();
+                builder.clear();
+                backend.collectVehicleState(builder);
+                signals.collect(builder, backend.getTime());
+                SimulationSnapshot snapshot = builder.build(i, backend.getTime());
+                recorder.record(snapshot);
+                expected.add(describe(snapshot));
+                times.add(snapshot.getTime());
+            }
+        }
+        backend.close();
+    }
+
+    @Test
+    void playsEveryStepBack() {
+        ReplayBackend replay = open(recording);
+        assertTrue(replay.canSeek());
+        assertEquals(times.get(0), replay.getFirstTime());
+        assertEquals(times.get(STEPS - 1), replay.getLastTime());
+        for (int i = 0; i < STEPS; i++) {
+            assertTrue(replay.getMinExpectedNumber() > 0, "ended early at step " + i);
+            replay.step();
+            replay.updateVehicleLifecycle();
+            assertEquals(times.get(i), replay.getTime());
+            assertEquals(expected.get(i), describe(replay), "step " + i);
+        }
+        assertEquals(0, replay.getMinExpectedNumber());
+    }
+
+    @Test
+    void seeksToMidRunTimes() {
+        ReplayBackend replay = open(recording);
+        // Exact keyframe, between keyframes, backwards, before the start and past the end
+        // Đúng keyframe, giữa hai keyframe, tua lùi, trước lúc bắt đầu và sau lúc kết thúc
+        double[] targets = {times.get(40), times.get(57) + 0.5, times.get(13), times.get(99), times.get(0) - 5,
+                times.get(STEPS - 1) + 100};
+        for (double target : targets) {
+            replay.seek(target);
+            int index = lastStepAtOrBefore(target);
+            assertEquals(times.get(index), replay.getTime(), "seek to " + target);
+            assertEquals(expected.get(index), describe(replay), "seek to " + target);
+
+            // Deltas after a seek apply on top of the rebuilt state
+            // Các delta sau khi tua được áp dụng lên trạng thái đã dựng lại
+            for (int i = index + 1; i < Math.min(STEPS, index + 15); i++) {
+                replay.step();
+                replay.updateVehicleLifecycle();
+                assertEquals(expected.get(i), describe(replay), "step " + i + " after seek to " + target);
+            }
+        }
+    }
+
+    @Test
+    void playsTheCompletePrefixOfATruncatedFile() throws IOException {
+        // Cut inside the step records, before the end marker and the footer
+        // Cắt bên trong các bản ghi bước, trước dấu kết thúc và footer
+        long recordsEnd;
+        try (FileChannel in = FileChannel.open(recording)) {
+            ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+            in.read(trailer, in.size() - RecordingFormat.TRAILER_SIZE);
+            recordsEnd = trailer.flip().getLong() - 1;
+        }
+        for (long cut = recordsEnd / 4; cut < recordsEnd; cut += recordsEnd / 23) {
+            Path truncated = dir.resolve("cut-" + cut + ".nvkr");
+            try (FileChannel in = FileChannel.open(recording);
+                 FileChannel out = FileChannel.open(truncated, StandardOpenOption.CREATE_NEW,
+                         StandardOpenOption.WRITE)) {
+                in.transferTo(0, cut, out);
+            }
+            ReplayBackend replay = open(truncated);
+            assertFalse(replay.canSeek());
+            int steps = 0;
+            while (replay.getMinExpectedNumber() > 0) {
+                replay.step();
+                replay.updateVehicleLifecycle();
+                assertEquals(expected.get(steps), describe(replay), "step " + steps + " of file cut at " + cut);
+                steps++;
+            }
+            assertTrue(steps > 0 && steps < STEPS, "file cut at " + cut + " played " + steps + " steps");
+            // Stepping past the end does nothing
+            // Chạy tiếp sau khi hết file không làm gì
+            replay.step();
+            assertEquals(times.get(steps - 1), replay.getTime());
+        }
+    }
+
+    private ReplayBackend open(Path file) {
+        ReplayBackend replay = new ReplayBackend(file);
+        replay.start();
+        return replay;
+    }
+
+    private int lastStepAtOrBefore(double time) {
+        int index = 0;
+        for (int i = 0; i < times.size() && times.get(i) <= time; i++) {
+            index = i;
+        }
+        return index;
+    }
+
+    /**
+     * Vehicles and signals of a snapshot as text, quantized like the recording
+     * Xe và đèn của một snapshot dưới dạng văn bản, lượng tử hóa giống file ghi
+     */
+    private static Map<String, String> describe(SimulationSnapshot snapshot) {
+        Map<String, String> state = new HashMap<>();
+        for (int i = 0; i < snapshot.getVehicleCount(); i++) {
+            state.put(snapshot.getVehicleId(i), snapshot.getVehicleType(i)
+                    + " " + RecordingFormat.encodePosition(snapshot.getX(i))
+                    + " " + RecordingFormat.encodePosition(snapshot.getY(i))
+                    + " " + (int) RecordingFormat.encodeAngle(snapshot.getAngle(i))
+                    + " " + (int) RecordingFormat.encodeSpeed(snapshot.getSpeed(i)));
+        }
+        for (int i = 0; i < snapshot.getSignalCount(); i++) {
+            state.put("tls " + snapshot.getSignalId(i), snapshot.getSignalState(i));
+        }
+        return state;
+    }
+
+    private static Map<String, String> describe(ReplayBackend replay) {
+        SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+        replay.collectVehicleState(builder);
+        for (String tlsId : replay.getTrafficLightIds()) {
+            builder.addSignal(tlsId, replay.getSignalState(tlsId));
+        }
+        return describe(builder.build(0, replay.getTime()));
+    }
+}
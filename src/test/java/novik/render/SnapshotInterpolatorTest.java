@@ -0,0 +1,41 @@
+package novik.render;
+
+import novik.sim.SimulationSnapshot;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Gliding between snapshots and cuts at jumps of the simulation clock
+ * Trượt giữa các snapshot và cắt tại các lần đồng hồ mô phỏng nhảy
+ */
+class SnapshotInterpolatorTest {
+    private static final long INTERVAL = 1_000_000_000L;
+
+    private final SnapshotInterpolator interpolator = new SnapshotInterpolator();
+
+    @Test
+    void sameVehicleGlidesWithinAnEpoch() {
+        interpolator.advance(snapshot(1, 10, 0, 0), 0, INTERVAL);
+        interpolator.advance(snapshot(2, 11, 0, 100), INTERVAL, INTERVAL);
+        // Halfway through the interval the vehicle is halfway there
+        // Ở giữa khoảng thời gian xe đi được nửa đường
+        interpolator.advance(snapshot(2, 11, 0, 100), INTERVAL + INTERVAL / 2, INTERVAL);
+        assertEquals(50, interpolator.getX(0), 1e-9);
+    }
+
+    @Test
+    void seekShowsReusedHandlesWhereTheyAre() {
+        interpolator.advance(snapshot(1, 15, 0, 0), 0, INTERVAL);
+        // After seeking back the store hands out handle 0 to the same vehicle again
+        // Sau khi tua lùi kho cấp lại handle 0 cho cùng xe đó
+        interpolator.advance(snapshot(2, 10, 1, 100), INTERVAL, INTERVAL);
+        assertEquals(100, interpolator.getX(0));
+    }
+
+    private static SimulationSnapshot snapshot(long sequence, double time, long epoch, double x) {
+        SimulationSnapshot.Builder builder = new SimulationSnapshot.Builder();
+        builder.addVehicle(0, "veh0", "car", x, 0, 90, 10);
+        return builder.build(sequence, time, epoch);
+    }
+}
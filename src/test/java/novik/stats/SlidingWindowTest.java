@@ -0,0 +1,80 @@
+package novik.stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bucket expiry, coverage and weighting of the sliding window
+ * Việc loại bucket, độ bao phủ và trọng số của cửa sổ trượt
+ */
+class SlidingWindowTest {
+    // 60 s split into 6 buckets of 10 s
+    // 60 giây chia thành 6 bucket 10 giây
+    private final SlidingWindow window = new SlidingWindow(2, 60, 6);
+
+    @Test
+    void bucketsExpireOnceTheyLeaveTheWindow() {
+        window.advanceTo(0);
+        window.add(0, 5);
+        window.advanceTo(30);
+        window.add(0, 2);
+        window.add(1, 1);
+        assertEquals(7, window.sum(0));
+
+        // Bucket [0, 10) is the oldest one the window still covers at 55 s, and is gone at 60 s
+        // Bucket [0, 10) là bucket cũ nhất cửa sổ còn bao phủ ở 55 giây, và bị bỏ ở 60 giây
+        window.advanceTo(55);
+        assertEquals(7, window.sum(0));
+        window.advanceTo(60);
+        assertEquals(2, window.sum(0));
+        assertEquals(1, window.sum(1));
+
+        // Jumping past the whole window empties it
+        // Nhảy qua cả cửa sổ làm nó trống
+        window.advanceTo(500);
+        double[] sums = new double[2];
+        window.sumAll(sums);
+        assertEquals(0, sums[0]);
+        assertEquals(0, sums[1]);
+    }
+
+    @Test
+    void coveredSecondsStartAtTheFirstTime() {
+        assertEquals(0, window.coveredSeconds(5));
+        window.advanceTo(12);
+        assertEquals(0, window.coveredSeconds(12));
+        window.advanceTo(20);
+        assertEquals(8, window.coveredSeconds(20));
+        // Once running longer than the window, only the buckets it keeps count
+        // Khi đã chạy lâu hơn cửa sổ, chỉ các bucket còn giữ được tính
+        window.advanceTo(100);
+        assertEquals(50, window.coveredSeconds(100));
+        assertEquals(55, window.coveredSeconds(105));
+    }
+
+    @Test
+    void goingBackInTimeStartsOver() {
+        window.advanceTo(50);
+        window.add(0, 3);
+        window.addWeight(1);
+        window.advanceTo(20);
+        assertEquals(0, window.sum(0));
+        assertEquals(0, window.weight());
+        assertEquals(0, window.coveredSeconds(20));
+        assertEquals(5, window.coveredSeconds(25));
+    }
+
+    @Test
+    void meanIsWeightedBySampleWeight() {
+        assertTrue(Double.isNaN(window.mean(0)));
+        window.advanceTo(0);
+        window.add(0, 4 * 1.0);
+        window.addWeight(1.0);
+        window.advanceTo(10);
+        window.add(0, 1 * 3.0);
+        window.addWeight(3.0);
+        assertEquals(7.0 / 4.0, window.mean(0), 1e-12);
+    }
+}
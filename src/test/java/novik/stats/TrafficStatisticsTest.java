@@ -0,0 +1,89 @@
+package novik.stats;
+
+import novik.sim.LaneStateBuffer;
+import novik.sim.VehicleStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Trip pairing, lane queues and resets of the traffic statistics
+ * Ghép chuyến đi, hàng đợi lane và việc đặt lại của thống kê giao thông
+ */
+class TrafficStatisticsTest {
+    private static final List<String> LANES = List.of("E1_0", "E1_1", "E2_0", ":J0_0");
+
+    private final TrafficStatistics statistics = new TrafficStatistics(LANES, new double[]{100, 100, 50, 10});
+    private final LaneStateBuffer lanes = new LaneStateBuffer(LANES.size());
+
+    @Test
+    void travelTimesPairDeparturesWithArrivals() {
+        statistics.recordTrips(10, List.of("a", "b"), List.of());
+        statistics.recordTrips(25, List.of("c"), List.of("a"));
+        // "x" departed before the statistics started, so it has no travel time
+        // "x" xuất phát trước khi thống kê bắt đầu, nên không có thời gian di chuyển
+        statistics.recordTrips(40, List.of(), List.of("b", "x"));
+
+        TrafficSummary summary = statistics.summarize(40);
+        assertEquals(1, summary.getVehiclesEnRoute());
+        TrafficSummary.Window minute = summary.getWindows().get(0);
+        assertEquals(60, minute.getSeconds());
+        assertEquals(30, minute.getCoveredSeconds(), 1e-9);
+        assertEquals((15 + 30) / 2.0, minute.getMeanTravelTime(), 1e-9);
+        assertEquals(3 * 3600 / 30.0, minute.getArrivalsPerHour(), 1e-9);
+        assertEquals(3 * 3600 / 30.0, minute.getDeparturesPerHour(), 1e-9);
+    }
+
+    @Test
+    void queuesAreKeptPerLane() {
+        lanes.clear();
+        statistics.recordLanes(0, lanes);
+        lanes.set(1, 5, 4, 0.5, 13.9, 0.3);
+        lanes.set(2, 2, 1, 10, 13.9, 0.1);
+        statistics.recordLanes(10, lanes);
+        lanes.clear();
+        statistics.recordLanes(20, lanes);
+
+        TrafficSummary.Window minute = statistics.summarize(20).getWindows().get(0);
+        assertEquals(0, minute.getMeanLaneHalting(0));
+        assertEquals(2, minute.getMeanLaneHalting(1), 1e-9);
+        assertEquals(0.5, minute.getMeanLaneHalting(2), 1e-9);
+        assertEquals(2.5, minute.getMeanHalting(), 1e-9);
+        assertEquals("E1_1", minute.getTopQueue().get(0).getId());
+        assertEquals("E2_0", minute.getTopQueue().get(1).getId());
+        // Estimated flow of E2: 2 vehicles / 50 m × 10 m/s, during half of the sampled time
+        // Lưu lượng ước lượng của E2: 2 xe / 50 m × 10 m/s, trong một nửa thời gian lấy mẫu
+        TrafficSummary.RankedValue busiest = minute.getTopEstimatedFlow().get(0);
+        assertEquals("E2", busiest.getId());
+        assertEquals(2 / 50.0 * 10 * 3600 / 2, busiest.getValue(), 1e-9);
+    }
+
+    @Test
+    void resetKeepsOnlyVehiclesStillOnTheRoad() {
+        statistics.recordTrips(10, List.of("a", "b", "c"), List.of());
+        lanes.clear();
+        statistics.recordLanes(10, lanes);
+
+        // Seeking forward: "a" arrived in the skipped part, "b" is still driving, "d" departed meanwhile
+        // Tua tới: "a" đến nơi trong đoạn bị bỏ qua, "b" vẫn đang chạy, "d" xuất phát trong lúc đó
+        VehicleStore store = new VehicleStore();
+        store.add("b", "car");
+        store.add("d", "car");
+        statistics.reset(store);
+        assertEquals(2, statistics.summarize(600).getVehiclesEnRoute());
+
+        statistics.recordTrips(610, List.of("e"), List.of("b"));
+        statistics.recordTrips(640, List.of(), List.of("e"));
+        TrafficSummary summary = statistics.summarize(640);
+        assertEquals(1, summary.getVehiclesEnRoute());
+        TrafficSummary.Window minute = summary.getWindows().get(0);
+        // Only "e" has a known departure; nothing from before the reset is left in the windows
+        // Chỉ "e" có thời điểm xuất phát đã biết; không còn gì từ trước lần đặt lại trong các cửa sổ
+        assertEquals(30, minute.getMeanTravelTime(), 1e-9);
+        assertEquals(2 * 3600 / 30.0, minute.getArrivalsPerHour(), 1e-9);
+        assertTrue(Double.isNaN(minute.getMeanHalting()));
+    }
+}